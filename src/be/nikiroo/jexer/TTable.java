@@ -161,6 +161,9 @@ public class TTable extends TBrowsableWidget {
 	 */
 	public void setModel(TableModel model) {
 		this.model = model;
+		for (TTableColumn tcol : columns) {
+			tcol.setModel(model);
+		}
 		reflowData();
 	}
 
@@ -294,6 +297,11 @@ public class TTable extends TBrowsableWidget {
 			headers = new ArrayList<Object>();
 		}
 
+		// The old columns must stop listening to the model
+		for (TTableColumn tcol : columns) {
+			tcol.setModel(null);
+		}
+
 		int i = 0;
 		this.columns = new ArrayList<TTableColumn>();
 		for (Object header : headers) {
@@ -28,6 +28,15 @@
  */
 package be.nikiroo.jexer;
 
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.WeakHashMap;
+
+import javax.swing.event.TableModelEvent;
+import javax.swing.event.TableModelListener;
+import javax.swing.table.TableModel;
+
 import jexer.bits.CellAttributes;
 
 /**
@@ -40,8 +49,168 @@ import jexer.bits.CellAttributes;
  * @author niki
  */
 public class TTableCellRendererText extends TTableCellRenderer {
+	/** The maximum number of cells kept in the cache (about a few screens) */
+	static private final int CACHE_SIZE = 4096;
+
 	private boolean rightAlign;
 
+	/**
+	 * The text of the cells drawn recently, for each model, so drawing the
+	 * same cells again (when scrolling, for instance) does not convert and
+	 * pad their values again; the models are weak keys, so a model that is
+	 * no longer used can be collected with its cells.
+	 */
+	private Map<TableModel, ModelCache> caches = new WeakHashMap<TableModel, ModelCache>();
+
+	/**
+	 * A cell of a model.
+	 * 
+	 * @author niki
+	 */
+	static private class CacheKey {
+		private int rowIndex;
+		private int colIndex;
+
+		@Override
+		public int hashCode() {
+			return 31 * rowIndex + 7919 * colIndex;
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			if (!(obj instanceof CacheKey)) {
+				return false;
+			}
+
+			CacheKey other = (CacheKey) obj;
+			return rowIndex == other.rowIndex && colIndex == other.colIndex;
+		}
+	}
+
+	/**
+	 * The text of a cell, valid as long as the value (the same object) and
+	 * the width of the column do not change.
+	 * 
+	 * @author niki
+	 */
+	static private class CacheEntry {
+		private Object value;
+		private int width;
+		private String text;
+	}
+
+	/**
+	 * The cells of one model drawn recently, the least recently used
+	 * dropped first.
+	 * <p>
+	 * It listens to its model to drop the cells that change (the source of
+	 * the events is not always the model itself), but never references the
+	 * model, so that the model can still be collected.
+	 * 
+	 * @author niki
+	 */
+	static private class ModelCache implements TableModelListener {
+		private Map<CacheKey, CacheEntry> cells = new LinkedHashMap<CacheKey, CacheEntry>(
+				16, 0.75f, true) {
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected boolean removeEldestEntry(
+					Map.Entry<CacheKey, CacheEntry> eldest) {
+				return size() > CACHE_SIZE;
+			}
+		};
+
+		/** The key used to look into the cache (reused to avoid allocations) */
+		private CacheKey lookupKey = new CacheKey();
+
+		/** One more than the highest column index in the cache */
+		private int colCount;
+
+		/**
+		 * Return the cached cell, if any.
+		 * 
+		 * @param rowIndex
+		 *            the row index in the table (-1 for the headers)
+		 * @param colIndex
+		 *            the column index in the table
+		 * 
+		 * @return the cell, or NULL
+		 */
+		public CacheEntry get(int rowIndex, int colIndex) {
+			lookupKey.rowIndex = rowIndex;
+			lookupKey.colIndex = colIndex;
+			return cells.get(lookupKey);
+		}
+
+		/**
+		 * Add a cell to the cache.
+		 * 
+		 * @param rowIndex
+		 *            the row index in the table (-1 for the headers)
+		 * @param colIndex
+		 *            the column index in the table
+		 * 
+		 * @return the new (empty) cell
+		 */
+		public CacheEntry add(int rowIndex, int colIndex) {
+			CacheKey key = new CacheKey();
+			key.rowIndex = rowIndex;
+			key.colIndex = colIndex;
+			CacheEntry entry = new CacheEntry();
+			cells.put(key, entry);
+			colCount = Math.max(colCount, colIndex + 1);
+			return entry;
+		}
+
+		/**
+		 * Drop the cells changed by the given event.
+		 * 
+		 * @param e
+		 *            the change
+		 */
+		@Override
+		public void tableChanged(TableModelEvent e) {
+			if (e.getType() != TableModelEvent.UPDATE
+					|| e.getFirstRow() == TableModelEvent.HEADER_ROW) {
+				// Inserted or deleted rows move the others, so drop them all
+				cells.clear();
+				return;
+			}
+
+			int first = e.getFirstRow();
+			int last = e.getLastRow();
+			int col = e.getColumn();
+			long count = (last - (long) first + 1)
+					* (col == TableModelEvent.ALL_COLUMNS ? colCount : 1);
+			if (count > cells.size()) {
+				// Cheaper to look at the cells we have
+				for (Iterator<CacheKey> it = cells.keySet().iterator(); it
+						.hasNext();) {
+					CacheKey key = it.next();
+					if (key.rowIndex >= first && key.rowIndex <= last
+							&& (col == TableModelEvent.ALL_COLUMNS || key.colIndex == col)) {
+						it.remove();
+					}
+				}
+				return;
+			}
+
+			for (int row = first; row <= last; row++) {
+				lookupKey.rowIndex = row;
+				if (col != TableModelEvent.ALL_COLUMNS) {
+					lookupKey.colIndex = col;
+					cells.remove(lookupKey);
+					continue;
+				}
+				for (int i = 0; i < colCount; i++) {
+					lookupKey.colIndex = i;
+					cells.remove(lookupKey);
+				}
+			}
+		}
+	}
+
 	/**
 	 * Create a new renderer for normal text mode.
 	 */
@@ -78,7 +247,8 @@ public class TTableCellRendererText extends TTableCellRenderer {
 
 		int xOffset = getXOffset(table, colIndex);
 		TTableColumn tcol = table.getColumns().get(colIndex);
-		String data = asText(value, tcol.getWidth(), rightAlign);
+		String data = getText(table.getModel(), value, rowIndex, colIndex,
+				tcol.getWidth());
 
 		if (!data.isEmpty()) {
 			boolean isSelected = table.getSelectedRow() == rowIndex;
@@ -88,4 +258,49 @@ public class TTableCellRendererText extends TTableCellRenderer {
 			table.getScreen().putStringXY(xOffset, y, data, color);
 		}
 	}
+
+	/**
+	 * Return the text to display for the given cell, from the cache if the
+	 * value and width did not change since it was last drawn.
+	 * 
+	 * @param model
+	 *            the model of the table
+	 * @param value
+	 *            the value of the cell
+	 * @param rowIndex
+	 *            the row index in the table (-1 for the headers)
+	 * @param colIndex
+	 *            the column index in the table
+	 * @param width
+	 *            the width of the column
+	 * 
+	 * @return the {@link String} to display
+	 */
+	private String getText(final TableModel model, Object value, int rowIndex,
+			int colIndex, int width) {
+		if (model == null || getMode().isSeparator()) {
+			return asText(value, width, rightAlign);
+		}
+
+		ModelCache cache = caches.get(model);
+		if (cache == null) {
+			cache = new ModelCache();
+			caches.put(model, cache);
+			model.addTableModelListener(cache);
+		}
+
+		CacheEntry entry = cache.get(rowIndex, colIndex);
+		if (entry != null && entry.value == value && entry.width == width) {
+			return entry.text;
+		}
+
+		if (entry == null) {
+			entry = cache.add(rowIndex, colIndex);
+		}
+
+		entry.value = value;
+		entry.width = width;
+		entry.text = asText(value, width, rightAlign);
+		return entry.text;
+	}
 }
@@ -1,5 +1,7 @@
 package be.nikiroo.jexer;
 
+import javax.swing.event.TableModelEvent;
+import javax.swing.event.TableModelListener;
 import javax.swing.table.TableModel;
 
 import be.nikiroo.jexer.TTableCellRenderer.CellRendererMode;
@@ -18,6 +20,30 @@ public class TTableColumn {
 	/** The auto-computed width of the column (the width of the largest value) */
 	private int autoWidth;
 
+	/**
+	 * The width of the value of each row, or NULL if it must be computed
+	 * again (only the first <tt>rowCount</tt> items are used).
+	 */
+	private int[] rowWidths;
+
+	/** The number of rows in <tt>rowWidths</tt> */
+	private int rowCount;
+
+	/** How many rows have a value of each width (indexed by width) */
+	private int[] widthCounts;
+
+	/**
+	 * Keep <tt>rowWidths</tt> and <tt>widthCounts</tt> up to date with the
+	 * changes of the model, so {@link TTableColumn#reflowData()} does not need
+	 * to look at every row again.
+	 */
+	private TableModelListener listener = new TableModelListener() {
+		@Override
+		public void tableChanged(TableModelEvent e) {
+			updateWidths(e);
+		}
+	};
+
 	private Object headerValue;
 
 	public TTableColumn(int modelIndex) {
@@ -30,8 +56,8 @@ public class TTableColumn {
 
 	// set the width and preferred with the the max data size
 	public TTableColumn(int modelIndex, Object colValue, TableModel model) {
-		this.model = model;
 		this.modelIndex = modelIndex;
+		setModel(model);
 
 		reflowData();
 
@@ -47,26 +73,61 @@ public class TTableColumn {
 
 	public void setCellRenderer(TTableCellRenderer renderer) {
 		this.renderer = renderer;
+		rowWidths = null;
+	}
+
+	/**
+	 * The data model this column takes its values from.
+	 * 
+	 * @return the model, can be NULL
+	 */
+	public TableModel getModel() {
+		return model;
+	}
+
+	/**
+	 * The data model this column takes its values from.
+	 * <p>
+	 * The column listens to the changes of the model to keep its auto-computed
+	 * width up to date, so the model must notify its listeners when its data
+	 * changes.
+	 * 
+	 * @param model
+	 *            the new model, can be NULL
+	 */
+	public void setModel(TableModel model) {
+		if (this.model != null) {
+			this.model.removeTableModelListener(listener);
+		}
+
+		this.model = model;
+		rowWidths = null;
+		widthCounts = null;
+
+		if (model != null) {
+			model.addTableModelListener(listener);
+		}
+
+		reflowData();
 	}
 
 	/**
 	 * Recompute whatever data is displayed by this widget.
 	 * <p>
-	 * Will just update the sizes in this case.
+	 * Will just update the sizes in this case: the width of each value is only
+	 * computed once and then tracked through the model events, so only the
+	 * first call (or the first call after a change of the whole model) looks
+	 * at every row.
 	 */
 	public void reflowData() {
 		if (model != null) {
-			int maxDataSize = 0;
-			for (int i = 0; i < model.getRowCount(); i++) {
-				maxDataSize = Math.max(
-						maxDataSize,
-						getRenderer().getWidthOf(
-								model.getValueAt(i, modelIndex)));
+			if (rowWidths == null || rowCount != model.getRowCount()) {
+				computeWidths();
 			}
 
-			autoWidth = maxDataSize;
+			autoWidth = getMaxWidth();
 			if (!forcedWidth) {
-				setWidth(maxDataSize);
+				width = autoWidth;
 			}
 		} else {
 			autoWidth = 0;
@@ -119,6 +180,143 @@ public class TTableColumn {
 		this.width = width;
 	}
 
+	/**
+	 * Compute the width of the value of every row.
+	 */
+	private void computeWidths() {
+		rowCount = model.getRowCount();
+		rowWidths = new int[Math.max(16, rowCount)];
+		widthCounts = new int[16];
+		for (int i = 0; i < rowCount; i++) {
+			rowWidths[i] = getWidthOf(i);
+			count(rowWidths[i], 1);
+		}
+	}
+
+	/**
+	 * Update the width of the rows changed by a model event.
+	 * 
+	 * @param e
+	 *            the event
+	 */
+	private void updateWidths(TableModelEvent e) {
+		if (rowWidths == null) {
+			// Nothing computed yet, reflowData() will do it
+			return;
+		}
+
+		int first = e.getFirstRow();
+		int last = e.getLastRow();
+		if (first == TableModelEvent.HEADER_ROW || last == Integer.MAX_VALUE) {
+			// The whole table changed
+			rowWidths = null;
+			return;
+		}
+
+		int column = e.getColumn();
+		if (column != TableModelEvent.ALL_COLUMNS && column != modelIndex
+				&& e.getType() == TableModelEvent.UPDATE) {
+			// Not our column
+			return;
+		}
+
+		int n = last - first + 1;
+		if (first < 0 || n <= 0) {
+			rowWidths = null;
+			return;
+		}
+
+		switch (e.getType()) {
+		case TableModelEvent.INSERT:
+			if (first > rowCount) {
+				rowWidths = null;
+				return;
+			}
+			if (rowCount + n > rowWidths.length) {
+				int[] newWidths = new int[Math.max(rowWidths.length * 2,
+						rowCount + n)];
+				System.arraycopy(rowWidths, 0, newWidths, 0, rowCount);
+				rowWidths = newWidths;
+			}
+			System.arraycopy(rowWidths, first, rowWidths, first + n, rowCount
+					- first);
+			rowCount += n;
+			for (int i = first; i <= last; i++) {
+				rowWidths[i] = getWidthOf(i);
+				count(rowWidths[i], 1);
+			}
+			break;
+		case TableModelEvent.DELETE:
+			if (last >= rowCount) {
+				rowWidths = null;
+				return;
+			}
+			for (int i = first; i <= last; i++) {
+				count(rowWidths[i], -1);
+			}
+			System.arraycopy(rowWidths, last + 1, rowWidths, first, rowCount
+					- last - 1);
+			rowCount -= n;
+			break;
+		default:
+			if (last >= rowCount) {
+				rowWidths = null;
+				return;
+			}
+			for (int i = first; i <= last; i++) {
+				count(rowWidths[i], -1);
+				rowWidths[i] = getWidthOf(i);
+				count(rowWidths[i], 1);
+			}
+			break;
+		}
+	}
+
+	/**
+	 * The width of the value of the given row, as rendered by this column.
+	 * 
+	 * @param row
+	 *            the row index
+	 * 
+	 * @return the width
+	 */
+	private int getWidthOf(int row) {
+		return getRenderer().getWidthOf(model.getValueAt(row, modelIndex));
+	}
+
+	/**
+	 * Add or remove rows of the given width.
+	 * 
+	 * @param width
+	 *            the width of the values
+	 * @param delta
+	 *            the number of rows to add (or remove, if negative)
+	 */
+	private void count(int width, int delta) {
+		if (width >= widthCounts.length) {
+			int[] newCounts = new int[Math.max(widthCounts.length * 2,
+					width + 1)];
+			System.arraycopy(widthCounts, 0, newCounts, 0, widthCounts.length);
+			widthCounts = newCounts;
+		}
+		widthCounts[width] += delta;
+	}
+
+	/**
+	 * The width of the largest value.
+	 * 
+	 * @return the width
+	 */
+	private int getMaxWidth() {
+		for (int i = widthCounts.length - 1; i > 0; i--) {
+			if (widthCounts[i] > 0) {
+				return i;
+			}
+		}
+
+		return 0;
+	}
+
 	public Object getHeaderValue() {
 		return headerValue;
 	}
@@ -0,0 +1,874 @@
+/*
+ * Jexer - Java Text User Interface
+ *
+ * The MIT License (MIT)
+ *
+ * Copyright (C) 2019 David "Niki" ROULET
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a
+ * copy of this software and associated documentation files (the "Software"),
+ * to deal in the Software without restriction, including without limitation
+ * the rights to use, copy, modify, merge, publish, distribute, sublicense,
+ * and/or sell copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL
+ * THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ * DEALINGS IN THE SOFTWARE.
+ *
+ * @author David ROULET [niki@nikiroo.be]
+ * @version 1
+ */
+package be.nikiroo.jexer;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import javax.swing.event.TableModelEvent;
+import javax.swing.event.TableModelListener;
+import javax.swing.table.AbstractTableModel;
+import javax.swing.table.TableModel;
+
+import jexer.TApplication;
+
+/**
+ * A sorted and filtered view of another {@link TableModel}, to use as the
+ * model of a {@link TTable}.
+ * <p>
+ * The data is never copied: the view only keeps the indexes of the rows of
+ * the source model it shows, in the order it shows them. Changes to the source
+ * model are applied to the view row by row (so the rows stay sorted and
+ * filtered), and the view sends the matching events to its own listeners.
+ * <p>
+ * The sort is stable and can use any number of columns, each in ascending or
+ * descending order. Sorting a big model can be done in the background with
+ * {@link TTableSortedModel#sort(List, TApplication)}.
+ *
+ * @author niki
+ */
+public class TTableSortedModel extends AbstractTableModel {
+	private static final long serialVersionUID = 1L;
+
+	/**
+	 * Models with at least this many rows are sorted in the background by
+	 * {@link TTableSortedModel#sort(List, TApplication)}.
+	 */
+	static private final int BACKGROUND_SORT_ROWS = 10000;
+
+	/**
+	 * Above this many changed rows, a change of the source model sorts the
+	 * whole view again instead of moving each row.
+	 */
+	static private final int MAX_INCREMENTAL_ROWS = 64;
+
+	/**
+	 * How many times a background sort starts again because rows were
+	 * inserted or deleted while it was running, before the view is sorted on
+	 * the application thread instead.
+	 */
+	static private final int MAX_SORT_RETRIES = 3;
+
+	/**
+	 * Compare {@link Comparable} values of the same class naturally, and the
+	 * others by their text; NULL comes first.
+	 */
+	static private Comparator<Object> defaultComparator = new Comparator<Object>() {
+		@Override
+		@SuppressWarnings("unchecked")
+		public int compare(Object o1, Object o2) {
+			if (o1 == o2) {
+				return 0;
+			}
+			if (o1 == null) {
+				return -1;
+			}
+			if (o2 == null) {
+				return 1;
+			}
+			if (o1 instanceof Comparable && o1.getClass().isInstance(o2)) {
+				return ((Comparable<Object>) o1).compareTo(o2);
+			}
+
+			return o1.toString().compareTo(o2.toString());
+		}
+	};
+
+	/**
+	 * A filter to select which rows of the source model are shown.
+	 *
+	 * @author niki
+	 */
+	public interface Filter {
+		/**
+		 * Check if the given row must be shown.
+		 *
+		 * @param model
+		 *            the source model
+		 * @param row
+		 *            the row index in the source model
+		 *
+		 * @return TRUE to show it
+		 */
+		public boolean accept(TableModel model, int row);
+	}
+
+	/**
+	 * A column to sort on, and in which order.
+	 *
+	 * @author niki
+	 */
+	static public class SortKey {
+		private int column;
+		private boolean ascending;
+
+		/**
+		 * Create a new {@link SortKey}.
+		 *
+		 * @param column
+		 *            the column index in the source model
+		 * @param ascending
+		 *            TRUE for an ascending order, FALSE for a descending one
+		 */
+		public SortKey(int column, boolean ascending) {
+			this.column = column;
+			this.ascending = ascending;
+		}
+
+		/**
+		 * The column index in the source model.
+		 *
+		 * @return the column
+		 */
+		public int getColumn() {
+			return column;
+		}
+
+		/**
+		 * The sort order.
+		 *
+		 * @return TRUE for an ascending order, FALSE for a descending one
+		 */
+		public boolean isAscending() {
+			return ascending;
+		}
+	}
+
+	/**
+	 * The rows to sort and what to sort them on, copied from the source model
+	 * so they can be sorted on another thread.
+	 *
+	 * @author niki
+	 */
+	private class Snapshot {
+		private int[] rows;
+		private SortKey[] keys;
+		private List<Comparator<Object>> comparators;
+		private Object[][] values;
+
+		/**
+		 * Copy the rows accepted by the filter and the values of the sort
+		 * columns.
+		 *
+		 * @param sortKeys
+		 *            the keys to sort on
+		 */
+		@SuppressWarnings("unchecked")
+		public Snapshot(List<SortKey> sortKeys) {
+			int rowCount = model.getRowCount();
+			int count = 0;
+			rows = new int[rowCount];
+			for (int i = 0; i < rowCount; i++) {
+				if (filter == null || filter.accept(model, i)) {
+					rows[count++] = i;
+				}
+			}
+			rows = Arrays.copyOf(rows, count);
+
+			keys = sortKeys.toArray(new SortKey[sortKeys.size()]);
+			comparators = new ArrayList<Comparator<Object>>(keys.length);
+			values = new Object[keys.length][];
+			for (int k = 0; k < keys.length; k++) {
+				comparators.add(getComparator(keys[k].getColumn()));
+				values[k] = new Object[rowCount];
+				for (int i = 0; i < count; i++) {
+					values[k][rows[i]] = model.getValueAt(rows[i],
+							keys[k].getColumn());
+				}
+			}
+		}
+
+		/**
+		 * Sort the rows (this can be done on any thread).
+		 *
+		 * @return the sorted rows
+		 */
+		public int[] sort() {
+			if (keys.length == 0) {
+				return rows;
+			}
+
+			Integer[] boxed = new Integer[rows.length];
+			for (int i = 0; i < rows.length; i++) {
+				boxed[i] = rows[i];
+			}
+			Arrays.sort(boxed, new Comparator<Integer>() {
+				@Override
+				public int compare(Integer o1, Integer o2) {
+					return compareRows(keys, comparators, values, o1, o2);
+				}
+			});
+
+			int[] sorted = new int[boxed.length];
+			for (int i = 0; i < boxed.length; i++) {
+				sorted[i] = boxed[i];
+			}
+			return sorted;
+		}
+	}
+
+	/**
+	 * Sort a {@link Snapshot} in the background, then give the result to the
+	 * view on the application thread.
+	 *
+	 * @author niki
+	 */
+	private class Sorter extends Thread {
+		private TApplication app;
+		private Snapshot snapshot;
+		private List<SortKey> sortKeys;
+		private int generation;
+		private int retries;
+
+		/**
+		 * The source rows updated since the snapshot was taken, to place
+		 * again once the others are sorted.
+		 */
+		private Set<Integer> updated = new HashSet<Integer>();
+
+		/**
+		 * Create a new {@link Sorter}.
+		 *
+		 * @param app
+		 *            the application to give the result back to
+		 * @param sortKeys
+		 *            the keys to sort on
+		 * @param retries
+		 *            how many sorts of these keys were started again before
+		 *            this one
+		 */
+		public Sorter(TApplication app, List<SortKey> sortKeys, int retries) {
+			super("TTableSortedModel sorter");
+			setDaemon(true);
+			this.app = app;
+			this.sortKeys = sortKeys;
+			this.retries = retries;
+			this.generation = TTableSortedModel.this.generation;
+			this.snapshot = new Snapshot(sortKeys);
+		}
+
+		/**
+		 * Note that the values of some source rows changed since the
+		 * snapshot was taken.
+		 *
+		 * @param first
+		 *            the first row index in the source model
+		 * @param last
+		 *            the last row index in the source model
+		 */
+		public void update(int first, int last) {
+			for (int row = first; row <= last; row++) {
+				updated.add(row);
+			}
+			if (updated.size() > MAX_INCREMENTAL_ROWS) {
+				// Cheaper to sort them all again
+				TTableSortedModel.this.generation++;
+			}
+		}
+
+		@Override
+		public void run() {
+			final int[] sorted = snapshot.sort();
+			app.invokeLater(new Runnable() {
+				@Override
+				public void run() {
+					if (sorter != Sorter.this) {
+						// Replaced by another sort
+						return;
+					}
+
+					sorter = null;
+					if (generation != TTableSortedModel.this.generation) {
+						// The rows changed while we were sorting them
+						if (retries < MAX_SORT_RETRIES) {
+							sorter = new Sorter(app, sortKeys, retries + 1);
+							sorter.start();
+						} else {
+							setSortKeys(sortKeys);
+						}
+						return;
+					}
+
+					setView(sortKeys, sorted, updated);
+				}
+			});
+		}
+	}
+
+	private TableModel model;
+	private Filter filter;
+	private List<SortKey> sortKeys = new ArrayList<SortKey>();
+	private Map<Integer, Comparator<Object>> comparators = new HashMap<Integer, Comparator<Object>>();
+
+	/** The source row of each row of the view */
+	private int[] viewToModel = new int[0];
+	/** The number of rows in the view */
+	private int viewCount;
+	/** The view row of each source row (-1 if filtered) */
+	private int[] modelToView = new int[0];
+	/** The number of source rows in modelToView */
+	private int modelCount;
+
+	/** The background sort in progress, if any */
+	private Sorter sorter;
+	/** Changed each time the rows of the source model change */
+	private int generation;
+
+	/**
+	 * Apply the changes of the source model to the view.
+	 */
+	private TableModelListener listener = new TableModelListener() {
+		@Override
+		public void tableChanged(TableModelEvent e) {
+			sourceChanged(e);
+		}
+	};
+
+	/**
+	 * Create a new {@link TTableSortedModel} showing all the rows of the given
+	 * model, in the same order.
+	 *
+	 * @param model
+	 *            the source model
+	 */
+	public TTableSortedModel(TableModel model) {
+		this.model = model;
+		model.addTableModelListener(listener);
+		rebuild();
+	}
+
+	/**
+	 * The source model.
+	 *
+	 * @return the model
+	 */
+	public TableModel getModel() {
+		return model;
+	}
+
+	/**
+	 * Stop listening to the source model (the view will not change anymore).
+	 */
+	public void dispose() {
+		model.removeTableModelListener(listener);
+		sorter = null;
+	}
+
+	/**
+	 * The filter that selects the rows to show.
+	 *
+	 * @return the filter, or NULL to show all the rows
+	 */
+	public Filter getFilter() {
+		return filter;
+	}
+
+	/**
+	 * The filter that selects the rows to show.
+	 *
+	 * @param filter
+	 *            the new filter, or NULL to show all the rows
+	 */
+	public void setFilter(Filter filter) {
+		this.filter = filter;
+		generation++;
+		rebuild();
+		fireTableDataChanged();
+	}
+
+	/**
+	 * The {@link Comparator} used to sort the given column.
+	 *
+	 * @param column
+	 *            the column index in the source model
+	 *
+	 * @return the comparator, or the default one if none is set (never NULL)
+	 */
+	public Comparator<Object> getComparator(int column) {
+		Comparator<Object> comparator = comparators.get(column);
+		return comparator != null ? comparator : defaultComparator;
+	}
+
+	/**
+	 * The {@link Comparator} used to sort the given column.
+	 * <p>
+	 * It can be called on a background thread, see
+	 * {@link TTableSortedModel#sort(List, TApplication)}.
+	 *
+	 * @param column
+	 *            the column index in the source model
+	 * @param comparator
+	 *            the new comparator, or NULL to use the default one (natural
+	 *            order for {@link Comparable} values, text order otherwise)
+	 */
+	public void setComparator(int column, Comparator<Object> comparator) {
+		if (comparator == null) {
+			comparators.remove(column);
+		} else {
+			comparators.put(column, comparator);
+		}
+	}
+
+	/**
+	 * The columns the view is currently sorted on, most significant first.
+	 *
+	 * @return the sort keys (empty for the order of the source model)
+	 */
+	public List<SortKey> getSortKeys() {
+		return new ArrayList<SortKey>(sortKeys);
+	}
+
+	/**
+	 * Sort the view on the given columns, most significant first.
+	 * <p>
+	 * Rows with the same values keep the order of the source model.
+	 *
+	 * @param sortKeys
+	 *            the sort keys (empty for the order of the source model)
+	 */
+	public void setSortKeys(List<SortKey> sortKeys) {
+		sorter = null;
+		List<SortKey> keys = new ArrayList<SortKey>(sortKeys);
+		setView(keys, new Snapshot(keys).sort(), new HashSet<Integer>());
+	}
+
+	/**
+	 * Sort the view on the given columns, most significant first; for big
+	 * models, the sort is done on a background thread and the view keeps its
+	 * current order until it is done (see
+	 * {@link TTableSortedModel#isSorting()}).
+	 * <p>
+	 * This method, and all the other methods of this class, must be called on
+	 * the application thread.
+	 *
+	 * @param sortKeys
+	 *            the sort keys (empty for the order of the source model)
+	 * @param app
+	 *            the application to give the result back to
+	 */
+	public void sort(List<SortKey> sortKeys, TApplication app) {
+		if (model.getRowCount() < BACKGROUND_SORT_ROWS) {
+			setSortKeys(sortKeys);
+			return;
+		}
+
+		sorter = new Sorter(app, new ArrayList<SortKey>(sortKeys), 0);
+		sorter.start();
+	}
+
+	/**
+	 * A background sort is in progress.
+	 *
+	 * @return TRUE if it is
+	 */
+	public boolean isSorting() {
+		return sorter != null;
+	}
+
+	/**
+	 * Convert a row index of the view to the index of the same row in the
+	 * source model.
+	 *
+	 * @param viewRow
+	 *            the row index in the view
+	 *
+	 * @return the row index in the source model
+	 */
+	public int convertRowIndexToModel(int viewRow) {
+		if (viewRow < 0 || viewRow >= viewCount) {
+			throw new IndexOutOfBoundsException("Row " + viewRow + " / "
+					+ viewCount);
+		}
+		return viewToModel[viewRow];
+	}
+
+	/**
+	 * Convert a row index of the source model to the index of the same row in
+	 * the view.
+	 *
+	 * @param modelRow
+	 *            the row index in the source model
+	 *
+	 * @return the row index in the view, or -1 if it is filtered out
+	 */
+	public int convertRowIndexToView(int modelRow) {
+		if (modelRow < 0 || modelRow >= modelCount) {
+			return -1;
+		}
+		return modelToView[modelRow];
+	}
+
+	@Override
+	public int getRowCount() {
+		return viewCount;
+	}
+
+	@Override
+	public int getColumnCount() {
+		return model.getColumnCount();
+	}
+
+	@Override
+	public String getColumnName(int columnIndex) {
+		return model.getColumnName(columnIndex);
+	}
+
+	@Override
+	public Class<?> getColumnClass(int columnIndex) {
+		return model.getColumnClass(columnIndex);
+	}
+
+	@Override
+	public boolean isCellEditable(int rowIndex, int columnIndex) {
+		return model.isCellEditable(convertRowIndexToModel(rowIndex),
+				columnIndex);
+	}
+
+	@Override
+	public Object getValueAt(int rowIndex, int columnIndex) {
+		return model.getValueAt(convertRowIndexToModel(rowIndex), columnIndex);
+	}
+
+	@Override
+	public void setValueAt(Object aValue, int rowIndex, int columnIndex) {
+		model.setValueAt(aValue, convertRowIndexToModel(rowIndex), columnIndex);
+	}
+
+	/**
+	 * Filter and sort all the rows again with the current sort keys.
+	 */
+	private void rebuild() {
+		int[] sorted = new Snapshot(sortKeys).sort();
+		viewToModel = sorted;
+		viewCount = sorted.length;
+		buildModelToView();
+	}
+
+	/**
+	 * Compute the view row of each source row from the source row of each
+	 * row of the view.
+	 */
+	private void buildModelToView() {
+		modelCount = model.getRowCount();
+		modelToView = new int[modelCount];
+		Arrays.fill(modelToView, -1);
+		for (int i = 0; i < viewCount; i++) {
+			modelToView[viewToModel[i]] = i;
+		}
+	}
+
+	/**
+	 * Show the given rows and tell the listeners.
+	 *
+	 * @param sortKeys
+	 *            the keys the rows are sorted on
+	 * @param sorted
+	 *            the rows, as indexes in the source model
+	 * @param updated
+	 *            the source rows whose values changed since they were
+	 *            sorted, to place again
+	 */
+	private void setView(List<SortKey> sortKeys, int[] sorted,
+			Set<Integer> updated) {
+		this.sortKeys = sortKeys;
+		viewToModel = sorted;
+		viewCount = sorted.length;
+		buildModelToView();
+		for (int row : updated) {
+			removeRow(row);
+		}
+		for (int row : updated) {
+			if (filter == null || filter.accept(model, row)) {
+				insertAt(findIndex(row), row);
+			}
+		}
+		fireTableDataChanged();
+	}
+
+	/**
+	 * Apply a change of the source model to the view.
+	 *
+	 * @param e
+	 *            the change
+	 */
+	private void sourceChanged(TableModelEvent e) {
+		int first = e.getFirstRow();
+		int last = e.getLastRow();
+		if (first == TableModelEvent.HEADER_ROW) {
+			generation++;
+			rebuild();
+			fireTableStructureChanged();
+			return;
+		}
+		if (first < 0 || last < first || last == Integer.MAX_VALUE
+				|| last - first >= MAX_INCREMENTAL_ROWS) {
+			generation++;
+			rebuild();
+			fireTableDataChanged();
+			return;
+		}
+
+		if (e.getType() != TableModelEvent.UPDATE) {
+			// The source rows move, a background sort cannot follow them
+			generation++;
+		} else if (sorter != null) {
+			sorter.update(first, last);
+		}
+
+		int n = last - first + 1;
+		switch (e.getType()) {
+		case TableModelEvent.INSERT:
+			shiftRows(first, n);
+			for (int row = first; row <= last; row++) {
+				if (filter == null || filter.accept(model, row)) {
+					int index = findIndex(row);
+					insertAt(index, row);
+					fireTableRowsInserted(index, index);
+				}
+			}
+			break;
+		case TableModelEvent.DELETE:
+			for (int row = last; row >= first; row--) {
+				int index = removeRow(row);
+				shiftRows(row + 1, -1);
+				if (index >= 0) {
+					fireTableRowsDeleted(index, index);
+				}
+			}
+			break;
+		default:
+			for (int row = first; row <= last; row++) {
+				updateRow(row, e.getColumn());
+			}
+			break;
+		}
+	}
+
+	/**
+	 * Apply the update of a source row to the view: it may need to move, or to
+	 * appear or disappear if the filter changed its mind.
+	 *
+	 * @param row
+	 *            the row index in the source model
+	 * @param column
+	 *            the column that changed, or
+	 *            {@link TableModelEvent#ALL_COLUMNS}
+	 */
+	private void updateRow(int row, int column) {
+		boolean canMove = filter != null
+				|| column == TableModelEvent.ALL_COLUMNS;
+		for (SortKey key : sortKeys) {
+			canMove = canMove || key.getColumn() == column;
+		}
+
+		if (!canMove) {
+			int index = convertRowIndexToView(row);
+			if (index >= 0) {
+				fireTableChanged(new TableModelEvent(this, index, index,
+						column));
+			}
+			return;
+		}
+
+		int oldIndex = removeRow(row);
+		if (filter != null && !filter.accept(model, row)) {
+			if (oldIndex >= 0) {
+				fireTableRowsDeleted(oldIndex, oldIndex);
+			}
+			return;
+		}
+
+		int newIndex = findIndex(row);
+		if (newIndex == oldIndex) {
+			// It did not move, only its values changed
+			insertAt(newIndex, row);
+			fireTableChanged(new TableModelEvent(this, newIndex, newIndex,
+					column));
+			return;
+		}
+
+		if (oldIndex >= 0) {
+			fireTableRowsDeleted(oldIndex, oldIndex);
+		}
+		insertAt(newIndex, row);
+		fireTableRowsInserted(newIndex, newIndex);
+	}
+
+	/**
+	 * Find where the given source row belongs in the view, in the current
+	 * sort order (the row must not be in the view).
+	 *
+	 * @param row
+	 *            the row index in the source model
+	 *
+	 * @return the row index in the view
+	 */
+	private int findIndex(int row) {
+		SortKey[] keys = sortKeys.toArray(new SortKey[sortKeys.size()]);
+		List<Comparator<Object>> comps = new ArrayList<Comparator<Object>>(
+				keys.length);
+		for (int k = 0; k < keys.length; k++) {
+			comps.add(getComparator(keys[k].getColumn()));
+		}
+
+		// Binary search for the first row that comes after this one
+		int low = 0;
+		int high = viewCount;
+		while (low < high) {
+			int mid = (low + high) >>> 1;
+			if (compareRows(keys, comps, null, row, viewToModel[mid]) < 0) {
+				high = mid;
+			} else {
+				low = mid + 1;
+			}
+		}
+
+		return low;
+	}
+
+	/**
+	 * Insert a source row into the view at the given index.
+	 *
+	 * @param index
+	 *            the row index in the view
+	 * @param row
+	 *            the row index in the source model
+	 */
+	private void insertAt(int index, int row) {
+		if (viewCount == viewToModel.length) {
+			viewToModel = Arrays.copyOf(viewToModel,
+					Math.max(16, viewToModel.length * 2));
+		}
+		System.arraycopy(viewToModel, index, viewToModel, index + 1,
+				viewCount - index);
+		viewToModel[index] = row;
+		viewCount++;
+		for (int i = index; i < viewCount; i++) {
+			modelToView[viewToModel[i]] = i;
+		}
+	}
+
+	/**
+	 * Remove a source row from the view.
+	 *
+	 * @param row
+	 *            the row index in the source model
+	 *
+	 * @return the row index it had in the view, or -1 if it was not there
+	 */
+	private int removeRow(int row) {
+		int index = modelToView[row];
+		if (index < 0) {
+			return -1;
+		}
+
+		System.arraycopy(viewToModel, index + 1, viewToModel, index,
+				viewCount - index - 1);
+		viewCount--;
+		modelToView[row] = -1;
+		for (int i = index; i < viewCount; i++) {
+			modelToView[viewToModel[i]] = i;
+		}
+		return index;
+	}
+
+	/**
+	 * Move the source row indexes from the given one on.
+	 *
+	 * @param from
+	 *            the first source row index to move
+	 * @param delta
+	 *            how much to move them
+	 */
+	private void shiftRows(int from, int delta) {
+		for (int row = from; row < modelCount; row++) {
+			int index = modelToView[row];
+			if (index >= 0) {
+				viewToModel[index] += delta;
+			}
+		}
+
+		if (modelCount + delta > modelToView.length) {
+			modelToView = Arrays.copyOf(modelToView,
+					Math.max(modelCount + delta, modelToView.length * 2));
+		}
+		System.arraycopy(modelToView, from, modelToView, from + delta,
+				modelCount - from);
+		if (delta > 0) {
+			Arrays.fill(modelToView, from, from + delta, -1);
+		}
+		modelCount += delta;
+	}
+
+	/**
+	 * Compare two source rows on the given keys; rows with the same values
+	 * keep the order of the source model.
+	 *
+	 * @param keys
+	 *            the keys to sort on
+	 * @param comps
+	 *            the comparator of each key
+	 * @param values
+	 *            the values of each key, indexed by source row, or NULL to
+	 *            ask the source model
+	 * @param row1
+	 *            the first row index in the source model
+	 * @param row2
+	 *            the second row index in the source model
+	 *
+	 * @return the comparison, as with {@link Comparator#compare(Object, Object)}
+	 */
+	private int compareRows(SortKey[] keys, List<Comparator<Object>> comps,
+			Object[][] values, int row1, int row2) {
+		for (int k = 0; k < keys.length; k++) {
+			Object value1;
+			Object value2;
+			if (values != null) {
+				value1 = values[k][row1];
+				value2 = values[k][row2];
+			} else {
+				value1 = model.getValueAt(row1, keys[k].getColumn());
+				value2 = model.getValueAt(row2, keys[k].getColumn());
+			}
+
+			int result = comps.get(k).compare(value1, value2);
+			if (result != 0) {
+				return keys[k].isAscending() ? result : -result;
+			}
+		}
+
+		return row1 < row2 ? -1 : (row1 == row2 ? 0 : 1);
+	}
+}
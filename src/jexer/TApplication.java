@@ -50,6 +50,7 @@ import jexer.bits.Cell;
 import jexer.bits.CellAttributes;
 import jexer.bits.Clipboard;
 import jexer.bits.ColorTheme;
+import jexer.bits.DirectoryCache;
 import jexer.bits.StringUtils;
 import jexer.event.TCommandEvent;
 import jexer.event.TInputEvent;
@@ -157,6 +158,11 @@ public class TApplication implements Runnable {
      */
     private Clipboard clipboard = new Clipboard();
 
+    /**
+     * The directories already read by the file widgets.
+     */
+    private DirectoryCache directoryCache = new DirectoryCache();
+
     /**
      * Actual mouse coordinate X.
      */
@@ -1794,6 +1800,15 @@ public class TApplication implements Runnable {
         return clipboard;
     }
 
+    /**
+     * Get the cache of directory listings shared by the file widgets.
+     *
+     * @return the directory cache
+     */
+    public final DirectoryCache getDirectoryCache() {
+        return directoryCache;
+    }
+
     /**
      * Repaint the screen on the next update.
      */
@@ -3437,6 +3452,10 @@ public class TApplication implements Runnable {
         editMenu.addDefaultItem(TMenu.MID_COPY, false);
         editMenu.addDefaultItem(TMenu.MID_PASTE, false);
         editMenu.addDefaultItem(TMenu.MID_CLEAR, false);
+        editMenu.addSeparator();
+        editMenu.addDefaultItem(TMenu.MID_FIND, false);
+        editMenu.addDefaultItem(TMenu.MID_REPLACE, false);
+        editMenu.addDefaultItem(TMenu.MID_SEARCH_AGAIN, false);
         TStatusBar statusBar = editMenu.newStatusBar(i18n.
             getString("editMenuStatus"));
         statusBar.addShortcutKeypress(kbF1, cmHelp, i18n.getString("Help"));
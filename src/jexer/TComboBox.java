@@ -41,7 +41,8 @@ import static jexer.TKeypress.*;
 
 /**
  * TComboBox implements a combobox containing a drop-down list and edit
- * field.  Alt-Down can be used to show the drop-down.
+ * field.  Alt-Down can be used to show the drop-down; typing the start of a
+ * value shows the drop-down with that value selected.
  */
 public class TComboBox extends TWidget {
 
@@ -196,6 +197,19 @@ public class TComboBox extends TWidget {
             return;
         }
 
+        if ((list == null)
+            && limitToListValue
+            && !keypress.getKey().isFnKey()
+            && !keypress.getKey().isAlt()
+            && !keypress.getKey().isCtrl()
+            && !Character.isISOControl(keypress.getKey().getChar())
+        ) {
+            // Type-ahead: show the list and let it find the value.
+            displayDropdown();
+            list.onKeypress(keypress);
+            return;
+        }
+
         if (keypress.equals(kbTab)
             || (keypress.equals(kbShiftTab))
             || (keypress.equals(kbBackTab))
@@ -342,7 +356,7 @@ public class TComboBox extends TWidget {
      * @return the list of strings
      */
     public final List<String> getList() {
-        return list.getList();
+        return new ArrayList<String>(values);
     }
 
     /**
@@ -351,9 +365,12 @@ public class TComboBox extends TWidget {
      * @param list new list of strings
      */
     public final void setList(final List<String> list) {
-        this.list.setList(list);
-        this.list.setHeight(Math.max(3, Math.min(list.size() + 1,
-                    maxValuesHeight)));
+        values = new ArrayList<String>(list);
+        if (this.list != null) {
+            this.list.setList(list);
+            this.list.setHeight(Math.max(3, Math.min(list.size() + 1,
+                        maxValuesHeight)));
+        }
         field.setText("");
     }
     
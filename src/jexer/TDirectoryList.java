@@ -29,11 +29,16 @@
 package jexer;
 
 import java.io.File;
+import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
 
+import jexer.bits.DirectoryCache;
 import jexer.bits.StringUtils;
 
 /**
@@ -41,6 +46,15 @@ import jexer.bits.StringUtils;
  */
 public class TDirectoryList extends TList {
 
+    // ------------------------------------------------------------------------
+    // Constants --------------------------------------------------------------
+    // ------------------------------------------------------------------------
+
+    /**
+     * How many files a scan collects before handing them to the list.
+     */
+    private static final int SCAN_BATCH_SIZE = 256;
+
     // ------------------------------------------------------------------------
     // Variables --------------------------------------------------------------
     // ------------------------------------------------------------------------
@@ -56,9 +70,175 @@ public class TDirectoryList extends TList {
     private File path;
 
     /**
-     * The list of filters that a file must match in order to be displayed.
+     * The list of filters that a file must match in order to be displayed,
+     * compiled once.
+     */
+    private List<Pattern> patterns;
+
+    /**
+     * The scan filling the list, or null if the list is complete.
      */
-    private List<String> filters;
+    private Scanner scanner = null;
+
+    /**
+     * Scanner reads a directory on its own thread and passes the files to
+     * the list in batches.
+     */
+    private class Scanner extends Thread {
+
+        /**
+         * The directory to read.
+         */
+        private File directory;
+
+        /**
+         * One matcher per filter, reused for every file.
+         */
+        private List<Matcher> matchers;
+
+        /**
+         * If true, stop reading.
+         */
+        private volatile boolean cancelled = false;
+
+        /**
+         * Prepare to read a directory.
+         *
+         * @param directory the directory to read
+         */
+        public Scanner(final File directory) {
+            super("TDirectoryList scanner " + directory.getName());
+            setDaemon(true);
+            this.directory = directory;
+            if (patterns != null) {
+                matchers = new ArrayList<Matcher>(patterns.size());
+                for (Pattern pattern: patterns) {
+                    matchers.add(pattern.matcher(""));
+                }
+            }
+        }
+
+        /**
+         * See if a file name passes the filters.
+         *
+         * @param name the name of the file
+         * @return true if the file should be displayed, unless it is a
+         * directory
+         */
+        private boolean accept(final String name) {
+            if (matchers == null) {
+                return true;
+            }
+            for (Matcher matcher: matchers) {
+                if (matcher.reset(name).matches()) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        /**
+         * Read the directory, or take it from the application's directory
+         * cache if it has not changed since it was last read.  When reading,
+         * only the names that pass the filters are stat-ed, so a filtered
+         * listing is not complete enough to be cached.
+         */
+        @Override
+        public void run() {
+            DirectoryCache cache = getApplication().getDirectoryCache();
+            List<DirectoryCache.Entry> entries = cache.get(directory);
+            if (entries != null) {
+                List<String> keys = new ArrayList<String>();
+                List<File> batch = new ArrayList<File>();
+                for (DirectoryCache.Entry entry: entries) {
+                    if (cancelled) {
+                        return;
+                    }
+                    if (!entry.isDirectory() && accept(entry.getName())) {
+                        keys.add(renderFile(entry));
+                        batch.add(entry.getFile());
+                    }
+                }
+                deliver(keys, batch, true);
+                return;
+            }
+
+            long lastModified = directory.lastModified();
+            String [] names = directory.list();
+            if (names == null) {
+                names = new String[0];
+            }
+            Arrays.sort(names);
+
+            entries = new ArrayList<DirectoryCache.Entry>(names.length);
+            List<String> keys = new ArrayList<String>(SCAN_BATCH_SIZE);
+            List<File> batch = new ArrayList<File>(SCAN_BATCH_SIZE);
+            for (int i = 0; i < names.length; i++) {
+                if (cancelled) {
+                    return;
+                }
+                if (names[i].startsWith(".") || !accept(names[i])) {
+                    continue;
+                }
+                DirectoryCache.Entry entry = null;
+                try {
+                    entry = new DirectoryCache.Entry(directory, names[i]);
+                } catch (IOException e) {
+                    continue;
+                }
+                entries.add(entry);
+                if (entry.isDirectory()) {
+                    continue;
+                }
+                keys.add(renderFile(entry));
+                batch.add(entry.getFile());
+                if (batch.size() == SCAN_BATCH_SIZE) {
+                    deliver(keys, batch, false);
+                    keys = new ArrayList<String>(SCAN_BATCH_SIZE);
+                    batch = new ArrayList<File>(SCAN_BATCH_SIZE);
+                }
+            }
+            if (matchers == null) {
+                cache.put(directory, lastModified, entries);
+            }
+            deliver(keys, batch, true);
+        }
+
+        /**
+         * Add a batch of files to the list on the application thread.
+         *
+         * @param keys the rendered lines
+         * @param batch the files for each line
+         * @param done if true, this is the last batch
+         */
+        private void deliver(final List<String> keys, final List<File> batch,
+            final boolean done) {
+
+            getApplication().invokeLater(new Runnable() {
+                public void run() {
+                    if (scanner != Scanner.this) {
+                        // Cancelled or replaced by another scan.
+                        return;
+                    }
+                    if (done) {
+                        scanner = null;
+                    }
+                    for (int i = 0; i < keys.size(); i++) {
+                        files.put(keys.get(i), batch.get(i));
+                    }
+                    addListItems(keys);
+
+                    // Select the first entry
+                    if ((getSelectedIndex() < 0)
+                        && (getMaxSelectedIndex() >= 0)
+                    ) {
+                        setSelectedIndex(0);
+                    }
+                }
+            });
+        }
+
+    }
 
     // ------------------------------------------------------------------------
     // Constructors -----------------------------------------------------------
@@ -141,7 +321,12 @@ public class TDirectoryList extends TList {
 
         super(parent, null, x, y, width, height, action);
         files = new HashMap<String, File>();
-        this.filters = filters;
+        if (filters != null) {
+            patterns = new ArrayList<Pattern>(filters.size());
+            for (String pattern: filters) {
+                patterns.add(Pattern.compile(pattern));
+            }
+        }
         this.singleClickAction = singleClickAction;
 
         setPath(path);
@@ -156,57 +341,42 @@ public class TDirectoryList extends TList {
     // ------------------------------------------------------------------------
 
     /**
-     * Set the new path to display.
+     * Set the new path to display.  The files are read on another thread
+     * and appear in the list as they are found; any scan still running for
+     * the previous path is cancelled.
      *
      * @param path new path to list files for
      */
     public void setPath(final String path) {
+        cancelScan();
         this.path = new File(path);
 
-        List<String> newStrings = new ArrayList<String>();
         files.clear();
+        setList(new ArrayList<String>());
 
-        // Build a list of files in this directory
-        File [] newFiles = this.path.listFiles();
-        if (newFiles != null) {
-            for (int i = 0; i < newFiles.length; i++) {
-                if (newFiles[i].getName().startsWith(".")) {
-                    continue;
-                }
-                if (newFiles[i].isDirectory()) {
-                    continue;
-                }
-                if (filters != null) {
-                    for (String pattern: filters) {
-
-                        /*
-                        System.err.println("newFiles[i] " +
-                            newFiles[i].getName() + " " + pattern +
-                            " " + newFiles[i].getName().matches(pattern));
-                        */
-
-                        if (newFiles[i].getName().matches(pattern)) {
-                            String key = renderFile(newFiles[i]);
-                            files.put(key, newFiles[i]);
-                            newStrings.add(key);
-                            break;
-                        }
-                    }
-                } else {
-                    String key = renderFile(newFiles[i]);
-                    files.put(key, newFiles[i]);
-                    newStrings.add(key);
-                }
-            }
-        }
-        setList(newStrings);
+        scanner = new Scanner(this.path);
+        scanner.start();
+    }
 
-        // Select the first entry
-        if (getMaxSelectedIndex() >= 0) {
-            setSelectedIndex(0);
+    /**
+     * Stop reading the current directory.  The files already listed stay.
+     */
+    public void cancelScan() {
+        if (scanner != null) {
+            scanner.cancelled = true;
+            scanner = null;
         }
     }
 
+    /**
+     * See if the directory is still being read.
+     *
+     * @return true if more files may still be added to the list
+     */
+    public boolean isScanning() {
+        return (scanner != null);
+    }
+
     /**
      * Get the path that is being displayed.
      *
@@ -220,15 +390,15 @@ public class TDirectoryList extends TList {
     /**
      * Format one of the entries for drawing on the screen.
      *
-     * @param file the File
+     * @param entry the directory entry
      * @return the line to draw
      */
-    private String renderFile(final File file) {
-        String name = file.getName();
+    private String renderFile(final DirectoryCache.Entry entry) {
+        String name = entry.getName();
         if (StringUtils.width(name) > 20) {
             name = name.substring(0, 17) + "...";
         }
-        return String.format("%-20s %5dk", name, (file.length() / 1024));
+        return String.format("%-20s %5dk", name, (entry.length() / 1024));
     }
 
 }
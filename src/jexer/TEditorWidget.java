@@ -31,6 +31,9 @@ package jexer;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
 
 import jexer.bits.CellAttributes;
 import jexer.bits.StringUtils;
@@ -40,6 +43,7 @@ import jexer.event.TMouseEvent;
 import jexer.event.TResizeEvent;
 import jexer.teditor.Document;
 import jexer.teditor.Line;
+import jexer.teditor.LineTable;
 import jexer.teditor.Word;
 import static jexer.TCommand.*;
 import static jexer.TKeypress.*;
@@ -59,6 +63,24 @@ public class TEditorWidget extends TWidget implements EditMenuUser {
      */
     private static final int wheelScrollSize = 3;
 
+    /**
+     * The number of matches the search thread collects before handing them
+     * to the editor.
+     */
+    private static final int SEARCH_BATCH_SIZE = 1024;
+
+    /**
+     * The longest time in millis the search thread holds on to matches
+     * before handing them to the editor.
+     */
+    private static final long SEARCH_POST_INTERVAL = 50;
+
+    /**
+     * How long in millis the document must stay unchanged before a search
+     * that an edit made out of date starts over.
+     */
+    private static final long SEARCH_RESTART_DELAY = 250;
+
     // ------------------------------------------------------------------------
     // Variables --------------------------------------------------------------
     // ------------------------------------------------------------------------
@@ -109,38 +131,256 @@ public class TEditorWidget extends TWidget implements EditMenuUser {
     private int selectionLine1;
 
     /**
-     * The list of undo/redo states.
+     * The maximum size of the undo list.
      */
-    private List<SavedState> undoList = new ArrayList<SavedState>();
+    private int undoLevel = 50;
 
     /**
-     * The position in undoList for undo/redo.
+     * The search in progress or finished, or null.
      */
-    private int undoListI = 0;
+    private Searcher searcher = null;
 
     /**
-     * The maximum size of the undo list.
+     * The line numbers of the matches found by the search, sorted.
      */
-    private int undoLevel = 50;
+    private int [] matchLines = new int[16];
+
+    /**
+     * The index in the raw string of the line where each match starts.
+     */
+    private int [] matchStarts = new int[16];
+
+    /**
+     * The index in the raw string of the line where each match ends.
+     */
+    private int [] matchEnds = new int[16];
+
+    /**
+     * The number of matches found by the search so far.
+     */
+    private int matchCount = 0;
+
+    /**
+     * If true, move the cursor to the first match at or after it as soon
+     * as the search finds one.
+     */
+    private boolean findPending = false;
+
+    /**
+     * The timer that starts an out of date search over, or null.
+     */
+    private TTimer searchTimer = null;
 
     /**
-     * The saved state for an undo/redo operation.
+     * The time in millis of the last edit that found the search out of
+     * date.
      */
-    private class SavedState {
+    private long searchEditTime = 0;
+
+    /**
+     * Searcher looks for a pattern in a snapshot of the document on its own
+     * thread, so that a large document can be searched without stopping
+     * the user interface.  Matches are handed to the editor in batches with
+     * invokeLater(), and are shown as soon as they arrive.  A searcher that
+     * is not the editor's current one any more is cancelled, and whatever
+     * it still hands over is dropped.
+     */
+    private class Searcher extends Thread {
+
+        /**
+         * The document that was searched.
+         */
+        private final Document source;
+
+        /**
+         * The document's change count when the snapshot was taken.
+         */
+        private final int changeCount;
+
+        /**
+         * The copy of the document's lines being searched.
+         */
+        private final LineTable.Snapshot lines;
+
+        /**
+         * The pattern to look for.
+         */
+        private final Pattern pattern;
+
+        /**
+         * The replacement string as used by Matcher.replaceAll(), or null
+         * if this search does not replace.
+         */
+        private final String replacement;
+
+        /**
+         * The line numbers to replace, when replacing.
+         */
+        private List<Integer> replaceLines = new ArrayList<Integer>();
+
         /**
-         * The Document state.
+         * The new raw strings of the lines to replace, when replacing.
          */
-        public Document document;
+        private List<String> replaceTexts = new ArrayList<String>();
 
         /**
-         * The topmost line number in the visible area.  0-based.
+         * If true, stop searching.
          */
-        public int topLine = 0;
+        private volatile boolean cancelled = false;
 
         /**
-         * The leftmost column number in the visible area.  0-based.
+         * If true, all of the matches were handed to the editor.  Only
+         * used on the application thread.
          */
-        public int leftColumn = 0;
+        private boolean done = false;
+
+        /**
+         * Prepare to search the editor's document as it is now.
+         *
+         * @param pattern the pattern to look for
+         * @param replacement the replacement string as used by
+         * Matcher.replaceAll(), or null to only find the matches
+         */
+        public Searcher(final Pattern pattern, final String replacement) {
+            super("TEditorWidget search " + pattern.pattern());
+            setDaemon(true);
+            this.pattern = pattern;
+            this.replacement = replacement;
+            source = document;
+            changeCount = document.getChangeCount();
+            lines = document.getSnapshot();
+        }
+
+        /**
+         * Search the snapshot, passing the matches to the editor.
+         */
+        @Override
+        public void run() {
+            int [] batch = new int[SEARCH_BATCH_SIZE * 3];
+            int n = 0;
+            long posted = System.currentTimeMillis();
+            try {
+                int size = lines.size();
+                for (int i = 0; (i < size) && !cancelled; i++) {
+                    String raw = lines.getRawString(i);
+                    Matcher matcher = pattern.matcher(raw);
+                    boolean found = false;
+                    while (matcher.find()) {
+                        found = true;
+                        if (matcher.end() == matcher.start()) {
+                            // Nothing to show for an empty match.
+                            continue;
+                        }
+                        if (n == batch.length) {
+                            post(batch, n, false);
+                            batch = new int[batch.length];
+                            n = 0;
+                            posted = System.currentTimeMillis();
+                        }
+                        batch[n++] = i;
+                        batch[n++] = matcher.start();
+                        batch[n++] = matcher.end();
+                    }
+                    if (found && (replacement != null)) {
+                        String text = matcher.replaceAll(replacement);
+                        if (!text.equals(raw)) {
+                            replaceLines.add(i);
+                            replaceTexts.add(text);
+                        }
+                    }
+                    if ((n > 0) && (System.currentTimeMillis() - posted
+                            >= SEARCH_POST_INTERVAL)
+                    ) {
+                        post(batch, n, false);
+                        batch = new int[batch.length];
+                        n = 0;
+                        posted = System.currentTimeMillis();
+                    }
+                }
+            } catch (IllegalArgumentException e) {
+                // The replacement refers to a group that the pattern does
+                // not have, and checkReplacement() could not tell: replace
+                // nothing.
+                replaceLines.clear();
+                replaceTexts.clear();
+            } catch (IndexOutOfBoundsException e) {
+                // Same as above, for a group number.
+                replaceLines.clear();
+                replaceTexts.clear();
+            }
+            if (!cancelled) {
+                post(batch, n, true);
+            }
+        }
+
+        /**
+         * Hand a batch of matches to the editor.
+         *
+         * @param batch the line number, start, and end of each match
+         * @param n the number of ints used in batch
+         * @param last if true, this is the last batch
+         */
+        private void post(final int [] batch, final int n,
+            final boolean last) {
+
+            getApplication().invokeLater(new Runnable() {
+                public void run() {
+                    if ((searcher != Searcher.this) || !isCurrent()) {
+                        return;
+                    }
+                    addMatches(batch, n);
+                    if (last) {
+                        done = true;
+                        if (replacement != null) {
+                            replaceMatches();
+                        } else if (findPending) {
+                            // Nothing after the cursor, start over from
+                            // the top.
+                            findPending = false;
+                            if (matchCount > 0) {
+                                moveToMatch(0);
+                            }
+                        }
+                    }
+                }
+            });
+        }
+
+        /**
+         * Check that the document was not changed since the snapshot.
+         * This must be called on the application thread.
+         *
+         * @return true if the matches found are still in the same places
+         */
+        public boolean isCurrent() {
+            return ((source == document)
+                && (changeCount == document.getChangeCount()));
+        }
+
+        /**
+         * Stop searching.
+         */
+        public void cancel() {
+            cancelled = true;
+        }
+
+        /**
+         * Make the replacements in the document as one edit that undo can
+         * take back.  This must be called on the application thread.
+         */
+        private void replaceMatches() {
+            int [] lineNumbers = new int[replaceLines.size()];
+            for (int i = 0; i < lineNumbers.length; i++) {
+                lineNumbers[i] = replaceLines.get(i);
+            }
+            document.replaceLines(lineNumbers,
+                replaceTexts.toArray(new String[replaceTexts.size()]));
+            searcher = null;
+            matchCount = 0;
+            inSelection = false;
+            setCursorY(document.getLineNumber() - topLine);
+            alignCursor();
+        }
 
     }
 
@@ -168,6 +408,7 @@ public class TEditorWidget extends TWidget implements EditMenuUser {
 
         defaultColor = getTheme().getColor("teditor");
         document = new Document(text, defaultColor);
+        document.setUndoLevel(undoLevel);
     }
 
     // ------------------------------------------------------------------------
@@ -450,7 +691,6 @@ public class TEditorWidget extends TWidget implements EditMenuUser {
                 deleteSelection();
                 alignCursor();
             } else {
-                saveUndo();
                 document.del();
                 alignCursor();
             }
@@ -461,23 +701,19 @@ public class TEditorWidget extends TWidget implements EditMenuUser {
                 deleteSelection();
                 alignTopLine(false);
             } else {
-                saveUndo();
                 document.backspace();
                 alignTopLine(false);
             }
         } else if (keypress.equals(kbTab)) {
             deleteSelection();
-            saveUndo();
             document.tab();
             alignCursor();
         } else if (keypress.equals(kbShiftTab)) {
             deleteSelection();
-            saveUndo();
             document.backTab();
             alignCursor();
         } else if (keypress.equals(kbEnter)) {
             deleteSelection();
-            saveUndo();
             document.enter();
             alignTopLine(true);
         } else if (!keypress.getKey().isFnKey()
@@ -486,7 +722,6 @@ public class TEditorWidget extends TWidget implements EditMenuUser {
         ) {
             // Plain old keystroke, process it
             deleteSelection();
-            saveUndo();
             document.addChar(keypress.getKey().getChar());
             alignCursor();
         } else {
@@ -498,6 +733,7 @@ public class TEditorWidget extends TWidget implements EditMenuUser {
             selectionColumn1 = document.getCursor();
             selectionLine1 = document.getLineNumber();
         }
+        searchEdited();
     }
 
     /**
@@ -539,6 +775,7 @@ public class TEditorWidget extends TWidget implements EditMenuUser {
             // Copy text to clipboard, and then remove it.
             copySelection();
             deleteSelection();
+            searchEdited();
             return;
         }
 
@@ -554,6 +791,7 @@ public class TEditorWidget extends TWidget implements EditMenuUser {
 
             String text = getClipboard().pasteText();
             if (text != null) {
+                document.beginUndoGroup();
                 for (int i = 0; i < text.length(); ) {
                     int ch = text.codePointAt(i);
                     switch (ch) {
@@ -573,6 +811,7 @@ public class TEditorWidget extends TWidget implements EditMenuUser {
 
                     i += Character.charCount(ch);
                 }
+                document.endUndoGroup();
             }
             return;
         }
@@ -580,6 +819,7 @@ public class TEditorWidget extends TWidget implements EditMenuUser {
         if (command.equals(cmClear)) {
             // Remove text.
             deleteSelection();
+            searchEdited();
             return;
         }
 
@@ -595,6 +835,7 @@ public class TEditorWidget extends TWidget implements EditMenuUser {
     @Override
     public void draw() {
         CellAttributes selectedColor = getTheme().getColor("teditor.selected");
+        CellAttributes matchColor = getTheme().getColor("teditor.match");
 
         boolean drawSelection = true;
 
@@ -624,7 +865,7 @@ public class TEditorWidget extends TWidget implements EditMenuUser {
 
             // Now draw document's line
             if (topLine + i < document.getLineCount()) {
-                Line line = document.getLine(topLine + i);
+                Line line = document.getHighlightedLine(topLine + i);
                 int x = 0;
                 for (Word word: line.getWords()) {
                     // For now, we are cheating: draw outside the left region
@@ -637,6 +878,24 @@ public class TEditorWidget extends TWidget implements EditMenuUser {
                     }
                 }
 
+                // Highlight search matches
+                int match = findMatch(topLine + i);
+                if ((match < matchCount) && (matchLines[match] == topLine + i)) {
+                    String raw = line.getRawString();
+                    for (; (match < matchCount)
+                             && (matchLines[match] == topLine + i); match++) {
+
+                        int start = StringUtils.width(raw, 0,
+                            matchStarts[match]);
+                        int end = start + StringUtils.width(raw,
+                            matchStarts[match], matchEnds[match]);
+                        for (x = Math.max(start, leftColumn);
+                             (x < end) && (x - leftColumn < getWidth()); x++) {
+                            putAttrXY(x - leftColumn, i, matchColor);
+                        }
+                    }
+                }
+
                 // Highlight selected region
                 if (inSelection && drawSelection) {
                     if (startRow == endRow) {
@@ -679,6 +938,7 @@ public class TEditorWidget extends TWidget implements EditMenuUser {
      */
     public void setUndoLevel(final int undoLevel) {
         this.undoLevel = undoLevel;
+        document.setUndoLevel(undoLevel);
     }
 
     /**
@@ -942,8 +1202,6 @@ public class TEditorWidget extends TWidget implements EditMenuUser {
             return;
         }
 
-        saveUndo();
-
         inSelection = false;
 
         int startCol = selectionColumn0;
@@ -1002,7 +1260,9 @@ public class TEditorWidget extends TWidget implements EditMenuUser {
         }
 
         // Place the cursor on the selection end, and "press backspace" until
-        // the cursor matches the selection start.
+        // the cursor matches the selection start.  All of it is one undo
+        // step.
+        document.beginUndoGroup();
         /*
         System.err.println("BEFORE: " + startRow + " " + startCol + " " +
             endRow + " " + endCol + " " +
@@ -1021,6 +1281,7 @@ public class TEditorWidget extends TWidget implements EditMenuUser {
 
             document.backspace();
         }
+        document.endUndoGroup();
         alignTopLine(true);
     }
 
@@ -1278,6 +1539,7 @@ public class TEditorWidget extends TWidget implements EditMenuUser {
         }
 
         // Delete selected text, then paste text from clipboard.
+        document.beginUndoGroup();
         deleteSelection();
 
         for (int i = 0; i < text.length(); ) {
@@ -1298,6 +1560,8 @@ public class TEditorWidget extends TWidget implements EditMenuUser {
             }
             i += Character.charCount(ch);
         }
+        document.endUndoGroup();
+        searchEdited();
     }
 
     /**
@@ -1318,6 +1582,18 @@ public class TEditorWidget extends TWidget implements EditMenuUser {
         return document.getText();
     }
 
+    /**
+     * Add text at the end of the editor, for example the next block of a
+     * file that is still being loaded.  This does not make the editor
+     * dirty and cannot be undone.
+     *
+     * @param text the text to add.  It should end at a line boundary.
+     */
+    public void appendText(final String text) {
+        document.appendText(text);
+        searchEdited();
+    }
+
     /**
      * Set the entire contents of the editor from one string.
      *
@@ -1325,9 +1601,323 @@ public class TEditorWidget extends TWidget implements EditMenuUser {
      */
     public void setText(final String text) {
         document = new Document(text, defaultColor);
+        document.setUndoLevel(undoLevel);
         unsetSelection();
         topLine = 0;
         leftColumn = 0;
+        searchEdited();
+    }
+
+    /**
+     * Start looking for text in the document.  The search runs in the
+     * background: matches are highlighted as they are found, and the
+     * cursor moves to the first one at or after it.  Any search already
+     * running is cancelled.  If the document is edited, the search starts
+     * over.
+     *
+     * @param text the text to find
+     * @param regex if true, text is a java.util.regex pattern
+     * @param ignoreCase if true, ignore upper/lower case differences
+     * @throws java.util.regex.PatternSyntaxException if text is not a
+     * valid pattern
+     */
+    public void find(final String text, final boolean regex,
+        final boolean ignoreCase) {
+
+        startSearch(compilePattern(text, regex, ignoreCase), null);
+        findPending = true;
+    }
+
+    /**
+     * Move the cursor to the next match of the search started by find().
+     * After the last match, go back to the first one.  If the search is
+     * still running and found nothing after the cursor yet, the cursor
+     * moves when it does.
+     *
+     * @return true if the cursor moved
+     */
+    public boolean findNext() {
+        checkSearch();
+        if (searcher == null) {
+            return false;
+        }
+        findPending = false;
+        int match = findMatchAfterCursor(0, false);
+        if (match < matchCount) {
+            moveToMatch(match);
+            return true;
+        }
+        if (!searcher.done) {
+            findPending = true;
+            return false;
+        }
+        if (matchCount > 0) {
+            moveToMatch(0);
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Replace every match of text in the document.  The matches are found
+     * in the background, and then replaced all at once: one undo takes
+     * the whole replacement back.  If the document is edited before the
+     * search finishes, it starts over.
+     *
+     * @param text the text to find
+     * @param regex if true, text is a java.util.regex pattern and
+     * replacement may refer to its groups as Matcher.replaceAll() does
+     * @param ignoreCase if true, ignore upper/lower case differences
+     * @param replacement the text to put in place of each match
+     * @throws java.util.regex.PatternSyntaxException if text is not a
+     * valid pattern
+     * @throws IllegalArgumentException if replacement refers to a group
+     * that the pattern does not have
+     */
+    public void replaceAll(final String text, final boolean regex,
+        final boolean ignoreCase, final String replacement) {
+
+        Pattern pattern = compilePattern(text, regex, ignoreCase);
+        if (regex) {
+            checkReplacement(pattern, replacement);
+        }
+        startSearch(pattern,
+            (regex ? replacement : Matcher.quoteReplacement(replacement)));
+        findPending = false;
+    }
+
+    /**
+     * Stop the search or replace in progress, and remove the highlighted
+     * matches.
+     */
+    public void cancelSearch() {
+        if (searcher != null) {
+            searcher.cancel();
+            searcher = null;
+        }
+        matchCount = 0;
+        findPending = false;
+    }
+
+    /**
+     * Check if a search or replace is still running.
+     *
+     * @return true if the search has not found all of the matches yet
+     */
+    public boolean isSearching() {
+        return ((searcher != null) && !searcher.done);
+    }
+
+    /**
+     * Get the number of matches found so far by the search.
+     *
+     * @return the number of matches
+     */
+    public int getMatchCount() {
+        return matchCount;
+    }
+
+    /**
+     * Make the pattern for find() and replaceAll().
+     *
+     * @param text the text to find
+     * @param regex if true, text is a java.util.regex pattern
+     * @param ignoreCase if true, ignore upper/lower case differences
+     * @return the pattern
+     */
+    private Pattern compilePattern(final String text, final boolean regex,
+        final boolean ignoreCase) {
+
+        int flags = 0;
+        if (!regex) {
+            flags |= Pattern.LITERAL;
+        }
+        if (ignoreCase) {
+            flags |= Pattern.CASE_INSENSITIVE | Pattern.UNICODE_CASE;
+        }
+        return Pattern.compile(text, flags);
+    }
+
+    /**
+     * Check that a replacement string only refers to groups that a pattern
+     * has, by using it on an empty match of the pattern.
+     *
+     * @param pattern the pattern
+     * @param replacement the replacement string as used by
+     * Matcher.replaceAll()
+     * @throws IllegalArgumentException if replacement refers to a group
+     * that the pattern does not have
+     */
+    private void checkReplacement(final Pattern pattern,
+        final String replacement) {
+
+        Pattern empty;
+        try {
+            // Same groups, but matches the empty string.
+            empty = Pattern.compile("(?:" + pattern.pattern() + ")??",
+                pattern.flags());
+        } catch (PatternSyntaxException e) {
+            // SQUASH, the search will find out
+            return;
+        }
+        try {
+            empty.matcher("").replaceFirst(replacement);
+        } catch (IndexOutOfBoundsException e) {
+            throw new IllegalArgumentException(e.getMessage());
+        }
+    }
+
+    /**
+     * Cancel the current search and start a new one on the document as it
+     * is now.
+     *
+     * @param pattern the pattern to look for
+     * @param replacement the replacement string as used by
+     * Matcher.replaceAll(), or null to only find the matches
+     */
+    private void startSearch(final Pattern pattern, final String replacement) {
+        if (searcher != null) {
+            searcher.cancel();
+        }
+        matchCount = 0;
+        searcher = new Searcher(pattern, replacement);
+        searcher.start();
+    }
+
+    /**
+     * Start the search over if the document changed since it started.
+     */
+    private void checkSearch() {
+        if ((searcher != null) && !searcher.isCurrent()) {
+            startSearch(searcher.pattern, searcher.replacement);
+        }
+    }
+
+    /**
+     * Called after the document may have been edited.  If that made the
+     * search out of date, stop it and hide its matches, and start it over
+     * once the document stays unchanged for a little while, so that typing
+     * does not copy the document for a new search at every key.
+     */
+    private void searchEdited() {
+        if ((searcher == null) || searcher.isCurrent()) {
+            return;
+        }
+        searcher.cancel();
+        matchCount = 0;
+        searchEditTime = System.currentTimeMillis();
+        if (searchTimer != null) {
+            return;
+        }
+        searchTimer = getApplication().addTimer(SEARCH_RESTART_DELAY, true,
+            new TAction() {
+                public void DO() {
+                    if (System.currentTimeMillis() - searchEditTime
+                        < SEARCH_RESTART_DELAY
+                    ) {
+                        // Still editing.
+                        return;
+                    }
+                    searchTimer.setRecurring(false);
+                    searchTimer = null;
+                    checkSearch();
+                }
+            });
+    }
+
+    /**
+     * Add matches handed over by the search, and move to the first one
+     * after the cursor if find() asked for it.
+     *
+     * @param batch the line number, start, and end of each match
+     * @param n the number of ints used in batch
+     */
+    private void addMatches(final int [] batch, final int n) {
+        int first = matchCount;
+        int count = n / 3;
+        if (matchCount + count > matchLines.length) {
+            int size = Math.max(matchLines.length * 2, matchCount + count);
+            int [] newLines = new int[size];
+            int [] newStarts = new int[size];
+            int [] newEnds = new int[size];
+            System.arraycopy(matchLines, 0, newLines, 0, matchCount);
+            System.arraycopy(matchStarts, 0, newStarts, 0, matchCount);
+            System.arraycopy(matchEnds, 0, newEnds, 0, matchCount);
+            matchLines = newLines;
+            matchStarts = newStarts;
+            matchEnds = newEnds;
+        }
+        for (int i = 0; i < count; i++) {
+            matchLines[matchCount] = batch[i * 3];
+            matchStarts[matchCount] = batch[i * 3 + 1];
+            matchEnds[matchCount] = batch[i * 3 + 2];
+            matchCount++;
+        }
+        if (findPending) {
+            int match = findMatchAfterCursor(first, true);
+            if (match < matchCount) {
+                findPending = false;
+                moveToMatch(match);
+            }
+        }
+    }
+
+    /**
+     * Find the first match on or after a line.
+     *
+     * @param lineNumber the line number
+     * @return the index of the match, or matchCount if there is none
+     */
+    private int findMatch(final int lineNumber) {
+        int lo = 0;
+        int hi = matchCount;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (matchLines[mid] < lineNumber) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
+        }
+        return lo;
+    }
+
+    /**
+     * Find the first match after the cursor.
+     *
+     * @param first the index of the first match to consider
+     * @param atCursor if true, a match that starts at the cursor counts
+     * @return the index of the match, or matchCount if there is none
+     */
+    private int findMatchAfterCursor(final int first, final boolean atCursor) {
+        int lineNumber = document.getLineNumber();
+        int match = Math.max(first, findMatch(lineNumber));
+        if ((match < matchCount) && (matchLines[match] == lineNumber)) {
+            String raw = document.getCurrentLine().getRawString();
+            int cursor = document.getCursor();
+            for (; (match < matchCount) && (matchLines[match] == lineNumber);
+                 match++) {
+
+                int x = StringUtils.width(raw, 0, matchStarts[match]);
+                if ((x > cursor) || (atCursor && (x == cursor))) {
+                    break;
+                }
+            }
+        }
+        return match;
+    }
+
+    /**
+     * Move the cursor to the start of a match, and bring it into view.
+     *
+     * @param match the index of the match
+     */
+    private void moveToMatch(final int match) {
+        inSelection = false;
+        document.setLineNumber(matchLines[match]);
+        document.setCursor(StringUtils.width(document.getCurrentLine().
+                getRawString(), 0, matchStarts[match]));
+        alignTopLine(false);
     }
 
     // ------------------------------------------------------------------------
@@ -1370,37 +1960,15 @@ public class TEditorWidget extends TWidget implements EditMenuUser {
         return true;
     }
 
-    /**
-     * Save undo state.
-     */
-    private void saveUndo() {
-        SavedState state = new SavedState();
-        state.document = document.dup();
-        state.topLine = topLine;
-        state.leftColumn = leftColumn;
-        if (undoLevel > 0) {
-            while (undoList.size() > undoLevel) {
-                undoList.remove(0);
-            }
-        }
-        undoList.add(state);
-        undoListI = undoList.size() - 1;
-    }
-
     /**
      * Undo an edit.
      */
     public void undo() {
         inSelection = false;
-        if ((undoListI >= 0) && (undoListI < undoList.size())) {
-            SavedState state = undoList.get(undoListI);
-            document = state.document.dup();
-            topLine = state.topLine;
-            leftColumn = state.leftColumn;
-            undoListI--;
-            setCursorY(document.getLineNumber() - topLine);
-            alignCursor();
+        if (document.undo()) {
+            alignTopLine(true);
         }
+        searchEdited();
     }
 
     /**
@@ -1408,15 +1976,10 @@ public class TEditorWidget extends TWidget implements EditMenuUser {
      */
     public void redo() {
         inSelection = false;
-        if ((undoListI >= 0) && (undoListI < undoList.size())) {
-            SavedState state = undoList.get(undoListI);
-            document = state.document.dup();
-            topLine = state.topLine;
-            leftColumn = state.leftColumn;
-            undoListI++;
-            setCursorY(document.getLineNumber() - topLine);
-            alignCursor();
+        if (document.redo()) {
+            alignTopLine(true);
         }
+        searchEdited();
     }
 
     /**
@@ -1427,6 +1990,7 @@ public class TEditorWidget extends TWidget implements EditMenuUser {
         document.cleanWhitespace();
         setCursorY(document.getLineNumber() - topLine);
         alignCursor();
+        searchEdited();
     }
 
     /**
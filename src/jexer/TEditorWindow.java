@@ -31,8 +31,9 @@ package jexer;
 import java.io.File;
 import java.io.IOException;
 import java.text.MessageFormat;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.ResourceBundle;
-import java.util.Scanner;
 
 import jexer.TApplication;
 import jexer.TEditorWidget;
@@ -48,6 +49,7 @@ import jexer.event.TMenuEvent;
 import jexer.event.TMouseEvent;
 import jexer.event.TResizeEvent;
 import jexer.menu.TMenu;
+import jexer.teditor.LineBlockReader;
 import static jexer.TCommand.*;
 import static jexer.TKeypress.*;
 
@@ -61,6 +63,12 @@ public class TEditorWindow extends TScrollableWindow {
      */
     private static final ResourceBundle i18n = ResourceBundle.getBundle(TEditorWindow.class.getName());
 
+    /**
+     * The number of characters to give to the editor at once when loading
+     * a file.
+     */
+    private static final int LOAD_BLOCK_SIZE = 1024 * 1024;
+
     // ------------------------------------------------------------------------
     // Variables --------------------------------------------------------------
     // ------------------------------------------------------------------------
@@ -86,6 +94,156 @@ public class TEditorWindow extends TScrollableWindow {
      */
     private boolean typingHidMouse = false;
 
+    /**
+     * The loader reading the rest of the file in the background, or null.
+     */
+    private FileLoader loader = null;
+
+    /**
+     * The text last searched for.
+     */
+    private String findText = "";
+
+    /**
+     * The text last used as a replacement.
+     */
+    private String replaceText = "";
+
+    /**
+     * FileLoader reads a file in blocks of whole lines with a
+     * LineBlockReader.  The first block is read on the calling thread so
+     * that the window opens with text in it; the rest is read on the loader
+     * thread and handed to the editor with invokeLater(), so the file can
+     * be edited while it loads.
+     */
+    private class FileLoader extends Thread {
+
+        /**
+         * The reader of the file.
+         */
+        private LineBlockReader reader;
+
+        /**
+         * The blocks read by the loader thread and not yet given to the
+         * editor.
+         */
+        private List<String> pending = new ArrayList<String>();
+
+        /**
+         * If true, stop reading.
+         */
+        private volatile boolean cancelled = false;
+
+        /**
+         * Open a file for loading.
+         *
+         * @param file the file to read
+         * @throws IOException if a java.io operation throws
+         */
+        public FileLoader(final File file) throws IOException {
+            super("TEditorWindow loader " + file.getName());
+            setDaemon(true);
+            reader = new LineBlockReader(file, LOAD_BLOCK_SIZE);
+        }
+
+        /**
+         * Read the next block of whole lines.
+         *
+         * @return the block, or null at the end of the file
+         * @throws IOException if a java.io operation throws
+         */
+        public String readBlock() throws IOException {
+            return reader.readBlock();
+        }
+
+        /**
+         * Read the rest of the file, passing each block to the editor.
+         */
+        @Override
+        public void run() {
+            try {
+                String block;
+                while (!cancelled && ((block = readBlock()) != null)) {
+                    boolean post;
+                    synchronized (pending) {
+                        post = pending.isEmpty();
+                        pending.add(block);
+                    }
+                    if (post) {
+                        getApplication().invokeLater(new Runnable() {
+                            public void run() {
+                                drain();
+                            }
+                        });
+                    }
+                }
+            } catch (final IOException e) {
+                if (!cancelled) {
+                    getApplication().invokeLater(new Runnable() {
+                        public void run() {
+                            messageBox(i18n.getString("errorDialogTitle"),
+                                MessageFormat.format(i18n.
+                                    getString("errorReadingFile"),
+                                    e.getMessage()));
+                        }
+                    });
+                }
+            } finally {
+                close();
+            }
+        }
+
+        /**
+         * Give the blocks read so far to the editor.  This must be called
+         * on the application thread.
+         */
+        public void drain() {
+            List<String> blocks;
+            synchronized (pending) {
+                blocks = new ArrayList<String>(pending);
+                pending.clear();
+            }
+            if (blocks.size() == 0) {
+                return;
+            }
+            for (String block: blocks) {
+                editField.appendText(block);
+            }
+            setBottomValue(editField.getMaximumRowNumber());
+            setRightValue(editField.getMaximumColumnNumber());
+        }
+
+        /**
+         * Wait for the rest of the file to be read, and give it to the
+         * editor.  This must be called on the application thread.
+         */
+        public void finish() {
+            while (isAlive()) {
+                try {
+                    join();
+                } catch (InterruptedException e) {
+                    // SQUASH
+                }
+            }
+            drain();
+        }
+
+        /**
+         * Stop reading the file.
+         */
+        public void cancel() {
+            cancelled = true;
+        }
+
+        /**
+         * Close the file.
+         */
+        public void close() {
+            reader.close();
+        }
+
+    }
+
     // ------------------------------------------------------------------------
     // Constructors -----------------------------------------------------------
     // ------------------------------------------------------------------------
@@ -136,10 +294,23 @@ public class TEditorWindow extends TScrollableWindow {
         super(parent, file.getName(), 0, 0, parent.getScreen().getWidth(),
             parent.getDesktopBottom() - parent.getDesktopTop(), RESIZABLE);
 
-        filename = file.getName();
-        String contents = readFileData(file);
+        filename = file.getPath();
+        loader = new FileLoader(file);
+        String contents = null;
+        try {
+            contents = loader.readBlock();
+        } catch (IOException e) {
+            loader.close();
+            throw e;
+        }
+        if (contents == null) {
+            contents = "";
+        }
         editField = addEditor(contents, 0, 0, getWidth() - 2, getHeight() - 2);
         setupAfterEditor();
+
+        // Read the rest of the file in the background.
+        loader.start();
     }
 
     /**
@@ -163,6 +334,9 @@ public class TEditorWindow extends TScrollableWindow {
         super.onFocus();
         getApplication().enableMenuItem(TMenu.MID_UNDO);
         getApplication().enableMenuItem(TMenu.MID_REDO);
+        getApplication().enableMenuItem(TMenu.MID_FIND);
+        getApplication().enableMenuItem(TMenu.MID_REPLACE);
+        getApplication().enableMenuItem(TMenu.MID_SEARCH_AGAIN);
     }
 
     /**
@@ -173,6 +347,9 @@ public class TEditorWindow extends TScrollableWindow {
         super.onUnfocus();
         getApplication().disableMenuItem(TMenu.MID_UNDO);
         getApplication().disableMenuItem(TMenu.MID_REDO);
+        getApplication().disableMenuItem(TMenu.MID_FIND);
+        getApplication().disableMenuItem(TMenu.MID_REPLACE);
+        getApplication().disableMenuItem(TMenu.MID_SEARCH_AGAIN);
     }
 
     /**
@@ -319,8 +496,7 @@ public class TEditorWindow extends TScrollableWindow {
                 String filename = fileOpenBox(".");
                 if (filename != null) {
                     try {
-                        String contents = readFileData(filename);
-                        new TEditorWindow(getApplication(), filename, contents);
+                        new TEditorWindow(getApplication(), new File(filename));
                     } catch (IOException e) {
                         messageBox(i18n.getString("errorDialogTitle"),
                             MessageFormat.format(i18n.
@@ -337,6 +513,10 @@ public class TEditorWindow extends TScrollableWindow {
 
         if (command.equals(cmSave)) {
             if (filename.length() > 0) {
+                if (loader != null) {
+                    // Save the whole file, not the part loaded so far.
+                    loader.finish();
+                }
                 try {
                     editField.saveToFilename(filename);
                 } catch (IOException e) {
@@ -366,6 +546,38 @@ public class TEditorWindow extends TScrollableWindow {
         case TMenu.MID_REDO:
             editField.redo();
             break;
+        case TMenu.MID_FIND:
+            TInputBox findBox = inputBox(i18n.getString("findTitle"),
+                i18n.getString("findCaption"), findText,
+                TInputBox.Type.OKCANCEL);
+            if (findBox.isOk() && (findBox.getText().length() > 0)) {
+                findText = findBox.getText();
+                editField.find(findText, false, false);
+            }
+            break;
+        case TMenu.MID_REPLACE:
+            TInputBox replaceBox = inputBox(i18n.getString("replaceTitle"),
+                i18n.getString("replaceFindCaption"), findText,
+                TInputBox.Type.OKCANCEL);
+            if (!replaceBox.isOk() || (replaceBox.getText().length() == 0)) {
+                break;
+            }
+            findText = replaceBox.getText();
+            TInputBox withBox = inputBox(i18n.getString("replaceTitle"),
+                i18n.getString("replaceWithCaption"), replaceText,
+                TInputBox.Type.OKCANCEL);
+            if (withBox.isOk()) {
+                replaceText = withBox.getText();
+                editField.replaceAll(findText, false, false, replaceText);
+            }
+            break;
+        case TMenu.MID_SEARCH_AGAIN:
+            if (!editField.findNext() && !editField.isSearching()
+                && (findText.length() > 0)
+            ) {
+                editField.find(findText, false, false);
+            }
+            break;
         }
     }
 
@@ -373,11 +585,30 @@ public class TEditorWindow extends TScrollableWindow {
     // TWindow ----------------------------------------------------------------
     // ------------------------------------------------------------------------
 
+    /**
+     * Called by application.closeWindow() to stop loading the file and
+     * searching it.
+     */
+    @Override
+    protected void onClose() {
+        if (loader != null) {
+            loader.cancel();
+        }
+        editField.cancelSearch();
+        super.onClose();
+    }
+
     /**
      * Draw the window.
      */
     @Override
     public void draw() {
+        // A search might have moved the editor, update the scrollbars.
+        setBottomValue(editField.getMaximumRowNumber());
+        setVerticalValue(editField.getVisibleRowNumber());
+        setRightValue(editField.getMaximumColumnNumber());
+        setHorizontalValue(editField.getEditingColumnNumber());
+
         // Draw as normal.
         super.draw();
 
@@ -441,39 +672,6 @@ public class TEditorWindow extends TScrollableWindow {
         }
     }
 
-    /**
-     * Read file data into a string.
-     *
-     * @param file the file to open
-     * @return the file contents
-     * @throws IOException if a java.io operation throws
-     */
-    private String readFileData(final File file) throws IOException {
-        StringBuilder fileContents = new StringBuilder();
-        Scanner scanner = new Scanner(file);
-        String EOL = System.getProperty("line.separator");
-
-        try {
-            while (scanner.hasNextLine()) {
-                fileContents.append(scanner.nextLine() + EOL);
-            }
-            return fileContents.toString();
-        } finally {
-            scanner.close();
-        }
-    }
-
-    /**
-     * Read file data into a string.
-     *
-     * @param filename the file to open
-     * @return the file contents
-     * @throws IOException if a java.io operation throws
-     */
-    private String readFileData(final String filename) throws IOException {
-        return readFileData(new File(filename));
-    }
-
     /**
      * Check if a mouse press/release/motion event coordinate is over the
      * editor.
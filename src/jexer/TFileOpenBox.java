@@ -355,6 +355,15 @@ public class TFileOpenBox extends TWindow {
         super.onKeypress(keypress);
     }
 
+    /**
+     * Called by application.closeWindow() to stop reading the directory.
+     */
+    @Override
+    protected void onClose() {
+        directoryList.cancelScan();
+        super.onClose();
+    }
+
     // ------------------------------------------------------------------------
     // TWidget ----------------------------------------------------------------
     // ------------------------------------------------------------------------
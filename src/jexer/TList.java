@@ -29,7 +29,11 @@
 package jexer;
 
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 
 import jexer.bits.CellAttributes;
 import jexer.bits.StringUtils;
@@ -38,26 +42,76 @@ import jexer.event.TMouseEvent;
 import static jexer.TKeypress.*;
 
 /**
- * TList shows a list of strings, and lets the user select one.
+ * TList shows a list of strings, and lets the user select one.  Typing
+ * the first characters of a string selects it.  The strings can be given as
+ * a list, or read a page at a time from a Model.
  */
 public class TList extends TScrollableWidget {
 
+    // ------------------------------------------------------------------------
+    // Constants --------------------------------------------------------------
+    // ------------------------------------------------------------------------
+
+    /**
+     * How long, in millis, the user can pause between keys before the
+     * type-ahead search starts again.
+     */
+    private static final long TYPE_AHEAD_TIMEOUT = 1000;
+
+    /**
+     * How many strings are read from a model at a time.
+     */
+    public static final int PAGE_SIZE = 64;
+
+    /**
+     * How many pages of strings read from a model are kept.
+     */
+    public static final int PAGE_CACHE_SIZE = 16;
+
     // ------------------------------------------------------------------------
     // Variables --------------------------------------------------------------
     // ------------------------------------------------------------------------
 
     /**
-     * The list of strings to display.
+     * The list of strings to display, when they are not read from a model.
      */
     private List<String> strings;
 
+    /**
+     * The model the strings are read from, or null.
+     */
+    private Model model = null;
+
+    /**
+     * The number of strings in the model when it was set.
+     */
+    private int modelItemCount = 0;
+
+    /**
+     * The pages of strings read from the model, least recently used first.
+     */
+    private Map<Integer, List<String>> pages =
+        new LinkedHashMap<Integer, List<String>>(PAGE_CACHE_SIZE, 0.75f,
+            true) {
+
+        private static final long serialVersionUID = 1L;
+
+        @Override
+        protected boolean removeEldestEntry(
+            final Map.Entry<Integer, List<String>> eldest) {
+
+            return (size() > PAGE_CACHE_SIZE);
+        }
+    };
+
     /**
      * Selected string.
      */
     private int selectedString = -1;
 
     /**
-     * Maximum width of a single line.
+     * Maximum width of a single line, widened as strings are added or read
+     * from the model.
      */
     private int maxLineWidth;
 
@@ -77,6 +131,71 @@ public class TList extends TScrollableWidget {
      */
     protected TAction moveAction = null;
 
+    /**
+     * The lower-case strings in sorted order, or null if they have not been
+     * sorted since the list last changed.
+     */
+    private String [] prefixKeys = null;
+
+    /**
+     * A segment tree over the index in strings of each of the prefixKeys:
+     * the leaves are at prefixMin[prefixKeys.length + i], and each other
+     * node holds the smaller of its two children.
+     */
+    private int [] prefixMin = null;
+
+    /**
+     * The text typed so far by the type-ahead search.
+     */
+    private String typeAhead = "";
+
+    /**
+     * The first position in prefixKeys that starts with typeAhead.
+     */
+    private int typeAheadStart = 0;
+
+    /**
+     * One past the last position in prefixKeys that starts with typeAhead.
+     */
+    private int typeAheadEnd = 0;
+
+    /**
+     * The time of the last type-ahead keystroke.
+     */
+    private long typeAheadTime = 0;
+
+    /**
+     * Model gives the strings of a TList that are not all in memory.  The
+     * list only asks for the strings it shows.
+     */
+    public interface Model {
+
+        /**
+         * Get the number of strings.
+         *
+         * @return the number of strings
+         */
+        public int getItemCount();
+
+        /**
+         * Get some of the strings.
+         *
+         * @param start the index of the first string
+         * @param count the number of strings, at most PAGE_SIZE
+         * @return the strings from start to start + count - 1
+         */
+        public List<String> getItems(final int start, final int count);
+
+        /**
+         * Get the width of the widest string, if it is known.
+         *
+         * @return the width in cells, or -1 to let the list measure the
+         * strings as it reads them
+         */
+        public int getMaxWidth();
+
+    }
+
     // ------------------------------------------------------------------------
     // Constructors -----------------------------------------------------------
     // ------------------------------------------------------------------------
@@ -166,6 +285,7 @@ public class TList extends TScrollableWidget {
         this.strings = new ArrayList<String>();
         if (strings != null) {
             this.strings.addAll(strings);
+            measure(strings);
         }
 
         hScroller = new THScroller(this, 0, getHeight() - 1, getWidth() - 1);
@@ -184,6 +304,8 @@ public class TList extends TScrollableWidget {
      */
     @Override
     public void onMouseDown(final TMouseEvent mouse) {
+        typeAhead = "";
+
         if (mouse.isMouseWheelUp()) {
             verticalDecrement();
             return;
@@ -196,7 +318,7 @@ public class TList extends TScrollableWidget {
         if ((mouse.getX() < getWidth() - 1)
             && (mouse.getY() < getHeight() - 1)
         ) {
-            if (getVerticalValue() + mouse.getY() < strings.size()) {
+            if (getVerticalValue() + mouse.getY() < getItemCount()) {
                 selectedString = getVerticalValue() + mouse.getY();
                 dispatchSingleClick();
             }
@@ -217,7 +339,7 @@ public class TList extends TScrollableWidget {
         if ((mouse.getX() < getWidth() - 1)
             && (mouse.getY() < getHeight() - 1)
         ) {
-            if (getVerticalValue() + mouse.getY() < strings.size()) {
+            if (getVerticalValue() + mouse.getY() < getItemCount()) {
                 selectedString = getVerticalValue() + mouse.getY();
                 dispatchEnter();
             }
@@ -235,12 +357,32 @@ public class TList extends TScrollableWidget {
      */
     @Override
     public void onKeypress(final TKeypressEvent keypress) {
+        // After a pause Backspace is a plain key again.
+        expireTypeAhead();
+        if ((typeAhead.length() > 0)
+            && (keypress.equals(kbBackspace)
+                || keypress.equals(kbBackspaceDel))
+        ) {
+            typeAhead(-1);
+            return;
+        }
+        if (!keypress.getKey().isFnKey()
+            && !keypress.getKey().isAlt()
+            && !keypress.getKey().isCtrl()
+            && !Character.isISOControl(keypress.getKey().getChar())
+        ) {
+            // Plain old keystroke, search for it
+            typeAhead(keypress.getKey().getChar());
+            return;
+        }
+        typeAhead = "";
+
         if (keypress.equals(kbLeft)) {
             horizontalDecrement();
         } else if (keypress.equals(kbRight)) {
             horizontalIncrement();
         } else if (keypress.equals(kbUp)) {
-            if (strings.size() > 0) {
+            if (getItemCount() > 0) {
                 if (selectedString >= 0) {
                     if (selectedString > 0) {
                         if (selectedString - getVerticalValue() == 0) {
@@ -249,16 +391,16 @@ public class TList extends TScrollableWidget {
                         selectedString--;
                     }
                 } else {
-                    selectedString = strings.size() - 1;
+                    selectedString = getItemCount() - 1;
                 }
             }
             if (selectedString >= 0) {
                 dispatchMove();
             }
         } else if (keypress.equals(kbDown)) {
-            if (strings.size() > 0) {
+            if (getItemCount() > 0) {
                 if (selectedString >= 0) {
-                    if (selectedString < strings.size() - 1) {
+                    if (selectedString < getItemCount() - 1) {
                         selectedString++;
                         if (selectedString - getVerticalValue() == getHeight() - 1) {
                             verticalIncrement();
@@ -286,8 +428,8 @@ public class TList extends TScrollableWidget {
             bigVerticalIncrement();
             if (selectedString >= 0) {
                 selectedString += getHeight() - 1;
-                if (selectedString > strings.size() - 1) {
-                    selectedString = strings.size() - 1;
+                if (selectedString > getItemCount() - 1) {
+                    selectedString = getItemCount() - 1;
                 }
             }
             if (selectedString >= 0) {
@@ -295,7 +437,7 @@ public class TList extends TScrollableWidget {
             }
         } else if (keypress.equals(kbHome)) {
             toTop();
-            if (strings.size() > 0) {
+            if (getItemCount() > 0) {
                 selectedString = 0;
             }
             if (selectedString >= 0) {
@@ -303,8 +445,8 @@ public class TList extends TScrollableWidget {
             }
         } else if (keypress.equals(kbEnd)) {
             toBottom();
-            if (strings.size() > 0) {
-                selectedString = strings.size() - 1;
+            if (getItemCount() > 0) {
+                selectedString = getItemCount() - 1;
             }
             if (selectedString >= 0) {
                 dispatchMove();
@@ -367,25 +509,8 @@ public class TList extends TScrollableWidget {
 
         // Reset the lines
         selectedString = -1;
-        maxLineWidth = 0;
-
-        for (int i = 0; i < strings.size(); i++) {
-            String line = strings.get(i);
-            int lineLength = StringUtils.width(line);
-            if (lineLength > maxLineWidth) {
-                maxLineWidth = lineLength;
-            }
-        }
-
-        setBottomValue(strings.size() - getHeight() + 1);
-        if (getBottomValue() < 0) {
-            setBottomValue(0);
-        }
 
-        setRightValue(maxLineWidth - getWidth() + 1);
-        if (getRightValue() < 0) {
-            setRightValue(0);
-        }
+        updateScrollValues();
     }
 
     /**
@@ -396,8 +521,8 @@ public class TList extends TScrollableWidget {
         CellAttributes color = null;
         int begin = getVerticalValue();
         int topY = 0;
-        for (int i = begin; i < strings.size(); i++) {
-            String line = strings.get(i);
+        for (int i = begin; i < getItemCount(); i++) {
+            String line = getItem(i);
             if (line == null) {
                 line = "";
             }
@@ -466,7 +591,7 @@ public class TList extends TScrollableWidget {
      * @return the string at idx in the list
      */
     public final String getListItem(final int idx) {
-        return strings.get(idx);
+        return getItem(idx);
     }
 
     /**
@@ -475,8 +600,8 @@ public class TList extends TScrollableWidget {
      * @return the selected string, or null of nothing is selected yet
      */
     public final String getSelected() {
-        if ((selectedString >= 0) && (selectedString <= strings.size() - 1)) {
-            return strings.get(selectedString);
+        if ((selectedString >= 0) && (selectedString <= getItemCount() - 1)) {
+            return getItem(selectedString);
         }
         return null;
     }
@@ -487,15 +612,19 @@ public class TList extends TScrollableWidget {
      * @return -1 if the list is empty
      */
     public final int getMaxSelectedIndex() {
-        return strings.size() - 1;
+        return getItemCount() - 1;
     }
 
     /**
-     * Get a copy of the list of strings to display.
+     * Get a copy of the list of strings to display.  If the strings come
+     * from a model, they are all read from it.
      *
      * @return the list of strings
      */
     public final List<String> getList() {
+        if (model != null) {
+            return fetch(0, getItemCount());
+        }
         return new ArrayList<String>(strings);
     }
 
@@ -505,17 +634,365 @@ public class TList extends TScrollableWidget {
      * @param list new list of strings
      */
     public final void setList(final List<String> list) {
+        model = null;
+        pages.clear();
         strings.clear();
         strings.addAll(list);
+        maxLineWidth = 0;
+        measure(list);
+        prefixKeys = null;
+        typeAhead = "";
         reflowData();
     }
 
+    /**
+     * Add strings to the end of the list, keeping the current selection.
+     * This cannot be used when the strings come from a model.
+     *
+     * @param list the strings to add
+     */
+    public final void addListItems(final List<String> list) {
+        assert (model == null);
+        strings.addAll(list);
+        measure(list);
+        prefixKeys = null;
+        typeAhead = "";
+        updateScrollValues();
+    }
+
+    /**
+     * Get the model the strings come from.
+     *
+     * @return the model, or null if the strings were given with setList()
+     */
+    public final Model getModel() {
+        return model;
+    }
+
+    /**
+     * Show the strings of a model instead of a list.  Only the strings on
+     * screen are read from the model, PAGE_SIZE at a time, and the last
+     * PAGE_CACHE_SIZE pages read are kept.  Call this again with the same
+     * model when its strings or their number change.
+     *
+     * @param model the model, or null for an empty list
+     */
+    public final void setModel(final Model model) {
+        if (model == null) {
+            setList(new ArrayList<String>());
+            return;
+        }
+        this.model = model;
+        modelItemCount = model.getItemCount();
+        pages.clear();
+        strings.clear();
+        maxLineWidth = Math.max(0, model.getMaxWidth());
+        prefixKeys = null;
+        typeAhead = "";
+        reflowData();
+    }
+
+    /**
+     * Find the first string that starts with a prefix, ignoring case.
+     *
+     * @param prefix the prefix to look for
+     * @return the index of the first string in the list starting with
+     * prefix, or -1 if there is none
+     */
+    public final int findPrefix(final String prefix) {
+        String key = prefix.toLowerCase();
+        buildPrefixIndex();
+        int start = prefixStart(key, 0, prefixKeys.length);
+        return firstIndex(start, prefixEnd(key, start, prefixKeys.length));
+    }
+
+    /**
+     * Add a character to (or remove the last character from) the
+     * type-ahead search, and select the first string starting with the text
+     * typed so far.  Each new character only searches among the strings
+     * that matched before it.  A character that matches nothing is
+     * ignored.
+     *
+     * @param ch the character typed, or -1 for backspace
+     */
+    private void typeAhead(final int ch) {
+        expireTypeAhead();
+        typeAheadTime = System.currentTimeMillis();
+        buildPrefixIndex();
+
+        String key;
+        int start;
+        int end;
+        if (ch == -1) {
+            if (typeAhead.length() == 0) {
+                return;
+            }
+            key = typeAhead.substring(0, typeAhead.offsetByCodePoints(
+                typeAhead.length(), -1));
+            start = prefixStart(key, 0, prefixKeys.length);
+            end = prefixEnd(key, start, prefixKeys.length);
+        } else {
+            key = typeAhead + new String(Character.toChars(ch)).toLowerCase();
+            if (typeAhead.length() == 0) {
+                typeAheadStart = 0;
+                typeAheadEnd = prefixKeys.length;
+            }
+            start = prefixStart(key, typeAheadStart, typeAheadEnd);
+            end = prefixEnd(key, start, typeAheadEnd);
+            if (start == end) {
+                // Nothing starts with that, keep what we had.
+                return;
+            }
+        }
+        typeAhead = key;
+        typeAheadStart = start;
+        typeAheadEnd = end;
+
+        int index = firstIndex(start, end);
+        if ((index < 0) || (typeAhead.length() == 0)) {
+            return;
+        }
+        selectedString = index;
+
+        // Scroll the selection into view
+        if ((selectedString < getVerticalValue())
+            || (selectedString >= getVerticalValue() + getHeight() - 1)
+        ) {
+            setVerticalValue(Math.min(selectedString, getBottomValue()));
+        }
+        dispatchMove();
+    }
+
+    /**
+     * Forget the type-ahead search if nothing was typed for
+     * TYPE_AHEAD_TIMEOUT millis.
+     */
+    private void expireTypeAhead() {
+        if (System.currentTimeMillis() - typeAheadTime > TYPE_AHEAD_TIMEOUT) {
+            typeAhead = "";
+        }
+    }
+
+    /**
+     * Sort the lower-case strings, if the list changed since they were last
+     * sorted.  If the strings come from a model, this reads all of them.
+     */
+    private void buildPrefixIndex() {
+        if (prefixKeys != null) {
+            return;
+        }
+
+        final String [] keys = new String[getItemCount()];
+        Integer [] order = new Integer[keys.length];
+        for (int start = 0; start < keys.length; start += PAGE_SIZE) {
+            // Read a model directly, not through the page cache.
+            List<String> lines = fetch(start,
+                Math.min(PAGE_SIZE, keys.length - start));
+            for (int i = 0; i < lines.size(); i++) {
+                String line = lines.get(i);
+                keys[start + i] = (line == null ? "" : line.toLowerCase());
+                order[start + i] = start + i;
+            }
+        }
+        // Stable, so equal keys stay in list order.
+        Arrays.sort(order, new Comparator<Integer>() {
+            public int compare(final Integer a, final Integer b) {
+                return keys[a].compareTo(keys[b]);
+            }
+        });
+
+        int n = keys.length;
+        prefixKeys = new String[n];
+        prefixMin = new int[2 * n];
+        for (int i = 0; i < n; i++) {
+            prefixKeys[i] = keys[order[i]];
+            prefixMin[n + i] = order[i];
+        }
+        for (int i = n - 1; i > 0; i--) {
+            prefixMin[i] = Math.min(prefixMin[2 * i], prefixMin[2 * i + 1]);
+        }
+    }
+
+    /**
+     * Find the first position in part of prefixKeys that is not less than a
+     * prefix.
+     *
+     * @param prefix the lower-case prefix
+     * @param start the first position to search
+     * @param end one past the last position to search
+     * @return the position, or end if every key is less than prefix
+     */
+    private int prefixStart(final String prefix, final int start,
+        final int end) {
+
+        int low = start;
+        int high = end;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (prefixKeys[mid].compareTo(prefix) < 0) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * Find the end of the run of prefixKeys starting with a prefix.
+     *
+     * @param prefix the lower-case prefix
+     * @param start the position returned by prefixStart()
+     * @param end one past the last position to search
+     * @return one past the last position starting with prefix
+     */
+    private int prefixEnd(final String prefix, final int start,
+        final int end) {
+
+        int low = start;
+        int high = end;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (prefixKeys[mid].startsWith(prefix)) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * Find the string nearest the top of the list among a run of
+     * prefixKeys, in O(log n) time.
+     *
+     * @param start the first position in prefixKeys
+     * @param end one past the last position in prefixKeys
+     * @return the index in strings, or -1 if the run is empty
+     */
+    private int firstIndex(final int start, final int end) {
+        int index = Integer.MAX_VALUE;
+        int low = start + prefixKeys.length;
+        int high = end + prefixKeys.length;
+        while (low < high) {
+            if ((low & 1) == 1) {
+                index = Math.min(index, prefixMin[low]);
+                low++;
+            }
+            if ((high & 1) == 1) {
+                high--;
+                index = Math.min(index, prefixMin[high]);
+            }
+            low >>>= 1;
+            high >>>= 1;
+        }
+        return (index == Integer.MAX_VALUE ? -1 : index);
+    }
+
+    /**
+     * Get the number of strings in the list.
+     *
+     * @return the number of strings
+     */
+    private int getItemCount() {
+        if (model != null) {
+            return modelItemCount;
+        }
+        return strings.size();
+    }
+
+    /**
+     * Get one string of the list.  If the strings come from a model, the
+     * page containing it is read if it is not cached.
+     *
+     * @param index the index of the string
+     * @return the string
+     */
+    private String getItem(final int index) {
+        if (model == null) {
+            return strings.get(index);
+        }
+
+        Integer page = index / PAGE_SIZE;
+        List<String> lines = pages.get(page);
+        if (lines == null) {
+            int start = page * PAGE_SIZE;
+            lines = fetch(start, Math.min(PAGE_SIZE,
+                    modelItemCount - start));
+            pages.put(page, lines);
+            if (model.getMaxWidth() < 0) {
+                // No hint: grow the width as new strings are seen.
+                int oldWidth = maxLineWidth;
+                measure(lines);
+                if (maxLineWidth > oldWidth) {
+                    updateScrollValues();
+                }
+            }
+        }
+        return lines.get(index - (page * PAGE_SIZE));
+    }
+
+    /**
+     * Read some of the strings, bypassing the page cache.
+     *
+     * @param start the index of the first string
+     * @param count the number of strings
+     * @return the strings
+     */
+    private List<String> fetch(final int start, final int count) {
+        if (model == null) {
+            return new ArrayList<String>(strings.subList(start,
+                    start + count));
+        }
+        List<String> lines = model.getItems(start, count);
+        if (lines.size() < count) {
+            // Keep indexes valid even if the model came up short.
+            lines = new ArrayList<String>(lines);
+            while (lines.size() < count) {
+                lines.add("");
+            }
+        }
+        return lines;
+    }
+
+    /**
+     * Widen maxLineWidth to fit some strings.
+     *
+     * @param lines the strings
+     */
+    private void measure(final List<String> lines) {
+        for (String line: lines) {
+            if (line == null) {
+                continue;
+            }
+            int lineLength = StringUtils.width(line);
+            if (lineLength > maxLineWidth) {
+                maxLineWidth = lineLength;
+            }
+        }
+    }
+
+    /**
+     * Set the scrollbar limits from the number and width of the strings.
+     */
+    private void updateScrollValues() {
+        setBottomValue(getItemCount() - getHeight() + 1);
+        if (getBottomValue() < 0) {
+            setBottomValue(0);
+        }
+
+        setRightValue(maxLineWidth - getWidth() + 1);
+        if (getRightValue() < 0) {
+            setRightValue(0);
+        }
+    }
+
     /**
      * Perform user selection action.
      */
     public void dispatchEnter() {
         assert (selectedString >= 0);
-        assert (selectedString < strings.size());
+        assert (selectedString < getItemCount());
         if (enterAction != null) {
             enterAction.DO(this);
         }
@@ -526,7 +1003,7 @@ public class TList extends TScrollableWidget {
      */
     public void dispatchMove() {
         assert (selectedString >= 0);
-        assert (selectedString < strings.size());
+        assert (selectedString < getItemCount());
         if (moveAction != null) {
             moveAction.DO(this);
         }
@@ -537,7 +1014,7 @@ public class TList extends TScrollableWidget {
      */
     public void dispatchSingleClick() {
         assert (selectedString >= 0);
-        assert (selectedString < strings.size());
+        assert (selectedString < getItemCount());
         if (singleClickAction != null) {
             singleClickAction.DO(this);
         }
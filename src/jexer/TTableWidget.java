@@ -31,11 +31,18 @@ package jexer;
 import java.io.BufferedReader;
 import java.io.BufferedWriter;
 import java.io.File;
-import java.io.FileReader;
+import java.io.FileInputStream;
 import java.io.FileWriter;
 import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Writer;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 
 import jexer.bits.CellAttributes;
 import jexer.bits.StringUtils;
@@ -48,6 +55,11 @@ import static jexer.TKeypress.*;
  * TTableWidget is used to display and edit regular two-dimensional tables of
  * cells.
  *
+ * By default every cell is a widget.  A table made with a Model is in grid
+ * mode instead: the cells are kept in the model, only the visible ones are
+ * drawn, and a single field is placed over the selected cell to edit it.
+ * Grid mode is meant for large tables of hundreds of thousands of rows.
+ *
  * This class was inspired by a TTable implementation originally developed by
  * David "Niki" ROULET [niki@nikiroo.be], made available under MIT at
  * https://github.com/nikiroo/jexer/tree/ttable_pull.
@@ -113,6 +125,12 @@ public class TTableWidget extends TWidget {
      */
     private static final int EXTRA_COLUMNS = (DEBUG ? 3 : 0);
 
+    /**
+     * How often, in millis, a CSV file being loaded in the background asks
+     * for the screen to be repainted to show its progress.
+     */
+    private static final long CSV_PROGRESS_INTERVAL = 100;
+
     // ------------------------------------------------------------------------
     // Variables --------------------------------------------------------------
     // ------------------------------------------------------------------------
@@ -177,6 +195,68 @@ public class TTableWidget extends TWidget {
      */
     private Border leftBorder = Border.NONE;
 
+    /**
+     * The right-most visible column.
+     */
+    private int right = 0;
+
+    /**
+     * The bottom-most visible row.
+     */
+    private int bottom = 0;
+
+    /**
+     * The cells in grid mode, or null if the cells are widgets.
+     */
+    private Model model = null;
+
+    /**
+     * The bottom border of each row in grid mode.  Rows past the end of
+     * the array have no border.
+     */
+    private Border [] rowBorders = new Border[0];
+
+    /**
+     * The labels of the rows in grid mode that are not the row number.
+     */
+    private Map<Integer, String> rowLabels = new HashMap<Integer, String>();
+
+    /**
+     * The rows in grid mode that were set read-only as a whole.
+     */
+    private Set<Integer> readOnlyRows = new HashSet<Integer>();
+
+    /**
+     * The Y position of each visible row in grid mode, starting with top.
+     */
+    private int [] rowY = new int[0];
+
+    /**
+     * The field placed over the selected cell to edit it in grid mode.
+     */
+    private TField editor = null;
+
+    /**
+     * If true, the selected cell is being edited in grid mode.
+     */
+    private boolean editing = false;
+
+    /**
+     * The loader reading a CSV file in the background, or null.
+     */
+    private CsvLoader csvLoader = null;
+
+    /**
+     * If true, addChild() only appends the new cells, and addCsvRows()
+     * sets their tab order once it is done.
+     */
+    private boolean addingCells = false;
+
+    /**
+     * The error that stopped the last background load, or null.
+     */
+    private IOException loadError = null;
+
     /**
      * Column represents a column of cells.
      */
@@ -207,6 +287,19 @@ public class TTableWidget extends TWidget {
          */
         private Border rightBorder = Border.NONE;
 
+        /**
+         * If true, the cells of this column were set read-only as a whole
+         * in grid mode.
+         */
+        private boolean readOnly = false;
+
+        /**
+         * The read-only flags and actions of single cells of this column in
+         * grid mode, by row.
+         */
+        private Map<Integer, GridCell> gridCells =
+            new HashMap<Integer, GridCell>();
+
         /**
          * Constructor sets label to lettered column.
          *
@@ -602,206 +695,726 @@ public class TTableWidget extends TWidget {
 
     }
 
-    // ------------------------------------------------------------------------
-    // Constructors -----------------------------------------------------------
-    // ------------------------------------------------------------------------
+    /**
+     * GridCell holds what was set on a single cell in grid mode, where
+     * there are no Cell widgets to keep it.
+     */
+    private static class GridCell {
+
+        /**
+         * If not null, the cell is read-only or not regardless of its row
+         * and column.
+         */
+        private Boolean readOnly = null;
+
+        /**
+         * The action to perform when the user presses enter on the cell.
+         */
+        private TAction enterAction = null;
+
+        /**
+         * The action to perform when the user updates the cell.
+         */
+        private TAction updateAction = null;
+
+    }
 
     /**
-     * Public constructor.
-     *
-     * @param parent parent widget
-     * @param x column relative to parent
-     * @param y row relative to parent
-     * @param width width of widget
-     * @param height height of widget
-     * @param gridColumns number of columns in grid
-     * @param gridRows number of rows in grid
+     * Model holds the cells of a table in grid mode.  The table only asks
+     * for the cells it shows, so the data can be far larger than what
+     * would fit in widgets, or computed on demand.  Rows and columns should
+     * only be inserted or deleted through the table.  The insert and
+     * delete operations are optional: a model that does not support them
+     * throws UnsupportedOperationException.
      */
-    public TTableWidget(final TWidget parent, final int x, final int y,
-        final int width, final int height, final int gridColumns,
-        final int gridRows) {
+    public interface Model {
 
-        super(parent, x, y, width, height);
+        /**
+         * Get the number of rows.
+         *
+         * @return the number of rows
+         */
+        public int getRowCount();
 
-        /*
-        System.err.println("gridColumns " + gridColumns +
-            " gridRows " + gridRows);
+        /**
+         * Get the number of columns.
+         *
+         * @return the number of columns
          */
+        public int getColumnCount();
 
-        if (gridColumns < 1) {
-            throw new IllegalArgumentException("Column count cannot be less " +
-                "than 1");
-        }
-        if (gridRows < 1) {
-            throw new IllegalArgumentException("Row count cannot be less " +
-                "than 1");
-        }
+        /**
+         * Get the text of a cell.
+         *
+         * @param column the cell column
+         * @param row the cell row
+         * @return the text in the cell
+         */
+        public String getValueAt(final int column, final int row);
 
-        // Initialize the starting row and column.
-        rows.add(new Row(0));
-        columns.add(new Column(0));
-        assert (rows.get(0).height == 1);
+        /**
+         * Set the text of a cell.
+         *
+         * @param column the cell column
+         * @param row the cell row
+         * @param value the new text
+         */
+        public void setValueAt(final int column, final int row,
+            final String value);
 
-        // Place a grid of cells that fit in this space.
-        for (int row = 0; row < gridRows; row++) {
-            for (int column = 0; column < gridColumns; column++) {
-                Cell cell = new Cell(this, 0, 0, COLUMN_DEFAULT_WIDTH, 1,
-                    column, row);
+        /**
+         * Check if a cell can be edited.
+         *
+         * @param column the cell column
+         * @param row the cell row
+         * @return true if the cell can be edited
+         */
+        public boolean isCellEditable(final int column, final int row);
 
-                if (DEBUG) {
-                    // For debugging: set a grid of cell index labels.
-                    cell.setText("" + row + " " + column);
-                }
-                rows.get(row).add(cell);
-                columns.get(column).add(cell);
+        /**
+         * Insert an empty row.
+         *
+         * @param row the number of the new row
+         */
+        public void insertRow(final int row);
 
-                if (columns.size() < gridColumns) {
-                    columns.add(new Column(column + 1));
-                }
-            }
-            if (row < gridRows - 1) {
-                rows.add(new Row(row + 1));
-            }
-        }
-        for (int i = 0; i < rows.size(); i++) {
-            rows.get(i).setY(i + (showColumnLabels ? COLUMN_LABEL_HEIGHT : 0));
-        }
-        for (int j = 0; j < columns.size(); j++) {
-            columns.get(j).setX((j * (COLUMN_DEFAULT_WIDTH + 1)) +
-                (showRowLabels ? ROW_LABEL_WIDTH : 0));
-        }
-        activate(columns.get(selectedColumn).get(selectedRow));
+        /**
+         * Delete a row.
+         *
+         * @param row the row number
+         */
+        public void deleteRow(final int row);
+
+        /**
+         * Insert an empty column.
+         *
+         * @param column the number of the new column
+         */
+        public void insertColumn(final int column);
+
+        /**
+         * Delete a column.
+         *
+         * @param column the column number
+         */
+        public void deleteColumn(final int column);
 
-        alignGrid();
     }
 
     /**
-     * Public constructor.
-     *
-     * @param parent parent widget
-     * @param x column relative to parent
-     * @param y row relative to parent
-     * @param width width of widget
-     * @param height height of widget
+     * ArrayModel is a Model that keeps its rows as arrays of strings.
+     * Every cell is editable.
      */
-    public TTableWidget(final TWidget parent, final int x, final int y,
-        final int width, final int height) {
+    public static class ArrayModel implements Model {
 
-        this(parent, x, y, width, height,
-            width / (COLUMN_DEFAULT_WIDTH + 1) + EXTRA_COLUMNS,
-            height + EXTRA_ROWS);
-    }
+        /**
+         * The number of columns.
+         */
+        private int columnCount;
 
-    // ------------------------------------------------------------------------
-    // Event handlers ---------------------------------------------------------
-    // ------------------------------------------------------------------------
+        /**
+         * The rows.  A row array can be shorter than the number of
+         * columns, the missing cells are empty.
+         */
+        private ArrayList<String []> data = new ArrayList<String []>();
 
-    /**
-     * Handle mouse press events.
-     *
-     * @param mouse mouse button press event
-     */
-    @Override
-    public void onMouseDown(final TMouseEvent mouse) {
-        if (mouse.isMouseWheelUp() || mouse.isMouseWheelDown()) {
-            // Treat wheel up/down as 3 up/down
-            TKeypressEvent keyEvent;
-            if (mouse.isMouseWheelUp()) {
-                keyEvent = new TKeypressEvent(kbUp);
-            } else {
-                keyEvent = new TKeypressEvent(kbDown);
-            }
-            for (int i = 0; i < 3; i++) {
-                onKeypress(keyEvent);
+        /**
+         * Public constructor.
+         *
+         * @param columnCount the number of columns
+         * @param rowCount the number of empty rows to start with
+         */
+        public ArrayModel(final int columnCount, final int rowCount) {
+            this.columnCount = columnCount;
+            data.ensureCapacity(rowCount);
+            for (int i = 0; i < rowCount; i++) {
+                data.add(new String[0]);
             }
-            return;
         }
 
-        // Use TWidget's code to pass the event to the children.
-        super.onMouseDown(mouse);
-    }
+        /**
+         * Add a row at the end.  If it has more values than there are
+         * columns, columns are added.
+         *
+         * @param values the text of each cell of the row
+         */
+        public void addRow(final String [] values) {
+            data.add(values);
+            columnCount = Math.max(columnCount, values.length);
+        }
 
-    /**
-     * Handle keystrokes.
-     *
-     * @param keypress keystroke event
-     */
-    @Override
-    public void onKeypress(final TKeypressEvent keypress) {
-        if (keypress.equals(kbTab)
-            || keypress.equals(kbShiftTab)
-        ) {
-            // Squash tab and back-tab.  They don't make sense in the TTable
-            // grid context.
-            return;
+        /**
+         * Get the number of rows.
+         *
+         * @return the number of rows
+         */
+        public int getRowCount() {
+            return data.size();
         }
 
-        // If editing, pass to that cell and do nothing else.
-        if (getSelectedCell().isEditing) {
-            super.onKeypress(keypress);
-            return;
+        /**
+         * Get the number of columns.
+         *
+         * @return the number of columns
+         */
+        public int getColumnCount() {
+            return columnCount;
         }
 
-        if (keypress.equals(kbLeft)) {
-            // Left
-            if (selectedColumn > 0) {
-                selectedColumn--;
-            }
-            activate(columns.get(selectedColumn).get(selectedRow));
-        } else if (keypress.equals(kbRight)) {
-            // Right
-            if (selectedColumn < columns.size() - 1) {
-                selectedColumn++;
-            }
-            activate(columns.get(selectedColumn).get(selectedRow));
-        } else if (keypress.equals(kbUp)) {
-            // Up
-            if (selectedRow > 0) {
-                selectedRow--;
-            }
-            activate(columns.get(selectedColumn).get(selectedRow));
-        } else if (keypress.equals(kbDown)) {
-            // Down
-            if (selectedRow < rows.size() - 1) {
-                selectedRow++;
+        /**
+         * Get the text of a cell.
+         *
+         * @param column the cell column
+         * @param row the cell row
+         * @return the text in the cell
+         */
+        public String getValueAt(final int column, final int row) {
+            String [] values = data.get(row);
+            if ((column >= values.length) || (values[column] == null)) {
+                return "";
             }
-            activate(columns.get(selectedColumn).get(selectedRow));
-        } else if (keypress.equals(kbHome)) {
-            // Home - leftmost column
-            selectedColumn = 0;
-            activate(columns.get(selectedColumn).get(selectedRow));
-        } else if (keypress.equals(kbEnd)) {
-            // End - rightmost column
-            selectedColumn = columns.size() - 1;
-            activate(columns.get(selectedColumn).get(selectedRow));
-        } else if (keypress.equals(kbPgUp)) {
-            // PgUp - Treat like multiple up
-            for (int i = 0; i < getHeight() - 2; i++) {
-                if (selectedRow > 0) {
-                    selectedRow--;
-                }
+            return values[column];
+        }
+
+        /**
+         * Set the text of a cell.
+         *
+         * @param column the cell column
+         * @param row the cell row
+         * @param value the new text
+         */
+        public void setValueAt(final int column, final int row,
+            final String value) {
+
+            String [] values = data.get(row);
+            if (column >= values.length) {
+                values = Arrays.copyOf(values, columnCount);
+                data.set(row, values);
             }
-            activate(columns.get(selectedColumn).get(selectedRow));
-        } else if (keypress.equals(kbPgDn)) {
+            values[column] = value;
+        }
+
+        /**
+         * Check if a cell can be edited.
+         *
+         * @param column the cell column
+         * @param row the cell row
+         * @return true
+         */
+        public boolean isCellEditable(final int column, final int row) {
+            return true;
+        }
+
+        /**
+         * Insert an empty row.
+         *
+         * @param row the number of the new row
+         */
+        public void insertRow(final int row) {
+            data.add(row, new String[0]);
+        }
+
+        /**
+         * Delete a row.
+         *
+         * @param row the row number
+         */
+        public void deleteRow(final int row) {
+            data.remove(row);
+        }
+
+        /**
+         * Insert an empty column.
+         *
+         * @param column the number of the new column
+         */
+        public void insertColumn(final int column) {
+            columnCount++;
+            for (int i = 0; i < data.size(); i++) {
+                String [] values = data.get(i);
+                if (column < values.length) {
+                    String [] newValues = new String[values.length + 1];
+                    System.arraycopy(values, 0, newValues, 0, column);
+                    System.arraycopy(values, column, newValues, column + 1,
+                        values.length - column);
+                    data.set(i, newValues);
+                }
+            }
+        }
+
+        /**
+         * Delete a column.
+         *
+         * @param column the column number
+         */
+        public void deleteColumn(final int column) {
+            columnCount--;
+            for (int i = 0; i < data.size(); i++) {
+                String [] values = data.get(i);
+                if (column < values.length) {
+                    String [] newValues = new String[values.length - 1];
+                    System.arraycopy(values, 0, newValues, 0, column);
+                    System.arraycopy(values, column + 1, newValues, column,
+                        values.length - column - 1);
+                    data.set(i, newValues);
+                }
+            }
+        }
+
+    }
+
+    /**
+     * CsvLoader reads a RFC4180 CSV file into an ArrayModel, one line at a
+     * time.  It can read on the calling thread, or run as a thread and hand
+     * the finished model to the table with invokeLater().  Either way the
+     * table is changed only once, when the whole file has been read.
+     */
+    private class CsvLoader extends Thread {
+
+        /**
+         * The file being read.
+         */
+        private FileInputStream input;
+
+        /**
+         * The reader over input.
+         */
+        private BufferedReader reader;
+
+        /**
+         * The size of the file.
+         */
+        private long fileSize;
+
+        /**
+         * The number of bytes read from the file so far.  Only the reading
+         * thread writes it.
+         */
+        private volatile long bytesRead = 0;
+
+        /**
+         * The cells read so far.
+         */
+        private ArrayModel result = new ArrayModel(1, 0);
+
+        /**
+         * The error that stopped reading, or null.
+         */
+        private IOException error = null;
+
+        /**
+         * The action to call on the application thread when done, or null.
+         */
+        private TAction action = null;
+
+        /**
+         * If true, stop reading.
+         */
+        private volatile boolean cancelled = false;
+
+        /**
+         * Open a file for loading.
+         *
+         * @param file the file to read
+         * @throws IOException if a java.io operation throws
+         */
+        public CsvLoader(final File file) throws IOException {
+            super("TTableWidget loader " + file.getName());
+            setDaemon(true);
+            input = new FileInputStream(file) {
+                @Override
+                public int read() throws IOException {
+                    int ch = super.read();
+                    if (ch >= 0) {
+                        bytesRead++;
+                    }
+                    return ch;
+                }
+
+                @Override
+                public int read(final byte [] b, final int off,
+                    final int len) throws IOException {
+
+                    int rc = super.read(b, off, len);
+                    if (rc > 0) {
+                        bytesRead += rc;
+                    }
+                    return rc;
+                }
+            };
+            reader = new BufferedReader(new InputStreamReader(input));
+            fileSize = file.length();
+        }
+
+        /**
+         * Read the whole file into result.
+         *
+         * @throws IOException if a java.io operation throws
+         */
+        public void read() throws IOException {
+            long repainted = System.currentTimeMillis();
+            String line = null;
+            for (line = reader.readLine(); line != null;
+                 line = reader.readLine()) {
+
+                if (cancelled) {
+                    return;
+                }
+
+                List<String> list = StringUtils.fromCsv(line);
+                if (list.size() == 0) {
+                    continue;
+                }
+                result.addRow(list.toArray(new String[list.size()]));
+
+                if ((Thread.currentThread() == this)
+                    && (System.currentTimeMillis()
+                        - repainted >= CSV_PROGRESS_INTERVAL)
+                ) {
+                    // Let the window show how far along we are.
+                    getApplication().doRepaint();
+                    repainted = System.currentTimeMillis();
+                }
+            }
+        }
+
+        /**
+         * Get the percentage of the file read so far.
+         *
+         * @return a number between 0 and 100
+         */
+        public int getProgress() {
+            if (fileSize <= 0) {
+                return 100;
+            }
+            return (int) Math.min(100, bytesRead * 100 / fileSize);
+        }
+
+        /**
+         * Read the file, then give the cells to the table.
+         */
+        @Override
+        public void run() {
+            try {
+                read();
+            } catch (IOException e) {
+                error = e;
+            } finally {
+                close();
+            }
+            getApplication().invokeLater(new Runnable() {
+                public void run() {
+                    if (csvLoader != CsvLoader.this) {
+                        // Cancelled or replaced by another load.
+                        return;
+                    }
+                    csvLoader = null;
+                    loadError = error;
+                    if (error == null) {
+                        setCsvModel(result);
+                    }
+                    if (action != null) {
+                        action.DO(TTableWidget.this);
+                    }
+                }
+            });
+        }
+
+        /**
+         * Stop reading the file.
+         */
+        public void cancel() {
+            cancelled = true;
+        }
+
+        /**
+         * Close the file.
+         */
+        public void close() {
+            try {
+                reader.close();
+            } catch (IOException e) {
+                // SQUASH
+            }
+        }
+
+    }
+
+    // ------------------------------------------------------------------------
+    // Constructors -----------------------------------------------------------
+    // ------------------------------------------------------------------------
+
+    /**
+     * Public constructor.
+     *
+     * @param parent parent widget
+     * @param x column relative to parent
+     * @param y row relative to parent
+     * @param width width of widget
+     * @param height height of widget
+     * @param gridColumns number of columns in grid
+     * @param gridRows number of rows in grid
+     */
+    public TTableWidget(final TWidget parent, final int x, final int y,
+        final int width, final int height, final int gridColumns,
+        final int gridRows) {
+
+        super(parent, x, y, width, height);
+
+        /*
+        System.err.println("gridColumns " + gridColumns +
+            " gridRows " + gridRows);
+         */
+
+        if (gridColumns < 1) {
+            throw new IllegalArgumentException("Column count cannot be less " +
+                "than 1");
+        }
+        if (gridRows < 1) {
+            throw new IllegalArgumentException("Row count cannot be less " +
+                "than 1");
+        }
+
+        // Initialize the starting row and column.
+        rows.add(new Row(0));
+        columns.add(new Column(0));
+        assert (rows.get(0).height == 1);
+
+        // Place a grid of cells that fit in this space.
+        for (int row = 0; row < gridRows; row++) {
+            for (int column = 0; column < gridColumns; column++) {
+                Cell cell = new Cell(this, 0, 0, COLUMN_DEFAULT_WIDTH, 1,
+                    column, row);
+
+                if (DEBUG) {
+                    // For debugging: set a grid of cell index labels.
+                    cell.setText("" + row + " " + column);
+                }
+                rows.get(row).add(cell);
+                columns.get(column).add(cell);
+
+                if (columns.size() < gridColumns) {
+                    columns.add(new Column(column + 1));
+                }
+            }
+            if (row < gridRows - 1) {
+                rows.add(new Row(row + 1));
+            }
+        }
+        for (int i = 0; i < rows.size(); i++) {
+            rows.get(i).setY(i + (showColumnLabels ? COLUMN_LABEL_HEIGHT : 0));
+        }
+        for (int j = 0; j < columns.size(); j++) {
+            columns.get(j).setX((j * (COLUMN_DEFAULT_WIDTH + 1)) +
+                (showRowLabels ? ROW_LABEL_WIDTH : 0));
+        }
+        activateSelectedCell();
+
+        alignGrid();
+    }
+
+    /**
+     * Public constructor.
+     *
+     * @param parent parent widget
+     * @param x column relative to parent
+     * @param y row relative to parent
+     * @param width width of widget
+     * @param height height of widget
+     */
+    public TTableWidget(final TWidget parent, final int x, final int y,
+        final int width, final int height) {
+
+        this(parent, x, y, width, height,
+            width / (COLUMN_DEFAULT_WIDTH + 1) + EXTRA_COLUMNS,
+            height + EXTRA_ROWS);
+    }
+
+    /**
+     * Public constructor for a table in grid mode.
+     *
+     * @param parent parent widget
+     * @param x column relative to parent
+     * @param y row relative to parent
+     * @param width width of widget
+     * @param height height of widget
+     * @param model the cells
+     */
+    public TTableWidget(final TWidget parent, final int x, final int y,
+        final int width, final int height, final Model model) {
+
+        super(parent, x, y, width, height);
+        setModel(model);
+    }
+
+    // ------------------------------------------------------------------------
+    // Event handlers ---------------------------------------------------------
+    // ------------------------------------------------------------------------
+
+    /**
+     * Handle mouse press events.
+     *
+     * @param mouse mouse button press event
+     */
+    @Override
+    public void onMouseDown(final TMouseEvent mouse) {
+        if (mouse.isMouseWheelUp() || mouse.isMouseWheelDown()) {
+            // Treat wheel up/down as 3 up/down
+            TKeypressEvent keyEvent;
+            if (mouse.isMouseWheelUp()) {
+                keyEvent = new TKeypressEvent(kbUp);
+            } else {
+                keyEvent = new TKeypressEvent(kbDown);
+            }
+            for (int i = 0; i < 3; i++) {
+                onKeypress(keyEvent);
+            }
+            return;
+        }
+
+        if ((model != null)
+            && (!editing || !editor.mouseWouldHit(mouse))
+        ) {
+            // Grid mode: select the cell under the mouse.
+            if (selectCellAt(mouse.getX(), mouse.getY())) {
+                alignGrid();
+            }
+            return;
+        }
+
+        // Use TWidget's code to pass the event to the children.
+        super.onMouseDown(mouse);
+    }
+
+    /**
+     * Handle mouse double-click events.
+     *
+     * @param mouse mouse double-click event
+     */
+    @Override
+    public void onMouseDoubleClick(final TMouseEvent mouse) {
+        if ((model != null)
+            && (!editing || !editor.mouseWouldHit(mouse))
+        ) {
+            // Grid mode: double-click means to start editing.
+            if (selectCellAt(mouse.getX(), mouse.getY())) {
+                alignGrid();
+                startEdit();
+            }
+            return;
+        }
+
+        // Use TWidget's code to pass the event to the children.
+        super.onMouseDoubleClick(mouse);
+    }
+
+    /**
+     * Handle keystrokes.
+     *
+     * @param keypress keystroke event
+     */
+    @Override
+    public void onKeypress(final TKeypressEvent keypress) {
+        if (csvLoader != null) {
+            // The cells will be replaced when the load finishes, leave them
+            // alone until then.
+            return;
+        }
+
+        if (keypress.equals(kbTab)
+            || keypress.equals(kbShiftTab)
+        ) {
+            // Squash tab and back-tab.  They don't make sense in the TTable
+            // grid context.
+            return;
+        }
+
+        // If editing, pass to that cell and do nothing else.
+        if ((model != null) && editing) {
+            if (keypress.equals(kbEsc)) {
+                // ESC cancels the edit.
+                stopEdit();
+                return;
+            }
+            // Pass down to the editor first so that it can execute
+            // enterAction if specified.
+            super.onKeypress(keypress);
+            if (keypress.equals(kbEnter)) {
+                // Enter ends editing.
+                model.setValueAt(selectedColumn, selectedRow,
+                    editor.getText());
+                stopEdit();
+            }
+            return;
+        }
+        if ((model == null) && getSelectedCell().isEditing) {
+            super.onKeypress(keypress);
+            return;
+        }
+
+        if (keypress.equals(kbLeft)) {
+            // Left
+            if (selectedColumn > 0) {
+                selectedColumn--;
+            }
+            activateSelectedCell();
+        } else if (keypress.equals(kbRight)) {
+            // Right
+            if (selectedColumn < getColumnCount() - 1) {
+                selectedColumn++;
+            }
+            activateSelectedCell();
+        } else if (keypress.equals(kbUp)) {
+            // Up
+            if (selectedRow > 0) {
+                selectedRow--;
+            }
+            activateSelectedCell();
+        } else if (keypress.equals(kbDown)) {
+            // Down
+            if (selectedRow < getRowCount() - 1) {
+                selectedRow++;
+            }
+            activateSelectedCell();
+        } else if (keypress.equals(kbHome)) {
+            // Home - leftmost column
+            selectedColumn = 0;
+            activateSelectedCell();
+        } else if (keypress.equals(kbEnd)) {
+            // End - rightmost column
+            selectedColumn = getColumnCount() - 1;
+            activateSelectedCell();
+        } else if (keypress.equals(kbPgUp)) {
+            // PgUp - Treat like multiple up
+            for (int i = 0; i < getHeight() - 2; i++) {
+                if (selectedRow > 0) {
+                    selectedRow--;
+                }
+            }
+            activateSelectedCell();
+        } else if (keypress.equals(kbPgDn)) {
             // PgDn - Treat like multiple up
             for (int i = 0; i < getHeight() - 2; i++) {
-                if (selectedRow < rows.size() - 1) {
+                if (selectedRow < getRowCount() - 1) {
                     selectedRow++;
                 }
             }
-            activate(columns.get(selectedColumn).get(selectedRow));
+            activateSelectedCell();
         } else if (keypress.equals(kbCtrlHome)) {
             // Ctrl-Home - go to top-left
             selectedRow = 0;
             selectedColumn = 0;
-            activate(columns.get(selectedColumn).get(selectedRow));
-            activate(columns.get(selectedColumn).get(selectedRow));
+            activateSelectedCell();
         } else if (keypress.equals(kbCtrlEnd)) {
             // Ctrl-End - go to bottom-right
-            selectedRow = rows.size() - 1;
-            selectedColumn = columns.size() - 1;
-            activate(columns.get(selectedColumn).get(selectedRow));
-            activate(columns.get(selectedColumn).get(selectedRow));
+            selectedRow = getRowCount() - 1;
+            selectedColumn = getColumnCount() - 1;
+            activateSelectedCell();
+        } else if (model != null) {
+            if (keypress.equals(kbEnter) || keypress.equals(kbF2)) {
+                // Enter or F2 starts editing.
+                startEdit();
+            }
         } else {
             // Pass to the Cell.
             super.onKeypress(keypress);
@@ -840,10 +1453,10 @@ public class TTableWidget extends TWidget {
         // Column labels.
         if (showColumnLabels == true) {
             for (int i = left; i < columns.size(); i++) {
-                if (columns.get(i).get(top).isVisible() == false) {
+                if (!isColumnVisible(i)) {
                     break;
                 }
-                putStringXY(columns.get(i).get(top).getX(), 0,
+                putStringXY(columns.get(i).getX(), 0,
                     String.format(" %-" +
                         (columns.get(i).width - 2)
                         + "s ", columns.get(i).label),
@@ -853,12 +1466,12 @@ public class TTableWidget extends TWidget {
 
         // Row labels.
         if (showRowLabels == true) {
-            for (int i = top; i < rows.size(); i++) {
-                if (rows.get(i).get(left).isVisible() == false) {
+            for (int i = top; i < getRowCount(); i++) {
+                if (!isRowVisible(i)) {
                     break;
                 }
-                putStringXY(0, rows.get(i).get(left).getY(),
-                    String.format(" %-6s ", rows.get(i).label),
+                putStringXY(0, getRowY(i),
+                    String.format(" %-6s ", getRowLabel(i)),
                     (i == selectedRow ? labelColorSelected : labelColor));
             }
         }
@@ -871,7 +1484,7 @@ public class TTableWidget extends TWidget {
                 getHeight(), '\u2502', borderColor);
         }
         for (int i = left; i < columns.size(); i++) {
-            if (columns.get(i).get(top).isVisible() == false) {
+            if (!isColumnVisible(i)) {
                 break;
             }
             if (columns.get(i).rightBorder == Border.SINGLE) {
@@ -888,24 +1501,24 @@ public class TTableWidget extends TWidget {
                 (showColumnLabels ? COLUMN_LABEL_HEIGHT : 0),
                 getWidth(), '\u2500', borderColor);
         }
-        for (int i = top; i < rows.size(); i++) {
-            if (rows.get(i).get(left).isVisible() == false) {
+        for (int i = top; i < getRowCount(); i++) {
+            if (!isRowVisible(i)) {
                 break;
             }
-            if (rows.get(i).bottomBorder == Border.SINGLE) {
+            if (getRowBorder(i) == Border.SINGLE) {
                 hLineXY((leftBorder == Border.NONE ? 0 : 1) +
                         (showRowLabels ? ROW_LABEL_WIDTH : 0),
-                    rows.get(i).getY() + rows.get(i).height - 1,
+                    getRowY(i) + getRowHeight(i) - 1,
                     getWidth(), '\u2500', borderColor);
-            } else if (rows.get(i).bottomBorder == Border.DOUBLE) {
+            } else if (getRowBorder(i) == Border.DOUBLE) {
                 hLineXY((leftBorder == Border.NONE ? 0 : 1) +
                         (showRowLabels ? ROW_LABEL_WIDTH : 0),
-                    rows.get(i).getY() + rows.get(i).height - 1,
+                    getRowY(i) + getRowHeight(i) - 1,
                     getWidth(), '\u2550', borderColor);
-            } else if (rows.get(i).bottomBorder == Border.THICK) {
+            } else if (getRowBorder(i) == Border.THICK) {
                 hLineXY((leftBorder == Border.NONE ? 0 : 1) +
                         (showRowLabels ? ROW_LABEL_WIDTH : 0),
-                    rows.get(i).getY() + rows.get(i).height - 1,
+                    getRowY(i) + getRowHeight(i) - 1,
                     getWidth(), '\u2501', borderColor);
             }
         }
@@ -916,108 +1529,550 @@ public class TTableWidget extends TWidget {
                 '\u250c', borderColor);
         }
 
-        // Now draw the correct corners
-        for (int i = top; i < rows.size(); i++) {
-            if (rows.get(i).get(left).isVisible() == false) {
-                break;
-            }
-            for (int j = left; j < columns.size(); j++) {
-                if (columns.get(j).get(i).isVisible() == false) {
-                    break;
-                }
-                if ((i == top) && (topBorder == Border.SINGLE)
-                    && (columns.get(j).rightBorder == Border.SINGLE)
-                ) {
-                    // Top tee
-                    putCharXY(columns.get(j).getX() + columns.get(j).width,
-                        (showColumnLabels ? COLUMN_LABEL_HEIGHT : 0),
-                        '\u252c', borderColor);
-                }
-                if ((j == left) && (leftBorder == Border.SINGLE)
-                    && (rows.get(i).bottomBorder == Border.SINGLE)
-                ) {
-                    // Left tee
-                    putCharXY((showRowLabels ? ROW_LABEL_WIDTH : 0),
-                        rows.get(i).getY() + rows.get(i).height - 1,
-                        '\u251c', borderColor);
-                }
-                if ((columns.get(j).rightBorder == Border.SINGLE)
-                    && (rows.get(i).bottomBorder == Border.SINGLE)
-                ) {
-                    // Intersection of single bars
-                    putCharXY(columns.get(j).getX() + columns.get(j).width,
-                        rows.get(i).getY() + rows.get(i).height - 1,
-                        '\u253c', borderColor);
-                }
-                if ((j == left) && (leftBorder == Border.SINGLE)
-                    && (rows.get(i).bottomBorder == Border.DOUBLE)
-                ) {
-                    // Left tee: single bar vertical, double bar horizontal
-                    putCharXY((showRowLabels ? ROW_LABEL_WIDTH : 0),
-                        rows.get(i).getY() + rows.get(i).height - 1,
-                        '\u255e', borderColor);
-                }
-                if ((j == left) && (leftBorder == Border.SINGLE)
-                    && (rows.get(i).bottomBorder == Border.THICK)
-                ) {
-                    // Left tee: single bar vertical, thick bar horizontal
-                    putCharXY((showRowLabels ? ROW_LABEL_WIDTH : 0),
-                        rows.get(i).getY() + rows.get(i).height - 1,
-                        '\u251d', borderColor);
+        // Now draw the correct corners
+        for (int i = top; i < getRowCount(); i++) {
+            if (!isRowVisible(i)) {
+                break;
+            }
+            for (int j = left; j < columns.size(); j++) {
+                if (!isColumnVisible(j)) {
+                    break;
+                }
+                if ((i == top) && (topBorder == Border.SINGLE)
+                    && (columns.get(j).rightBorder == Border.SINGLE)
+                ) {
+                    // Top tee
+                    putCharXY(columns.get(j).getX() + columns.get(j).width,
+                        (showColumnLabels ? COLUMN_LABEL_HEIGHT : 0),
+                        '\u252c', borderColor);
+                }
+                if ((j == left) && (leftBorder == Border.SINGLE)
+                    && (getRowBorder(i) == Border.SINGLE)
+                ) {
+                    // Left tee
+                    putCharXY((showRowLabels ? ROW_LABEL_WIDTH : 0),
+                        getRowY(i) + getRowHeight(i) - 1,
+                        '\u251c', borderColor);
+                }
+                if ((columns.get(j).rightBorder == Border.SINGLE)
+                    && (getRowBorder(i) == Border.SINGLE)
+                ) {
+                    // Intersection of single bars
+                    putCharXY(columns.get(j).getX() + columns.get(j).width,
+                        getRowY(i) + getRowHeight(i) - 1,
+                        '\u253c', borderColor);
+                }
+                if ((j == left) && (leftBorder == Border.SINGLE)
+                    && (getRowBorder(i) == Border.DOUBLE)
+                ) {
+                    // Left tee: single bar vertical, double bar horizontal
+                    putCharXY((showRowLabels ? ROW_LABEL_WIDTH : 0),
+                        getRowY(i) + getRowHeight(i) - 1,
+                        '\u255e', borderColor);
+                }
+                if ((j == left) && (leftBorder == Border.SINGLE)
+                    && (getRowBorder(i) == Border.THICK)
+                ) {
+                    // Left tee: single bar vertical, thick bar horizontal
+                    putCharXY((showRowLabels ? ROW_LABEL_WIDTH : 0),
+                        getRowY(i) + getRowHeight(i) - 1,
+                        '\u251d', borderColor);
+                }
+                if ((columns.get(j).rightBorder == Border.SINGLE)
+                    && (getRowBorder(i) == Border.DOUBLE)
+                ) {
+                    // Intersection: single bar vertical, double bar
+                    // horizontal
+                    putCharXY(columns.get(j).getX() + columns.get(j).width,
+                        getRowY(i) + getRowHeight(i) - 1,
+                        '\u256a', borderColor);
+                }
+                if ((columns.get(j).rightBorder == Border.SINGLE)
+                    && (getRowBorder(i) == Border.THICK)
+                ) {
+                    // Intersection: single bar vertical, thick bar
+                    // horizontal
+                    putCharXY(columns.get(j).getX() + columns.get(j).width,
+                        getRowY(i) + getRowHeight(i) - 1,
+                        '\u253f', borderColor);
+                }
+            }
+        }
+
+        if (model != null) {
+            drawCells();
+        }
+
+        // Now draw the window borders.
+        super.draw();
+    }
+
+    /**
+     * Add a child widget to my list of children.  While addCsvRows() is
+     * adding cells, the child is only appended, rather than renumbering
+     * all of the cells for each one.
+     *
+     * @param child TWidget to add
+     */
+    @Override
+    public void addChild(final TWidget child) {
+        if (addingCells && (getLayoutManager() == null)) {
+            getChildren().add(child);
+            return;
+        }
+        super.addChild(child);
+    }
+
+    // ------------------------------------------------------------------------
+    // TTable -----------------------------------------------------------------
+    // ------------------------------------------------------------------------
+
+    /**
+     * Generate the default letter name for a column number.
+     *
+     * @param col column number to use for this column.  Column 0 will be
+     * "A", column 1 will be "B", column 26 will be "AA", and so on.
+     */
+    private String makeColumnLabel(int col) {
+        StringBuilder sb = new StringBuilder();
+        for (;;) {
+            sb.append((char) ('A' + (col % 26)));
+            if (col < 26) {
+                break;
+            }
+            col /= 26;
+        }
+        return sb.reverse().toString();
+    }
+
+    /**
+     * Get the model of a table in grid mode.
+     *
+     * @return the model, or null if the cells are widgets
+     */
+    public Model getModel() {
+        return model;
+    }
+
+    /**
+     * Switch the table to grid mode, showing the cells of a model.  Any
+     * cell widgets are removed, and the column labels, widths, borders,
+     * read-only flags, and cell actions start over.
+     *
+     * @param model the cells
+     */
+    public void setModel(final Model model) {
+        if (model.getColumnCount() < 1) {
+            throw new IllegalArgumentException("Column count cannot be less " +
+                "than 1");
+        }
+
+        for (Row row: rows) {
+            for (Cell cell: row.cells) {
+                getChildren().remove(cell);
+            }
+        }
+        rows.clear();
+        columns.clear();
+        for (int i = 0; i < model.getColumnCount(); i++) {
+            columns.add(new Column(i));
+        }
+        this.model = model;
+        rowBorders = new Border[0];
+        rowLabels.clear();
+        readOnlyRows.clear();
+        topBorder = Border.NONE;
+        leftBorder = Border.NONE;
+
+        if (editor == null) {
+            editor = addField(0, 0, COLUMN_DEFAULT_WIDTH, false);
+        }
+        stopEdit();
+
+        top = 0;
+        left = 0;
+        selectedRow = 0;
+        selectedColumn = 0;
+        alignGrid();
+    }
+
+    /**
+     * Activate the widget of the selected cell.  In grid mode there is
+     * nothing to activate, but an edit in progress is cancelled.
+     */
+    private void activateSelectedCell() {
+        if (model != null) {
+            stopEdit();
+            return;
+        }
+        activate(columns.get(selectedColumn).get(selectedRow));
+    }
+
+    /**
+     * Check if a column is visible.
+     *
+     * @param column the column number
+     * @return true if the column is between left and right
+     */
+    private boolean isColumnVisible(final int column) {
+        return ((column >= left) && (column <= right));
+    }
+
+    /**
+     * Check if a row is visible.
+     *
+     * @param row the row number
+     * @return true if the row is between top and bottom
+     */
+    private boolean isRowVisible(final int row) {
+        return ((row >= top) && (row <= bottom));
+    }
+
+    /**
+     * Get the Y position of a visible row.
+     *
+     * @param row the row number
+     * @return the position
+     */
+    private int getRowY(final int row) {
+        if (model != null) {
+            return rowY[row - top];
+        }
+        return rows.get(row).getY();
+    }
+
+    /**
+     * Get the height of a row.
+     *
+     * @param row the row number
+     * @return 1, or 2 if the row has a bottom border
+     */
+    private int getRowHeight(final int row) {
+        if (model != null) {
+            return (getRowBorder(row) == Border.NONE ? 1 : 2);
+        }
+        return rows.get(row).height;
+    }
+
+    /**
+     * Get the bottom border of a row.
+     *
+     * @param row the row number
+     * @return the border
+     */
+    private Border getRowBorder(final int row) {
+        if (model != null) {
+            if ((row >= rowBorders.length) || (rowBorders[row] == null)) {
+                return Border.NONE;
+            }
+            return rowBorders[row];
+        }
+        return rows.get(row).bottomBorder;
+    }
+
+    /**
+     * Set the bottom border of a row.  The row is two cells high if it
+     * has a border.
+     *
+     * @param row the row number
+     * @param border the border
+     */
+    private void setRowBorder(final int row, final Border border) {
+        if (model != null) {
+            if (row >= rowBorders.length) {
+                if (border == Border.NONE) {
+                    return;
+                }
+                rowBorders = Arrays.copyOf(rowBorders,
+                    Math.max(row + 1, model.getRowCount()));
+            }
+            rowBorders[row] = border;
+            return;
+        }
+        rows.get(row).bottomBorder = border;
+        rows.get(row).height = (border == Border.NONE ? 1 : 2);
+    }
+
+    /**
+     * Move the borders, labels, read-only flags, and actions of the rows in
+     * grid mode after a row was inserted or deleted.
+     *
+     * @param row the row that was inserted or deleted
+     * @param delta 1 if the row was inserted, -1 if it was deleted
+     */
+    private void shiftRows(final int row, final int delta) {
+        if (row < rowBorders.length) {
+            Border [] newBorders = new Border[rowBorders.length + delta];
+            System.arraycopy(rowBorders, 0, newBorders, 0, row);
+            if (delta > 0) {
+                System.arraycopy(rowBorders, row, newBorders, row + 1,
+                    rowBorders.length - row);
+            } else {
+                System.arraycopy(rowBorders, row + 1, newBorders, row,
+                    rowBorders.length - row - 1);
+            }
+            rowBorders = newBorders;
+        }
+
+        Map<Integer, String> newLabels = new HashMap<Integer, String>();
+        for (Map.Entry<Integer, String> entry: rowLabels.entrySet()) {
+            int i = entry.getKey();
+            if (i < row) {
+                newLabels.put(i, entry.getValue());
+            } else if ((delta > 0) || (i > row)) {
+                newLabels.put(i + delta, entry.getValue());
+            }
+        }
+        rowLabels = newLabels;
+
+        Set<Integer> newReadOnlyRows = new HashSet<Integer>();
+        for (Integer i: readOnlyRows) {
+            if (i < row) {
+                newReadOnlyRows.add(i);
+            } else if ((delta > 0) || (i > row)) {
+                newReadOnlyRows.add(i + delta);
+            }
+        }
+        readOnlyRows = newReadOnlyRows;
+
+        for (Column column: columns) {
+            Map<Integer, GridCell> newCells = new HashMap<Integer, GridCell>();
+            for (Map.Entry<Integer, GridCell> entry:
+                     column.gridCells.entrySet()) {
+
+                int i = entry.getKey();
+                if (i < row) {
+                    newCells.put(i, entry.getValue());
+                } else if ((delta > 0) || (i > row)) {
+                    newCells.put(i + delta, entry.getValue());
+                }
+            }
+            column.gridCells = newCells;
+            if ((delta > 0) && column.readOnly) {
+                // A new Cell widget would be editable.
+                getGridCell(column, row).readOnly = false;
+            }
+        }
+    }
+
+    /**
+     * Get what was set on a single cell in grid mode, creating it if
+     * needed.
+     *
+     * @param column the cell column
+     * @param row the cell row
+     * @return the cell settings
+     */
+    private GridCell getGridCell(final Column column, final int row) {
+        GridCell cell = column.gridCells.get(row);
+        if (cell == null) {
+            cell = new GridCell();
+            column.gridCells.put(row, cell);
+        }
+        return cell;
+    }
+
+    /**
+     * Check if a cell was set read-only in grid mode.
+     *
+     * @param column the cell column
+     * @param row the cell row
+     * @return true if the cell, its row, or its column were set read-only
+     * last
+     */
+    private boolean isGridCellReadOnly(final int column, final int row) {
+        GridCell cell = columns.get(column).gridCells.get(row);
+        if ((cell != null) && (cell.readOnly != null)) {
+            return cell.readOnly;
+        }
+        return (columns.get(column).readOnly || readOnlyRows.contains(row));
+    }
+
+    /**
+     * Make the cells of a column inserted in grid mode editable, like new
+     * Cell widgets would be, even in rows that were set read-only.
+     *
+     * @param column the new column
+     */
+    private void addGridColumn(final Column column) {
+        for (Integer row: readOnlyRows) {
+            getGridCell(column, row).readOnly = false;
+        }
+    }
+
+    /**
+     * Align the rows in grid mode so that the selected row is visible, and
+     * place the visible rows.
+     *
+     * @param viewRows the number of rows available to view the cells
+     */
+    private void alignRows(final int viewRows) {
+        // Push top down until the selected row starts inside the view.
+        int height = 0;
+        for (int y = selectedRow - 1; y >= top; y--) {
+            height += getRowHeight(y);
+            if (height >= viewRows) {
+                top = y + 1;
+                break;
+            }
+        }
+
+        int topCellY = (showColumnLabels ? COLUMN_LABEL_HEIGHT : 0);
+        if (topBorder != Border.NONE) {
+            topCellY++;
+        }
+        int maxCellY = topCellY + viewRows;
+        int rowCount = model.getRowCount();
+        bottom = top - 1;
+        int [] newRowY = new int[Math.max(viewRows, 1)];
+        for (int y = top; (y < rowCount) && (topCellY < maxCellY); y++) {
+            newRowY[y - top] = topCellY;
+            topCellY += getRowHeight(y);
+            bottom = y;
+        }
+        rowY = newRowY;
+
+        if (editing) {
+            placeEditor();
+        }
+    }
+
+    /**
+     * Select the cell at a position in grid mode.
+     *
+     * @param x column relative to this widget
+     * @param y row relative to this widget
+     * @return true if there is a cell there
+     */
+    private boolean selectCellAt(final int x, final int y) {
+        for (int i = top; i <= bottom; i++) {
+            if (getRowY(i) != y) {
+                continue;
+            }
+            for (int j = left; j <= right; j++) {
+                Column column = columns.get(j);
+                if ((x >= column.getX()) && (x < column.getX() + column.width)) {
+                    if ((i != selectedRow) || (j != selectedColumn)) {
+                        stopEdit();
+                    }
+                    selectedRow = i;
+                    selectedColumn = j;
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Start editing the selected cell in grid mode.
+     */
+    private void startEdit() {
+        if ((selectedRow >= model.getRowCount())
+            || !model.isCellEditable(selectedColumn, selectedRow)
+            || isGridCellReadOnly(selectedColumn, selectedRow)
+        ) {
+            return;
+        }
+        GridCell cell = columns.get(selectedColumn).gridCells.get(selectedRow);
+        editor.setEnterAction(cell == null ? null : cell.enterAction);
+        editor.setUpdateAction(cell == null ? null : cell.updateAction);
+        editor.setText(model.getValueAt(selectedColumn, selectedRow));
+        editing = true;
+        placeEditor();
+        editor.setEnabled(true);
+        editor.setVisible(true);
+        activate(editor);
+    }
+
+    /**
+     * Place the editor over the selected cell in grid mode.
+     */
+    private void placeEditor() {
+        if (!isRowVisible(selectedRow) || !isColumnVisible(selectedColumn)) {
+            stopEdit();
+            return;
+        }
+        editor.setX(columns.get(selectedColumn).getX());
+        editor.setY(getRowY(selectedRow));
+        editor.setWidth(columns.get(selectedColumn).width);
+    }
+
+    /**
+     * Stop editing in grid mode, without changing the cell.
+     */
+    private void stopEdit() {
+        editing = false;
+        editor.setEnabled(false);
+        editor.setVisible(false);
+    }
+
+    /**
+     * Draw the visible cells in grid mode.
+     */
+    private void drawCells() {
+        CellAttributes selectedColor = getTheme().getColor("ttable.selected");
+        CellAttributes activeColor = getTheme().getColor("ttable.active");
+        CellAttributes inactiveColor = getTheme().getColor("ttable.inactive");
+
+        for (int i = top; i <= bottom; i++) {
+            for (int j = left; j <= right; j++) {
+                if (editing && (i == selectedRow) && (j == selectedColumn)) {
+                    // The editor draws this one.
+                    continue;
                 }
-                if ((columns.get(j).rightBorder == Border.SINGLE)
-                    && (rows.get(i).bottomBorder == Border.DOUBLE)
+                CellAttributes color = inactiveColor;
+                if ((i == selectedRow) && (j == selectedColumn)
+                    && isAbsoluteActive()
                 ) {
-                    // Intersection: single bar vertical, double bar
-                    // horizontal
-                    putCharXY(columns.get(j).getX() + columns.get(j).width,
-                        rows.get(i).getY() + rows.get(i).height - 1,
-                        '\u256a', borderColor);
-                }
-                if ((columns.get(j).rightBorder == Border.SINGLE)
-                    && (rows.get(i).bottomBorder == Border.THICK)
+                    color = selectedColor;
+                } else if (((j == selectedColumn)
+                        && ((i == selectedRow) || highlightColumn))
+                    || ((i == selectedRow) && highlightRow)
                 ) {
-                    // Intersection: single bar vertical, thick bar
-                    // horizontal
-                    putCharXY(columns.get(j).getX() + columns.get(j).width,
-                        rows.get(i).getY() + rows.get(i).height - 1,
-                        '\u253f', borderColor);
+                    color = activeColor;
                 }
+                drawCell(columns.get(j).getX(), getRowY(i),
+                    columns.get(j).width, model.getValueAt(j, i), color);
             }
         }
-
-        // Now draw the window borders.
-        super.draw();
     }
 
-    // ------------------------------------------------------------------------
-    // TTable -----------------------------------------------------------------
-    // ------------------------------------------------------------------------
-
     /**
-     * Generate the default letter name for a column number.
+     * Draw the text of one cell, cut to the width of the cell.
      *
-     * @param col column number to use for this column.  Column 0 will be
-     * "A", column 1 will be "B", column 26 will be "AA", and so on.
-     */
-    private String makeColumnLabel(int col) {
-        StringBuilder sb = new StringBuilder();
-        for (;;) {
-            sb.append((char) ('A' + (col % 26)));
-            if (col < 26) {
+     * @param x column relative to this widget
+     * @param y row relative to this widget
+     * @param width the width of the cell
+     * @param text the text of the cell
+     * @param color the color of the cell
+     */
+    private void drawCell(final int x, final int y, final int width,
+        final String text, final CellAttributes color) {
+
+        hLineXY(x, y, width, ' ', color);
+        int cellX = 0;
+        for (int i = 0; i < text.length(); ) {
+            int ch = text.codePointAt(i);
+            int chWidth = StringUtils.width(ch);
+            if (cellX + chWidth > width) {
                 break;
             }
-            col /= 26;
+            putCharXY(x + cellX, y, ch, color);
+            cellX += chWidth;
+            i += Character.charCount(ch);
         }
-        return sb.reverse().toString();
     }
 
     /**
      * Get the currently-selected cell.
      *
-     * @return the selected cell
+     * @return the selected cell, or null in grid mode
      */
     public Cell getSelectedCell() {
+        if (model != null) {
+            return null;
+        }
         assert (rows.get(selectedRow) != null);
         assert (rows.get(selectedRow).get(selectedColumn) != null);
         assert (columns.get(selectedColumn) != null);
@@ -1043,9 +2098,12 @@ public class TTableWidget extends TWidget {
     /**
      * Get the currently-selected row.
      *
-     * @return the selected row
+     * @return the selected row, or null in grid mode
      */
     public Row getSelectedRow() {
+        if (model != null) {
+            return null;
+        }
         assert (selectedRow >= 0);
         assert (rows.size() > selectedRow);
         assert (rows.get(selectedRow) != null);
@@ -1067,12 +2125,12 @@ public class TTableWidget extends TWidget {
      * @param column the column number to select
      */
     public void setSelectedColumnNumber(final int column) {
-        if ((column < 0) || (column > columns.size() - 1)) {
+        if ((column < 0) || (column > getColumnCount() - 1)) {
             throw new IndexOutOfBoundsException("Column count is " +
-                columns.size() + ", requested index " + column);
+                getColumnCount() + ", requested index " + column);
         }
         selectedColumn = column;
-        activate(columns.get(selectedColumn).get(selectedRow));
+        activateSelectedCell();
         alignGrid();
     }
 
@@ -1091,12 +2149,12 @@ public class TTableWidget extends TWidget {
      * @param row the row number to select
      */
     public void setSelectedRowNumber(final int row) {
-        if ((row < 0) || (row > rows.size() - 1)) {
+        if ((row < 0) || (row > getRowCount() - 1)) {
             throw new IndexOutOfBoundsException("Row count is " +
-                rows.size() + ", requested index " + row);
+                getRowCount() + ", requested index " + row);
         }
         selectedRow = row;
-        activate(columns.get(selectedColumn).get(selectedRow));
+        activateSelectedCell();
         alignGrid();
     }
 
@@ -1187,6 +2245,9 @@ public class TTableWidget extends TWidget {
      * @return the number of rows
      */
     public int getRowCount() {
+        if (model != null) {
+            return model.getRowCount();
+        }
         return rows.size();
     }
 
@@ -1202,7 +2263,7 @@ public class TTableWidget extends TWidget {
         }
 
         // Set left and top such that the table stays on screen if possible.
-        top = rows.size() - getHeight();
+        top = getRowCount() - getHeight();
         left = columns.size() - (getWidth() / (viewColumns / (COLUMN_DEFAULT_WIDTH + 1)));
         // Now ensure the selection is visible.
         alignGrid();
@@ -1233,6 +2294,12 @@ public class TTableWidget extends TWidget {
             viewRows--;
         }
 
+        if (model != null) {
+            // The model might have fewer rows than it used to.
+            selectedRow = Math.max(0, Math.min(selectedRow,
+                    model.getRowCount() - 1));
+        }
+
         // If we pushed left or right, adjust the box to include the new
         // selected cell.
         if (selectedColumn < left) {
@@ -1257,7 +2324,7 @@ public class TTableWidget extends TWidget {
          *
          * We need to calculate right and bottom now.
          */
-        int right = left;
+        right = left;
 
         boolean done = false;
         while (!done) {
@@ -1301,6 +2368,9 @@ public class TTableWidget extends TWidget {
             }
 
         } // while (!done)
+        if (right > columns.size() - 1) {
+            right = columns.size() - 1;
+        }
 
         // We have the left/right range correct, set cell visibility and
         // column X positions.
@@ -1323,7 +2393,12 @@ public class TTableWidget extends TWidget {
             leftCellX += columns.get(x).width + 1;
         }
 
-        int bottom = top;
+        if (model != null) {
+            alignRows(viewRows);
+            return;
+        }
+
+        bottom = top;
 
         done = false;
         while (!done) {
@@ -1383,62 +2458,186 @@ public class TTableWidget extends TWidget {
     }
 
     /**
-     * Load contents from file in CSV format.
+     * Load contents from file in CSV format.  The first line replaces the
+     * first row, the other lines are appended after the last row, and
+     * columns are added as needed.  The borders and labels are kept.
      *
      * @param csvFile a File referencing the CSV data
      * @throws IOException if a java.io operation throws
      */
     public void loadCsvFile(final File csvFile) throws IOException {
-        BufferedReader reader = null;
+        cancelLoad();
+        CsvLoader loader = new CsvLoader(csvFile);
+        try {
+            loader.read();
+        } finally {
+            loader.close();
+        }
+        addCsvRows(loader.result);
+
+        left = 0;
+        top = 0;
+        selectedRow = 0;
+        selectedColumn = 0;
+        alignGrid();
+        activateSelectedCell();
+    }
 
+    /**
+     * Load contents from file in CSV format into a new ArrayModel, and
+     * switch the table to grid mode.  This is much faster than
+     * loadCsvFile() for large files, but everything that was set on the
+     * table starts over, see setModel().
+     *
+     * @param csvFile a File referencing the CSV data
+     * @throws IOException if a java.io operation throws
+     */
+    public void loadCsvGrid(final File csvFile) throws IOException {
+        cancelLoad();
+        CsvLoader loader = new CsvLoader(csvFile);
         try {
-            reader = new BufferedReader(new FileReader(csvFile));
+            loader.read();
+        } finally {
+            loader.close();
+        }
+        setCsvModel(loader.result);
+    }
 
-            String line = null;
-            boolean first = true;
-            for (line = reader.readLine(); line != null;
-                 line = reader.readLine()) {
+    /**
+     * Load contents from file in CSV format into a new ArrayModel on a
+     * background thread, like loadCsvGrid().  The file is opened on the
+     * calling thread, so that a missing file is reported right away.  The
+     * table is left alone while the file is read, and switched to grid
+     * mode with all of its cells at once when it is done.
+     *
+     * @param csvFile a File referencing the CSV data
+     * @param action the action to call on the application thread when the
+     * load is done or has failed, see getLoadError()
+     * @throws IOException if a java.io operation throws
+     */
+    public void startLoadCsvGrid(final File csvFile,
+        final TAction action) throws IOException {
 
-                List<String> list = StringUtils.fromCsv(line);
-                if (list.size() == 0) {
-                    continue;
-                }
+        cancelLoad();
+        loadError = null;
+        csvLoader = new CsvLoader(csvFile);
+        csvLoader.action = action;
+        csvLoader.start();
+    }
+
+    /**
+     * Show the cells read from a CSV file in grid mode.
+     *
+     * @param csv the cells
+     */
+    private void setCsvModel(final ArrayModel csv) {
+        if (csv.getRowCount() == 0) {
+            // Keep one empty row, like a new table has.
+            csv.addRow(new String[0]);
+        }
+        setModel(csv);
+    }
+
+    /**
+     * Put the cells read from a CSV file in the table: the first row
+     * replaces the first row, and the other rows are appended after the
+     * last row.  The new Cell widgets are all created before the table is
+     * aligned.
+     *
+     * @param csv the cells
+     */
+    private void addCsvRows(final ArrayModel csv) {
+        if (csv.getRowCount() == 0) {
+            return;
+        }
+        while (columns.size() < csv.getColumnCount()) {
+            insertColumnRight(columns.size() - 1);
+        }
+
+        String [] values = csv.data.get(0);
+        for (int i = 0; i < values.length; i++) {
+            setCellText(i, 0, values[i]);
+        }
 
-                if (list.size() > columns.size()) {
-                    int n = list.size() - columns.size();
-                    for (int i = 0; i < n; i++) {
-                        selectedColumn = columns.size() - 1;
-                        insertColumnRight(selectedColumn);
+        Cell lastCell = null;
+        addingCells = true;
+        try {
+            for (int i = 1; i < csv.getRowCount(); i++) {
+                values = csv.data.get(i);
+                if (model != null) {
+                    int idx = model.getRowCount();
+                    model.insertRow(idx);
+                    shiftRows(idx, 1);
+                    for (int j = 0; j < values.length; j++) {
+                        model.setValueAt(j, idx, values[j]);
                     }
+                    continue;
                 }
-                assert (list.size() == columns.size());
 
-                if (first) {
-                    // First row: just replace what is here.
-                    selectedRow = 0;
-                    first = false;
-                } else {
-                    // All other rows: append to the end.
-                    selectedRow = rows.size() - 1;
-                    insertRowBelow(selectedRow);
-                    selectedRow = rows.size() - 1;
-                }
-                for (int i = 0; i < list.size(); i++) {
-                    rows.get(selectedRow).get(i).setText(list.get(i));
+                int idx = rows.size();
+                Row newRow = new Row(idx);
+                for (int j = 0; j < columns.size(); j++) {
+                    Cell cell = new Cell(this, columns.get(j).getX(),
+                        rows.get(idx - 1).getY(), COLUMN_DEFAULT_WIDTH, 1, j,
+                        idx);
+                    if (j < values.length) {
+                        cell.setText(values[j]);
+                    }
+                    newRow.add(cell);
+                    columns.get(j).add(cell);
+                    lastCell = cell;
                 }
+                rows.add(newRow);
             }
         } finally {
-            if (reader != null) {
-                reader.close();
-            }
+            addingCells = false;
+        }
+        if (lastCell != null) {
+            // The same as adding them one at a time with addChild().
+            resetTabOrder();
+            activate(lastCell);
         }
+    }
 
-        left = 0;
-        top = 0;
-        selectedRow = 0;
-        selectedColumn = 0;
-        alignGrid();
-        activate(columns.get(selectedColumn).get(selectedRow));
+    /**
+     * Stop a background load.  The table keeps its current contents.
+     */
+    public void cancelLoad() {
+        if (csvLoader != null) {
+            csvLoader.cancel();
+            csvLoader = null;
+        }
+    }
+
+    /**
+     * Get the state of a background load.
+     *
+     * @return true if a CSV file is being read in the background
+     */
+    public boolean isLoading() {
+        return (csvLoader != null);
+    }
+
+    /**
+     * Get the progress of a background load.
+     *
+     * @return the percentage of the file read so far, or 100 if nothing is
+     * being read
+     */
+    public int getLoadProgress() {
+        if (csvLoader == null) {
+            return 100;
+        }
+        return csvLoader.getProgress();
+    }
+
+    /**
+     * Get the error that stopped the last background load.
+     *
+     * @return the error, or null if the load succeeded
+     */
+    public IOException getLoadError() {
+        return loadError;
     }
 
     /**
@@ -1452,14 +2651,7 @@ public class TTableWidget extends TWidget {
 
         try {
             writer = new BufferedWriter(new FileWriter(filename));
-            for (Row row: rows) {
-                List<String> list = new ArrayList<String>(row.cells.size());
-                for (Cell cell: row.cells) {
-                    list.add(cell.getText());
-                }
-                writer.write(StringUtils.toCsv(list));
-                writer.write("\n");
-            }
+            writeCsv(writer);
         } finally {
             if (writer != null) {
                 writer.close();
@@ -1467,6 +2659,58 @@ public class TTableWidget extends TWidget {
         }
     }
 
+    /**
+     * Write contents in CSV format.  Cells are written one at a time as
+     * they are read from the table.
+     *
+     * @param writer the writer to write to
+     * @throws IOException if a java.io operation throws
+     */
+    public void writeCsv(final Writer writer) throws IOException {
+        int rowCount = getRowCount();
+        int columnCount = columns.size();
+        for (int i = 0; i < rowCount; i++) {
+            for (int j = 0; j < columnCount; j++) {
+                if (j > 0) {
+                    writer.write(',');
+                }
+                writeCsvField(writer, getCellText(j, i));
+            }
+            writer.write('\n');
+        }
+    }
+
+    /**
+     * Write one RFC4180 CSV field, quoted the same way as
+     * StringUtils.toCsv().
+     *
+     * @param writer the writer to write to
+     * @param str the field value
+     * @throws IOException if a java.io operation throws
+     */
+    private void writeCsvField(final Writer writer,
+        final String str) throws IOException {
+
+        boolean hasQuote = (str.indexOf('"') != -1);
+        if (!hasQuote && (str.indexOf(',') == -1)) {
+            writer.write(str);
+            return;
+        }
+        writer.write('"');
+        if (hasQuote) {
+            for (int i = 0; i < str.length(); i++) {
+                char ch = str.charAt(i);
+                writer.write(ch);
+                if (ch == '"') {
+                    writer.write('"');
+                }
+            }
+        } else {
+            writer.write(str);
+        }
+        writer.write('"');
+    }
+
     /**
      * Save contents to file in text format with lines.
      *
@@ -1485,8 +2729,7 @@ public class TTableWidget extends TWidget {
             }
 
             if (topBorder == Border.SINGLE) {
-                int cellI = 0;
-                for (Cell cell: rows.get(0).cells) {
+                for (int cellI = 0; cellI < columns.size(); cellI++) {
                     for (int i = 0; i < columns.get(cellI).width; i++) {
                         writer.write("\u2500");
                     }
@@ -1500,185 +2743,184 @@ public class TTableWidget extends TWidget {
                             writer.write("\u2510");
                         }
                     }
-                    cellI++;
                 }
             }
             writer.write("\n");
 
-            int rowI = 0;
-            for (Row row: rows) {
+            for (int rowI = 0; rowI < getRowCount(); rowI++) {
+                Border bottomBorder = getRowBorder(rowI);
 
                 if (leftBorder == Border.SINGLE) {
                     // Emit left border.
                     writer.write("\u2502");
                 }
 
-                int cellI = 0;
-                for (Cell cell: row.cells) {
-                    writer.write(String.format("%" +
-                            columns.get(cellI).width + "s", cell.getText()));
+                for (int cellI = 0; cellI < columns.size(); cellI++) {
+                    // Right-align the text, as String.format("%Ns") would.
+                    String text = getCellText(cellI, rowI);
+                    for (int i = text.length(); i < columns.get(cellI).width;
+                         i++) {
+                        writer.write(' ');
+                    }
+                    writer.write(text);
 
                     if (columns.get(cellI).rightBorder == Border.SINGLE) {
                         // Emit right border.
                         writer.write("\u2502");
                     }
-                    cellI++;
                 }
                 writer.write("\n");
 
-                if (row.bottomBorder == Border.NONE) {
+                if (bottomBorder == Border.NONE) {
                     // All done, move on to the next row.
                     continue;
                 }
 
                 // Emit the bottom borders and intersections.
                 if ((leftBorder == Border.SINGLE)
-                    && (row.bottomBorder != Border.NONE)
+                    && (bottomBorder != Border.NONE)
                 ) {
-                    if (rowI < rows.size() - 1) {
-                        if (row.bottomBorder == Border.SINGLE) {
+                    if (rowI < getRowCount() - 1) {
+                        if (bottomBorder == Border.SINGLE) {
                             // Emit left tee.
                             writer.write("\u251c");
-                        } else if (row.bottomBorder == Border.DOUBLE) {
+                        } else if (bottomBorder == Border.DOUBLE) {
                             // Emit left tee (double).
                             writer.write("\u255e");
-                        } else if (row.bottomBorder == Border.THICK) {
+                        } else if (bottomBorder == Border.THICK) {
                             // Emit left tee (thick).
                             writer.write("\u251d");
                         }
                     }
 
-                    if (rowI == rows.size() - 1) {
-                        if (row.bottomBorder == Border.SINGLE) {
+                    if (rowI == getRowCount() - 1) {
+                        if (bottomBorder == Border.SINGLE) {
                             // Emit left bottom corner.
                             writer.write("\u2514");
-                        } else if (row.bottomBorder == Border.DOUBLE) {
+                        } else if (bottomBorder == Border.DOUBLE) {
                             // Emit left bottom corner (double).
                             writer.write("\u2558");
-                        } else if (row.bottomBorder == Border.THICK) {
+                        } else if (bottomBorder == Border.THICK) {
                             // Emit left bottom corner (thick).
                             writer.write("\u2515");
                         }
                     }
                 }
 
-                cellI = 0;
-                for (Cell cell: row.cells) {
+                for (int cellI = 0; cellI < columns.size(); cellI++) {
 
                     for (int i = 0; i < columns.get(cellI).width; i++) {
-                        if (row.bottomBorder == Border.SINGLE) {
+                        if (bottomBorder == Border.SINGLE) {
                             writer.write("\u2500");
                         }
-                        if (row.bottomBorder == Border.DOUBLE) {
+                        if (bottomBorder == Border.DOUBLE) {
                             writer.write("\u2550");
                         }
-                        if (row.bottomBorder == Border.THICK) {
+                        if (bottomBorder == Border.THICK) {
                             writer.write("\u2501");
                         }
                     }
 
-                    if ((rowI < rows.size() - 1)
+                    if ((rowI < getRowCount() - 1)
                         && (cellI == columns.size() - 1)
-                        && (row.bottomBorder == Border.SINGLE)
+                        && (bottomBorder == Border.SINGLE)
                         && (columns.get(cellI).rightBorder == Border.SINGLE)
                     ) {
                         // Emit right tee.
                         writer.write("\u2524");
                     }
-                    if ((rowI < rows.size() - 1)
+                    if ((rowI < getRowCount() - 1)
                         && (cellI == columns.size() - 1)
-                        && (row.bottomBorder == Border.DOUBLE)
+                        && (bottomBorder == Border.DOUBLE)
                         && (columns.get(cellI).rightBorder == Border.SINGLE)
                     ) {
                         // Emit right tee (double).
                         writer.write("\u2561");
                     }
-                    if ((rowI < rows.size() - 1)
+                    if ((rowI < getRowCount() - 1)
                         && (cellI == columns.size() - 1)
-                        && (row.bottomBorder == Border.THICK)
+                        && (bottomBorder == Border.THICK)
                         && (columns.get(cellI).rightBorder == Border.SINGLE)
                     ) {
                         // Emit right tee (thick).
                         writer.write("\u2525");
                     }
-                    if ((rowI == rows.size() - 1)
+                    if ((rowI == getRowCount() - 1)
                         && (cellI == columns.size() - 1)
-                        && (row.bottomBorder == Border.SINGLE)
+                        && (bottomBorder == Border.SINGLE)
                         && (columns.get(cellI).rightBorder == Border.SINGLE)
                     ) {
                         // Emit right bottom corner.
                         writer.write("\u2518");
                     }
-                    if ((rowI == rows.size() - 1)
+                    if ((rowI == getRowCount() - 1)
                         && (cellI == columns.size() - 1)
-                        && (row.bottomBorder == Border.DOUBLE)
+                        && (bottomBorder == Border.DOUBLE)
                         && (columns.get(cellI).rightBorder == Border.SINGLE)
                     ) {
                         // Emit right bottom corner (double).
                         writer.write("\u255b");
                     }
-                    if ((rowI == rows.size() - 1)
+                    if ((rowI == getRowCount() - 1)
                         && (cellI == columns.size() - 1)
-                        && (row.bottomBorder == Border.THICK)
+                        && (bottomBorder == Border.THICK)
                         && (columns.get(cellI).rightBorder == Border.SINGLE)
                     ) {
                         // Emit right bottom corner (thick).
                         writer.write("\u2519");
                     }
-                    if ((rowI < rows.size() - 1)
+                    if ((rowI < getRowCount() - 1)
                         && (cellI < columns.size() - 1)
-                        && (row.bottomBorder == Border.SINGLE)
+                        && (bottomBorder == Border.SINGLE)
                         && (columns.get(cellI).rightBorder == Border.SINGLE)
                     ) {
                         // Emit intersection.
                         writer.write("\u253c");
                     }
-                    if ((rowI < rows.size() - 1)
+                    if ((rowI < getRowCount() - 1)
                         && (cellI < columns.size() - 1)
-                        && (row.bottomBorder == Border.DOUBLE)
+                        && (bottomBorder == Border.DOUBLE)
                         && (columns.get(cellI).rightBorder == Border.SINGLE)
                     ) {
                         // Emit intersection (double).
                         writer.write("\u256a");
                     }
-                    if ((rowI < rows.size() - 1)
+                    if ((rowI < getRowCount() - 1)
                         && (cellI < columns.size() - 1)
-                        && (row.bottomBorder == Border.THICK)
+                        && (bottomBorder == Border.THICK)
                         && (columns.get(cellI).rightBorder == Border.SINGLE)
                     ) {
                         // Emit intersection (thick).
                         writer.write("\u253f");
                     }
-                    if ((rowI == rows.size() - 1)
+                    if ((rowI == getRowCount() - 1)
                         && (cellI < columns.size() - 1)
-                        && (row.bottomBorder == Border.SINGLE)
+                        && (bottomBorder == Border.SINGLE)
                         && (columns.get(cellI).rightBorder == Border.SINGLE)
                     ) {
                         // Emit bottom tee.
                         writer.write("\u2534");
                     }
-                    if ((rowI == rows.size() - 1)
+                    if ((rowI == getRowCount() - 1)
                         && (cellI < columns.size() - 1)
-                        && (row.bottomBorder == Border.DOUBLE)
+                        && (bottomBorder == Border.DOUBLE)
                         && (columns.get(cellI).rightBorder == Border.SINGLE)
                     ) {
                         // Emit bottom tee (double).
                         writer.write("\u2567");
                     }
-                    if ((rowI == rows.size() - 1)
+                    if ((rowI == getRowCount() - 1)
                         && (cellI < columns.size() - 1)
-                        && (row.bottomBorder == Border.THICK)
+                        && (bottomBorder == Border.THICK)
                         && (columns.get(cellI).rightBorder == Border.SINGLE)
                     ) {
                         // Emit bottom tee (thick).
                         writer.write("\u2537");
                     }
 
-                    cellI++;
                 }
 
                 writer.write("\n");
-                rowI++;
             }
         } finally {
             if (writer != null) {
@@ -1698,9 +2940,9 @@ public class TTableWidget extends TWidget {
             throw new IndexOutOfBoundsException("Column count is " +
                 columns.size() + ", requested index " + column);
         }
-        if ((row < 0) || (row > rows.size() - 1)) {
+        if ((row < 0) || (row > getRowCount() - 1)) {
             throw new IndexOutOfBoundsException("Row count is " +
-                rows.size() + ", requested index " + row);
+                getRowCount() + ", requested index " + row);
         }
         selectedColumn = column;
         selectedRow = row;
@@ -1712,16 +2954,19 @@ public class TTableWidget extends TWidget {
      *
      * @param column the cell column
      * @param row the cell row
-     * @return the cell
+     * @return the cell, or null in grid mode
      */
     public Cell getCell(final int column, final int row) {
         if ((column < 0) || (column > columns.size() - 1)) {
             throw new IndexOutOfBoundsException("Column count is " +
                 columns.size() + ", requested index " + column);
         }
-        if ((row < 0) || (row > rows.size() - 1)) {
+        if ((row < 0) || (row > getRowCount() - 1)) {
             throw new IndexOutOfBoundsException("Row count is " +
-                rows.size() + ", requested index " + row);
+                getRowCount() + ", requested index " + row);
+        }
+        if (model != null) {
+            return null;
         }
         return rows.get(row).get(column);
     }
@@ -1738,9 +2983,12 @@ public class TTableWidget extends TWidget {
             throw new IndexOutOfBoundsException("Column count is " +
                 columns.size() + ", requested index " + column);
         }
-        if ((row < 0) || (row > rows.size() - 1)) {
+        if ((row < 0) || (row > getRowCount() - 1)) {
             throw new IndexOutOfBoundsException("Row count is " +
-                rows.size() + ", requested index " + row);
+                getRowCount() + ", requested index " + row);
+        }
+        if (model != null) {
+            return model.getValueAt(column, row);
         }
         return rows.get(row).get(column).getText();
     }
@@ -1759,9 +3007,13 @@ public class TTableWidget extends TWidget {
             throw new IndexOutOfBoundsException("Column count is " +
                 columns.size() + ", requested index " + column);
         }
-        if ((row < 0) || (row > rows.size() - 1)) {
+        if ((row < 0) || (row > getRowCount() - 1)) {
             throw new IndexOutOfBoundsException("Row count is " +
-                rows.size() + ", requested index " + row);
+                getRowCount() + ", requested index " + row);
+        }
+        if (model != null) {
+            model.setValueAt(column, row, text);
+            return;
         }
         rows.get(row).get(column).setText(text);
     }
@@ -1782,9 +3034,18 @@ public class TTableWidget extends TWidget {
             throw new IndexOutOfBoundsException("Column count is " +
                 columns.size() + ", requested index " + column);
         }
-        if ((row < 0) || (row > rows.size() - 1)) {
+        if ((row < 0) || (row > getRowCount() - 1)) {
             throw new IndexOutOfBoundsException("Row count is " +
-                rows.size() + ", requested index " + row);
+                getRowCount() + ", requested index " + row);
+        }
+        if (model != null) {
+            getGridCell(columns.get(column), row).enterAction = action;
+            if (editing && (column == selectedColumn)
+                && (row == selectedRow)
+            ) {
+                editor.setEnterAction(action);
+            }
+            return;
         }
         rows.get(row).get(column).field.setEnterAction(action);
     }
@@ -1803,9 +3064,18 @@ public class TTableWidget extends TWidget {
             throw new IndexOutOfBoundsException("Column count is " +
                 columns.size() + ", requested index " + column);
         }
-        if ((row < 0) || (row > rows.size() - 1)) {
+        if ((row < 0) || (row > getRowCount() - 1)) {
             throw new IndexOutOfBoundsException("Row count is " +
-                rows.size() + ", requested index " + row);
+                getRowCount() + ", requested index " + row);
+        }
+        if (model != null) {
+            getGridCell(columns.get(column), row).updateAction = action;
+            if (editing && (column == selectedColumn)
+                && (row == selectedRow)
+            ) {
+                editor.setUpdateAction(action);
+            }
+            return;
         }
         rows.get(row).get(column).field.setUpdateAction(action);
     }
@@ -1892,9 +3162,13 @@ public class TTableWidget extends TWidget {
      * @return the label of the row
      */
     public String getRowLabel(final int row) {
-        if ((row < 0) || (row > rows.size() - 1)) {
+        if ((row < 0) || (row > getRowCount() - 1)) {
             throw new IndexOutOfBoundsException("Row count is " +
-                rows.size() + ", requested index " + row);
+                getRowCount() + ", requested index " + row);
+        }
+        if (model != null) {
+            String label = rowLabels.get(row);
+            return (label == null ? Integer.toString(row) : label);
         }
         return rows.get(row).label;
     }
@@ -1906,9 +3180,17 @@ public class TTableWidget extends TWidget {
      * @param label the new label of the row
      */
     public void setRowLabel(final int row, final String label) {
-        if ((row < 0) || (row > rows.size() - 1)) {
+        if ((row < 0) || (row > getRowCount() - 1)) {
             throw new IndexOutOfBoundsException("Row count is " +
-                rows.size() + ", requested index " + row);
+                getRowCount() + ", requested index " + row);
+        }
+        if (model != null) {
+            if (label.equals(Integer.toString(row))) {
+                rowLabels.remove(row);
+            } else {
+                rowLabels.put(row, label);
+            }
+            return;
         }
         rows.get(row).label = label;
     }
@@ -1919,6 +3201,13 @@ public class TTableWidget extends TWidget {
      * @param idx the row number
      */
     private void insertRowAt(final int idx) {
+        if (model != null) {
+            model.insertRow(idx);
+            shiftRows(idx, 1);
+            alignGrid();
+            return;
+        }
+
         Row newRow = new Row(idx);
         for (int i = 0; i < columns.size(); i++) {
             Cell cell = new Cell(this, columns.get(i).getX(),
@@ -1949,13 +3238,13 @@ public class TTableWidget extends TWidget {
      * @param row the row number
      */
     public void insertRowAbove(final int row) {
-        if ((row < 0) || (row > rows.size() - 1)) {
+        if ((row < 0) || (row > getRowCount() - 1)) {
             throw new IndexOutOfBoundsException("Row count is " +
-                rows.size() + ", requested index " + row);
+                getRowCount() + ", requested index " + row);
         }
         insertRowAt(row);
         selectedRow++;
-        activate(columns.get(selectedColumn).get(selectedRow));
+        activateSelectedCell();
     }
 
     /**
@@ -1964,14 +3253,14 @@ public class TTableWidget extends TWidget {
      * @param row the row number
      */
     public void insertRowBelow(final int row) {
-        if ((row < 0) || (row > rows.size() - 1)) {
+        if ((row < 0) || (row > getRowCount() - 1)) {
             throw new IndexOutOfBoundsException("Row count is " +
-                rows.size() + ", requested index " + row);
+                getRowCount() + ", requested index " + row);
         }
         int idx = row + 1;
-        if (idx < rows.size()) {
+        if ((idx < getRowCount()) || (model != null)) {
             insertRowAt(idx);
-            activate(columns.get(selectedColumn).get(selectedRow));
+            activateSelectedCell();
             return;
         }
 
@@ -1985,7 +3274,7 @@ public class TTableWidget extends TWidget {
         }
         rows.add(newRow);
         alignGrid();
-        activate(columns.get(selectedColumn).get(selectedRow));
+        activateSelectedCell();
     }
 
     /**
@@ -1994,14 +3283,23 @@ public class TTableWidget extends TWidget {
      * @param row the row number
      */
     public void deleteRow(final int row) {
-        if ((row < 0) || (row > rows.size() - 1)) {
+        if ((row < 0) || (row > getRowCount() - 1)) {
             throw new IndexOutOfBoundsException("Row count is " +
-                rows.size() + ", requested index " + row);
+                getRowCount() + ", requested index " + row);
         }
-        if (rows.size() == 1) {
+        if (getRowCount() == 1) {
             // Don't delete the last row.
             return;
         }
+        if (model != null) {
+            model.deleteRow(row);
+            shiftRows(row, -1);
+            if (selectedRow == getRowCount()) {
+                selectedRow--;
+            }
+            bottomRightCorner();
+            return;
+        }
         for (int i = 0; i < columns.size(); i++) {
             Cell cell = columns.get(i).cells.remove(row);
             getChildren().remove(cell);
@@ -2023,7 +3321,7 @@ public class TTableWidget extends TWidget {
         if (selectedRow == rows.size()) {
             selectedRow--;
         }
-        activate(columns.get(selectedColumn).get(selectedRow));
+        activateSelectedCell();
         bottomRightCorner();
     }
 
@@ -2033,7 +3331,13 @@ public class TTableWidget extends TWidget {
      * @param idx the column number
      */
     private void insertColumnAt(final int idx) {
+        if (model != null) {
+            model.insertColumn(idx);
+        }
         Column newColumn = new Column(idx);
+        if (model != null) {
+            addGridColumn(newColumn);
+        }
         for (int i = 0; i < rows.size(); i++) {
             Cell cell = new Cell(this, columns.get(idx).getX(),
                 rows.get(i).getY(), COLUMN_DEFAULT_WIDTH, 1, idx, i);
@@ -2069,7 +3373,7 @@ public class TTableWidget extends TWidget {
         }
         insertColumnAt(column);
         selectedColumn++;
-        activate(columns.get(selectedColumn).get(selectedRow));
+        activateSelectedCell();
     }
 
     /**
@@ -2085,12 +3389,18 @@ public class TTableWidget extends TWidget {
         int idx = column + 1;
         if (idx < columns.size()) {
             insertColumnAt(idx);
-            activate(columns.get(selectedColumn).get(selectedRow));
+            activateSelectedCell();
             return;
         }
 
         // column is the last column, we need to perform an append.
+        if (model != null) {
+            model.insertColumn(idx);
+        }
         Column newColumn = new Column(idx);
+        if (model != null) {
+            addGridColumn(newColumn);
+        }
         for (int i = 0; i < rows.size(); i++) {
             Cell cell = new Cell(this, columns.get(column).getX(),
                 rows.get(i).getY(), COLUMN_DEFAULT_WIDTH, 1, idx, i);
@@ -2099,7 +3409,7 @@ public class TTableWidget extends TWidget {
         }
         columns.add(newColumn);
         alignGrid();
-        activate(columns.get(selectedColumn).get(selectedRow));
+        activateSelectedCell();
     }
 
     /**
@@ -2116,6 +3426,9 @@ public class TTableWidget extends TWidget {
             // Don't delete the last column.
             return;
         }
+        if (model != null) {
+            model.deleteColumn(column);
+        }
         for (int i = 0; i < rows.size(); i++) {
             Cell cell = rows.get(i).cells.remove(column);
             getChildren().remove(cell);
@@ -2137,7 +3450,7 @@ public class TTableWidget extends TWidget {
         if (selectedColumn == columns.size()) {
             selectedColumn--;
         }
-        activate(columns.get(selectedColumn).get(selectedRow));
+        activateSelectedCell();
         bottomRightCorner();
     }
 
@@ -2157,14 +3470,15 @@ public class TTableWidget extends TWidget {
      */
     public void deleteCellShiftUp() {
         // All we do is copy the text from every cell in this column up.
-        for (int i = selectedRow + 1; i < rows.size(); i++) {
+        for (int i = selectedRow + 1; i < getRowCount(); i++) {
             setCellText(selectedColumn, i - 1, getCellText(selectedColumn, i));
         }
-        setCellText(selectedColumn, rows.size() - 1, "");
+        setCellText(selectedColumn, getRowCount() - 1, "");
     }
 
     /**
-     * Set a particular cell read-only (non-editable) or not.
+     * Set a particular cell read-only (non-editable) or not.  In grid mode,
+     * a cell the model says is not editable stays read-only.
      *
      * @param column the cell column
      * @param row the cell row
@@ -2177,23 +3491,51 @@ public class TTableWidget extends TWidget {
             throw new IndexOutOfBoundsException("Column count is " +
                 columns.size() + ", requested index " + column);
         }
-        if ((row < 0) || (row > rows.size() - 1)) {
+        if ((row < 0) || (row > getRowCount() - 1)) {
             throw new IndexOutOfBoundsException("Row count is " +
-                rows.size() + ", requested index " + row);
+                getRowCount() + ", requested index " + row);
+        }
+        if (model != null) {
+            getGridCell(columns.get(column), row).readOnly = readOnly;
+            if ((column == selectedColumn) && (row == selectedRow)) {
+                stopEdit();
+            }
+            return;
         }
         rows.get(row).get(column).setReadOnly(readOnly);
     }
 
     /**
-     * Set an entire row of cells read-only (non-editable) or not.
+     * Set an entire row of cells read-only (non-editable) or not.  In grid
+     * mode, cells the model says are not editable stay read-only.
      *
      * @param row the row number
      * @param readOnly if true, the cells will be non-editable
      */
     public void setRowReadOnly(final int row, final boolean readOnly) {
-        if ((row < 0) || (row > rows.size() - 1)) {
+        if ((row < 0) || (row > getRowCount() - 1)) {
             throw new IndexOutOfBoundsException("Row count is " +
-                rows.size() + ", requested index " + row);
+                getRowCount() + ", requested index " + row);
+        }
+        if (model != null) {
+            if (readOnly) {
+                readOnlyRows.add(row);
+            } else {
+                readOnlyRows.remove(row);
+            }
+            // This overrides whatever was set on the cells of the row
+            // before, including their columns.
+            for (Column col: columns) {
+                if (!readOnly && col.readOnly) {
+                    getGridCell(col, row).readOnly = false;
+                } else if (col.gridCells.containsKey(row)) {
+                    col.gridCells.get(row).readOnly = null;
+                }
+            }
+            if (row == selectedRow) {
+                stopEdit();
+            }
+            return;
         }
         for (Cell cell: rows.get(row).cells) {
             cell.setReadOnly(readOnly);
@@ -2201,7 +3543,8 @@ public class TTableWidget extends TWidget {
     }
 
     /**
-     * Set an entire column of cells read-only (non-editable) or not.
+     * Set an entire column of cells read-only (non-editable) or not.  In
+     * grid mode, cells the model says are not editable stay read-only.
      *
      * @param column the column number
      * @param readOnly if true, the cells will be non-editable
@@ -2211,6 +3554,24 @@ public class TTableWidget extends TWidget {
             throw new IndexOutOfBoundsException("Column count is " +
                 columns.size() + ", requested index " + column);
         }
+        if (model != null) {
+            // This overrides whatever was set on the cells of the column
+            // before, including their rows.
+            Column col = columns.get(column);
+            col.readOnly = readOnly;
+            for (GridCell cell: col.gridCells.values()) {
+                cell.readOnly = null;
+            }
+            if (!readOnly) {
+                for (Integer row: readOnlyRows) {
+                    getGridCell(col, row).readOnly = false;
+                }
+            }
+            if (column == selectedColumn) {
+                stopEdit();
+            }
+            return;
+        }
         for (Cell cell: columns.get(column).cells) {
             cell.setReadOnly(readOnly);
         }
@@ -2225,9 +3586,8 @@ public class TTableWidget extends TWidget {
         for (int i = 0; i < columns.size(); i++) {
             columns.get(i).rightBorder = Border.NONE;
         }
-        for (int i = 0; i < rows.size(); i++) {
-            rows.get(i).bottomBorder = Border.NONE;
-            rows.get(i).height = 1;
+        for (int i = 0; i < getRowCount(); i++) {
+            setRowBorder(i, Border.NONE);
         }
         bottomRightCorner();
     }
@@ -2241,9 +3601,8 @@ public class TTableWidget extends TWidget {
         for (int i = 0; i < columns.size(); i++) {
             columns.get(i).rightBorder = Border.SINGLE;
         }
-        for (int i = 0; i < rows.size(); i++) {
-            rows.get(i).bottomBorder = Border.SINGLE;
-            rows.get(i).height = 2;
+        for (int i = 0; i < getRowCount(); i++) {
+            setRowBorder(i, Border.SINGLE);
         }
         alignGrid();
     }
@@ -2263,11 +3622,9 @@ public class TTableWidget extends TWidget {
         }
         columns.get(selectedColumn).rightBorder = Border.NONE;
         if (selectedRow > 0) {
-            rows.get(selectedRow - 1).bottomBorder = Border.NONE;
-            rows.get(selectedRow - 1).height = 1;
+            setRowBorder(selectedRow - 1, Border.NONE);
         }
-        rows.get(selectedRow).bottomBorder = Border.NONE;
-        rows.get(selectedRow).height = 1;
+        setRowBorder(selectedRow, Border.NONE);
         bottomRightCorner();
     }
 
@@ -2286,11 +3643,9 @@ public class TTableWidget extends TWidget {
         }
         columns.get(selectedColumn).rightBorder = Border.SINGLE;
         if (selectedRow > 0) {
-            rows.get(selectedRow - 1).bottomBorder = Border.SINGLE;
-            rows.get(selectedRow - 1).height = 2;
+            setRowBorder(selectedRow - 1, Border.SINGLE);
         }
-        rows.get(selectedRow).bottomBorder = Border.SINGLE;
-        rows.get(selectedRow).height = 2;
+        setRowBorder(selectedRow, Border.SINGLE);
         alignGrid();
     }
 
@@ -2323,8 +3678,7 @@ public class TTableWidget extends TWidget {
         if (selectedRow == 0) {
             topBorder = Border.SINGLE;
         } else {
-            rows.get(selectedRow - 1).bottomBorder = Border.SINGLE;
-            rows.get(selectedRow - 1).height = 2;
+            setRowBorder(selectedRow - 1, Border.SINGLE);
         }
         alignGrid();
     }
@@ -2333,8 +3687,7 @@ public class TTableWidget extends TWidget {
      * Set the row border below the selected cell to Border.SINGLE.
      */
     public void setBorderRowBelowSingle() {
-        rows.get(selectedRow).bottomBorder = Border.SINGLE;
-        rows.get(selectedRow).height = 2;
+        setRowBorder(selectedRow, Border.SINGLE);
         alignGrid();
     }
 
@@ -2342,8 +3695,7 @@ public class TTableWidget extends TWidget {
      * Set the row border below the selected cell to Border.DOUBLE.
      */
     public void setBorderRowBelowDouble() {
-        rows.get(selectedRow).bottomBorder = Border.DOUBLE;
-        rows.get(selectedRow).height = 2;
+        setRowBorder(selectedRow, Border.DOUBLE);
         alignGrid();
     }
 
@@ -2351,8 +3703,7 @@ public class TTableWidget extends TWidget {
      * Set the row border below the selected cell to Border.THICK.
      */
     public void setBorderRowBelowThick() {
-        rows.get(selectedRow).bottomBorder = Border.THICK;
-        rows.get(selectedRow).height = 2;
+        setRowBorder(selectedRow, Border.THICK);
         alignGrid();
     }
 
@@ -83,7 +83,8 @@ public class TTableWindow extends TScrollableWindow {
     }
 
     /**
-     * Public constructor loads a grid from a RFC4180 CSV file.
+     * Public constructor loads a grid from a RFC4180 CSV file.  The file is
+     * read in the background, and the table shows all of it when done.
      *
      * @param parent the main application
      * @param csvFile a File referencing the CSV data
@@ -99,7 +100,23 @@ public class TTableWindow extends TScrollableWindow {
 
         tableField = addTable(0, 0, getWidth() - 2, getHeight() - 2, 1, 1);
         setupAfterTable();
-        tableField.loadCsvFile(csvFile);
+        tableField.startLoadCsvGrid(csvFile, new TAction() {
+            public void DO() {
+                IOException error = tableField.getLoadError();
+                if (error != null) {
+                    messageBox(i18n.getString("errorDialogTitle"),
+                        MessageFormat.format(i18n.
+                            getString("errorReadingFile"), error.getMessage()));
+                }
+                statusBar.setText(i18n.getString("statusBar"));
+                setTopValue(tableField.getSelectedRowNumber());
+                setBottomValue(tableField.getRowCount() - 1);
+                setLeftValue(tableField.getSelectedColumnNumber());
+                setRightValue(tableField.getColumnCount() - 1);
+                setVerticalValue(tableField.getSelectedRowNumber());
+                setHorizontalValue(tableField.getSelectedColumnNumber());
+            }
+        });
     }
 
     // ------------------------------------------------------------------------
@@ -517,6 +534,28 @@ public class TTableWindow extends TScrollableWindow {
         super.onMenu(menu);
     }
 
+    /**
+     * Called by application.closeWindow() to stop loading a file.
+     */
+    @Override
+    protected void onClose() {
+        tableField.cancelLoad();
+        super.onClose();
+    }
+
+    /**
+     * Draw the window.
+     */
+    @Override
+    public void draw() {
+        if (tableField.isLoading()) {
+            statusBar.setText(MessageFormat.format(i18n.
+                    getString("statusBarLoading"),
+                    tableField.getLoadProgress()));
+        }
+        super.draw();
+    }
+
     // ------------------------------------------------------------------------
     // TTableWindow -----------------------------------------------------------
     // ------------------------------------------------------------------------
@@ -37,6 +37,7 @@ import java.text.MessageFormat;
 import java.util.List;
 import java.util.Map;
 import java.util.ResourceBundle;
+import java.util.regex.Pattern;
 
 import jexer.backend.ECMA48Terminal;
 import jexer.backend.GlyphMaker;
@@ -51,6 +52,7 @@ import jexer.menu.TMenu;
 import jexer.tterminal.DisplayLine;
 import jexer.tterminal.DisplayListener;
 import jexer.tterminal.ECMA48;
+import jexer.tterminal.Scrollback;
 import static jexer.TCommand.*;
 import static jexer.TKeypress.*;
 
@@ -65,6 +67,16 @@ public class TTerminalWidget extends TScrollableWidget
      */
     private static final ResourceBundle i18n = ResourceBundle.getBundle(TTerminalWidget.class.getName());
 
+    // ------------------------------------------------------------------------
+    // Constants --------------------------------------------------------------
+    // ------------------------------------------------------------------------
+
+    /**
+     * The number of scrollback lines a search looks at each time it holds
+     * the emulator lock.
+     */
+    private static final int SEARCH_BATCH_LINES = 500;
+
     // ------------------------------------------------------------------------
     // Variables --------------------------------------------------------------
     // ------------------------------------------------------------------------
@@ -123,6 +135,126 @@ public class TTerminalWidget extends TScrollableWidget
      */
     private List<DisplayLine> display;
 
+    /**
+     * The row number of the top row of display, counted as in
+     * ECMA48.getVisibleDisplay().
+     */
+    private int displayTop = 0;
+
+    /**
+     * The current search match, or null.
+     */
+    private Scrollback.Match searchMatch = null;
+
+    /**
+     * The search in progress, or null.
+     */
+    private Searcher searcher = null;
+
+    /**
+     * Searcher looks for the next or previous match of a pattern on its
+     * own thread.  It holds the emulator lock for SEARCH_BATCH_LINES
+     * scrollback lines at a time, so that neither the reader thread nor
+     * the user interface wait on a search of a long history.  The match is
+     * handed to the widget with invokeLater().
+     */
+    private class Searcher extends Thread {
+
+        /**
+         * The pattern to look for.
+         */
+        private final Pattern pattern;
+
+        /**
+         * If true, search towards the bottom.
+         */
+        private final boolean forward;
+
+        /**
+         * Where to search from, as a zero-length match so that it follows
+         * the rows trimmed from the scrollback.
+         */
+        private Scrollback.Match from;
+
+        /**
+         * If true, stop searching.
+         */
+        private volatile boolean cancelled = false;
+
+        /**
+         * Prepare a search.
+         *
+         * @param pattern the pattern to look for
+         * @param forward if true, search towards the bottom
+         * @param from where to search from, as returned by ECMA48.find()
+         */
+        public Searcher(final Pattern pattern, final boolean forward,
+            final Scrollback.Match from) {
+
+            super("TTerminalWidget search " + pattern.pattern());
+            setDaemon(true);
+            this.pattern = pattern;
+            this.forward = forward;
+            this.from = from;
+        }
+
+        /**
+         * Search, one batch of lines at a time.
+         */
+        @Override
+        public void run() {
+            while (!cancelled) {
+                Scrollback.Match match;
+                synchronized (emulator) {
+                    from = emulator.updateMatch(from);
+                    if (from == null) {
+                        // The history was re-wrapped or cleared under us.
+                        break;
+                    }
+                    match = emulator.find(pattern, from.getRow(),
+                        from.getColumn(), forward, SEARCH_BATCH_LINES);
+                }
+                if ((match == null) || match.isFound()) {
+                    post(match);
+                    return;
+                }
+                from = match;
+            }
+            post(null);
+        }
+
+        /**
+         * Hand the result to the widget.
+         *
+         * @param match the match, or null if there is none
+         */
+        private void post(final Scrollback.Match match) {
+            TApplication app = getApplication();
+            if ((app == null) || cancelled) {
+                return;
+            }
+            app.invokeLater(new Runnable() {
+                public void run() {
+                    if (searcher != Searcher.this) {
+                        return;
+                    }
+                    searcher = null;
+                    if (match != null) {
+                        showMatch(match);
+                    }
+                }
+            });
+        }
+
+        /**
+         * Stop searching.
+         */
+        public void cancel() {
+            cancelled = true;
+        }
+
+    }
+
     /**
      * If true, the display has changed and needs updating.
      */
@@ -465,6 +597,7 @@ public class TTerminalWidget extends TScrollableWidget
         if ((emulator != null) && (emulator.isReading())) {
             // Get out of scrollback
             setVerticalValue(0);
+            clearSearch();
             emulator.addUserEvent(keypress);
 
             // UGLY HACK TIME!  cmd.exe needs CRLF, not just CR, so if
@@ -635,10 +768,16 @@ public class TTerminalWidget extends TScrollableWidget
                     return;
                 }
 
+                if (searchMatch != null) {
+                    searchMatch = emulator.updateMatch(searchMatch);
+                }
                 if ((display == null) || emulator.isReading()) {
                     display = emulator.getVisibleDisplay(getHeight(),
                         -getVerticalValue());
                     assert (display.size() == getHeight());
+                    displayTop = emulator.getScrollbackBuffer().size()
+                        + emulator.getDisplayBuffer().size()
+                        + getVerticalValue() - getHeight();
                 }
                 width = emulator.getWidth();
             }
@@ -664,7 +803,8 @@ public class TTerminalWidget extends TScrollableWidget
                 }
 
                 Cell newCell = new Cell(ch);
-                boolean reverse = line.isReverseColor() ^ ch.isReverse();
+                boolean reverse = line.isReverseColor() ^ ch.isReverse()
+                    ^ isSearchMatch(displayTop + row, i, width);
                 newCell.setReverse(false);
                 if (reverse) {
                     if (ch.getForeColorRGB() < 0) {
@@ -758,6 +898,7 @@ public class TTerminalWidget extends TScrollableWidget
     public void close() {
         if (emulator != null) {
             emulator.close();
+            emulator.clearScrollback();
         }
         if (shell != null) {
             terminateShellChildProcess();
@@ -868,6 +1009,193 @@ public class TTerminalWidget extends TScrollableWidget
         return emulator.isReading();
     }
 
+    /**
+     * Find the next match of a pattern in the scrollback and display, and
+     * scroll to it.  The search starts after the current match, or at the
+     * top of the visible rows.  It runs in the background, and cancels
+     * any search already running.
+     *
+     * @param pattern the pattern to look for
+     */
+    public void findNext(final Pattern pattern) {
+        find(pattern, true);
+    }
+
+    /**
+     * Find the previous match of a pattern in the scrollback and display,
+     * and scroll to it.  The search starts before the current match, or at
+     * the bottom of the visible rows.  It runs in the background, and
+     * cancels any search already running.
+     *
+     * @param pattern the pattern to look for
+     */
+    public void findPrevious(final Pattern pattern) {
+        find(pattern, false);
+    }
+
+    /**
+     * Get the current search match.
+     *
+     * @return the match, or null
+     */
+    public Scrollback.Match getSearchMatch() {
+        return searchMatch;
+    }
+
+    /**
+     * Check if a search is still running.
+     *
+     * @return true if findNext() or findPrevious() has not found its match
+     * yet
+     */
+    public boolean isSearching() {
+        return (searcher != null);
+    }
+
+    /**
+     * Stop the search in progress and forget the current search match.
+     */
+    public void clearSearch() {
+        if (searcher != null) {
+            searcher.cancel();
+            searcher = null;
+        }
+        searchMatch = null;
+        dirty = true;
+    }
+
+    /**
+     * Start a search in the background.
+     *
+     * @param pattern the pattern to look for
+     * @param forward if true, search towards the bottom
+     */
+    private void find(final Pattern pattern, final boolean forward) {
+        if (emulator == null) {
+            return;
+        }
+        if (searcher != null) {
+            searcher.cancel();
+            searcher = null;
+        }
+
+        Scrollback.Match from;
+        synchronized (emulator) {
+            int total = emulator.getScrollbackBuffer().size()
+                + emulator.getDisplayBuffer().size();
+            int visibleBottom = total + getVerticalValue();
+
+            if (searchMatch != null) {
+                searchMatch = emulator.updateMatch(searchMatch);
+            }
+            int row = visibleBottom;
+            int column = -1;
+            if (searchMatch != null) {
+                row = searchMatch.getRow();
+                column = searchMatch.getColumn();
+            } else if (forward) {
+                row = visibleBottom - getHeight() - 1;
+                column = Integer.MAX_VALUE;
+            }
+
+            // Look at the first batch right away: the match is often
+            // close by.
+            from = emulator.find(pattern, row, column, forward,
+                SEARCH_BATCH_LINES);
+        }
+        if (from == null) {
+            return;
+        }
+        if (from.isFound()) {
+            showMatch(from);
+            return;
+        }
+        searcher = new Searcher(pattern, forward, from);
+        searcher.start();
+    }
+
+    /**
+     * Make a match the current one, and scroll it into view.
+     *
+     * @param found the match, as returned by ECMA48.find()
+     */
+    private void showMatch(final Scrollback.Match found) {
+        // Synchronize against the emulator so we don't stomp on its reader
+        // thread.
+        synchronized (emulator) {
+            Scrollback.Match match = emulator.updateMatch(found);
+            if (match == null) {
+                // Its rows are gone.
+                return;
+            }
+            searchMatch = match;
+
+            int total = emulator.getScrollbackBuffer().size()
+                + emulator.getDisplayBuffer().size();
+            int visibleBottom = total + getVerticalValue();
+
+            // Scroll the match to the middle of the screen if it is not
+            // visible yet.
+            if ((match.getRow() < visibleBottom - getHeight())
+                || (match.getRow() >= visibleBottom)
+            ) {
+                int scrollBottom = total - match.getRow()
+                    - (getHeight() / 2) - 1;
+                scrollBottom = Math.max(0, Math.min(scrollBottom,
+                        total - getHeight()));
+                reflowData();
+                setVerticalValue(-scrollBottom);
+            }
+            dirty = true;
+
+        } // synchronized (emulator)
+    }
+
+    /**
+     * Check if a cell is part of the current search match.
+     *
+     * @param row the row, counted as in ECMA48.getVisibleDisplay()
+     * @param column the column
+     * @param width the number of columns of the emulator
+     * @return true if the cell should be highlighted
+     */
+    private boolean isSearchMatch(final int row, final int column,
+        final int width) {
+
+        Scrollback.Match match = searchMatch;
+        if (match == null) {
+            return false;
+        }
+        long pos = ((long) (row - match.getRow()) * width)
+            + (column - match.getColumn());
+        return ((pos >= 0) && (pos < match.getLength()));
+    }
+
+    /**
+     * See if the output of the remote side is paused.
+     *
+     * @return if true, the emulator is not reading from the remote side
+     */
+    public boolean isOutputPaused() {
+        if (emulator == null) {
+            return false;
+        }
+        return emulator.isOutputPaused();
+    }
+
+    /**
+     * Pause or resume the output of the remote side (scroll lock).  While
+     * paused, the remote side will block once its output pipe is full.
+     *
+     * @param outputPaused if true, stop reading from the remote side
+     */
+    public void setOutputPaused(final boolean outputPaused) {
+        if (emulator == null) {
+            return;
+        }
+        emulator.setOutputPaused(outputPaused);
+    }
+
     /**
      * Convert a string array to a whitespace-separated string.
      *
@@ -935,6 +1263,37 @@ public class TTerminalWidget extends TScrollableWidget
 
             hideMouseWhenTyping = false;
         }
+
+        // Do not repaint more often than once per frame
+        if (emulator != null) {
+            try {
+                int throttle = Integer.parseInt(System.getProperty(
+                    "jexer.TTerminal.displayThrottle", "20"));
+                if (throttle >= 0) {
+                    emulator.setDisplayThrottle(throttle);
+                }
+            } catch (NumberFormatException e) {
+                // SQUASH
+            }
+        }
+
+        // Scrollback size, and how much of it to keep in memory
+        if (emulator != null) {
+            try {
+                int scrollbackMax = Integer.parseInt(System.getProperty(
+                    "jexer.TTerminal.scrollbackMax", "10000"));
+                if (scrollbackMax >= 0) {
+                    emulator.setScrollbackMax(scrollbackMax);
+                }
+                int memoryMax = Integer.parseInt(System.getProperty(
+                    "jexer.TTerminal.scrollbackMemory", "0"));
+                if (memoryMax >= 0) {
+                    emulator.setScrollbackMemoryMax(memoryMax);
+                }
+            } catch (NumberFormatException e) {
+                // SQUASH
+            }
+        }
     }
 
     /**
@@ -1068,6 +1427,32 @@ public class TTerminalWidget extends TScrollableWidget
         return emulator.waitForOutput(millis);
     }
 
+    /**
+     * Get the number of bytes (or characters for XTERM) read from the
+     * launched process so far.
+     *
+     * @return the number of bytes or characters
+     */
+    public long getReadCount() {
+        if (emulator == null) {
+            return 0;
+        }
+        return emulator.getReadCount();
+    }
+
+    /**
+     * Get the total time the emulator spent parsing the output of the
+     * launched process.
+     *
+     * @return the time in nanoseconds
+     */
+    public long getParseTime() {
+        if (emulator == null) {
+            return 0;
+        }
+        return emulator.getParseTime();
+    }
+
     /**
      * Check if a mouse press/release/motion event coordinate is over the
      * emulator.
@@ -30,7 +30,10 @@ package jexer;
 
 import java.util.Arrays;
 import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 
 import jexer.bits.CellAttributes;
 import jexer.bits.StringUtils;
@@ -48,6 +51,14 @@ import static jexer.TKeypress.kbUp;
 /**
  * TText implements a simple scrollable text area. It reflows automatically on
  * resize.
+ *
+ * <p>
+ * Paragraphs are wrapped when they are drawn, so that a very long text opens
+ * and resizes quickly.  Until a paragraph is wrapped, its number of lines is
+ * estimated from its length.  The number of lines of every paragraph is kept
+ * in a Fenwick tree, so that the paragraph at a line number can be found and
+ * the tree updated in O(log n).  The line counts of the last few widths are
+ * kept, so that resizing back to a previous width does not wrap again.
  */
 public class TText extends TScrollableWidget {
 
@@ -86,6 +97,23 @@ public class TText extends TScrollableWidget {
         FULL,
     }
 
+    /**
+     * Paragraphs are wrapped as soon as the text is set or the width
+     * changes, until this many characters were wrapped.  The rest are only
+     * wrapped when they are drawn.
+     */
+    private static final int EAGER_WRAP_SIZE = 65536;
+
+    /**
+     * The number of wrapped paragraphs kept as strings.
+     */
+    private static final int LINE_CACHE_SIZE = 256;
+
+    /**
+     * The number of widths whose line counts are kept.
+     */
+    private static final int LAYOUT_CACHE_SIZE = 4;
+
     // ------------------------------------------------------------------------
     // Variables --------------------------------------------------------------
     // ------------------------------------------------------------------------
@@ -98,12 +126,73 @@ public class TText extends TScrollableWidget {
     /**
      * Text to display.
      */
-    private String text;
+    private StringBuilder text;
+
+    /**
+     * The text as a string, or null if it changed since getText().
+     */
+    private String textString;
+
+    /**
+     * If true, the text has visible characters.
+     */
+    private boolean textVisible;
+
+    /**
+     * The start offset of each piece of the text between "\n\n"
+     * separators.
+     */
+    private int [] pieceStarts = new int[16];
+
+    /**
+     * The number of pieces of the text between "\n\n" separators.
+     */
+    private int pieceCount = 0;
+
+    /**
+     * The number of paragraphs.  As with String.split("\n\n"), this is the
+     * number of pieces without the trailing empty ones.
+     */
+    private int paragraphCount = 0;
 
     /**
-     * Text converted to lines.
+     * The line counts for the current width and justification.
      */
-    private List<String> lines;
+    private Layout layout = null;
+
+    /**
+     * The line counts for the most recently used widths, most recent
+     * first.
+     */
+    private List<Layout> layouts = new ArrayList<Layout>();
+
+    /**
+     * Fenwick tree over the number of lines of each paragraph: entry i
+     * holds the sum of the paragraphs from i - (i & -i) up to i - 1.
+     */
+    private int [] lineTree = new int[1];
+
+    /**
+     * The total number of lines.
+     */
+    private int lineCount = 0;
+
+    /**
+     * The lines of the most recently drawn paragraphs, by paragraph
+     * number.
+     */
+    private Map<Integer, List<String>> lineCache =
+        new LinkedHashMap<Integer, List<String>>(16, 0.75f, true) {
+
+        private static final long serialVersionUID = 1L;
+
+        @Override
+        protected boolean removeEldestEntry(
+            final Map.Entry<Integer, List<String>> eldest) {
+
+            return (size() > LINE_CACHE_SIZE);
+        }
+    };
 
     /**
      * Text color.
@@ -120,6 +209,76 @@ public class TText extends TScrollableWidget {
      */
     private int lineSpacing = 1;
 
+    /**
+     * The number of lines of each paragraph for one width and
+     * justification.
+     */
+    private static class Layout {
+
+        /**
+         * The width the paragraphs are wrapped to.
+         */
+        public int width;
+
+        /**
+         * How the paragraphs are justified.
+         */
+        public Justification justification;
+
+        /**
+         * The number of lines of each paragraph, including the blank lines
+         * after it, or -1 if it was not wrapped yet.
+         */
+        public int [] lines;
+
+        /**
+         * The width of the widest line of each paragraph, or 0 if it was
+         * not wrapped yet.
+         */
+        public int [] widths;
+
+        /**
+         * The number of lines a paragraph has per character, as measured
+         * on the paragraphs wrapped so far.
+         */
+        public double linesPerChar;
+
+        /**
+         * Public constructor.
+         *
+         * @param width the width the paragraphs are wrapped to
+         * @param justification how the paragraphs are justified
+         * @param count the number of paragraphs
+         */
+        public Layout(final int width, final Justification justification,
+            final int count) {
+
+            this.width = width;
+            this.justification = justification;
+            lines = new int[count];
+            widths = new int[count];
+            Arrays.fill(lines, -1);
+            linesPerChar = 1.0 / Math.max(1, width);
+        }
+
+        /**
+         * Forget the paragraphs from one on, and make room for more.
+         *
+         * @param first the first paragraph that changed
+         * @param count the new number of paragraphs
+         */
+        public void truncate(final int first, final int count) {
+            if (lines.length < count) {
+                lines = Arrays.copyOf(lines, Math.max(count,
+                        lines.length * 2));
+                widths = Arrays.copyOf(widths, lines.length);
+            }
+            Arrays.fill(lines, first, lines.length, -1);
+            Arrays.fill(widths, first, widths.length, 0);
+        }
+
+    }
+
     // ------------------------------------------------------------------------
     // Constructors -----------------------------------------------------------
     // ------------------------------------------------------------------------
@@ -159,10 +318,11 @@ public class TText extends TScrollableWidget {
         // Set parent and window
         super(parent, x, y, width, height);
 
-        this.text = text;
         this.colorKey = colorKey;
-
-        lines = new ArrayList<String>();
+        this.text = new StringBuilder(text);
+        textString = text;
+        textVisible = (StringUtils.width(text) > 0);
+        indexParagraphs(0);
 
         vScroller = new TVScroller(this, getWidth() - 1, 0,
             Math.max(1, getHeight() - 1));
@@ -216,24 +376,50 @@ public class TText extends TScrollableWidget {
         // Setup my color
         CellAttributes color = getTheme().getColor(colorKey);
 
+        int oldLineCount = lineCount;
+        int oldMaxLineWidth = maxLineWidth;
+
         int begin = vScroller.getValue();
         int topY = 0;
-        for (int i = begin; i < lines.size(); i++) {
-            String line = lines.get(i);
-            if (hScroller.getValue() < StringUtils.width(line)) {
-                line = line.substring(hScroller.getValue());
-            } else {
-                line = "";
+        int lineNumber = begin;
+        while ((topY < (getHeight() - 1)) && (lineNumber < lineCount)) {
+            int paragraph = findParagraph(lineNumber);
+            if (paragraph == -1) {
+                break;
             }
-            if (getWidth() > 3) {
-                String formatString = "%-" + Integer.toString(getWidth() - 1) + "s";
-                putStringXY(0, topY, String.format(formatString, line), color);
+            List<String> lines = getParagraphLines(paragraph);
+            for (int j = lineNumber - getFirstLine(paragraph); j < lines.size(); j++) {
+                String line = lines.get(j);
+                if (hScroller.getValue() < StringUtils.width(line)) {
+                    line = line.substring(hScroller.getValue());
+                } else {
+                    line = "";
+                }
+                if (getWidth() > 3) {
+                    String formatString = "%-" + Integer.toString(getWidth() - 1) + "s";
+                    putStringXY(0, topY, String.format(formatString, line), color);
+                }
+                topY++;
+                lineNumber++;
+
+                if (topY >= (getHeight() - 1)) {
+                    break;
+                }
             }
-            topY++;
+        }
 
-            if (topY >= (getHeight() - 1)) {
+        // Wrap the next screen too, so that scrolling down does not make
+        // the scrollbar jump.
+        while (lineNumber < Math.min(lineCount, begin + (getHeight() * 2))) {
+            int paragraph = findParagraph(lineNumber);
+            if (paragraph == -1) {
                 break;
             }
+            lineNumber = getFirstLine(paragraph) + layout.lines[paragraph];
+        }
+
+        if ((lineCount != oldLineCount) || (maxLineWidth != oldMaxLineWidth)) {
+            computeBounds();
         }
 
         // Pad the rest with blank lines
@@ -297,37 +483,32 @@ public class TText extends TScrollableWidget {
      */
     @Override
     public void reflowData() {
-        // Reset the lines
-        lines.clear();
-
-        // Break up text into paragraphs
-        String[] paragraphs = text.split("\n\n");
-        for (String p : paragraphs) {
-            switch (justification) {
-            case NONE:
-                lines.addAll(Arrays.asList(p.split("\n")));
-                break;
-            case LEFT:
-                lines.addAll(jexer.bits.StringUtils.left(p,
-                        getWidth() - 1));
-                break;
-            case CENTER:
-                lines.addAll(jexer.bits.StringUtils.center(p,
-                        getWidth() - 1));
-                break;
-            case RIGHT:
-                lines.addAll(jexer.bits.StringUtils.right(p,
-                        getWidth() - 1));
-                break;
-            case FULL:
-                lines.addAll(jexer.bits.StringUtils.full(p,
-                        getWidth() - 1));
-                break;
+        int width = getWidth() - 1;
+        if ((layout == null)
+            || (layout.width != width)
+            || (layout.justification != justification)
+        ) {
+            layout = null;
+            for (Layout other: layouts) {
+                if ((other.width == width)
+                    && (other.justification == justification)
+                ) {
+                    layout = other;
+                    break;
+                }
             }
-
-            for (int i = 0; i < lineSpacing; i++) {
-                lines.add("");
+            if (layout == null) {
+                layout = new Layout(width, justification, pieceCount);
+            } else {
+                layouts.remove(layout);
             }
+            layouts.add(0, layout);
+            while (layouts.size() > LAYOUT_CACHE_SIZE) {
+                layouts.remove(layouts.size() - 1);
+            }
+            lineCache.clear();
+            buildLineTree();
+            wrapEagerly(0);
         }
         computeBounds();
     }
@@ -342,7 +523,12 @@ public class TText extends TScrollableWidget {
      * @param text new text to display
      */
     public void setText(final String text) {
-        this.text = text;
+        this.text = new StringBuilder(text);
+        textString = text;
+        textVisible = (StringUtils.width(text) > 0);
+        indexParagraphs(0);
+        layouts.clear();
+        layout = null;
         reflowData();
     }
 
@@ -352,7 +538,10 @@ public class TText extends TScrollableWidget {
      * @return the text
      */
     public String getText() {
-        return text;
+        if (textString == null) {
+            textString = text.toString();
+        }
+        return textString;
     }
 
     /**
@@ -361,28 +550,72 @@ public class TText extends TScrollableWidget {
      * @param line new line to add
      */
     public void addLine(final String line) {
-        if (StringUtils.width(text) == 0) {
-            text = line;
-        } else {
-            text += "\n\n";
-            text += line;
+        if (!textVisible) {
+            setText(line);
+            return;
         }
-        reflowData();
+        text.append("\n\n");
+        text.append(line);
+        textString = null;
+
+        // Only the last piece of the text can change, the pieces before it
+        // keep their lines.
+        int first = Math.max(0, pieceCount - 1);
+        indexParagraphs(first);
+        if ((layout.width != getWidth() - 1)
+            || (layout.justification != justification)
+        ) {
+            // Resized without a reflow: wrap everything at the new width.
+            layouts.clear();
+            layout = null;
+            reflowData();
+            return;
+        }
+        layouts.clear();
+        layouts.add(layout);
+        layout.truncate(first, pieceCount);
+        for (Iterator<Integer> it = lineCache.keySet().iterator();
+             it.hasNext();) {
+
+            if (it.next() >= first) {
+                it.remove();
+            }
+        }
+        buildLineTree();
+        wrapEagerly(first);
+        computeBounds();
     }
 
     /**
-     * Recompute the bounds for the scrollbars.
+     * Wrap the paragraphs that were not wrapped yet, until EAGER_WRAP_SIZE
+     * characters were wrapped.  Short texts are thus wrapped completely, so
+     * their scrollbars are exact.
+     *
+     * @param first the first paragraph that may not be wrapped
      */
-    private void computeBounds() {
-        maxLineWidth = 0;
-        for (String line : lines) {
-            if (StringUtils.width(line) > maxLineWidth) {
-                maxLineWidth = StringUtils.width(line);
+    private void wrapEagerly(final int first) {
+        int wrapped = 0;
+        for (int i = first; i < paragraphCount; i++) {
+            if (wrapped > EAGER_WRAP_SIZE) {
+                break;
+            }
+            if (layout.lines[i] == -1) {
+                getParagraphLines(i);
+                wrapped += getParagraphEnd(i) - pieceStarts[i];
             }
         }
+        if (wrapped > EAGER_WRAP_SIZE) {
+            // Estimate the rest from what was wrapped.
+            buildLineTree();
+        }
+    }
 
+    /**
+     * Recompute the bounds for the scrollbars.
+     */
+    private void computeBounds() {
         vScroller.setTopValue(0);
-        vScroller.setBottomValue((lines.size() - getHeight()) + 1);
+        vScroller.setBottomValue((lineCount - getHeight()) + 1);
         if (vScroller.getBottomValue() < 0) {
             vScroller.setBottomValue(0);
         }
@@ -450,4 +683,196 @@ public class TText extends TScrollableWidget {
         reflowData();
     }
 
+    /**
+     * Find the "\n\n" separated pieces of the text.
+     *
+     * @param first the first piece that may have changed
+     */
+    private void indexParagraphs(final int first) {
+        int start = (first == 0 ? 0 : pieceStarts[first]);
+        pieceCount = first;
+        for (;;) {
+            if (pieceCount == pieceStarts.length) {
+                pieceStarts = Arrays.copyOf(pieceStarts, pieceCount * 2);
+            }
+            pieceStarts[pieceCount] = start;
+            pieceCount++;
+            int end = text.indexOf("\n\n", start);
+            if (end == -1) {
+                break;
+            }
+            start = end + 2;
+        }
+
+        // String.split() drops trailing empty strings, but only if it
+        // found a separator.
+        paragraphCount = pieceCount;
+        while ((pieceCount > 1) && (paragraphCount > 0)
+            && (getParagraphEnd(paragraphCount - 1)
+                == pieceStarts[paragraphCount - 1])
+        ) {
+            paragraphCount--;
+        }
+    }
+
+    /**
+     * Get the end offset of a paragraph.
+     *
+     * @param paragraph the paragraph number
+     * @return the offset in text after its last character
+     */
+    private int getParagraphEnd(final int paragraph) {
+        if (paragraph + 1 < pieceCount) {
+            return pieceStarts[paragraph + 1] - 2;
+        }
+        return text.length();
+    }
+
+    /**
+     * Get the number of lines of a paragraph that was not wrapped yet.
+     *
+     * @param paragraph the paragraph number
+     * @return the estimated number of lines, including the blank lines
+     * after it
+     */
+    private int estimateLines(final int paragraph) {
+        int length = getParagraphEnd(paragraph) - pieceStarts[paragraph];
+        return Math.max(1, (int) Math.round(length * layout.linesPerChar))
+            + lineSpacing;
+    }
+
+    /**
+     * Get the lines of a paragraph, wrapping it if needed.
+     *
+     * @param paragraph the paragraph number
+     * @return the lines, including the blank lines after it
+     */
+    private List<String> getParagraphLines(final int paragraph) {
+        List<String> lines = lineCache.get(paragraph);
+        if (lines != null) {
+            return lines;
+        }
+
+        String p = text.substring(pieceStarts[paragraph],
+            getParagraphEnd(paragraph));
+        switch (layout.justification) {
+        case NONE:
+            lines = new ArrayList<String>(Arrays.asList(p.split("\n")));
+            break;
+        case LEFT:
+            lines = jexer.bits.StringUtils.left(p, layout.width);
+            break;
+        case CENTER:
+            lines = jexer.bits.StringUtils.center(p, layout.width);
+            break;
+        case RIGHT:
+            lines = jexer.bits.StringUtils.right(p, layout.width);
+            break;
+        case FULL:
+        default:
+            lines = jexer.bits.StringUtils.full(p, layout.width);
+            break;
+        }
+        for (int i = 0; i < lineSpacing; i++) {
+            lines.add("");
+        }
+        lineCache.put(paragraph, lines);
+
+        if (layout.lines[paragraph] == -1) {
+            int width = 0;
+            for (String line: lines) {
+                width = Math.max(width, StringUtils.width(line));
+            }
+            int delta = lines.size() - estimateLines(paragraph);
+            layout.lines[paragraph] = lines.size();
+            layout.widths[paragraph] = width;
+            for (int i = paragraph + 1; i <= paragraphCount; i += i & -i) {
+                lineTree[i] += delta;
+            }
+            lineCount += delta;
+            maxLineWidth = Math.max(maxLineWidth, width);
+        }
+        return lines;
+    }
+
+    /**
+     * Rebuild lineTree from the current layout.
+     */
+    private void buildLineTree() {
+        long chars = 0;
+        long lines = 0;
+        for (int i = 0; i < paragraphCount; i++) {
+            if (layout.lines[i] != -1) {
+                chars += getParagraphEnd(i) - pieceStarts[i];
+                lines += layout.lines[i] - lineSpacing;
+            }
+        }
+        if (chars > 0) {
+            layout.linesPerChar = (double) lines / chars;
+        }
+
+        lineTree = new int[paragraphCount + 1];
+        lineCount = 0;
+        maxLineWidth = 0;
+        for (int i = 1; i <= paragraphCount; i++) {
+            int count = layout.lines[i - 1];
+            if (count == -1) {
+                count = estimateLines(i - 1);
+            }
+            lineCount += count;
+            maxLineWidth = Math.max(maxLineWidth, layout.widths[i - 1]);
+            lineTree[i] += count;
+            int parent = i + (i & -i);
+            if (parent <= paragraphCount) {
+                lineTree[parent] += lineTree[i];
+            }
+        }
+    }
+
+    /**
+     * Get the number of the first line of a paragraph.
+     *
+     * @param paragraph the paragraph number
+     * @return the line number
+     */
+    private int getFirstLine(final int paragraph) {
+        int line = 0;
+        for (int i = paragraph; i > 0; i -= i & -i) {
+            line += lineTree[i];
+        }
+        return line;
+    }
+
+    /**
+     * Find the paragraph that holds a line.  The paragraph is wrapped if it
+     * was not yet, which may move the line into the next one.
+     *
+     * @param line the line number
+     * @return the paragraph number, or -1 if the line is past the end of
+     * the text
+     */
+    private int findParagraph(final int line) {
+        for (;;) {
+            int paragraph = 0;
+            int rest = line;
+            for (int mask = Integer.highestOneBit(Math.max(1,
+                        paragraphCount)); mask > 0; mask >>= 1) {
+
+                int next = paragraph + mask;
+                if ((next <= paragraphCount) && (lineTree[next] <= rest)) {
+                    paragraph = next;
+                    rest -= lineTree[next];
+                }
+            }
+            if (paragraph >= paragraphCount) {
+                return -1;
+            }
+            if (layout.lines[paragraph] != -1) {
+                return paragraph;
+            }
+            // Wrapping it may move the line into another paragraph.
+            getParagraphLines(paragraph);
+        }
+    }
+
 }
@@ -641,6 +641,11 @@ public class ColorTheme {
         color.setBackColor(Color.CYAN);
         color.setBold(false);
         colors.put("teditor.selected", color);
+        color = new CellAttributes();
+        color.setForeColor(Color.BLACK);
+        color.setBackColor(Color.YELLOW);
+        color.setBold(false);
+        colors.put("teditor.match", color);
 
         // TTable
         color = new CellAttributes();
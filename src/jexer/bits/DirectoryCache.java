@@ -0,0 +1,317 @@
+/*
+ * Jexer - Java Text User Interface
+ *
+ * The MIT License (MIT)
+ *
+ * Copyright (C) 2019 Kevin Lamonte
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a
+ * copy of this software and associated documentation files (the "Software"),
+ * to deal in the Software without restriction, including without limitation
+ * the rights to use, copy, modify, merge, publish, distribute, sublicense,
+ * and/or sell copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL
+ * THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ * DEALINGS IN THE SOFTWARE.
+ *
+ * @author Kevin Lamonte [kevin.lamonte@gmail.com]
+ * @version 1
+ */
+package jexer.bits;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+
+/**
+ * DirectoryCache remembers what was found in directories that have already
+ * been read, so that file dialogs opened again on the same folders do not
+ * go back to the disk.
+ *
+ * <p>
+ * A listing is used again only while the directory's modification time is
+ * the same as when it was read, which is true until entries are added,
+ * removed, or renamed.  Listings read within MODIFIED_SLOP millis of the
+ * directory's last change are not trusted, because a further change in the
+ * same clock tick would not move the modification time.  File sizes in a
+ * listing are the sizes when it was read.
+ *
+ * <p>
+ * Hidden (dot) entries are not kept.  The least recently used listings are
+ * dropped once the total number of entries goes over MAX_ENTRIES.
+ */
+public class DirectoryCache {
+
+    // ------------------------------------------------------------------------
+    // Constants --------------------------------------------------------------
+    // ------------------------------------------------------------------------
+
+    /**
+     * The largest number of entries, over all directories, to keep.
+     */
+    public static final int MAX_ENTRIES = 250000;
+
+    /**
+     * How long, in millis, after a directory changed its listing can be
+     * trusted.
+     */
+    private static final long MODIFIED_SLOP = 2000;
+
+    // ------------------------------------------------------------------------
+    // Variables --------------------------------------------------------------
+    // ------------------------------------------------------------------------
+
+    /**
+     * The listings, least recently used first.
+     */
+    private LinkedHashMap<File, Listing> listings;
+
+    /**
+     * The number of entries in all the listings.
+     */
+    private int entryCount = 0;
+
+    /**
+     * Entry is one file or directory found in a directory.
+     */
+    public static class Entry {
+
+        /**
+         * The file, canonical if it is a directory.
+         */
+        private File file;
+
+        /**
+         * The name within its parent directory.
+         */
+        private String name;
+
+        /**
+         * If true, this is a directory.
+         */
+        private boolean directory;
+
+        /**
+         * If true, the file can be read.
+         */
+        private boolean readable;
+
+        /**
+         * The length of the file in bytes, or 0 for a directory.
+         */
+        private long length;
+
+        /**
+         * Read a directory entry from disk.
+         *
+         * @param parent the directory containing the entry
+         * @param name the name within parent
+         * @throws IOException if the canonical path of a directory cannot be
+         * found
+         */
+        public Entry(final File parent, final String name) throws IOException {
+            this.name = name;
+            file = new File(parent, name);
+            directory = file.isDirectory();
+            if (directory) {
+                file = file.getCanonicalFile();
+                length = 0;
+            } else {
+                length = file.length();
+            }
+            readable = file.canRead();
+        }
+
+        /**
+         * Get the file.
+         *
+         * @return the file, canonical if it is a directory
+         */
+        public File getFile() {
+            return file;
+        }
+
+        /**
+         * Get the name of the entry within its parent directory.
+         *
+         * @return the name
+         */
+        public String getName() {
+            return name;
+        }
+
+        /**
+         * See if the entry is a directory.
+         *
+         * @return true if it is a directory
+         */
+        public boolean isDirectory() {
+            return directory;
+        }
+
+        /**
+         * See if the entry could be read.
+         *
+         * @return true if it could be read
+         */
+        public boolean canRead() {
+            return readable;
+        }
+
+        /**
+         * Get the length of the file.
+         *
+         * @return the length in bytes, or 0 for a directory
+         */
+        public long length() {
+            return length;
+        }
+
+    }
+
+    /**
+     * Listing is the entries read from one directory.
+     */
+    private static class Listing {
+
+        /**
+         * The modification time of the directory before it was read.
+         */
+        private long lastModified;
+
+        /**
+         * The entries, sorted by name.
+         */
+        private List<Entry> entries;
+
+        /**
+         * Public constructor.
+         *
+         * @param lastModified the modification time of the directory before
+         * it was read
+         * @param entries the entries, sorted by name
+         */
+        public Listing(final long lastModified, final List<Entry> entries) {
+            this.lastModified = lastModified;
+            this.entries = entries;
+        }
+
+    }
+
+    // ------------------------------------------------------------------------
+    // Constructors -----------------------------------------------------------
+    // ------------------------------------------------------------------------
+
+    /**
+     * Public constructor.
+     */
+    public DirectoryCache() {
+        listings = new LinkedHashMap<File, Listing>(16, 0.75f, true);
+    }
+
+    // ------------------------------------------------------------------------
+    // DirectoryCache ---------------------------------------------------------
+    // ------------------------------------------------------------------------
+
+    /**
+     * Get the entries of a directory if they are known and still current.
+     *
+     * @param directory the directory
+     * @return the entries sorted by name, or null if the directory needs to
+     * be read.  The list must not be changed.
+     */
+    public List<Entry> get(final File directory) {
+        File key = directory.getAbsoluteFile();
+        long lastModified = key.lastModified();
+        synchronized (listings) {
+            Listing listing = listings.get(key);
+            if (listing == null) {
+                return null;
+            }
+            if (listing.lastModified != lastModified) {
+                remove(key);
+                return null;
+            }
+            return listing.entries;
+        }
+    }
+
+    /**
+     * Remember the entries of a directory.
+     *
+     * @param directory the directory
+     * @param lastModified the value of directory.lastModified() taken
+     * before the directory was listed
+     * @param entries the entries sorted by name, without hidden entries.
+     * The list must not be changed afterwards.
+     */
+    public void put(final File directory, final long lastModified,
+        final List<Entry> entries) {
+
+        if ((lastModified == 0)
+            || (System.currentTimeMillis() - lastModified < MODIFIED_SLOP)
+            || (entries.size() > MAX_ENTRIES)
+        ) {
+            // Cannot tell if it will change without us noticing.
+            return;
+        }
+
+        File key = directory.getAbsoluteFile();
+        synchronized (listings) {
+            remove(key);
+            listings.put(key, new Listing(lastModified, entries));
+            entryCount += entries.size();
+
+            Iterator<Listing> iterator = listings.values().iterator();
+            while ((entryCount > MAX_ENTRIES) && iterator.hasNext()) {
+                entryCount -= iterator.next().entries.size();
+                iterator.remove();
+            }
+        }
+    }
+
+    /**
+     * Forget what was read from a directory.
+     *
+     * @param directory the directory
+     */
+    public void invalidate(final File directory) {
+        synchronized (listings) {
+            remove(directory.getAbsoluteFile());
+        }
+    }
+
+    /**
+     * Forget everything.
+     */
+    public void clear() {
+        synchronized (listings) {
+            listings.clear();
+            entryCount = 0;
+        }
+    }
+
+    /**
+     * Drop one listing.  The caller must hold the listings lock.
+     *
+     * @param directory the absolute directory
+     */
+    private void remove(final File directory) {
+        Listing listing = listings.remove(directory);
+        if (listing != null) {
+            entryCount -= listing.entries.size();
+        }
+    }
+
+}
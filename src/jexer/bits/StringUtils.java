@@ -58,83 +58,171 @@ public class StringUtils {
      * @return the list of lines
      */
     public static List<String> left(final String str, final int n) {
-        List<String> result = new ArrayList<String>();
+        int [] offsets = wrap(str, n);
+        List<String> result = new ArrayList<String>(offsets.length / 2);
+        for (int i = 0; i < offsets.length; i += 2) {
+            result.add(getWrappedLine(str, offsets[i], offsets[i + 1]));
+        }
+        return result;
+    }
 
-        /*
-         * General procedure:
-         *
-         *   1. Split on '\n' into paragraphs.
-         *
-         *   2. Scan each line, noting the position of the last
-         *      beginning-of-a-word.
-         *
-         *   3. Chop at the last #2 if the next beginning-of-a-word exceeds
-         *      n.
-         *
-         *   4. Return the lines.
-         */
+    /**
+     * Find where left() breaks a string into lines, without creating the
+     * lines.
+     *
+     * <p>
+     * General procedure:
+     *
+     *   1. Split on '\n' into paragraphs, dropping trailing empty
+     *      paragraphs the way String.split("\n") does.
+     *
+     *   2. Scan each paragraph once, keeping the display width of the
+     *      current line and of the current word.  A word is the whitespace
+     *      character before it followed by its other characters.
+     *
+     *   3. At the end of each word, break the line before the word if the
+     *      word would make the line wider than n.
+     *
+     *   4. Return the start and end offsets of the lines.
+     *
+     * <p>
+     * The text of a line is not always the same as the string between its
+     * offsets: whitespace at the start of a paragraph is dropped, a run of
+     * whitespace is shown as its first character, and a space at the start
+     * of a wrapped line is dropped.  getWrappedLine() applies these rules.
+     *
+     * @param str the string
+     * @param n the maximum number of characters in a line
+     * @return the offsets, two per line: line i starts at offsets[2 * i]
+     * and ends at offsets[2 * i + 1]
+     */
+    public static int [] wrap(final CharSequence str, final int n) {
+        int [] offsets = new int[16];
+        int count = 0;
+
+        int end = str.length();
+        while ((end > 0) && (str.charAt(end - 1) == '\n')) {
+            end--;
+        }
+        if ((end == 0) && (str.length() > 0)) {
+            // Only newlines: String.split() returns no paragraphs.
+            return new int[0];
+        }
 
-        String [] rawLines = str.split("\n");
-        for (int i = 0; i < rawLines.length; i++) {
-            StringBuilder line = new StringBuilder();
-            StringBuilder word = new StringBuilder();
+        int paragraphStart = 0;
+        for (;;) {
+            // lineStart is -1 while nothing was added to the line.
+            int lineStart = -1;
+            int lineEnd = paragraphStart;
+            int lineWidth = 0;
+            // wordStart is -1 until the paragraph's first word starts.
+            int wordStart = -1;
+            int wordWidth = 0;
             boolean inWord = false;
-            for (int j = 0; j < rawLines[i].length(); j++) {
-                char ch = rawLines[i].charAt(j);
-                if ((ch == ' ') || (ch == '\t')) {
-                    if (inWord == true) {
-                        // We have just transitioned from a word to
-                        // whitespace.  See if we have enough space to add
-                        // the word to the line.
-                        if (width(word.toString()) + width(line.toString()) > n) {
-                            // This word will exceed the line length.  Wrap
-                            // at it instead.
-                            result.add(line.toString());
-                            line = new StringBuilder();
+
+            int i = paragraphStart;
+            for (;;) {
+                int ch = -1;
+                if (i < end) {
+                    ch = Character.codePointAt(str, i);
+                }
+                if ((ch == -1) || (ch == '\n')
+                    || (((ch == ' ') || (ch == '\t')) && inWord)
+                ) {
+                    // The word ends here: add it to the line.
+                    if (wordWidth + lineWidth > n) {
+                        // This word will exceed the line length.  Wrap at
+                        // it instead.
+                        if (count + 2 > offsets.length) {
+                            offsets = Arrays.copyOf(offsets, count * 2);
                         }
-                        if ((word.toString().startsWith(" "))
-                            && (width(line.toString()) == 0)
+                        offsets[count++] = (lineStart == -1 ? i : lineStart);
+                        offsets[count++] = (lineStart == -1 ? i : lineEnd);
+                        lineStart = -1;
+                        lineWidth = 0;
+                    }
+                    if (wordStart != -1) {
+                        if ((str.charAt(wordStart) == ' ')
+                            && (lineWidth == 0)
                         ) {
-                            line.append(word.substring(1));
-                        } else {
-                            line.append(word);
+                            // The leading space is dropped.
+                            wordWidth--;
+                        }
+                        if (lineStart == -1) {
+                            lineStart = wordStart;
                         }
-                        word = new StringBuilder();
-                        word.append(ch);
-                        inWord = false;
-                    } else {
-                        // We are in the whitespace before another word.  Do
-                        // nothing.
+                        lineEnd = i;
+                        lineWidth += wordWidth;
                     }
-                } else {
-                    if (inWord == true) {
-                        // We are appending to a word.
-                        word.append(ch);
-                    } else {
-                        // We have transitioned from whitespace to a word.
-                        word.append(ch);
-                        inWord = true;
+                    if ((ch == -1) || (ch == '\n')) {
+                        break;
+                    }
+                    // The whitespace starts the next word.
+                    wordStart = i;
+                    wordWidth = width(ch);
+                    inWord = false;
+                } else if ((ch != ' ') && (ch != '\t')) {
+                    if (wordStart == -1) {
+                        wordStart = i;
                     }
+                    wordWidth += width(ch);
+                    inWord = true;
                 }
-            } // for (int j = 0; j < rawLines[i].length(); j++)
+                // Whitespace after whitespace is skipped.
+                i += Character.charCount(ch);
+            }
 
-            if (width(word.toString()) + width(line.toString()) > n) {
-                // This word will exceed the line length.  Wrap at it
-                // instead.
-                result.add(line.toString());
-                line = new StringBuilder();
+            if (count + 2 > offsets.length) {
+                offsets = Arrays.copyOf(offsets, count * 2);
             }
-            if ((word.toString().startsWith(" "))
-                && (width(line.toString()) == 0)
-            ) {
-                line.append(word.substring(1));
-            } else {
-                line.append(word);
+            offsets[count++] = (lineStart == -1 ? i : lineStart);
+            offsets[count++] = (lineStart == -1 ? i : lineEnd);
+
+            if (i >= end) {
+                break;
             }
-            result.add(line.toString());
-        } // for (int i = 0; i < rawLines.length; i++) {
+            paragraphStart = i + 1;
+        }
 
-        return result;
+        return Arrays.copyOf(offsets, count);
+    }
+
+    /**
+     * Get the text of a line found by wrap().
+     *
+     * @param str the string that was passed to wrap()
+     * @param start the start offset of the line
+     * @param end the end offset of the line
+     * @return the line
+     */
+    public static String getWrappedLine(final CharSequence str,
+        final int start, final int end) {
+
+        StringBuilder sb = new StringBuilder(end - start);
+        boolean visible = false;
+        for (int i = start; i < end;) {
+            int ch = Character.codePointAt(str, i);
+            if ((ch == ' ') || (ch == '\t')) {
+                char last = (i > start ? str.charAt(i - 1) : 'x');
+                if ((last == ' ') || (last == '\t')) {
+                    // Only the first character of a run of whitespace is
+                    // shown.
+                    i++;
+                    continue;
+                }
+                if ((ch == ' ') && !visible) {
+                    // So is a space at the start of the line.
+                    i++;
+                    continue;
+                }
+            }
+            if (width(ch) > 0) {
+                visible = true;
+            }
+            sb.appendCodePoint(ch);
+            i += Character.charCount(ch);
+        }
+        return sb.toString();
     }
 
     /**
@@ -154,7 +242,8 @@ public class StringUtils {
         List<String> lines = left(str, n);
         for (String line: lines) {
             StringBuilder sb = new StringBuilder();
-            for (int i = 0; i < n - width(line); i++) {
+            int pad = n - width(line);
+            for (int i = 0; i < pad; i++) {
                 sb.append(' ');
             }
             sb.append(line);
@@ -181,8 +270,9 @@ public class StringUtils {
         List<String> lines = left(str, n);
         for (String line: lines) {
             StringBuilder sb = new StringBuilder();
-            int l = (n - width(line)) / 2;
-            int r = n - width(line) - l;
+            int pad = n - width(line);
+            int l = pad / 2;
+            int r = pad - l;
             for (int i = 0; i < l; i++) {
                 sb.append(' ');
             }
@@ -410,6 +500,35 @@ public class StringUtils {
         return result.toString();
     }
 
+    /**
+     * The display width of every code point, in blocks of 256 code points.
+     * A block is built the first time one of its code points is looked up.
+     */
+    private static final WidthBlock [] WIDTHS = new WidthBlock[0x1100];
+
+    /**
+     * The display widths of a block of 256 code points.
+     */
+    private static final class WidthBlock {
+
+        /**
+         * The widths.  This is final so that a block built by one thread
+         * is seen complete by the others without locking.
+         */
+        private final byte [] widths = new byte[256];
+
+        /**
+         * Public constructor.
+         *
+         * @param block the block number, the code point shifted right by 8
+         */
+        public WidthBlock(final int block) {
+            for (int i = 0; i < 256; i++) {
+                widths[i] = (byte) computeWidth((block << 8) | i);
+            }
+        }
+    }
+
     /**
      * Determine display width of a Unicode code point.
      *
@@ -418,12 +537,40 @@ public class StringUtils {
      * point, one of 0, 1, or 2
      */
     public static int width(final int ch) {
+        if ((ch >= 0x20) && (ch < 0x7f)) {
+            return 1;
+        }
+        if (ch < 0) {
+            return 0;
+        }
+        if (ch > 0x10ffff) {
+            return 1;
+        }
+        WidthBlock block = WIDTHS[ch >> 8];
+        if (block == null) {
+            block = new WidthBlock(ch >> 8);
+            WIDTHS[ch >> 8] = block;
+        }
+        return block.widths[ch & 0xff];
+    }
+
+    /**
+     * Compute the display width of a Unicode code point for the WIDTHS
+     * table.
+     *
+     * @param ch the code point
+     * @return the number of text cell columns required to display this code
+     * point, one of 0, 1, or 2
+     */
+    private static int computeWidth(final int ch) {
         /*
          * This routine is a modified version of mk_wcwidth() available
          * at: http://www.cl.cam.ac.uk/~mgk25/ucs/wcwidth.c
          *
          * The combining characters list has been omitted from this
-         * implementation.  Hopefully no users will be impacted.
+         * implementation: the screens and the terminal emulator put every
+         * code point in a cell of its own, so a combining character is
+         * given a column rather than drawn over the one before it.
          */
 
         // 8-bit control characters: width 0
@@ -465,8 +612,7 @@ public class StringUtils {
     }
 
     /**
-     * Determine display width of a string.  This ASSUMES that no characters
-     * are combining.  Hopefully no users will be impacted.
+     * Determine display width of a string.
      *
      * @param str the string
      * @return the number of text cell columns required to display this string
@@ -475,12 +621,38 @@ public class StringUtils {
         if (str == null) {
             return 0;
         }
+        return width(str, 0, str.length());
+    }
+
+    /**
+     * Determine display width of part of a string.
+     *
+     * @param str the string
+     * @param from the index of the first character
+     * @param to the index after the last character
+     * @return the number of text cell columns required to display this part
+     * of the string
+     */
+    public static int width(final CharSequence str, final int from,
+        final int to) {
 
         int n = 0;
-        for (int i = 0; i < str.length();) {
-            int ch = str.codePointAt(i);
-            n += width(ch);
-            i += Character.charCount(ch);
+        for (int i = from; i < to;) {
+            char ch = str.charAt(i);
+            if ((ch >= 0x20) && (ch < 0x7f)) {
+                // Printable ASCII, the common case.
+                n++;
+                i++;
+                continue;
+            }
+            int cp = ch;
+            if (Character.isHighSurrogate(ch) && (i + 1 < to)
+                && Character.isLowSurrogate(str.charAt(i + 1))
+            ) {
+                cp = Character.toCodePoint(ch, str.charAt(i + 1));
+            }
+            n += width(cp);
+            i += Character.charCount(cp);
         }
         return n;
     }
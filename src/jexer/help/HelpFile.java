@@ -32,11 +32,13 @@ import java.io.InputStream;
 import java.io.IOException;
 import java.text.MessageFormat;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
+import java.util.Comparator;
 import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.ResourceBundle;
-import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 import javax.xml.parsers.DocumentBuilderFactory;
 import javax.xml.parsers.DocumentBuilder;
@@ -59,6 +61,22 @@ public class HelpFile {
      */
     private static final ResourceBundle i18n = ResourceBundle.getBundle(HelpFile.class.getName());
 
+    // ------------------------------------------------------------------------
+    // Constants --------------------------------------------------------------
+    // ------------------------------------------------------------------------
+
+    /**
+     * The characters that make a search string a regular expression rather
+     * than a list of words.
+     */
+    private static final String REGEX_CHARS = "\\^$.|?*+()[]{}";
+
+    /**
+     * The search score of a word in a topic title, compared to 1 for a
+     * word in the topic text.
+     */
+    private static final int TITLE_WEIGHT = 10;
+
     // ------------------------------------------------------------------------
     // Variables --------------------------------------------------------------
     // ------------------------------------------------------------------------
@@ -78,6 +96,29 @@ public class HelpFile {
      */
     private HashMap<String, Topic> topicsByTerm;
 
+    /**
+     * All of the topics, sorted by title.
+     */
+    private Topic [] sortedTopics = new Topic[0];
+
+    /**
+     * The lower-case text of each topic in sortedTopics, for regular
+     * expression searches.
+     */
+    private String [] lowerTexts = new String[0];
+
+    /**
+     * The lower-case words that appear in the topics, sorted.
+     */
+    private String [] terms = new String[0];
+
+    /**
+     * The postings of each word in terms: pairs of the index in
+     * sortedTopics of a topic that has the word, and the score of the word
+     * in that topic.  Topics are in increasing order.
+     */
+    private int [][] postings = new int[0][];
+
     /**
      * The special "table of contents" topic.
      */
@@ -136,6 +177,7 @@ public class HelpFile {
             // Always generate the TOC and Index from what was read.
             generateTableOfContents();
             generateIndex();
+            generateSearchIndex();
         }
     }
 
@@ -154,42 +196,22 @@ public class HelpFile {
     }
 
     /**
-     * Get the special "search results" topic.
+     * Get the special "search results" topic.  A search string of plain
+     * words finds the topics that contain it in their title or text, best
+     * matches first.  A search string with regular expression characters
+     * is matched against the title and text of every topic, in title
+     * order.  Upper/lower case does not matter.
      *
-     * @param searchString a regular expression search string
+     * @param searchString the words to find, or a regular expression
      * @return an index topic containing topics with text that matches the
      * search string
      */
     public Topic getSearchResults(final String searchString) {
-        List<Topic> allTopics = new ArrayList<Topic>();
-        allTopics.addAll(topicsByTitle.values());
-        Collections.sort(allTopics);
-
-        List<Topic> results = new ArrayList<Topic>();
-        Pattern pattern = Pattern.compile(searchString);
-        Pattern patternLower = Pattern.compile(searchString.toLowerCase());
-
-        for (Topic topic: allTopics) {
-            Matcher match = pattern.matcher(topic.getText().toLowerCase());
-            if (match.find()) {
-                results.add(topic);
-                continue;
-            }
-            match = pattern.matcher(topic.getTitle().toLowerCase());
-            if (match.find()) {
-                results.add(topic);
-                continue;
-            }
-            match = patternLower.matcher(topic.getText().toLowerCase());
-            if (match.find()) {
-                results.add(topic);
-                continue;
-            }
-            match = patternLower.matcher(topic.getTitle().toLowerCase());
-            if (match.find()) {
-                results.add(topic);
-                continue;
-            }
+        List<Topic> results;
+        if (isRegex(searchString)) {
+            results = getRegexResults(searchString);
+        } else {
+            results = getWordResults(searchString);
         }
 
         StringBuilder text = new StringBuilder();
@@ -208,6 +230,129 @@ public class HelpFile {
                 searchString), text.toString(), links);
     }
 
+    /**
+     * See if a search string is a regular expression.
+     *
+     * @param searchString the search string
+     * @return true if it has any regular expression characters
+     */
+    private boolean isRegex(final String searchString) {
+        for (int i = 0; i < searchString.length(); i++) {
+            if (REGEX_CHARS.indexOf(searchString.charAt(i)) != -1) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Find the topics that match a regular expression.
+     *
+     * @param searchString a regular expression search string
+     * @return the topics with a title or text that matches, in title order
+     */
+    private List<Topic> getRegexResults(final String searchString) {
+        List<Topic> results = new ArrayList<Topic>();
+        Pattern pattern = Pattern.compile(searchString);
+        Pattern patternLower = Pattern.compile(searchString.toLowerCase());
+
+        for (int i = 0; i < sortedTopics.length; i++) {
+            String title = sortedTopics[i].getTitle().toLowerCase();
+            if (pattern.matcher(lowerTexts[i]).find()
+                || pattern.matcher(title).find()
+                || patternLower.matcher(lowerTexts[i]).find()
+                || patternLower.matcher(title).find()
+            ) {
+                results.add(sortedTopics[i]);
+            }
+        }
+        return results;
+    }
+
+    /**
+     * Find the topics that contain a search string.  The search index
+     * ranks the topics where every word of the search string starts a
+     * word, highest score first; the topics where it only appears inside
+     * other words follow in title order.
+     *
+     * @param searchString the text to find
+     * @return the topics with a title or text that contains it
+     */
+    private List<Topic> getWordResults(final String searchString) {
+        String lower = searchString.toLowerCase();
+        List<String> words = splitWords(lower);
+        List<Topic> results = new ArrayList<Topic>();
+
+        // found[t] is the number of words found so far in topic t: a topic
+        // that missed one word can never catch up.
+        int [] found = new int[sortedTopics.length];
+        final int [] scores = new int[sortedTopics.length];
+        for (int w = 0; w < words.size(); w++) {
+            String word = words.get(w);
+            int i = Arrays.binarySearch(terms, word);
+            if (i < 0) {
+                i = -(i + 1);
+            }
+            for (; (i < terms.length) && terms[i].startsWith(word); i++) {
+                int [] posting = postings[i];
+                for (int j = 0; j < posting.length; j += 2) {
+                    int t = posting[j];
+                    if (found[t] == w) {
+                        found[t] = w + 1;
+                    }
+                    if (found[t] == w + 1) {
+                        scores[t] += posting[j + 1];
+                    }
+                }
+            }
+        }
+
+        List<Integer> matches = new ArrayList<Integer>();
+        for (int t = 0; t < found.length; t++) {
+            if (found[t] == words.size()) {
+                matches.add(t);
+            }
+        }
+        Collections.sort(matches, new Comparator<Integer>() {
+            public int compare(final Integer t1, final Integer t2) {
+                if (scores[t1] != scores[t2]) {
+                    return (scores[t1] > scores[t2] ? -1 : 1);
+                }
+                return t1.compareTo(t2);
+            }
+        });
+        // The index only knows the words: check that the topic has the
+        // whole search string.
+        boolean [] checked = new boolean[sortedTopics.length];
+        for (Integer t: matches) {
+            checked[t] = true;
+            if (contains(t, lower)) {
+                results.add(sortedTopics[t]);
+            }
+        }
+
+        // The index cannot find text inside a word, such as "ell" in
+        // "hello".
+        for (int t = 0; t < sortedTopics.length; t++) {
+            if (!checked[t] && contains(t, lower)) {
+                results.add(sortedTopics[t]);
+            }
+        }
+        return results;
+    }
+
+    /**
+     * See if the title or text of a topic contains a string.
+     *
+     * @param t the topic index in sortedTopics
+     * @param lower the string, in lower case
+     * @return true if the title or the text contains it
+     */
+    private boolean contains(final int t, final String lower) {
+        return lowerTexts[t].contains(lower)
+            || sortedTopics[t].getTitle().toLowerCase().contains(lower);
+    }
+
     /**
      * Get the special "table of contents" topic.
      *
@@ -296,6 +441,93 @@ public class HelpFile {
         index = new Topic(i18n.getString("index"), text.toString(), links);
     }
 
+    /**
+     * Generate the search index: every word of every topic title and text,
+     * lower-case, with the topics it appears in.
+     */
+    private void generateSearchIndex() {
+        List<Topic> allTopics = new ArrayList<Topic>();
+        allTopics.addAll(topicsByTitle.values());
+        Collections.sort(allTopics);
+        sortedTopics = allTopics.toArray(new Topic[allTopics.size()]);
+        lowerTexts = new String[sortedTopics.length];
+
+        // The postings of each word while they are built: the first int
+        // is the number of ints used.
+        Map<String, int []> allWords = new HashMap<String, int []>();
+        for (int t = 0; t < sortedTopics.length; t++) {
+            lowerTexts[t] = sortedTopics[t].getText().toLowerCase();
+            addWords(allWords, t, sortedTopics[t].getTitle().toLowerCase(),
+                TITLE_WEIGHT);
+            addWords(allWords, t, lowerTexts[t], 1);
+        }
+
+        terms = allWords.keySet().toArray(new String[allWords.size()]);
+        Arrays.sort(terms);
+        postings = new int[terms.length][];
+        for (int i = 0; i < terms.length; i++) {
+            int [] posting = allWords.get(terms[i]);
+            postings[i] = Arrays.copyOfRange(posting, 1, posting[0]);
+        }
+    }
+
+    /**
+     * Add the words of a string to the postings being built by
+     * generateSearchIndex().  Topics must be added in increasing order.
+     *
+     * @param allWords the postings of each word
+     * @param topic the index of the topic in sortedTopics
+     * @param str the string
+     * @param score the score of one appearance of a word in str
+     */
+    private void addWords(final Map<String, int []> allWords,
+        final int topic, final String str, final int score) {
+
+        for (String word: splitWords(str)) {
+            int [] posting = allWords.get(word);
+            if (posting == null) {
+                posting = new int[5];
+                posting[0] = 1;
+                allWords.put(word, posting);
+            } else if (posting[posting[0] - 2] == topic) {
+                // Another appearance in the same topic.
+                posting[posting[0] - 1] += score;
+                continue;
+            } else if (posting[0] + 2 > posting.length) {
+                posting = Arrays.copyOf(posting, posting.length * 2 + 1);
+                allWords.put(word, posting);
+            }
+            posting[posting[0]] = topic;
+            posting[posting[0] + 1] = score;
+            posting[0] += 2;
+        }
+    }
+
+    /**
+     * Split a string into words: runs of letters and digits.
+     *
+     * @param str the string
+     * @return the words
+     */
+    private static List<String> splitWords(final String str) {
+        List<String> words = new ArrayList<String>();
+        int start = -1;
+        for (int i = 0; i < str.length(); i++) {
+            if (Character.isLetterOrDigit(str.charAt(i))) {
+                if (start == -1) {
+                    start = i;
+                }
+            } else if (start != -1) {
+                words.add(str.substring(start, i));
+                start = -1;
+            }
+        }
+        if (start != -1) {
+            words.add(str.substring(start));
+        }
+        return words;
+    }
+
     /**
      * Load topics from a help file into the topics pool.
      *
@@ -330,10 +330,9 @@ public class Topic implements Comparable<Topic> {
             sb.append(cleanLine);
             sb.append("\n");
 
-            this.text = sb.toString();
-
         } // for (String line: lines)
 
+        this.text = sb.toString();
     }
 
 }
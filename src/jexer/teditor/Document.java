@@ -28,11 +28,18 @@
  */
 package jexer.teditor;
 
+import java.io.BufferedWriter;
+import java.io.File;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.lang.reflect.Array;
+import java.lang.reflect.Method;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
+import java.util.Set;
 
 import jexer.bits.CellAttributes;
 
@@ -41,6 +48,15 @@ import jexer.bits.CellAttributes;
  */
 public class Document {
 
+    // ------------------------------------------------------------------------
+    // Constants --------------------------------------------------------------
+    // ------------------------------------------------------------------------
+
+    /**
+     * The size of the buffer used by saveToFilename().
+     */
+    private static final int SAVE_BUFFER_SIZE = 64 * 1024;
+
     // ------------------------------------------------------------------------
     // Variables --------------------------------------------------------------
     // ------------------------------------------------------------------------
@@ -48,7 +64,7 @@ public class Document {
     /**
      * The list of lines.
      */
-    private ArrayList<Line> lines = new ArrayList<Line>();
+    private LineTable lines;
 
     /**
      * The current line number being edited.  Note that this is 0-based, the
@@ -93,6 +109,37 @@ public class Document {
      */
     private boolean saveWithTabs = false;
 
+    /**
+     * The undo/redo journal.
+     */
+    private EditJournal journal = new EditJournal();
+
+    /**
+     * The nesting level of beginEdit() calls.
+     */
+    private int editDepth = 0;
+
+    /**
+     * The first line number of the edit in progress.
+     */
+    private int editFirst = 0;
+
+    /**
+     * The raw strings of the lines of the edit in progress, before the
+     * edit.
+     */
+    private String [] editOldLines = null;
+
+    /**
+     * The number of lines before the edit in progress.
+     */
+    private int editLineCount = 0;
+
+    /**
+     * The number of changes made to the text, see getChangeCount().
+     */
+    private int changeCount = 0;
+
     // ------------------------------------------------------------------------
     // Constructors -----------------------------------------------------------
     // ------------------------------------------------------------------------
@@ -110,10 +157,8 @@ public class Document {
         // language keywords.
         highlighter.setJavaColors();
 
-        String [] rawLines = str.split("\n");
-        for (int i = 0; i < rawLines.length; i++) {
-            lines.add(new Line(rawLines[i], this.defaultColor, highlighter));
-        }
+        // Lines are only tokenized when they are first used.
+        lines = new LineTable(str, this.defaultColor, highlighter);
     }
 
     /**
@@ -134,14 +179,13 @@ public class Document {
      */
     public Document dup() {
         Document other = new Document();
-        for (Line line: lines) {
-            other.lines.add(line.dup());
-        }
+        other.lines = lines.dup();
         other.lineNumber = lineNumber;
         other.overwrite = overwrite;
         other.dirty = dirty;
         other.defaultColor = defaultColor;
         other.highlighter.setTo(highlighter);
+        other.lines.setHighlighter(other.highlighter);
         return other;
     }
 
@@ -171,35 +215,176 @@ public class Document {
     }
 
     /**
-     * Save contents to file.
+     * Save contents to file.  If filename is a symbolic link, the file it
+     * points to is saved.
+     *
+     * <p>
+     * When the file's permissions can be carried over, the contents are
+     * written to a temporary file in the same directory first, which is
+     * then renamed over the file, so that a failed save does not leave a
+     * truncated file behind.  Otherwise, for example on a Java 6 runtime,
+     * a file system without POSIX permissions, or in a directory that
+     * cannot be written to, the file is written in place.
      *
      * @param filename file to save to
      * @throws IOException if a java.io operation throws
      */
     public void saveToFilename(final String filename) throws IOException {
-        OutputStreamWriter output = null;
+        File file = new File(filename).getCanonicalFile();
+
+        File temp = null;
+        if (file.isFile()) {
+            try {
+                temp = File.createTempFile("." + file.getName() + "-",
+                    ".tmp", file.getParentFile());
+            } catch (IOException e) {
+                // The directory is not writable, the file may still be.
+                temp = null;
+            }
+        }
+
+        try {
+            if ((temp != null) && copyPermissions(file, temp)) {
+                writeLines(temp);
+                if (temp.renameTo(file)) {
+                    temp = null;
+                    dirty = false;
+                    return;
+                }
+                // Some platforms cannot rename over an existing file.
+                // Never delete the original to make room: write in place.
+            }
+            writeLines(file);
+            dirty = false;
+        } finally {
+            if (temp != null) {
+                temp.delete();
+            }
+        }
+    }
+
+    /**
+     * Write the lines to a file.
+     *
+     * @param file the file to write
+     * @throws IOException if a java.io operation throws
+     */
+    private void writeLines(final File file) throws IOException {
+        Writer output = null;
         try {
-            output = new OutputStreamWriter(new FileOutputStream(filename),
-                "UTF-8");
+            output = new BufferedWriter(new OutputStreamWriter(
+                new FileOutputStream(file), "UTF-8"), SAVE_BUFFER_SIZE);
 
-            for (Line line: lines) {
+            for (int i = 0; i < lines.size(); i++) {
                 if (saveWithTabs) {
-                    output.write(convertSpacesToTabs(line.getRawString()));
+                    output.write(convertSpacesToTabs(lines.getRawString(i)));
                 } else {
-                    output.write(line.getRawString());
+                    output.write(lines.getRawString(i));
                 }
                 output.write("\n");
             }
-
-            dirty = false;
-        }
-        finally {
+            output.close();
+            output = null;
+        } finally {
             if (output != null) {
-                output.close();
+                try {
+                    output.close();
+                } catch (IOException e) {
+                    // SQUASH
+                }
             }
         }
     }
 
+    /**
+     * Give a file the POSIX permissions of another.  java.nio.file is
+     * reached by reflection since this code still runs on Java 6.
+     *
+     * @param from the file to copy the permissions from
+     * @param to the file to set the permissions of
+     * @return true if the permissions were copied
+     */
+    private static boolean copyPermissions(final File from, final File to) {
+        try {
+            Class<?> files = Class.forName("java.nio.file.Files");
+            Class<?> path = Class.forName("java.nio.file.Path");
+            Class<?> linkOption = Class.forName("java.nio.file.LinkOption");
+            Method toPath = File.class.getMethod("toPath");
+            Object noOptions = Array.newInstance(linkOption, 0);
+
+            Object permissions = files.getMethod("getPosixFilePermissions",
+                path, noOptions.getClass()).invoke(null,
+                    toPath.invoke(from), noOptions);
+            files.getMethod("setPosixFilePermissions", path,
+                Set.class).invoke(null, toPath.invoke(to), permissions);
+            return true;
+        } catch (Throwable e) {
+            // No java.nio.file, or no POSIX permissions on this file
+            // system.
+            return false;
+        }
+    }
+
+    /**
+     * Add text at the end of the document, for example the next block of
+     * a file that is still being loaded.  This is not an edit: it does not
+     * make the document dirty and cannot be undone.
+     *
+     * @param text the text to add.  It should end at a line boundary.
+     */
+    public void appendText(final String text) {
+        lines.append(text);
+        changeCount++;
+    }
+
+    /**
+     * Get a number that changes every time the text of the document
+     * changes: by an edit, an undo or redo, or appendText().  A copy made
+     * by getSnapshot() is still current while this number is the same.
+     *
+     * @return the change count
+     */
+    public int getChangeCount() {
+        return changeCount;
+    }
+
+    /**
+     * Get a copy of the text that another thread can read while this
+     * document is edited.  The copy shares its strings with this
+     * document, so it is cheap.
+     *
+     * @return the copy
+     */
+    public LineTable.Snapshot getSnapshot() {
+        return lines.getSnapshot();
+    }
+
+    /**
+     * Replace the text of some lines as one operation for undo and redo,
+     * such as a replace all.  The cursor stays where it was, on the same
+     * line.
+     *
+     * @param lineNumbers the line numbers to replace, in any order
+     * @param rawLines the new raw strings of the lines
+     */
+    public void replaceLines(final int [] lineNumbers,
+        final String [] rawLines) {
+
+        if (lineNumbers.length == 0) {
+            return;
+        }
+        dirty = true;
+        int cursor = getCursor();
+        beginUndoGroup();
+        for (int i = 0; i < lineNumbers.length; i++) {
+            beginEdit(lineNumbers[i], 1, false);
+            lines.replace(lineNumbers[i], 1, new String [] { rawLines[i] });
+            endEdit();
+        }
+        setCursor(cursor);
+        endUndoGroup();
+    }
+
     /**
      * Set the overwrite flag.
      *
@@ -240,6 +425,22 @@ public class Document {
         return lines.get(lineNumber);
     }
 
+    /**
+     * Get a specific line by number, with its words highlighted for
+     * display.  Only the lines that are drawn need to be highlighted; the
+     * comment and string state they start in is found by lexing the lines
+     * above, which is cached.
+     *
+     * @param lineNumber the line number.  Note that this is 0-based: 0 is
+     * the first line.
+     * @return the line
+     */
+    public Line getHighlightedLine(final int lineNumber) {
+        Line line = lines.get(lineNumber);
+        line.highlight(lines.getStartState(lineNumber));
+        return line;
+    }
+
     /**
      * Set the current line number being edited.
      *
@@ -575,6 +776,7 @@ public class Document {
      */
     public void del() {
         dirty = true;
+        beginEdit(lineNumber, Math.min(2, lines.size() - lineNumber), false);
         int cursor = lines.get(lineNumber).getCursor();
         if (cursor < lines.get(lineNumber).getDisplayLength() - 1) {
             lines.get(lineNumber).del();
@@ -588,6 +790,7 @@ public class Document {
             lines.get(lineNumber).setCursor(cursor);
             lines.remove(lineNumber + 1);
         }
+        endEdit();
     }
 
     /**
@@ -595,6 +798,8 @@ public class Document {
      */
     public void backspace() {
         dirty = true;
+        int first = Math.max(0, lineNumber - 1);
+        beginEdit(first, lineNumber - first + 1, false);
         int cursor = lines.get(lineNumber).getCursor();
         if (cursor > 0) {
             lines.get(lineNumber).backspace(tabSize, backspaceUnindents);
@@ -616,6 +821,7 @@ public class Document {
                 lines.get(lineNumber).setCursor(0);
             }
         }
+        endEdit();
     }
 
     /**
@@ -623,6 +829,7 @@ public class Document {
      */
     public void enter() {
         dirty = true;
+        beginEdit(lineNumber, 1, false);
         int cursor = lines.get(lineNumber).getRawCursor();
         String original = lines.get(lineNumber).getRawString();
         String firstLine = original.substring(0, cursor);
@@ -632,6 +839,7 @@ public class Document {
         lines.set(lineNumber, new Line(firstLine, defaultColor, highlighter));
         lineNumber++;
         lines.get(lineNumber).home();
+        endEdit();
     }
 
     /**
@@ -642,11 +850,13 @@ public class Document {
      */
     public void addChar(final int ch) {
         dirty = true;
+        beginEdit(lineNumber, 1, true);
         if (overwrite) {
             lines.get(lineNumber).replaceChar(ch);
         } else {
             lines.get(lineNumber).addChar(ch);
         }
+        endEdit();
     }
 
     /**
@@ -692,17 +902,23 @@ public class Document {
      * Handle the tab character.
      */
     public void tab() {
+        dirty = true;
+        beginEdit(lineNumber, Math.min(2, lines.size() - lineNumber), false);
         if (overwrite) {
             del();
         }
         lines.get(lineNumber).tab(tabSize);
+        endEdit();
     }
 
     /**
      * Handle the backtab (shift-tab) character.
      */
     public void backTab() {
+        dirty = true;
+        beginEdit(lineNumber, 1, false);
         lines.get(lineNumber).backTab(tabSize);
+        endEdit();
     }
 
     /**
@@ -724,18 +940,13 @@ public class Document {
     }
 
     /**
-     * Compute the maximum line length for this document.
+     * Get the maximum line length for this document.  Only the lines
+     * edited since the last call are measured again.
      *
      * @return the number of cells needed to display the longest line
      */
     public int getLineLengthMax() {
-        int n = 0;
-        for (Line line : lines) {
-            if (line.getDisplayLength() > n) {
-                n = line.getDisplayLength();
-            }
-        }
-        return n;
+        return lines.getDisplayLengthMax();
     }
 
     /**
@@ -754,8 +965,8 @@ public class Document {
      */
     public String getText() {
         StringBuilder sb = new StringBuilder();
-        for (Line line: getLines()) {
-            sb.append(line.getRawString());
+        for (int i = 0; i < lines.size(); i++) {
+            sb.append(lines.getRawString(i));
             sb.append("\n");
         }
         return sb.toString();
@@ -766,18 +977,135 @@ public class Document {
      * lines from the document.
      */
     public void cleanWhitespace() {
-        for (Line line: getLines()) {
-            line.trimRight();
+        beginUndoGroup();
+        for (int i = 0; i < lines.size(); i++) {
+            String rawLine = lines.getRawString(i);
+            if ((rawLine.length() > 0)
+                && Character.isWhitespace(rawLine.charAt(rawLine.length() - 1))
+            ) {
+                beginEdit(i, 1, false);
+                lines.get(i).trimRight();
+                endEdit();
+            }
         }
-        if (lines.size() == 0) {
-            return;
+        int last = lines.size();
+        while ((last > 1) && (lines.getRawString(last - 1).length() == 0)) {
+            last--;
         }
-        while (lines.get(lines.size() - 1).length() == 0) {
-            lines.remove(lines.size() - 1);
+        if (last < lines.size()) {
+            beginEdit(last, lines.size() - last, false);
+            while (lines.size() > last) {
+                lines.remove(lines.size() - 1);
+            }
+            if (lineNumber > lines.size() - 1) {
+                lineNumber = lines.size() - 1;
+            }
+            endEdit();
         }
-        if (lineNumber > lines.size() - 1) {
-            lineNumber = lines.size() - 1;
+        endUndoGroup();
+    }
+
+    /**
+     * Set the undo level.
+     *
+     * @param undoLevel the maximum number of undo operations.  0 means
+     * unlimited.
+     */
+    public void setUndoLevel(final int undoLevel) {
+        journal.setUndoLevel(undoLevel);
+    }
+
+    /**
+     * Start a group of edits that will be undone and redone as one
+     * operation, such as a paste.  Every call must be matched by a call to
+     * endUndoGroup().
+     */
+    public void beginUndoGroup() {
+        journal.beginGroup(lineNumber, getCursor(), false);
+    }
+
+    /**
+     * End a group of edits started by beginUndoGroup().
+     */
+    public void endUndoGroup() {
+        journal.endGroup(lineNumber, getCursor());
+    }
+
+    /**
+     * Undo the last edit.
+     *
+     * @return true if an edit was undone
+     */
+    public boolean undo() {
+        if (!journal.undo(lines)) {
+            return false;
         }
+        restoreCursor();
+        return true;
+    }
+
+    /**
+     * Redo the last undone edit.
+     *
+     * @return true if an edit was redone
+     */
+    public boolean redo() {
+        if (!journal.redo(lines)) {
+            return false;
+        }
+        restoreCursor();
+        return true;
+    }
+
+    /**
+     * Move the cursor to where the journal left it after an undo or redo.
+     */
+    private void restoreCursor() {
+        dirty = true;
+        changeCount++;
+        lineNumber = Math.max(0, Math.min(journal.getLineNumber(),
+                lines.size() - 1));
+        setCursor(journal.getCursor());
+    }
+
+    /**
+     * Start an edit of a range of lines: save their raw strings for the
+     * journal.  Calls may be nested, only the outermost call is recorded.
+     *
+     * @param first the first line number that may change
+     * @param count the number of lines that may change or be removed
+     * @param typing if true, this edit is a keystroke that may be merged
+     * with the previous keystrokes
+     */
+    private void beginEdit(final int first, final int count,
+        final boolean typing) {
+
+        journal.beginGroup(lineNumber, getCursor(), typing);
+        if (editDepth == 0) {
+            editFirst = first;
+            editOldLines = lines.getRawStrings(first, count);
+            editLineCount = lines.size();
+        }
+        editDepth++;
+    }
+
+    /**
+     * Finish an edit started by beginEdit(), and record it in the
+     * journal.
+     */
+    private void endEdit() {
+        editDepth--;
+        if (editDepth == 0) {
+            int count = editOldLines.length + lines.size() - editLineCount;
+            String [] newLines = lines.getRawStrings(editFirst, count);
+            if (!Arrays.equals(editOldLines, newLines)) {
+                journal.record(editFirst, editOldLines, newLines);
+                lines.touch(editFirst, count);
+                changeCount++;
+            }
+            editOldLines = null;
+        }
+        journal.endGroup(lineNumber, getCursor());
     }
 
     /**
@@ -787,8 +1115,12 @@ public class Document {
      */
     public void setHighlighting(final boolean enabled) {
         highlighter.setEnabled(enabled);
-        for (Line line: getLines()) {
-            line.scanLine();
+        lines.resetStates();
+        for (int i = 0; i < lines.size(); i++) {
+            // Lines not used yet will be scanned when they are.
+            if (lines.isLoaded(i)) {
+                lines.get(i).scanLine();
+            }
         }
     }
 
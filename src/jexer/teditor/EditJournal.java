@@ -0,0 +1,396 @@
+/*
+ * Jexer - Java Text User Interface
+ *
+ * The MIT License (MIT)
+ *
+ * Copyright (C) 2019 Kevin Lamonte
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a
+ * copy of this software and associated documentation files (the "Software"),
+ * to deal in the Software without restriction, including without limitation
+ * the rights to use, copy, modify, merge, publish, distribute, sublicense,
+ * and/or sell copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL
+ * THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ * DEALINGS IN THE SOFTWARE.
+ *
+ * @author Kevin Lamonte [kevin.lamonte@gmail.com]
+ * @version 1
+ */
+package jexer.teditor;
+
+import java.util.ArrayList;
+
+/**
+ * EditJournal records the edits made to a Document so that they can be
+ * undone and redone.
+ *
+ * <p>
+ * Each edit is a delta: the raw strings of the lines it replaced, and the
+ * raw strings that replaced them.  Edits are collected into groups, one
+ * group per undo step.  Consecutive keystrokes typed at the cursor are
+ * merged into the same group, and consecutive edits of the same lines are
+ * merged into one edit, so typing a word costs one pair of line strings
+ * rather than a copy of the document.
+ */
+public class EditJournal {
+
+    // ------------------------------------------------------------------------
+    // Variables --------------------------------------------------------------
+    // ------------------------------------------------------------------------
+
+    /**
+     * The undo groups.  The first position groups are applied, the rest
+     * can be redone.
+     */
+    private ArrayList<Group> groups = new ArrayList<Group>();
+
+    /**
+     * The number of groups in groups that are applied.
+     */
+    private int position = 0;
+
+    /**
+     * The maximum number of groups to keep.  0 means unlimited.
+     */
+    private int undoLevel = 50;
+
+    /**
+     * The group being recorded, or null.
+     */
+    private Group open = null;
+
+    /**
+     * The nesting level of beginGroup() calls.
+     */
+    private int depth = 0;
+
+    /**
+     * If true, the next group may not be merged into the last one.
+     */
+    private boolean mergeBreak = true;
+
+    /**
+     * The line number after the last undo() or redo().
+     */
+    private int lineNumber = 0;
+
+    /**
+     * The cursor position after the last undo() or redo().
+     */
+    private int cursor = 0;
+
+    /**
+     * One replacement of a range of lines.
+     */
+    private static class Edit {
+
+        /**
+         * The first line number of the range.
+         */
+        public int line;
+
+        /**
+         * The raw strings of the lines before the edit.
+         */
+        public String [] oldLines;
+
+        /**
+         * The raw strings of the lines after the edit.
+         */
+        public String [] newLines;
+
+    }
+
+    /**
+     * The edits of one undo step.
+     */
+    private static class Group {
+
+        /**
+         * The edits, in the order they were made.
+         */
+        public ArrayList<Edit> edits = new ArrayList<Edit>(1);
+
+        /**
+         * If true, this group was made by typing characters.
+         */
+        public boolean typing;
+
+        /**
+         * The line number before the group.
+         */
+        public int lineBefore;
+
+        /**
+         * The cursor position before the group.
+         */
+        public int cursorBefore;
+
+        /**
+         * The line number after the group.
+         */
+        public int lineAfter;
+
+        /**
+         * The cursor position after the group.
+         */
+        public int cursorAfter;
+
+    }
+
+    // ------------------------------------------------------------------------
+    // Constructors -----------------------------------------------------------
+    // ------------------------------------------------------------------------
+
+    /**
+     * Public constructor.
+     */
+    public EditJournal() {
+        // NOP
+    }
+
+    // ------------------------------------------------------------------------
+    // EditJournal ------------------------------------------------------------
+    // ------------------------------------------------------------------------
+
+    /**
+     * Set the undo level.
+     *
+     * @param undoLevel the maximum number of undo operations.  0 means
+     * unlimited.
+     */
+    public void setUndoLevel(final int undoLevel) {
+        this.undoLevel = undoLevel;
+        trim();
+    }
+
+    /**
+     * Start a group of edits.  Calls may be nested, only the outermost
+     * call starts a new group.
+     *
+     * @param lineNumber the current line number
+     * @param cursor the current cursor position
+     * @param typing if true, this group is a keystroke that may be merged
+     * with the previous keystrokes
+     */
+    public void beginGroup(final int lineNumber, final int cursor,
+        final boolean typing) {
+
+        depth++;
+        if (depth > 1) {
+            return;
+        }
+
+        if (typing && !mergeBreak && (position > 0)
+            && (position == groups.size())
+        ) {
+            Group last = groups.get(position - 1);
+            if (last.typing
+                && (last.lineAfter == lineNumber)
+                && (last.cursorAfter == cursor)
+            ) {
+                // Continue typing into the previous group.
+                open = last;
+                return;
+            }
+        }
+
+        open = new Group();
+        open.typing = typing;
+        open.lineBefore = lineNumber;
+        open.cursorBefore = cursor;
+    }
+
+    /**
+     * Record one edit in the current group.
+     *
+     * @param line the first line number of the edited range
+     * @param oldLines the raw strings of the range before the edit
+     * @param newLines the raw strings of the range after the edit
+     */
+    public void record(final int line, final String [] oldLines,
+        final String [] newLines) {
+
+        if (open == null) {
+            return;
+        }
+
+        if (open.edits.size() > 0) {
+            Edit last = open.edits.get(open.edits.size() - 1);
+            if ((last.line == line)
+                && (last.newLines.length == oldLines.length)
+            ) {
+                // The same lines were edited again, keep only the first
+                // old and the last new strings.
+                last.newLines = newLines;
+                return;
+            }
+        }
+
+        Edit edit = new Edit();
+        edit.line = line;
+        edit.oldLines = oldLines;
+        edit.newLines = newLines;
+        open.edits.add(edit);
+    }
+
+    /**
+     * End a group of edits.
+     *
+     * @param lineNumber the current line number
+     * @param cursor the current cursor position
+     */
+    public void endGroup(final int lineNumber, final int cursor) {
+        depth--;
+        if (depth > 0) {
+            return;
+        }
+
+        Group group = open;
+        open = null;
+        if (group.edits.size() == 0) {
+            return;
+        }
+        group.lineAfter = lineNumber;
+        group.cursorAfter = cursor;
+
+        if ((position > 0) && (groups.get(position - 1) == group)) {
+            // Merged into the last group.
+            return;
+        }
+
+        // A new edit makes the undone groups unreachable.
+        while (groups.size() > position) {
+            groups.remove(groups.size() - 1);
+        }
+        groups.add(group);
+        position = groups.size();
+        mergeBreak = false;
+        trim();
+    }
+
+    /**
+     * Prevent the next keystroke from being merged into the previous
+     * group.
+     */
+    public void breakMerge() {
+        mergeBreak = true;
+    }
+
+    /**
+     * See if there is a group to undo.
+     *
+     * @return true if undo() will do something
+     */
+    public boolean canUndo() {
+        return (position > 0);
+    }
+
+    /**
+     * See if there is a group to redo.
+     *
+     * @return true if redo() will do something
+     */
+    public boolean canRedo() {
+        return (position < groups.size());
+    }
+
+    /**
+     * Undo the last group by replaying its edits backwards.
+     *
+     * @param lines the lines to change
+     * @return true if a group was undone
+     */
+    public boolean undo(final LineTable lines) {
+        if (!canUndo()) {
+            return false;
+        }
+        position--;
+        Group group = groups.get(position);
+        for (int i = group.edits.size() - 1; i >= 0; i--) {
+            Edit edit = group.edits.get(i);
+            lines.replace(edit.line, edit.newLines.length, edit.oldLines);
+        }
+        lineNumber = group.lineBefore;
+        cursor = group.cursorBefore;
+        mergeBreak = true;
+        return true;
+    }
+
+    /**
+     * Redo the next group by replaying its edits.
+     *
+     * @param lines the lines to change
+     * @return true if a group was redone
+     */
+    public boolean redo(final LineTable lines) {
+        if (!canRedo()) {
+            return false;
+        }
+        Group group = groups.get(position);
+        position++;
+        for (Edit edit: group.edits) {
+            lines.replace(edit.line, edit.oldLines.length, edit.newLines);
+        }
+        lineNumber = group.lineAfter;
+        cursor = group.cursorAfter;
+        mergeBreak = true;
+        return true;
+    }
+
+    /**
+     * Get the line number to go to after the last undo() or redo().
+     *
+     * @return the line number
+     */
+    public int getLineNumber() {
+        return lineNumber;
+    }
+
+    /**
+     * Get the cursor position to go to after the last undo() or redo().
+     *
+     * @return the cursor position
+     */
+    public int getCursor() {
+        return cursor;
+    }
+
+    /**
+     * Remove all groups.
+     */
+    public void clear() {
+        groups.clear();
+        position = 0;
+        mergeBreak = true;
+    }
+
+    /**
+     * Drop the oldest groups past the undo level.
+     */
+    private void trim() {
+        if (undoLevel <= 0) {
+            return;
+        }
+        while (groups.size() > undoLevel) {
+            if (position == 0) {
+                // Only redo groups are left, drop the newest ones.
+                groups.remove(groups.size() - 1);
+                continue;
+            }
+            groups.remove(0);
+            position--;
+        }
+    }
+
+}
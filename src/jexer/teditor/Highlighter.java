@@ -36,9 +36,48 @@ import jexer.bits.Color;
 
 /**
  * Highlighter provides color choices for certain text strings.
+ *
+ * <p>
+ * It also has a small lexer for comments and string literals.  The lexer
+ * state at the end of a line is the state at the start of the next one, so
+ * block comments and text blocks carry over lines.  The lexer works on
+ * characters, but comment and string boundaries are always punctuation,
+ * which is always a word by itself, so the classes it finds line up with
+ * the words of a Line.
  */
 public class Highlighter {
 
+    // ------------------------------------------------------------------------
+    // Constants --------------------------------------------------------------
+    // ------------------------------------------------------------------------
+
+    /**
+     * Lexer state and character class: normal text.
+     */
+    public static final int NORMAL = 0;
+
+    /**
+     * Lexer state and character class: inside a comment.
+     */
+    public static final int COMMENT = 1;
+
+    /**
+     * Lexer state and character class: inside a string.  As a line state,
+     * this is a text block, the only kind of string that spans lines.
+     */
+    public static final int STRING = 2;
+
+    /**
+     * The characters that split words.
+     */
+    private static final boolean [] SPLIT = new boolean[0x80];
+    static {
+        String punctuation = "'\"\\<>{}[]!@#$%^&*();:.,-+/*?";
+        for (int i = 0; i < punctuation.length(); i++) {
+            SPLIT[punctuation.charAt(i)] = true;
+        }
+    }
+
     // ------------------------------------------------------------------------
     // Variables --------------------------------------------------------------
     // ------------------------------------------------------------------------
@@ -48,6 +87,16 @@ public class Highlighter {
      */
     private SortedMap<String, CellAttributes> colors;
 
+    /**
+     * The color for comments.
+     */
+    private CellAttributes commentColor;
+
+    /**
+     * The color for string and character literals.
+     */
+    private CellAttributes stringColor;
+
     // ------------------------------------------------------------------------
     // Constructors -----------------------------------------------------------
     // ------------------------------------------------------------------------
@@ -73,17 +122,34 @@ public class Highlighter {
             setJavaColors();
         } else {
             colors = null;
+            commentColor = null;
+            stringColor = null;
         }
     }
 
+    /**
+     * See if highlighting is enabled.
+     *
+     * @return true if keywords, comments, and strings are highlighted
+     */
+    public boolean isEnabled() {
+        return (colors != null);
+    }
+
     /**
      * Set my field values to that's field.
      *
      * @param rhs an instance of Highlighter
      */
     public void setTo(final Highlighter rhs) {
-        colors = new TreeMap<String, CellAttributes>();
-        colors.putAll(rhs.colors);
+        if (rhs.colors == null) {
+            colors = null;
+        } else {
+            colors = new TreeMap<String, CellAttributes>();
+            colors.putAll(rhs.colors);
+        }
+        commentColor = rhs.commentColor;
+        stringColor = rhs.stringColor;
     }
 
     /**
@@ -94,11 +160,8 @@ public class Highlighter {
      */
     public boolean shouldSplit(final int ch) {
         // For now, split on punctuation
-        String punctuation = "'\"\\<>{}[]!@#$%^&*();:.,-+/*?";
-        if (ch < 0x100) {
-            if (punctuation.indexOf((char) ch) != -1) {
-                return true;
-            }
+        if ((ch >= 0) && (ch < SPLIT.length)) {
+            return SPLIT[ch];
         }
         return false;
     }
@@ -117,6 +180,157 @@ public class Highlighter {
         return attr;
     }
 
+    /**
+     * Get the color for a lexer character class.
+     *
+     * @param lexClass COMMENT or STRING
+     * @return the color, or null if that class is not highlighted
+     */
+    public CellAttributes getColor(final int lexClass) {
+        switch (lexClass) {
+        case COMMENT:
+            return commentColor;
+        case STRING:
+            return stringColor;
+        default:
+            return null;
+        }
+    }
+
+    /**
+     * Lex a line of text for comments and strings.
+     *
+     * @param text the text
+     * @param start the first character of the line in text
+     * @param end one past the last character of the line in text
+     * @param state the lexer state at the start of the line: NORMAL,
+     * COMMENT, or STRING
+     * @param classes if not null, the class of each character of the line
+     * is stored here, starting at index 0
+     * @return the lexer state at the end of the line
+     */
+    public int lex(final CharSequence text, final int start, final int end,
+        final int state, final byte [] classes) {
+
+        int newState = state;
+        int i = start;
+        while (i < end) {
+            char ch = text.charAt(i);
+
+            if (newState == COMMENT) {
+                if ((ch == '*') && (i + 1 < end)
+                    && (text.charAt(i + 1) == '/')
+                ) {
+                    mark(classes, i - start, 2, COMMENT);
+                    i += 2;
+                    newState = NORMAL;
+                    continue;
+                }
+                mark(classes, i - start, 1, COMMENT);
+                i++;
+                continue;
+            }
+
+            if (newState == STRING) {
+                if (ch == '\\') {
+                    mark(classes, i - start, Math.min(2, end - i), STRING);
+                    i += 2;
+                    continue;
+                }
+                if (isTextBlock(text, i, end)) {
+                    mark(classes, i - start, 3, STRING);
+                    i += 3;
+                    newState = NORMAL;
+                    continue;
+                }
+                mark(classes, i - start, 1, STRING);
+                i++;
+                continue;
+            }
+
+            if ((ch == '/') && (i + 1 < end)) {
+                char next = text.charAt(i + 1);
+                if (next == '/') {
+                    // Line comment, the rest of the line.
+                    mark(classes, i - start, end - i, COMMENT);
+                    return NORMAL;
+                }
+                if (next == '*') {
+                    mark(classes, i - start, 2, COMMENT);
+                    i += 2;
+                    newState = COMMENT;
+                    continue;
+                }
+            }
+            if (isTextBlock(text, i, end)) {
+                mark(classes, i - start, 3, STRING);
+                i += 3;
+                newState = STRING;
+                continue;
+            }
+            if ((ch == '"') || (ch == '\'')) {
+                // String or character literal, ends at the matching quote
+                // or the end of the line.
+                int j = i + 1;
+                while (j < end) {
+                    char ch2 = text.charAt(j);
+                    if (ch2 == '\\') {
+                        j += 2;
+                        continue;
+                    }
+                    j++;
+                    if (ch2 == ch) {
+                        break;
+                    }
+                }
+                j = Math.min(j, end);
+                mark(classes, i - start, j - i, STRING);
+                i = j;
+                continue;
+            }
+
+            mark(classes, i - start, 1, NORMAL);
+            i++;
+        }
+        return newState;
+    }
+
+    /**
+     * See if a text block delimiter starts at a position.
+     *
+     * @param text the text
+     * @param i the position
+     * @param end one past the last character to look at
+     * @return true if there are three double quotes at i
+     */
+    private boolean isTextBlock(final CharSequence text, final int i,
+        final int end) {
+
+        return ((i + 2 < end)
+            && (text.charAt(i) == '"')
+            && (text.charAt(i + 1) == '"')
+            && (text.charAt(i + 2) == '"'));
+    }
+
+    /**
+     * Store the class of a run of characters.
+     *
+     * @param classes the classes array, or null
+     * @param index the first index to set
+     * @param count the number of entries to set
+     * @param lexClass the class
+     */
+    private void mark(final byte [] classes, final int index,
+        final int count, final int lexClass) {
+
+        if (classes == null) {
+            return;
+        }
+        for (int i = 0; i < count; i++) {
+            classes[index + i] = (byte) lexClass;
+        }
+    }
+
     /**
      * Sets to defaults that resemble the Borland IDE colors.
      */
@@ -189,6 +403,16 @@ public class Highlighter {
             colors.put(str, color);
         }
 
+        commentColor = new CellAttributes();
+        commentColor.setForeColor(Color.CYAN);
+        commentColor.setBackColor(Color.BLUE);
+        commentColor.setBold(false);
+
+        stringColor = new CellAttributes();
+        stringColor.setForeColor(Color.MAGENTA);
+        stringColor.setBackColor(Color.BLUE);
+        stringColor.setBold(true);
+
     }
 
 }
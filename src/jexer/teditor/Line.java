@@ -76,6 +76,24 @@ public class Line {
      */
     private StringBuilder rawText;
 
+    /**
+     * The cached on-screen display length, or -1 if it must be computed
+     * again.
+     */
+    private int displayLength = -1;
+
+    /**
+     * The lexer state the words were last highlighted for, or -1 if they
+     * must be highlighted again.
+     */
+    private int highlightState = -1;
+
+    /**
+     * The lexer state at the end of this line, when highlighted for
+     * highlightState.
+     */
+    private int endState = Highlighter.NORMAL;
+
     // ------------------------------------------------------------------------
     // Constructors -----------------------------------------------------------
     // ------------------------------------------------------------------------
@@ -94,55 +112,102 @@ public class Line {
         this.defaultColor = defaultColor;
         this.highlighter = highlighter;
 
-        this.rawText = new StringBuilder();
-        int col = 0;
-        for (int i = 0; i < str.length(); i++) {
+        this.rawText = new StringBuilder(expand(str, 0, str.length()));
+        scanLine();
+    }
+
+    /**
+     * Construct a new Line from an existing text string.
+     *
+     * @param str the text string
+     * @param defaultColor the color for unhighlighted text
+     */
+    public Line(final String str, final CellAttributes defaultColor) {
+        this(str, defaultColor, null);
+    }
+
+    /**
+     * Private constructor used by dup().
+     */
+    private Line() {
+        // NOP
+    }
+
+    // ------------------------------------------------------------------------
+    // Line -------------------------------------------------------------------
+    // ------------------------------------------------------------------------
+
+    /**
+     * Convert part of a string to the text that a Line displays: tabs are
+     * expanded to 8 columns and the other C0 bytes are replaced with CP437
+     * glyphs.  Note package private access.
+     *
+     * @param str the text string
+     * @param start the first character of str to convert
+     * @param end one past the last character of str to convert
+     * @return the converted text
+     */
+    static String expand(final String str, final int start, final int end) {
+        int i = start;
+        while (i < end) {
+            char ch = str.charAt(i);
+            if ((ch < 0x20) || (ch == 0x7F)) {
+                break;
+            }
+            i++;
+        }
+        if (i == end) {
+            // Nothing to convert, the common case.
+            return str.substring(start, end);
+        }
+
+        StringBuilder sb = new StringBuilder(end - start + 8);
+        sb.append(str, start, i);
+        int col = i - start;
+        for (; i < end; i++) {
             char ch = str.charAt(i);
             if (ch == '\t') {
                 // Expand tabs
                 int j = col % 8;
                 do {
-                    rawText.append(' ');
+                    sb.append(' ');
                     j++;
                     col++;
                 } while ((j % 8) != 0);
                 continue;
             }
-            if ((ch <= 0x20) || (ch == 0x7F)) {
+            if ((ch < 0x20) || (ch == 0x7F)) {
                 // Replace all other C0 bytes with CP437 glyphs.
-                rawText.append(GraphicsChars.CP437[(int) ch]);
+                sb.append(GraphicsChars.CP437[(int) ch]);
                 col++;
                 continue;
             }
 
-            rawText.append(ch);
+            sb.append(ch);
             col++;
         }
-
-        scanLine();
+        return sb.toString();
     }
 
     /**
-     * Construct a new Line from an existing text string.
+     * Get the on-screen display length of a raw string, the same value
+     * that getDisplayLength() returns for a Line with this text.  Note
+     * package private access.
      *
-     * @param str the text string
-     * @param defaultColor the color for unhighlighted text
+     * @param rawText the raw string
+     * @return the number of cells needed to display the string
      */
-    public Line(final String str, final CellAttributes defaultColor) {
-        this(str, defaultColor, null);
-    }
+    static int getDisplayLength(final String rawText) {
+        int n = StringUtils.width(rawText);
 
-    /**
-     * Private constructor used by dup().
-     */
-    private Line() {
-        // NOP
+        if (n > 0) {
+            // If we have any visible characters, add one to the display so
+            // that the position is immediately after the data.
+            return n + 1;
+        }
+        return n;
     }
 
-    // ------------------------------------------------------------------------
-    // Line -------------------------------------------------------------------
-    // ------------------------------------------------------------------------
-
     /**
      * Create a duplicate instance.
      *
@@ -160,14 +225,60 @@ public class Line {
     }
 
     /**
-     * Get a (shallow) copy of the words in this line.
+     * Get a (shallow) copy of the words in this line.  If the words were
+     * not highlighted since the last edit, they are highlighted as if the
+     * line started outside of any comment or string.
      *
      * @return a copy of the word list
      */
     public List<Word> getWords() {
+        if (highlightState == -1) {
+            highlight(Highlighter.NORMAL);
+        }
         return new ArrayList<Word>(words);
     }
 
+    /**
+     * Highlight the words of this line.  Nothing is done if they were
+     * already highlighted for this start state and the line did not change
+     * since.
+     *
+     * @param state the lexer state at the start of this line
+     * @return the lexer state at the end of this line
+     */
+    public int highlight(final int state) {
+        if (state == highlightState) {
+            return endState;
+        }
+        highlightState = state;
+
+        if ((highlighter == null) || !highlighter.isEnabled()) {
+            endState = Highlighter.NORMAL;
+            for (Word w: words) {
+                w.applyHighlight();
+            }
+            return endState;
+        }
+
+        byte [] classes = new byte[rawText.length()];
+        endState = highlighter.lex(rawText, 0, rawText.length(), state,
+            classes);
+        int offset = 0;
+        for (Word w: words) {
+            CellAttributes color = null;
+            if (w.length() > 0) {
+                color = highlighter.getColor(classes[offset]);
+            }
+            if (color != null) {
+                w.setColor(color);
+            } else {
+                w.applyHighlight();
+            }
+            offset += w.length();
+        }
+        return endState;
+    }
+
     /**
      * Get the current cursor position in the text.
      *
@@ -221,14 +332,10 @@ public class Line {
      * @return the number of cells needed to display this line
      */
     public int getDisplayLength() {
-        int n = StringUtils.width(rawText.toString());
-
-        if (n > 0) {
-            // If we have any visible characters, add one to the display so
-            // that the position is immediately after the data.
-            return n + 1;
+        if (displayLength == -1) {
+            displayLength = getDisplayLength(rawText.toString());
         }
-        return n;
+        return displayLength;
     }
 
     /**
@@ -255,9 +362,46 @@ public class Line {
      */
     void scanLine() {
         words.clear();
+        scanLine(0);
+    }
+
+    /**
+     * Scan rawText after an edit and make words out of it.  The words that
+     * end before the edit cannot change, so they are kept, and only the
+     * text from the first word that touches the edit on is tokenized
+     * again.  Highlighting is left for highlight(), when the line is next
+     * drawn.  Note package private access.
+     *
+     * @param editPosition the position in rawText where the edit started
+     */
+    void scanLine(final int editPosition) {
+        displayLength = -1;
+        highlightState = -1;
+
+        // Find the first word that touches the edit.
+        int keep = 0;
+        int start = 0;
+        for (Word w: words) {
+            int end = start + w.length();
+            if (end >= editPosition) {
+                break;
+            }
+            keep++;
+            start = end;
+        }
+        if ((keep == words.size()) && (keep > 0)) {
+            // The edit is past every word, so the last word may have to
+            // grow.
+            keep--;
+            start -= words.get(keep).length();
+        }
+        while (words.size() > keep) {
+            words.remove(words.size() - 1);
+        }
+
         Word word = new Word(this.defaultColor, this.highlighter);
         words.add(word);
-        for (int i = 0; i < rawText.length();) {
+        for (int i = start; i < rawText.length();) {
             int ch = rawText.codePointAt(i);
             i += Character.charCount(ch);
             Word newWord = word.addChar(ch);
@@ -266,9 +410,6 @@ public class Line {
                 word = newWord;
             }
         }
-        for (Word w: words) {
-            w.applyHighlight();
-        }
     }
 
     /**
@@ -347,7 +488,7 @@ public class Line {
         }
 
         // Re-scan the line to determine the new word boundaries.
-        scanLine();
+        scanLine(position);
     }
 
     /**
@@ -389,14 +530,16 @@ public class Line {
      * @param ch the character to insert
      */
     public void addChar(final int ch) {
+        int editPosition = position;
         if (screenPosition < getDisplayLength() - 1) {
             rawText.insert(position, Character.toChars(ch));
         } else {
+            editPosition = rawText.length();
             rawText.append(Character.toChars(ch));
         }
         position += Character.charCount(ch);
         screenPosition += StringUtils.width(ch);
-        scanLine();
+        scanLine(editPosition);
     }
 
     /**
@@ -405,6 +548,7 @@ public class Line {
      * @param ch the character to replace
      */
     public void replaceChar(final int ch) {
+        int editPosition = Math.min(position, rawText.length());
         if (screenPosition < getDisplayLength() - 1) {
             // Replace character
             String oldText = rawText.toString();
@@ -418,7 +562,7 @@ public class Line {
             position += Character.charCount(ch);
             screenPosition += StringUtils.width(ch);
         }
-        scanLine();
+        scanLine(editPosition);
     }
 
     /**
@@ -459,10 +603,11 @@ public class Line {
         ) {
             rawText.deleteCharAt(rawText.length() - 1);
         }
+        displayLength = -1;
         if (position >= rawText.length()) {
             end();
         }
-        scanLine();
+        scanLine(rawText.length());
     }
 
     /**
@@ -0,0 +1,243 @@
+/*
+ * Jexer - Java Text User Interface
+ *
+ * The MIT License (MIT)
+ *
+ * Copyright (C) 2019 Kevin Lamonte
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a
+ * copy of this software and associated documentation files (the "Software"),
+ * to deal in the Software without restriction, including without limitation
+ * the rights to use, copy, modify, merge, publish, distribute, sublicense,
+ * and/or sell copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL
+ * THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ * DEALINGS IN THE SOFTWARE.
+ *
+ * @author Kevin Lamonte [kevin.lamonte@gmail.com]
+ * @version 1
+ */
+package jexer.teditor;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CodingErrorAction;
+
+/**
+ * LineBlockReader reads a UTF-8 text file in blocks of whole lines, ready
+ * to pass to Document.appendText().  The file is memory-mapped a window at
+ * a time.  CRLF line endings are converted to LF.
+ *
+ * <p>
+ * A block always ends right after the line terminator of a non-empty
+ * line, so that Document.appendText(), which drops trailing empty lines,
+ * never loses the empty lines found at a block edge.
+ */
+public class LineBlockReader {
+
+    // ------------------------------------------------------------------------
+    // Constants --------------------------------------------------------------
+    // ------------------------------------------------------------------------
+
+    /**
+     * The number of bytes of a file to map at once.
+     */
+    private static final int MAP_SIZE = 4 * 1024 * 1024;
+
+    // ------------------------------------------------------------------------
+    // Variables --------------------------------------------------------------
+    // ------------------------------------------------------------------------
+
+    /**
+     * The file being read.
+     */
+    private FileInputStream input;
+
+    /**
+     * The channel of the file being read.
+     */
+    private FileChannel channel;
+
+    /**
+     * The size of the file.
+     */
+    private long fileSize;
+
+    /**
+     * The file position of the next window to map.
+     */
+    private long position = 0;
+
+    /**
+     * The number of characters to try to put in a block.
+     */
+    private int blockSize;
+
+    /**
+     * The UTF-8 decoder.
+     */
+    private CharsetDecoder decoder;
+
+    /**
+     * The decoded characters that were not handed out yet.
+     */
+    private StringBuilder carry = new StringBuilder();
+
+    // ------------------------------------------------------------------------
+    // Constructors -----------------------------------------------------------
+    // ------------------------------------------------------------------------
+
+    /**
+     * Public constructor opens the file.
+     *
+     * @param file the file to read
+     * @param blockSize the number of characters to try to put in a block.
+     * A block is longer when a single line is longer than that.
+     * @throws IOException if a java.io operation throws
+     */
+    public LineBlockReader(final File file,
+        final int blockSize) throws IOException {
+
+        if (blockSize < 1) {
+            throw new IllegalArgumentException("blockSize must be > 0");
+        }
+        this.blockSize = blockSize;
+        input = new FileInputStream(file);
+        channel = input.getChannel();
+        fileSize = channel.size();
+        decoder = Charset.forName("UTF-8").newDecoder();
+        decoder.onMalformedInput(CodingErrorAction.REPLACE);
+        decoder.onUnmappableCharacter(CodingErrorAction.REPLACE);
+    }
+
+    // ------------------------------------------------------------------------
+    // LineBlockReader --------------------------------------------------------
+    // ------------------------------------------------------------------------
+
+    /**
+     * Read the next block of whole lines.
+     *
+     * @return the block, or null at the end of the file
+     * @throws IOException if a java.io operation throws
+     */
+    public String readBlock() throws IOException {
+        for (;;) {
+            if (carry.length() >= blockSize) {
+                int cut = findCut(carry);
+                if (cut > 0) {
+                    String block = stripCR(carry.substring(0, cut));
+                    carry.delete(0, cut);
+                    return block;
+                }
+            }
+            if (position >= fileSize) {
+                if (carry.length() == 0) {
+                    return null;
+                }
+                String block = stripCR(carry.toString());
+                carry.setLength(0);
+                return block;
+            }
+
+            // Decode the next window.
+            int length = (int) Math.min(MAP_SIZE, fileSize - position);
+            ByteBuffer bytes = channel.map(FileChannel.MapMode.READ_ONLY,
+                position, length);
+            boolean last = (position + length >= fileSize);
+            CharBuffer chars = CharBuffer.allocate(length + 1);
+            decoder.decode(bytes, chars, last);
+            if (last) {
+                decoder.flush(chars);
+                position = fileSize;
+            } else {
+                // A partial UTF-8 sequence at the end of the window is
+                // decoded with the next one.
+                position += Math.max(bytes.position(), 1);
+            }
+            chars.flip();
+            carry.append(chars);
+        }
+    }
+
+    /**
+     * Get the number of bytes of the file decoded so far.
+     *
+     * @return the number of bytes
+     */
+    public long getPosition() {
+        return position;
+    }
+
+    /**
+     * Get the size of the file.
+     *
+     * @return the number of bytes
+     */
+    public long getSize() {
+        return fileSize;
+    }
+
+    /**
+     * Close the file.
+     */
+    public void close() {
+        try {
+            input.close();
+        } catch (IOException e) {
+            // SQUASH
+        }
+    }
+
+    /**
+     * Find where to end a block: right after the last LF that ends a
+     * non-empty line.  A CR just before the LF is part of the line
+     * terminator, not of the line.
+     *
+     * @param text the decoded text
+     * @return the length of the block, or 0 if text has no such LF
+     */
+    private static int findCut(final CharSequence text) {
+        for (int i = text.length() - 1; i > 0; i--) {
+            if (text.charAt(i) != '\n') {
+                continue;
+            }
+            int end = i;
+            if (text.charAt(end - 1) == '\r') {
+                end--;
+            }
+            if ((end > 0) && (text.charAt(end - 1) != '\n')) {
+                return i + 1;
+            }
+        }
+        return 0;
+    }
+
+    /**
+     * Convert CRLF line endings to LF.
+     *
+     * @param block the text
+     * @return the text without CR before LF
+     */
+    private static String stripCR(final String block) {
+        if (block.indexOf('\r') == -1) {
+            return block;
+        }
+        return block.replace("\r\n", "\n");
+    }
+
+}
@@ -0,0 +1,1117 @@
+/*
+ * Jexer - Java Text User Interface
+ *
+ * The MIT License (MIT)
+ *
+ * Copyright (C) 2019 Kevin Lamonte
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a
+ * copy of this software and associated documentation files (the "Software"),
+ * to deal in the Software without restriction, including without limitation
+ * the rights to use, copy, modify, merge, publish, distribute, sublicense,
+ * and/or sell copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL
+ * THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ * DEALINGS IN THE SOFTWARE.
+ *
+ * @author Kevin Lamonte [kevin.lamonte@gmail.com]
+ * @version 1
+ */
+package jexer.teditor;
+
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Arrays;
+
+import jexer.bits.CellAttributes;
+
+/**
+ * LineTable holds the lines of a Document.
+ *
+ * <p>
+ * It is a piece table at line granularity: the text the document was
+ * loaded from is kept as the strings it was read in, and every line that
+ * was not edited or displayed yet is only a (string, start, end) reference
+ * into one of them.  A Line object is created for it the first time get()
+ * asks for it.  Lines that were created by editing are stored as Line
+ * objects directly.  More text can be added at the end with append(), so
+ * a file can be loaded in blocks.
+ *
+ * <p>
+ * The lines are kept in chunks of at most CHUNK_MAX entries, with a
+ * Fenwick tree over the chunk sizes.  Looking up a line is a walk down the
+ * tree, and inserting or removing a line only moves the entries of one
+ * chunk and updates O(log n) entries of the tree.
+ *
+ * <p>
+ * The table also keeps the Highlighter lexer state at the start of every
+ * line.  States are computed lazily, from the last line known to be right
+ * up to the line asked for.  After an edit, lexing starts again from the
+ * edited line and stops as soon as it computes the same state that was
+ * stored for an unchanged line below the edit.
+ *
+ * <p>
+ * The table also caches the display length of every line and the
+ * longest line of every chunk, with a max tree over the chunks on top.
+ * An edit only marks its chunk and the path up the tree as out of date,
+ * so getDisplayLengthMax() only measures lines that changed since the
+ * last call.
+ *
+ * <p>
+ * Finally, getSnapshot() makes a read-only copy of the text for another
+ * thread.  Every line keeps a source string even after its Line is
+ * created, until it is edited; the snapshot gives the edited lines their
+ * current text as a new source, and then shares the source arrays of the
+ * chunks.  A chunk copies its source arrays before changing them again.
+ */
+public class LineTable extends AbstractList<Line> {
+
+    // ------------------------------------------------------------------------
+    // Constants --------------------------------------------------------------
+    // ------------------------------------------------------------------------
+
+    /**
+     * The maximum number of lines in one chunk.
+     */
+    private static final int CHUNK_MAX = 512;
+
+    // ------------------------------------------------------------------------
+    // Variables --------------------------------------------------------------
+    // ------------------------------------------------------------------------
+
+    /**
+     * The chunks of lines.
+     */
+    private ArrayList<Chunk> chunks = new ArrayList<Chunk>();
+
+    /**
+     * Fenwick tree over the number of lines of each chunk: entry i holds
+     * the sum of the chunks from i - (i & -i) up to i - 1.  This is null
+     * if chunks were added or removed since it was built.
+     */
+    private int [] sizeTree = null;
+
+    /**
+     * The total number of lines.
+     */
+    private int size = 0;
+
+    /**
+     * The default color for new lines.
+     */
+    private CellAttributes defaultColor = null;
+
+    /**
+     * The text highlighter for new lines.
+     */
+    private Highlighter highlighter = null;
+
+    /**
+     * The start states of the lines before this line number are right.
+     */
+    private int stateValid = 1;
+
+    /**
+     * The lines from stateValid up to this line number have a start state
+     * stored, which may be out of date.
+     */
+    private int stateKnown = 1;
+
+    /**
+     * The lines from this line number on were not edited since their start
+     * state was stored.
+     */
+    private int editEnd = 0;
+
+    /**
+     * A max tree over the longest line of every chunk: node 1 is the root,
+     * node n has children 2n and 2n + 1, and chunk c is the leaf
+     * widthLeaves + c.  A node is -1 if a chunk below it changed.  This is
+     * null if chunks were added or removed since it was built.
+     */
+    private int [] widthTree = null;
+
+    /**
+     * The number of leaves in widthTree, a power of two.
+     */
+    private int widthLeaves = 0;
+
+    /**
+     * A run of consecutive lines.
+     */
+    private static class Chunk {
+
+        /**
+         * The number of lines in this chunk.
+         */
+        public int size = 0;
+
+        /**
+         * The lines that were created already, or null.
+         */
+        public Line [] lines = new Line[CHUNK_MAX];
+
+        /**
+         * The strings that hold the lines, or null for a line that was
+         * edited since the last snapshot.
+         */
+        public String [] sources = new String[CHUNK_MAX];
+
+        /**
+         * The start offsets into sources of the lines, or -1 if the source
+         * is the raw string of an edited line, which is expanded already.
+         */
+        public int [] starts = new int[CHUNK_MAX];
+
+        /**
+         * The end offsets into sources of the lines.
+         */
+        public int [] ends = new int[CHUNK_MAX];
+
+        /**
+         * If true, a snapshot uses sources, starts, and ends: they must be
+         * copied before they are changed.
+         */
+        public boolean shared = false;
+
+        /**
+         * If true, a line has no source.
+         */
+        public boolean edited = false;
+
+        /**
+         * The lexer state at the start of each line.
+         */
+        public byte [] states = new byte[CHUNK_MAX];
+
+        /**
+         * The display length of each line, or -1 if it was not measured
+         * since it last changed.
+         */
+        public int [] widths = new int[CHUNK_MAX];
+
+        /**
+         * The display length of the longest line in this chunk, or -1 if
+         * a line changed since it was measured.
+         */
+        public int maxWidth = -1;
+
+        /**
+         * Create a copy of this chunk.  Lines that were created already are
+         * duplicated.
+         *
+         * @return the new chunk
+         */
+        public Chunk dup() {
+            Chunk other = new Chunk();
+            other.size = size;
+            for (int i = 0; i < size; i++) {
+                if (lines[i] != null) {
+                    other.lines[i] = lines[i].dup();
+                }
+            }
+            System.arraycopy(sources, 0, other.sources, 0, size);
+            System.arraycopy(starts, 0, other.starts, 0, size);
+            System.arraycopy(ends, 0, other.ends, 0, size);
+            System.arraycopy(states, 0, other.states, 0, size);
+            System.arraycopy(widths, 0, other.widths, 0, size);
+            other.maxWidth = maxWidth;
+            other.edited = edited;
+            return other;
+        }
+
+        /**
+         * Get sources, starts, and ends ready to be changed, copying them
+         * if a snapshot uses them.
+         */
+        public void unshare() {
+            if (shared) {
+                sources = sources.clone();
+                starts = starts.clone();
+                ends = ends.clone();
+                shared = false;
+            }
+        }
+
+        /**
+         * Note that a line was edited, so that its source is out of date.
+         *
+         * @param index the index in this chunk
+         */
+        public void edit(final int index) {
+            unshare();
+            sources[index] = null;
+            edited = true;
+        }
+
+        /**
+         * Open a hole at index.
+         *
+         * @param index the index in this chunk
+         */
+        public void open(final int index) {
+            unshare();
+            int n = size - index;
+            System.arraycopy(lines, index, lines, index + 1, n);
+            System.arraycopy(sources, index, sources, index + 1, n);
+            sources[index] = null;
+            edited = true;
+            System.arraycopy(starts, index, starts, index + 1, n);
+            System.arraycopy(ends, index, ends, index + 1, n);
+            System.arraycopy(states, index, states, index + 1, n);
+            states[index] = Highlighter.NORMAL;
+            System.arraycopy(widths, index, widths, index + 1, n);
+            widths[index] = -1;
+            maxWidth = -1;
+            size++;
+        }
+
+        /**
+         * Close the hole at index.
+         *
+         * @param index the index in this chunk
+         */
+        public void close(final int index) {
+            unshare();
+            int n = size - index - 1;
+            System.arraycopy(lines, index + 1, lines, index, n);
+            System.arraycopy(sources, index + 1, sources, index, n);
+            System.arraycopy(starts, index + 1, starts, index, n);
+            System.arraycopy(ends, index + 1, ends, index, n);
+            System.arraycopy(states, index + 1, states, index, n);
+            System.arraycopy(widths, index + 1, widths, index, n);
+            maxWidth = -1;
+            size--;
+            lines[size] = null;
+            sources[size] = null;
+        }
+
+        /**
+         * Move the second half of this chunk into a new chunk.
+         *
+         * @return the new chunk
+         */
+        public Chunk split() {
+            unshare();
+            Chunk other = new Chunk();
+            int half = size / 2;
+            other.size = size - half;
+            System.arraycopy(lines, half, other.lines, 0, other.size);
+            System.arraycopy(sources, half, other.sources, 0, other.size);
+            System.arraycopy(starts, half, other.starts, 0, other.size);
+            System.arraycopy(ends, half, other.ends, 0, other.size);
+            System.arraycopy(states, half, other.states, 0, other.size);
+            System.arraycopy(widths, half, other.widths, 0, other.size);
+            maxWidth = -1;
+            other.edited = edited;
+            for (int i = half; i < size; i++) {
+                lines[i] = null;
+                sources[i] = null;
+            }
+            size = half;
+            return other;
+        }
+
+    }
+
+    /**
+     * A read-only copy of the text of a LineTable, made by getSnapshot().
+     */
+    public static class Snapshot {
+
+        /**
+         * The number of lines.
+         */
+        private final int size;
+
+        /**
+         * The line number of the first line of each chunk.
+         */
+        private final int [] firsts;
+
+        /**
+         * The sources of the lines of each chunk.
+         */
+        private final String [][] sources;
+
+        /**
+         * The start offsets of the lines of each chunk, or -1.
+         */
+        private final int [][] starts;
+
+        /**
+         * The end offsets of the lines of each chunk.
+         */
+        private final int [][] ends;
+
+        /**
+         * Private constructor used by getSnapshot().
+         *
+         * @param size the number of lines
+         * @param firsts the line number of the first line of each chunk
+         * @param sources the sources of the lines of each chunk
+         * @param starts the start offsets of the lines of each chunk
+         * @param ends the end offsets of the lines of each chunk
+         */
+        private Snapshot(final int size, final int [] firsts,
+            final String [][] sources, final int [][] starts,
+            final int [][] ends) {
+
+            this.size = size;
+            this.firsts = firsts;
+            this.sources = sources;
+            this.starts = starts;
+            this.ends = ends;
+        }
+
+        /**
+         * Get the number of lines.
+         *
+         * @return the number of lines
+         */
+        public int size() {
+            return size;
+        }
+
+        /**
+         * Get the raw string of a line, as LineTable.getRawString() did
+         * when the snapshot was made.
+         *
+         * @param index the line number
+         * @return the string
+         */
+        public String getRawString(final int index) {
+            if ((index < 0) || (index >= size)) {
+                throw new IndexOutOfBoundsException("Lines array size is " +
+                    size + ", requested index " + index);
+            }
+            int c = Arrays.binarySearch(firsts, index);
+            if (c < 0) {
+                c = -(c + 1) - 1;
+            }
+            int i = index - firsts[c];
+            if (starts[c][i] == -1) {
+                return sources[c][i];
+            }
+            return Line.expand(sources[c][i], starts[c][i], ends[c][i]);
+        }
+
+    }
+
+    // ------------------------------------------------------------------------
+    // Constructors -----------------------------------------------------------
+    // ------------------------------------------------------------------------
+
+    /**
+     * Construct a table from the lines of a text string.  As with
+     * String.split("\n"), trailing empty lines are dropped, but the table
+     * always has at least one line.
+     *
+     * @param str the text string
+     * @param defaultColor the color for unhighlighted text
+     * @param highlighter the highlighter to use
+     */
+    public LineTable(final String str, final CellAttributes defaultColor,
+        final Highlighter highlighter) {
+
+        this.defaultColor = defaultColor;
+        this.highlighter = highlighter;
+        append(str);
+    }
+
+    /**
+     * Private constructor used by dup().
+     */
+    private LineTable() {
+        // NOP
+    }
+
+    // ------------------------------------------------------------------------
+    // AbstractList -----------------------------------------------------------
+    // ------------------------------------------------------------------------
+
+    /**
+     * Get the number of lines.
+     *
+     * @return the number of lines
+     */
+    @Override
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Get a line, creating its Line object if needed.
+     *
+     * @param index the line number
+     * @return the line
+     */
+    @Override
+    public Line get(final int index) {
+        int c = findChunk(index);
+        Chunk chunk = chunks.get(c);
+        int i = index - getChunkFirst(c);
+        if (chunk.lines[i] == null) {
+            chunk.lines[i] = new Line(chunk.sources[i].substring(
+                chunk.starts[i], chunk.ends[i]), defaultColor, highlighter);
+        }
+        return chunk.lines[i];
+    }
+
+    /**
+     * Replace a line.
+     *
+     * @param index the line number
+     * @param line the new line
+     * @return the line that was there before
+     */
+    @Override
+    public Line set(final int index, final Line line) {
+        Line old = get(index);
+        int c = findChunk(index);
+        Chunk chunk = chunks.get(c);
+        int i = index - getChunkFirst(c);
+        chunk.lines[i] = line;
+        chunk.edit(i);
+        chunk.widths[i] = -1;
+        widthChanged(c);
+        changed(index, 1, 1, true);
+        return old;
+    }
+
+    /**
+     * Insert a line.
+     *
+     * @param index the line number
+     * @param line the new line
+     */
+    @Override
+    public void add(final int index, final Line line) {
+        if ((index < 0) || (index > size)) {
+            throw new IndexOutOfBoundsException("Lines array size is " +
+                size + ", requested index " + index);
+        }
+        // The new line starts in the state the old one did.
+        int state = -1;
+        if ((index < size) && (index < stateValid)) {
+            state = getStoredState(index);
+        }
+        if (chunks.size() == 0) {
+            chunks.add(new Chunk());
+            widthTree = null;
+            sizeTree = null;
+        }
+        int c;
+        if (index == size) {
+            c = chunks.size() - 1;
+        } else {
+            c = findChunk(index);
+        }
+        Chunk chunk = chunks.get(c);
+        int i = index - getChunkFirst(c);
+        if (chunk.size == CHUNK_MAX) {
+            chunks.add(c + 1, chunk.split());
+            widthTree = null;
+            sizeTree = null;
+            if (i > chunk.size) {
+                i -= chunk.size;
+                c++;
+                chunk = chunks.get(c);
+            }
+        }
+        chunk.open(i);
+        chunk.lines[i] = line;
+        size++;
+        sizeChanged(c, 1);
+        widthChanged(c);
+        if (state != -1) {
+            setStoredState(index, state);
+        }
+        changed(index, 0, 1, (state != -1));
+        modCount++;
+    }
+
+    /**
+     * Remove a line.
+     *
+     * @param index the line number
+     * @return the line that was removed
+     */
+    @Override
+    public Line remove(final int index) {
+        Line old = get(index);
+        // The next line now starts in the state the removed one did.
+        int state = -1;
+        if ((index + 1 < size) && (index < stateValid)) {
+            state = getStoredState(index);
+        }
+        int c = findChunk(index);
+        Chunk chunk = chunks.get(c);
+        chunk.close(index - getChunkFirst(c));
+        size--;
+        if (chunk.size == 0) {
+            chunks.remove(c);
+            widthTree = null;
+            sizeTree = null;
+        } else {
+            sizeChanged(c, -1);
+            widthChanged(c);
+        }
+        if (state != -1) {
+            setStoredState(index, state);
+        }
+        changed(index, 1, 0, (state != -1));
+        modCount++;
+        return old;
+    }
+
+    /**
+     * Remove all lines.
+     */
+    @Override
+    public void clear() {
+        chunks.clear();
+        size = 0;
+        widthTree = null;
+        sizeTree = null;
+        resetStates();
+        modCount++;
+    }
+
+    // ------------------------------------------------------------------------
+    // LineTable --------------------------------------------------------------
+    // ------------------------------------------------------------------------
+
+    /**
+     * Add the lines of a text string at the end.  The lines are not
+     * created as Line objects until they are used.  As with
+     * String.split("\n"), trailing empty lines are dropped, but the table
+     * always has at least one line.
+     *
+     * @param str the text string
+     */
+    public void append(final String str) {
+        int end = str.length();
+        while ((end > 0) && (str.charAt(end - 1) == '\n')) {
+            end--;
+        }
+        if ((end == 0) && (size > 0)) {
+            return;
+        }
+
+        int c = chunks.size() - 1;
+        Chunk chunk = null;
+        if (c >= 0) {
+            chunk = chunks.get(c);
+            chunk.maxWidth = -1;
+        }
+        int start = 0;
+        for (;;) {
+            int newline = str.indexOf('\n', start);
+            if ((newline == -1) || (newline > end)) {
+                newline = end;
+            }
+            if ((chunk == null) || (chunk.size == CHUNK_MAX)) {
+                chunk = new Chunk();
+                chunks.add(chunk);
+            }
+            chunk.unshare();
+            chunk.sources[chunk.size] = str;
+            chunk.starts[chunk.size] = start;
+            chunk.ends[chunk.size] = newline;
+            chunk.widths[chunk.size] = -1;
+            chunk.size++;
+            size++;
+            if (newline == end) {
+                break;
+            }
+            start = newline + 1;
+        }
+        widthTree = null;
+        sizeTree = null;
+        modCount++;
+    }
+
+    /**
+     * Create a duplicate instance.  The source strings are shared, and
+     * only the lines that were created already are duplicated.
+     *
+     * @return duplicate intance
+     */
+    public LineTable dup() {
+        LineTable other = new LineTable();
+        other.defaultColor = defaultColor;
+        other.highlighter = highlighter;
+        other.size = size;
+        other.stateValid = stateValid;
+        other.stateKnown = stateKnown;
+        other.editEnd = editEnd;
+        for (Chunk chunk: chunks) {
+            other.chunks.add(chunk.dup());
+        }
+        return other;
+    }
+
+    /**
+     * Make a read-only copy of the text that another thread can read while
+     * this table is edited.  Only the lines edited since the last snapshot
+     * are looked at: the sources of the others are shared.
+     *
+     * @return the snapshot
+     */
+    public Snapshot getSnapshot() {
+        int n = chunks.size();
+        int [] firsts = new int[n];
+        String [][] sources = new String[n][];
+        int [][] starts = new int[n][];
+        int [][] ends = new int[n][];
+        int first = 0;
+        for (int c = 0; c < n; c++) {
+            Chunk chunk = chunks.get(c);
+            if (chunk.edited) {
+                // The chunk cannot be shared yet, its edit unshared it.
+                for (int i = 0; i < chunk.size; i++) {
+                    if (chunk.sources[i] == null) {
+                        String raw = chunk.lines[i].getRawString();
+                        chunk.sources[i] = raw;
+                        chunk.starts[i] = -1;
+                        chunk.ends[i] = raw.length();
+                    }
+                }
+                chunk.edited = false;
+            }
+            chunk.shared = true;
+            firsts[c] = first;
+            sources[c] = chunk.sources;
+            starts[c] = chunk.starts;
+            ends[c] = chunk.ends;
+            first += chunk.size;
+        }
+        return new Snapshot(size, firsts, sources, starts, ends);
+    }
+
+    /**
+     * Set the highlighter used by new lines.  Lines that were created
+     * already keep theirs.
+     *
+     * @param highlighter the highlighter to use
+     */
+    public void setHighlighter(final Highlighter highlighter) {
+        this.highlighter = highlighter;
+    }
+
+    /**
+     * See if the Line object of a line was created already.
+     *
+     * @param index the line number
+     * @return true if get() will not need to create a Line
+     */
+    public boolean isLoaded(final int index) {
+        int c = findChunk(index);
+        return (chunks.get(c).lines[index - getChunkFirst(c)] != null);
+    }
+
+    /**
+     * Get the raw string of a line, the same as
+     * get(index).getRawString(), but without creating a Line for it.
+     *
+     * @param index the line number
+     * @return the string
+     */
+    public String getRawString(final int index) {
+        int c = findChunk(index);
+        Chunk chunk = chunks.get(c);
+        int i = index - getChunkFirst(c);
+        if (chunk.lines[i] != null) {
+            return chunk.lines[i].getRawString();
+        }
+        return Line.expand(chunk.sources[i], chunk.starts[i], chunk.ends[i]);
+    }
+
+    /**
+     * Get the on-screen display length of a line, the same as
+     * get(index).getDisplayLength(), but without creating a Line for it.
+     *
+     * @param index the line number
+     * @return the number of cells needed to display this line
+     */
+    public int getDisplayLength(final int index) {
+        int c = findChunk(index);
+        return measure(chunks.get(c), index - getChunkFirst(c));
+    }
+
+    /**
+     * Get the on-screen display length of the longest line.  Only the
+     * lines that changed since the last call are measured.
+     *
+     * @return the number of cells needed to display the longest line
+     */
+    public int getDisplayLengthMax() {
+        if (widthTree == null) {
+            widthLeaves = 1;
+            while (widthLeaves < chunks.size()) {
+                widthLeaves *= 2;
+            }
+            widthTree = new int[widthLeaves * 2];
+            for (int c = 0; c < chunks.size(); c++) {
+                widthTree[widthLeaves + c] = chunks.get(c).maxWidth;
+            }
+            for (int node = widthLeaves - 1; node > 0; node--) {
+                int left = widthTree[node * 2];
+                int right = widthTree[node * 2 + 1];
+                if ((left == -1) || (right == -1)) {
+                    widthTree[node] = -1;
+                } else {
+                    widthTree[node] = Math.max(left, right);
+                }
+            }
+        }
+        return getTreeWidth(1);
+    }
+
+    /**
+     * Get the raw strings of a range of lines.
+     *
+     * @param first the first line number
+     * @param count the number of lines
+     * @return the strings
+     */
+    public String [] getRawStrings(final int first, final int count) {
+        String [] result = new String[count];
+        for (int i = 0; i < count; i++) {
+            result[i] = getRawString(first + i);
+        }
+        return result;
+    }
+
+    /**
+     * Replace a range of lines with new lines made from raw strings.
+     *
+     * @param first the first line number
+     * @param count the number of lines to remove
+     * @param rawLines the raw strings of the lines to insert
+     */
+    public void replace(final int first, final int count,
+        final String [] rawLines) {
+
+        int n = Math.min(count, rawLines.length);
+        for (int i = 0; i < n; i++) {
+            set(first + i, new Line(rawLines[i], defaultColor, highlighter));
+        }
+        for (int i = n; i < count; i++) {
+            remove(first + n);
+        }
+        for (int i = n; i < rawLines.length; i++) {
+            add(first + i, new Line(rawLines[i], defaultColor, highlighter));
+        }
+    }
+
+    /**
+     * Get the Highlighter lexer state at the start of a line, lexing the
+     * lines above it if needed.
+     *
+     * @param index the line number
+     * @return the lexer state
+     */
+    public int getStartState(final int index) {
+        if ((highlighter == null) || !highlighter.isEnabled()) {
+            return Highlighter.NORMAL;
+        }
+        while (stateValid <= index) {
+            // Walk the chunks directly rather than looking up every line.
+            int c = findChunk(stateValid - 1);
+            Chunk chunk = chunks.get(c);
+            int i = stateValid - 1 - getChunkFirst(c);
+            boolean converged = false;
+            while (stateValid <= index) {
+                int state = getEndState(chunk, i, chunk.states[i]);
+                i++;
+                if (i == chunk.size) {
+                    c++;
+                    chunk = chunks.get(c);
+                    i = 0;
+                }
+                int next = stateValid;
+                if ((next < stateKnown) && (next >= editEnd)
+                    && (chunk.states[i] == state)
+                ) {
+                    // The lines below were not edited and start the same
+                    // way, so their stored states are still right.
+                    stateValid = stateKnown;
+                    converged = true;
+                } else {
+                    chunk.states[i] = (byte) state;
+                    stateValid = next + 1;
+                    if (stateKnown < stateValid) {
+                        stateKnown = stateValid;
+                    }
+                }
+                if (stateValid >= editEnd) {
+                    editEnd = 0;
+                }
+                if (converged) {
+                    break;
+                }
+            }
+        }
+        return getStoredState(index);
+    }
+
+    /**
+     * Note that a range of lines was edited in place, so that their words
+     * and the lexer states below them must be computed again.
+     *
+     * @param first the first line number
+     * @param count the number of lines
+     */
+    public void touch(final int first, final int count) {
+        for (int i = first; i < first + count; i++) {
+            int c = findChunk(i);
+            Chunk chunk = chunks.get(c);
+            int j = i - getChunkFirst(c);
+            chunk.widths[j] = -1;
+            if (chunk.lines[j] != null) {
+                chunk.edit(j);
+            }
+            widthChanged(c);
+        }
+        changed(first, count, count, true);
+    }
+
+    /**
+     * Forget all lexer states, for example when highlighting is switched
+     * on or off.
+     */
+    public void resetStates() {
+        stateValid = 1;
+        stateKnown = 1;
+        editEnd = 0;
+    }
+
+    /**
+     * Get the stored lexer state at the start of a line.
+     *
+     * @param index the line number
+     * @return the lexer state
+     */
+    private int getStoredState(final int index) {
+        int c = findChunk(index);
+        return chunks.get(c).states[index - getChunkFirst(c)];
+    }
+
+    /**
+     * Set the stored lexer state at the start of a line.
+     *
+     * @param index the line number
+     * @param state the lexer state
+     */
+    private void setStoredState(final int index, final int state) {
+        int c = findChunk(index);
+        chunks.get(c).states[index - getChunkFirst(c)] = (byte) state;
+    }
+
+    /**
+     * Lex a line to find the state at its end.
+     *
+     * @param chunk the chunk that holds the line
+     * @param i the index of the line in the chunk
+     * @param state the lexer state at the start of the line
+     * @return the lexer state at the end of the line
+     */
+    private int getEndState(final Chunk chunk, final int i,
+        final int state) {
+
+        if (chunk.lines[i] != null) {
+            return chunk.lines[i].highlight(state);
+        }
+        return highlighter.lex(chunk.sources[i], chunk.starts[i],
+            chunk.ends[i], state, null);
+    }
+
+    /**
+     * Update the lexer state bookkeeping after lines were replaced.
+     *
+     * @param first the first line number of the range
+     * @param oldCount the number of lines in the range before
+     * @param newCount the number of lines in the range after
+     * @param firstKept if true, the stored start state of the first line
+     * of the range is still right
+     */
+    private void changed(final int first, final int oldCount,
+        final int newCount, final boolean firstKept) {
+
+        int delta = newCount - oldCount;
+        if (first < stateValid) {
+            // The stored states past stateValid do not follow from the
+            // lines above them, so they cannot be used once the lines
+            // above them are lexed again.
+            stateKnown = stateValid;
+        }
+        if (stateKnown > first + oldCount) {
+            stateKnown += delta;
+        } else {
+            stateKnown = Math.min(stateKnown, first + 1);
+        }
+        if (editEnd > first + oldCount) {
+            editEnd += delta;
+        }
+        editEnd = Math.max(editEnd, first + newCount);
+        stateValid = Math.min(stateValid, firstKept ? first + 1 : first);
+        if (stateValid < 1) {
+            // The first line always starts outside of any comment.
+            stateValid = 1;
+            if (size > 0) {
+                setStoredState(0, Highlighter.NORMAL);
+            }
+        }
+    }
+
+    /**
+     * Get the display length of a line, measuring it if it changed.
+     *
+     * @param chunk the chunk that holds the line
+     * @param i the index of the line in the chunk
+     * @return the number of cells needed to display the line
+     */
+    private int measure(final Chunk chunk, final int i) {
+        if (chunk.widths[i] == -1) {
+            if (chunk.lines[i] != null) {
+                chunk.widths[i] = chunk.lines[i].getDisplayLength();
+            } else {
+                chunk.widths[i] = Line.getDisplayLength(Line.expand(
+                    chunk.sources[i], chunk.starts[i], chunk.ends[i]));
+            }
+        }
+        return chunk.widths[i];
+    }
+
+    /**
+     * Note that a line of a chunk changed, so that the longest line of
+     * the chunk and of the tree nodes above it must be found again.
+     *
+     * @param c the chunk index
+     */
+    private void widthChanged(final int c) {
+        chunks.get(c).maxWidth = -1;
+        if (widthTree == null) {
+            return;
+        }
+        // If a node is already out of date, so are all the nodes above it.
+        for (int node = widthLeaves + c;
+             (node > 0) && (widthTree[node] != -1); node /= 2) {
+
+            widthTree[node] = -1;
+        }
+    }
+
+    /**
+     * Bring a node of widthTree up to date.
+     *
+     * @param node the node index
+     * @return the display length of the longest line below the node
+     */
+    private int getTreeWidth(final int node) {
+        if (widthTree[node] != -1) {
+            return widthTree[node];
+        }
+        if (node < widthLeaves) {
+            widthTree[node] = Math.max(getTreeWidth(node * 2),
+                getTreeWidth(node * 2 + 1));
+            return widthTree[node];
+        }
+        Chunk chunk = chunks.get(node - widthLeaves);
+        if (chunk.maxWidth == -1) {
+            int max = 0;
+            for (int i = 0; i < chunk.size; i++) {
+                max = Math.max(max, measure(chunk, i));
+            }
+            chunk.maxWidth = max;
+        }
+        widthTree[node] = chunk.maxWidth;
+        return chunk.maxWidth;
+    }
+
+    /**
+     * Find the chunk that holds a line.
+     *
+     * @param index the line number
+     * @return the chunk index
+     */
+    private int findChunk(final int index) {
+        if ((index < 0) || (index >= size)) {
+            throw new IndexOutOfBoundsException("Lines array size is " +
+                size + ", requested index " + index);
+        }
+        if (sizeTree == null) {
+            buildSizeTree();
+        }
+        int c = 0;
+        int rest = index;
+        for (int mask = Integer.highestOneBit(chunks.size()); mask > 0;
+             mask >>= 1) {
+
+            int next = c + mask;
+            if ((next <= chunks.size()) && (sizeTree[next] <= rest)) {
+                c = next;
+                rest -= sizeTree[next];
+            }
+        }
+        return c;
+    }
+
+    /**
+     * Get the first line number of a chunk.
+     *
+     * @param c the chunk index
+     * @return the line number
+     */
+    private int getChunkFirst(final int c) {
+        if (sizeTree == null) {
+            buildSizeTree();
+        }
+        int first = 0;
+        for (int i = c; i > 0; i -= i & -i) {
+            first += sizeTree[i];
+        }
+        return first;
+    }
+
+    /**
+     * Rebuild sizeTree from the chunks.
+     */
+    private void buildSizeTree() {
+        sizeTree = new int[chunks.size() + 1];
+        for (int i = 1; i <= chunks.size(); i++) {
+            sizeTree[i] += chunks.get(i - 1).size;
+            int parent = i + (i & -i);
+            if (parent <= chunks.size()) {
+                sizeTree[parent] += sizeTree[i];
+            }
+        }
+    }
+
+    /**
+     * Note that the number of lines of a chunk changed.
+     *
+     * @param c the chunk index
+     * @param delta the number of lines added, or removed if negative
+     */
+    private void sizeChanged(final int c, final int delta) {
+        if (sizeTree == null) {
+            return;
+        }
+        for (int i = c + 1; i <= chunks.size(); i += i & -i) {
+            sizeTree[i] += delta;
+        }
+    }
+
+}
@@ -35,9 +35,9 @@ import jexer.bits.StringUtils;
  * A Word represents text that was entered by the user.  It can be either
  * whitespace or non-whitespace.
  *
- * Very dumb highlighting is supported, it has no sense of parsing (not even
- * comments).  For now this only highlights some Java keywords and
- * puctuation.
+ * Very dumb highlighting is supported, it has no sense of parsing.  For
+ * now this only highlights some Java keywords and puctuation; comments and
+ * strings are found by Highlighter.lex() and colored by Line.
  */
 public class Word {
 
@@ -117,7 +117,7 @@ public class Word {
      * @param color the color
      */
     public void setColor(final CellAttributes color) {
-        color.setTo(color);
+        this.color.setTo(color);
     }
 
     /**
@@ -129,6 +129,15 @@ public class Word {
         return text.toString();
     }
 
+    /**
+     * Get the raw length of this word.
+     *
+     * @return the length of this word in characters
+     */
+    public int length() {
+        return text.length();
+    }
+
     /**
      * Get the on-screen display length.
      *
@@ -0,0 +1,204 @@
+/*
+ * Jexer - Java Text User Interface
+ *
+ * The MIT License (MIT)
+ *
+ * Copyright (C) 2019 Kevin Lamonte
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a
+ * copy of this software and associated documentation files (the "Software"),
+ * to deal in the Software without restriction, including without limitation
+ * the rights to use, copy, modify, merge, publish, distribute, sublicense,
+ * and/or sell copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL
+ * THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ * DEALINGS IN THE SOFTWARE.
+ *
+ * @author Kevin Lamonte [kevin.lamonte@gmail.com]
+ * @version 1
+ */
+package jexer.test;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import jexer.bits.DirectoryCache;
+
+/**
+ * Check when DirectoryCache gives back a listing, and when it reads the
+ * directory again.
+ */
+public class DirectoryCacheTest {
+
+    /**
+     * Get the tests.
+     *
+     * @return the tests
+     */
+    public static List<TestCase> getTests() {
+        List<TestCase> tests = new ArrayList<TestCase>();
+        tests.add(new TestCase("DirectoryCache: entries") {
+            @Override
+            public void test() throws Exception {
+                File dir = newCacheableDirectory();
+                try {
+                    File file = new File(dir, "file");
+                    file.createNewFile();
+                    File sub = new File(dir, "sub");
+                    sub.mkdir();
+
+                    DirectoryCache.Entry entry =
+                        new DirectoryCache.Entry(dir, "file");
+                    assertEquals("name", "file", entry.getName());
+                    assertEquals("file", file, entry.getFile());
+                    assertTrue("file", !entry.isDirectory());
+                    assertEquals("length", 0L, entry.length());
+                    assertTrue("readable", entry.canRead());
+
+                    entry = new DirectoryCache.Entry(dir, "sub");
+                    assertTrue("directory", entry.isDirectory());
+                    assertEquals("canonical", sub.getCanonicalFile(),
+                        entry.getFile());
+                } finally {
+                    delete(dir);
+                }
+            }
+        });
+        tests.add(new TestCase("DirectoryCache: listings until a change") {
+            @Override
+            public void test() throws Exception {
+                File dir = newCacheableDirectory();
+                try {
+                    new File(dir, "a").createNewFile();
+                    List<DirectoryCache.Entry> entries = list(dir);
+
+                    DirectoryCache cache = new DirectoryCache();
+                    assertEquals("unknown", null, cache.get(dir));
+                    cache.put(dir, dir.lastModified(), entries);
+                    assertTrue("kept", cache.get(dir) == entries);
+                    assertTrue("absolute path",
+                        cache.get(dir.getAbsoluteFile()) == entries);
+
+                    new File(dir, "b").createNewFile();
+                    assertEquals("changed", null, cache.get(dir));
+
+                    entries = list(dir);
+                    cache.put(dir, dir.lastModified(), entries);
+                    assertTrue("read again", cache.get(dir) == entries);
+                    cache.invalidate(dir);
+                    assertEquals("invalidated", null, cache.get(dir));
+                    cache.put(dir, dir.lastModified(), entries);
+                    cache.clear();
+                    assertEquals("cleared", null, cache.get(dir));
+                } finally {
+                    delete(dir);
+                }
+            }
+        });
+        tests.add(new TestCase("DirectoryCache: recent listings") {
+            @Override
+            public void test() throws Exception {
+                File dir = newCacheableDirectory();
+                try {
+                    DirectoryCache cache = new DirectoryCache();
+                    List<DirectoryCache.Entry> entries =
+                        new ArrayList<DirectoryCache.Entry>();
+
+                    // A change in the same clock tick would go unnoticed.
+                    dir.setLastModified(System.currentTimeMillis());
+                    cache.put(dir, dir.lastModified(), entries);
+                    assertEquals("just changed", null, cache.get(dir));
+
+                    cache.put(dir, 0, entries);
+                    assertEquals("no time", null, cache.get(dir));
+                } finally {
+                    delete(dir);
+                }
+            }
+        });
+        tests.add(new TestCase("DirectoryCache: least recently used") {
+            @Override
+            public void test() throws Exception {
+                File [] dirs = new File[3];
+                try {
+                    for (int i = 0; i < dirs.length; i++) {
+                        dirs[i] = newCacheableDirectory();
+                    }
+                    DirectoryCache.Entry entry =
+                        new DirectoryCache.Entry(dirs[0], "x");
+                    List<DirectoryCache.Entry> third = Collections.nCopies(
+                        DirectoryCache.MAX_ENTRIES / 3 + 1, entry);
+
+                    DirectoryCache cache = new DirectoryCache();
+                    cache.put(dirs[0], dirs[0].lastModified(), third);
+                    cache.put(dirs[1], dirs[1].lastModified(), third);
+                    assertTrue("first", cache.get(dirs[0]) == third);
+                    cache.put(dirs[2], dirs[2].lastModified(), third);
+
+                    assertTrue("used last", cache.get(dirs[0]) == third);
+                    assertEquals("used first", null, cache.get(dirs[1]));
+                    assertTrue("added last", cache.get(dirs[2]) == third);
+
+                    cache.put(dirs[1], dirs[1].lastModified(),
+                        Collections.nCopies(DirectoryCache.MAX_ENTRIES + 1,
+                            entry));
+                    assertEquals("too large", null, cache.get(dirs[1]));
+                    assertTrue("still there", cache.get(dirs[0]) == third);
+                } finally {
+                    for (File dir: dirs) {
+                        if (dir != null) {
+                            delete(dir);
+                        }
+                    }
+                }
+            }
+        });
+        return tests;
+    }
+
+    /**
+     * Create an empty temporary directory that last changed long enough
+     * ago for its listing to be cached.
+     *
+     * @return the directory
+     * @throws IOException if a java.io operation throws
+     */
+    private static File newCacheableDirectory() throws IOException {
+        File dir = TestCase.newDirectory();
+        dir.setLastModified(System.currentTimeMillis() - 60000);
+        return dir;
+    }
+
+    /**
+     * Read a directory the way the file widgets do, and set its
+     * modification time back so that the listing can be cached.
+     *
+     * @param dir the directory
+     * @return the entries
+     * @throws IOException if a java.io operation throws
+     */
+    private static List<DirectoryCache.Entry> list(
+        final File dir) throws IOException {
+
+        dir.setLastModified(System.currentTimeMillis() - 60000);
+        List<DirectoryCache.Entry> entries =
+            new ArrayList<DirectoryCache.Entry>();
+        for (String name: dir.list()) {
+            entries.add(new DirectoryCache.Entry(dir, name));
+        }
+        return entries;
+    }
+
+}
@@ -0,0 +1,238 @@
+/*
+ * Jexer - Java Text User Interface
+ *
+ * The MIT License (MIT)
+ *
+ * Copyright (C) 2019 Kevin Lamonte
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a
+ * copy of this software and associated documentation files (the "Software"),
+ * to deal in the Software without restriction, including without limitation
+ * the rights to use, copy, modify, merge, publish, distribute, sublicense,
+ * and/or sell copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL
+ * THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ * DEALINGS IN THE SOFTWARE.
+ *
+ * @author Kevin Lamonte [kevin.lamonte@gmail.com]
+ * @version 1
+ */
+package jexer.test;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.lang.reflect.Array;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import jexer.bits.CellAttributes;
+import jexer.teditor.Document;
+
+/**
+ * Check that Document.saveToFilename() replaces the file it is given, or
+ * the file a symbolic link points to, and leaves nothing else behind.
+ */
+public class DocumentTest {
+
+    /**
+     * Get the tests.
+     *
+     * @return the tests
+     */
+    public static List<TestCase> getTests() {
+        List<TestCase> tests = new ArrayList<TestCase>();
+        tests.add(new TestCase("Document: save over an existing file") {
+            @Override
+            public void test() throws Exception {
+                File dir = newDirectory();
+                try {
+                    File file = new File(dir, "file.txt");
+                    write(file, "old contents that are longer\n");
+                    file.setExecutable(true, true);
+
+                    Document document = newDocument("a\n\nb c");
+                    document.saveToFilename(file.getPath());
+
+                    assertEquals("contents", "a\n\nb c\n", read(file));
+                    assertTrue("not dirty", !document.isDirty());
+                    assertTrue("still executable", file.canExecute());
+                    assertEquals("files", Arrays.asList("file.txt"),
+                        list(dir));
+                } finally {
+                    delete(dir);
+                }
+            }
+        });
+        tests.add(new TestCase("Document: save a new file") {
+            @Override
+            public void test() throws Exception {
+                File dir = newDirectory();
+                try {
+                    File file = new File(dir, "new.txt");
+                    newDocument("x").saveToFilename(file.getPath());
+                    assertEquals("contents", "x\n", read(file));
+                    assertEquals("files", Arrays.asList("new.txt"),
+                        list(dir));
+                } finally {
+                    delete(dir);
+                }
+            }
+        });
+        tests.add(new TestCase("Document: save through a symbolic link") {
+            @Override
+            public void test() throws Exception {
+                File dir = newDirectory();
+                try {
+                    File target = new File(dir, "target.txt");
+                    write(target, "old\n");
+                    File link = new File(dir, "link.txt");
+                    if (!createSymbolicLink(link, target)) {
+                        // No symbolic links here, nothing to check.
+                        return;
+                    }
+
+                    newDocument("new").saveToFilename(link.getPath());
+
+                    assertEquals("contents", "new\n", read(target));
+                    assertEquals("link", target.getCanonicalFile(),
+                        link.getCanonicalFile());
+                    assertEquals("files",
+                        Arrays.asList("link.txt", "target.txt"), list(dir));
+                } finally {
+                    delete(dir);
+                }
+            }
+        });
+        tests.add(new TestCase("Document: save in a read-only directory") {
+            @Override
+            public void test() throws Exception {
+                File dir = newDirectory();
+                try {
+                    File file = new File(dir, "file.txt");
+                    write(file, "old\n");
+                    dir.setWritable(false);
+
+                    // The file is written in place when no temporary file
+                    // can be created next to it.
+                    newDocument("new").saveToFilename(file.getPath());
+
+                    assertEquals("contents", "new\n", read(file));
+                    assertEquals("files", Arrays.asList("file.txt"),
+                        list(dir));
+                } finally {
+                    dir.setWritable(true);
+                    delete(dir);
+                }
+            }
+        });
+        return tests;
+    }
+
+    /**
+     * Create a document.
+     *
+     * @param text the text
+     * @return the document
+     */
+    private static Document newDocument(final String text) {
+        return new Document(text, new CellAttributes());
+    }
+
+    /**
+     * Get the sorted names of the files in a directory.
+     *
+     * @param dir the directory
+     * @return the names
+     */
+    private static List<String> list(final File dir) {
+        String [] names = dir.list();
+        Arrays.sort(names);
+        return Arrays.asList(names);
+    }
+
+    /**
+     * Write a file.
+     *
+     * @param file the file
+     * @param text the contents
+     * @throws IOException if a java.io operation throws
+     */
+    private static void write(final File file,
+        final String text) throws IOException {
+
+        OutputStream output = new FileOutputStream(file);
+        try {
+            output.write(text.getBytes("UTF-8"));
+        } finally {
+            output.close();
+        }
+    }
+
+    /**
+     * Read a file.
+     *
+     * @param file the file
+     * @return the contents
+     * @throws IOException if a java.io operation throws
+     */
+    private static String read(final File file) throws IOException {
+        InputStream input = new FileInputStream(file);
+        try {
+            byte [] bytes = new byte[(int) file.length()];
+            int n = 0;
+            while (n < bytes.length) {
+                int rc = input.read(bytes, n, bytes.length - n);
+                if (rc == -1) {
+                    break;
+                }
+                n += rc;
+            }
+            return new String(bytes, 0, n, "UTF-8");
+        } finally {
+            input.close();
+        }
+    }
+
+    /**
+     * Create a symbolic link.  java.nio.file is reached by reflection
+     * since this code still runs on Java 6.
+     *
+     * @param link the link to create
+     * @param target the file it points to
+     * @return true if the link was created
+     */
+    private static boolean createSymbolicLink(final File link,
+        final File target) {
+
+        try {
+            Class<?> files = Class.forName("java.nio.file.Files");
+            Class<?> path = Class.forName("java.nio.file.Path");
+            Class<?> attribute = Class.forName(
+                "java.nio.file.attribute.FileAttribute");
+            Object noAttributes = Array.newInstance(attribute, 0);
+            files.getMethod("createSymbolicLink", path, path,
+                noAttributes.getClass()).invoke(null,
+                    File.class.getMethod("toPath").invoke(link),
+                    File.class.getMethod("toPath").invoke(target),
+                    noAttributes);
+            return true;
+        } catch (Throwable e) {
+            return false;
+        }
+    }
+
+}
@@ -0,0 +1,277 @@
+/*
+ * Jexer - Java Text User Interface
+ *
+ * The MIT License (MIT)
+ *
+ * Copyright (C) 2019 Kevin Lamonte
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a
+ * copy of this software and associated documentation files (the "Software"),
+ * to deal in the Software without restriction, including without limitation
+ * the rights to use, copy, modify, merge, publish, distribute, sublicense,
+ * and/or sell copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL
+ * THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ * DEALINGS IN THE SOFTWARE.
+ *
+ * @author Kevin Lamonte [kevin.lamonte@gmail.com]
+ * @version 1
+ */
+package jexer.test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import jexer.bits.CellAttributes;
+import jexer.teditor.Document;
+import jexer.teditor.EditJournal;
+import jexer.teditor.LineTable;
+
+/**
+ * Check that undo and redo bring back the text of every undo step, and
+ * that keystrokes typed in a row are undone together.
+ */
+public class EditJournalTest {
+
+    /**
+     * Get the tests.
+     *
+     * @return the tests
+     */
+    public static List<TestCase> getTests() {
+        List<TestCase> tests = new ArrayList<TestCase>();
+        tests.add(new TestCase("EditJournal: undo and redo groups") {
+            @Override
+            public void test() throws Exception {
+                Random random = new Random(32);
+                for (int n = 0; n < 50; n++) {
+                    LineTable lines = new LineTable("one\ntwo\nthree",
+                        new CellAttributes(), null);
+                    EditJournal journal = new EditJournal();
+                    journal.setUndoLevel(0);
+
+                    // The text after each undo step, the first entry
+                    // before any.
+                    List<List<String>> steps = new ArrayList<List<String>>();
+                    steps.add(getStrings(lines));
+                    int position = 0;
+                    for (int op = 0; op < 100; op++) {
+                        switch (random.nextInt(4)) {
+                        case 0:
+                            assertEquals("undo", position > 0,
+                                journal.undo(lines));
+                            position = Math.max(position - 1, 0);
+                            break;
+                        case 1:
+                            assertEquals("redo", position < steps.size() - 1,
+                                journal.redo(lines));
+                            position = Math.min(position + 1,
+                                steps.size() - 1);
+                            break;
+                        default:
+                            editGroup(random, journal, lines);
+                            // The steps that could be redone are gone.
+                            while (steps.size() > position + 1) {
+                                steps.remove(steps.size() - 1);
+                            }
+                            steps.add(getStrings(lines));
+                            position++;
+                            break;
+                        }
+                        assertEquals("lines at step " + position,
+                            steps.get(position), getStrings(lines));
+                        assertEquals("can undo", position > 0,
+                            journal.canUndo());
+                        assertEquals("can redo", position < steps.size() - 1,
+                            journal.canRedo());
+                    }
+                }
+            }
+        });
+        tests.add(new TestCase("EditJournal: undo level") {
+            @Override
+            public void test() throws Exception {
+                Document document = newDocument("");
+                document.setUndoLevel(3);
+                for (int i = 0; i < 5; i++) {
+                    document.enter();
+                }
+                assertEquals("lines", 6, document.getLineCount());
+                for (int i = 0; i < 3; i++) {
+                    assertTrue("undo " + i, document.undo());
+                }
+                assertTrue("no more undo", !document.undo());
+                assertEquals("lines", 3, document.getLineCount());
+                for (int i = 0; i < 3; i++) {
+                    assertTrue("redo " + i, document.redo());
+                }
+                assertTrue("no more redo", !document.redo());
+                assertEquals("lines", 6, document.getLineCount());
+            }
+        });
+        tests.add(new TestCase("EditJournal: typing is merged") {
+            @Override
+            public void test() throws Exception {
+                Document document = newDocument("hello\nworld");
+                document.end();
+                type(document, " there");
+                assertEquals("typed", "hello there\nworld\n",
+                    document.getText());
+                assertTrue("undo", document.undo());
+                assertEquals("one undo", "hello\nworld\n",
+                    document.getText());
+                assertEquals("cursor", 5, document.getCursor());
+                assertTrue("redo", document.redo());
+                assertEquals("one redo", "hello there\nworld\n",
+                    document.getText());
+                assertEquals("cursor", 11, document.getCursor());
+
+                // Moving the cursor starts a new undo step.
+                document.home();
+                type(document, "oh ");
+                assertEquals("typed", "oh hello there\nworld\n",
+                    document.getText());
+                assertTrue("undo", document.undo());
+                assertEquals("undo after a move", "hello there\nworld\n",
+                    document.getText());
+
+                // So does any other edit.
+                document.end();
+                type(document, "!");
+                document.enter();
+                type(document, "and");
+                document.backspace();
+                type(document, "y");
+                assertEquals("typed", "hello there!\nany\nworld\n",
+                    document.getText());
+                String [] undone = {
+                    "hello there!\nan\nworld\n",
+                    "hello there!\nand\nworld\n",
+                    "hello there!\n\nworld\n",
+                    "hello there!\nworld\n",
+                    "hello there\nworld\n",
+                };
+                for (int i = 0; i < undone.length; i++) {
+                    assertTrue("undo " + i, document.undo());
+                    assertEquals("undo " + i, undone[i], document.getText());
+                }
+
+                // Typing after an undo starts a new step too.
+                type(document, "?");
+                type(document, "?");
+                assertTrue("undo", document.undo());
+                assertEquals("undo after undo", "hello there\nworld\n",
+                    document.getText());
+                assertTrue("redo", document.redo());
+                assertEquals("redo", "hello there??\nworld\n",
+                    document.getText());
+            }
+        });
+        tests.add(new TestCase("EditJournal: explicit groups") {
+            @Override
+            public void test() throws Exception {
+                Document document = newDocument("a\nb");
+                document.beginUndoGroup();
+                document.end();
+                type(document, "1");
+                document.enter();
+                type(document, "2");
+                document.down();
+                document.home();
+                document.del();
+                document.endUndoGroup();
+                assertEquals("edited", "a1\n2\n\n", document.getText());
+                assertTrue("undo", document.undo());
+                assertEquals("one undo", "a\nb\n", document.getText());
+                assertEquals("line", 0, document.getLineNumber());
+                assertTrue("nothing left", !document.undo());
+                assertTrue("redo", document.redo());
+                assertEquals("one redo", "a1\n2\n\n", document.getText());
+            }
+        });
+        return tests;
+    }
+
+    /**
+     * Make a document.
+     *
+     * @param str the text
+     * @return the document
+     */
+    private static Document newDocument(final String str) {
+        Document document = new Document(str, new CellAttributes());
+        document.setHighlighting(false);
+        return document;
+    }
+
+    /**
+     * Type characters into a document.
+     *
+     * @param document the document
+     * @param str the characters
+     */
+    private static void type(final Document document, final String str) {
+        for (int i = 0; i < str.length(); i++) {
+            document.addChar(str.charAt(i));
+        }
+    }
+
+    /**
+     * Get the raw strings of all lines.
+     *
+     * @param lines the lines
+     * @return the strings
+     */
+    private static List<String> getStrings(final LineTable lines) {
+        return Arrays.asList(lines.getRawStrings(0, lines.size()));
+    }
+
+    /**
+     * Record a group of one to three random edits, sometimes nested and
+     * sometimes editing the same lines again, and apply them.
+     *
+     * @param random the random source
+     * @param journal the journal
+     * @param lines the lines
+     */
+    private static void editGroup(final Random random,
+        final EditJournal journal, final LineTable lines) {
+
+        journal.beginGroup(0, 0, false);
+        int edits = 1 + random.nextInt(3);
+        for (int i = 0; i < edits; i++) {
+            boolean nested = random.nextBoolean();
+            if (nested) {
+                journal.beginGroup(0, 0, random.nextBoolean());
+            }
+            int first = random.nextInt(lines.size());
+            int count = random.nextInt(Math.min(3, lines.size() - first) + 1);
+            if (count == lines.size()) {
+                count--;
+            }
+            String [] newLines = new String[random.nextInt(3)];
+            for (int j = 0; j < newLines.length; j++) {
+                newLines[j] = Integer.toString(random.nextInt(1000));
+            }
+            journal.record(first, lines.getRawStrings(first, count),
+                newLines);
+            lines.replace(first, count, newLines);
+            if (nested) {
+                journal.endGroup(0, 0);
+            }
+        }
+        journal.endGroup(0, 0);
+    }
+
+}
@@ -0,0 +1,193 @@
+/*
+ * Jexer - Java Text User Interface
+ *
+ * The MIT License (MIT)
+ *
+ * Copyright (C) 2019 Kevin Lamonte
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a
+ * copy of this software and associated documentation files (the "Software"),
+ * to deal in the Software without restriction, including without limitation
+ * the rights to use, copy, modify, merge, publish, distribute, sublicense,
+ * and/or sell copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL
+ * THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ * DEALINGS IN THE SOFTWARE.
+ *
+ * @author Kevin Lamonte [kevin.lamonte@gmail.com]
+ * @version 1
+ */
+package jexer.test;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import jexer.bits.CellAttributes;
+import jexer.teditor.Document;
+import jexer.teditor.LineBlockReader;
+import jexer.teditor.LineTable;
+
+/**
+ * Check that a file loaded block by block with LineBlockReader, the way
+ * TEditorWindow does, gives the same document as the whole file read at
+ * once, for LF and CRLF files and block edges anywhere.
+ */
+public class LineBlockReaderTest {
+
+    /**
+     * The pieces of the random lines.
+     */
+    private static final String [] TOKENS = {
+        "a", "word", " ", "\u00e9", "\u4e2d\u6587", "\ud83d\ude00",
+    };
+
+    /**
+     * Get the tests.
+     *
+     * @return the tests
+     */
+    public static List<TestCase> getTests() {
+        List<TestCase> tests = new ArrayList<TestCase>();
+        tests.add(new TestCase("LineBlockReader: LF block edges") {
+            @Override
+            public void test() throws Exception {
+                check(this, "\n");
+            }
+        });
+        tests.add(new TestCase("LineBlockReader: CRLF block edges") {
+            @Override
+            public void test() throws Exception {
+                check(this, "\r\n");
+            }
+        });
+        return tests;
+    }
+
+    /**
+     * Load files with one kind of line terminator at several block sizes.
+     *
+     * @param test the test being run
+     * @param eol the line terminator
+     * @throws IOException if a java.io operation throws
+     */
+    private static void check(final TestCase test,
+        final String eol) throws IOException {
+
+        Random random = new Random(eol.length());
+
+        // Small files, down to one line per block.
+        for (int n = 0; n < 40; n++) {
+            String text = randomLines(random, eol, random.nextInt(3000));
+            int [] blockSizes = { 1, 2, 7, 100, 1000, 1 << 20 };
+            for (int blockSize: blockSizes) {
+                check(test, text, blockSize);
+            }
+        }
+
+        // A file larger than the window LineBlockReader maps at a time.
+        String text = randomLines(random, eol, 5 << 20);
+        check(test, text, 64 * 1024);
+        check(test, text, 1 << 20);
+    }
+
+    /**
+     * Load a file in blocks and compare it with the whole text.
+     *
+     * @param test the test being run
+     * @param text the file contents
+     * @param blockSize the block size to read with
+     * @throws IOException if a java.io operation throws
+     */
+    private static void check(final TestCase test, final String text,
+        final int blockSize) throws IOException {
+
+        File file = File.createTempFile("jexer-test-", ".txt");
+        try {
+            OutputStream output = new FileOutputStream(file);
+            try {
+                output.write(text.getBytes("UTF-8"));
+            } finally {
+                output.close();
+            }
+
+            StringBuilder all = new StringBuilder();
+            Document document = null;
+            LineBlockReader reader = new LineBlockReader(file, blockSize);
+            try {
+                String block = reader.readBlock();
+                document = new Document(block == null ? "" : block,
+                    new CellAttributes());
+                while (block != null) {
+                    all.append(block);
+                    block = reader.readBlock();
+                    if (block != null) {
+                        test.assertTrue("block ends at a line boundary",
+                            all.charAt(all.length() - 1) == '\n');
+                        document.appendText(block);
+                    }
+                }
+            } finally {
+                reader.close();
+            }
+
+            String expected = text.replace("\r\n", "\n");
+            test.assertEquals("text at block size " + blockSize, expected,
+                all.toString());
+
+            // Compare the untokenized lines, tokenizing them all is slow.
+            LineTable.Snapshot lines = document.getSnapshot();
+            LineTable.Snapshot wholeLines = new Document(expected,
+                new CellAttributes()).getSnapshot();
+            test.assertEquals("line count at block size " + blockSize,
+                wholeLines.size(), lines.size());
+            for (int i = 0; i < wholeLines.size(); i++) {
+                test.assertEquals("line " + i + " at block size " + blockSize,
+                    wholeLines.getRawString(i), lines.getRawString(i));
+            }
+        } finally {
+            file.delete();
+        }
+    }
+
+    /**
+     * Make a text of lines, with runs of empty lines and multi-byte
+     * characters.
+     *
+     * @param random the random source
+     * @param eol the line terminator
+     * @param length the minimum length
+     * @return the text
+     */
+    private static String randomLines(final Random random, final String eol,
+        final int length) {
+
+        StringBuilder sb = new StringBuilder(length + 100);
+        while (sb.length() < length) {
+            if (random.nextInt(4) != 0) {
+                sb.append(TestCase.randomText(random, TOKENS,
+                        random.nextInt(40)));
+            }
+            sb.append(eol);
+        }
+        if (random.nextBoolean()) {
+            // No terminator on the last line.
+            sb.setLength(sb.length() - eol.length());
+        }
+        return sb.toString();
+    }
+
+}
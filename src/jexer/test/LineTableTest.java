@@ -0,0 +1,337 @@
+/*
+ * Jexer - Java Text User Interface
+ *
+ * The MIT License (MIT)
+ *
+ * Copyright (C) 2019 Kevin Lamonte
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a
+ * copy of this software and associated documentation files (the "Software"),
+ * to deal in the Software without restriction, including without limitation
+ * the rights to use, copy, modify, merge, publish, distribute, sublicense,
+ * and/or sell copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL
+ * THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ * DEALINGS IN THE SOFTWARE.
+ *
+ * @author Kevin Lamonte [kevin.lamonte@gmail.com]
+ * @version 1
+ */
+package jexer.test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import jexer.bits.CellAttributes;
+import jexer.bits.StringUtils;
+import jexer.teditor.Line;
+import jexer.teditor.LineTable;
+
+/**
+ * Check a LineTable against a plain list of strings under random edits
+ * that split chunks, empty and drop them, and append to the last one.
+ */
+public class LineTableTest {
+
+    /**
+     * The pieces of the random lines: words, spaces, and a wide
+     * character.
+     */
+    private static final String [] TOKENS = {
+        "a", "word", " ", "  ", "中",
+    };
+
+    /**
+     * Get the tests.
+     *
+     * @return the tests
+     */
+    public static List<TestCase> getTests() {
+        List<TestCase> tests = new ArrayList<TestCase>();
+        tests.add(new TestCase("LineTable: chunk split and drop") {
+            @Override
+            public void test() throws Exception {
+                Random random = new Random(31);
+                for (int n = 0; n < 20; n++) {
+                    List<String> expected = new ArrayList<String>();
+                    LineTable table = new LineTable(randomLines(random,
+                            expected, random.nextInt(2000)),
+                        new CellAttributes(), null);
+                    if (expected.size() == 0) {
+                        // The table always has at least one line.
+                        expected.add("");
+                    }
+                    check(this, expected, table);
+
+                    // Insert into one spot until its chunk splits a few
+                    // times, then remove until the chunks there are empty.
+                    int spot = random.nextInt(expected.size() + 1);
+                    for (int i = 0; i < 1500; i++) {
+                        int index = spot + random.nextInt(10);
+                        index = Math.min(index, expected.size());
+                        String line = randomText(random, TOKENS,
+                            random.nextInt(60));
+                        expected.add(index, line);
+                        table.add(index, newLine(line));
+                        if (i % 100 == 0) {
+                            check(this, expected, table);
+                        }
+                    }
+                    check(this, expected, table);
+                    while (expected.size() > 1) {
+                        int index = Math.min(spot + random.nextInt(10),
+                            expected.size() - 1);
+                        expected.remove(index);
+                        table.remove(index);
+                        if (expected.size() % 100 == 0) {
+                            check(this, expected, table);
+                        }
+                    }
+                    check(this, expected, table);
+                }
+            }
+        });
+        tests.add(new TestCase("LineTable: random edits and dup()") {
+            @Override
+            public void test() throws Exception {
+                Random random = new Random(3);
+                for (int n = 0; n < 20; n++) {
+                    List<String> expected = new ArrayList<String>();
+                    LineTable table = new LineTable(randomLines(random,
+                            expected, 1 + random.nextInt(3000)),
+                        new CellAttributes(), null);
+                    if (expected.size() == 0) {
+                        expected.add("");
+                    }
+                    List<String> copyExpected = null;
+                    LineTable copy = null;
+                    for (int op = 0; op < 300; op++) {
+                        editRandomly(random, expected, table);
+                        if (op % 30 == 0) {
+                            check(this, expected, table);
+                        }
+                        if (random.nextInt(100) == 0) {
+                            // Load a few lines so that both kinds are
+                            // copied.
+                            for (int i = 0; i < 10; i++) {
+                                table.get(random.nextInt(table.size()));
+                            }
+                            copy = table.dup();
+                            copyExpected = new ArrayList<String>(expected);
+                        }
+                    }
+                    check(this, expected, table);
+                    if (copy != null) {
+                        check(this, copyExpected, copy);
+                        // And the copy can be edited on its own.
+                        for (int op = 0; op < 100; op++) {
+                            editRandomly(random, copyExpected, copy);
+                        }
+                        check(this, copyExpected, copy);
+                        check(this, expected, table);
+                    }
+                }
+            }
+        });
+        tests.add(new TestCase("LineTable: snapshots while editing") {
+            @Override
+            public void test() throws Exception {
+                Random random = new Random(39);
+                for (int n = 0; n < 20; n++) {
+                    List<String> expected = new ArrayList<String>();
+                    LineTable table = new LineTable(randomLines(random,
+                            expected, 1 + random.nextInt(3000)),
+                        new CellAttributes(), null);
+                    if (expected.size() == 0) {
+                        expected.add("");
+                    }
+                    List<LineTable.Snapshot> snapshots =
+                        new ArrayList<LineTable.Snapshot>();
+                    List<List<String>> snapshotExpected =
+                        new ArrayList<List<String>>();
+                    for (int op = 0; op < 300; op++) {
+                        editRandomly(random, expected, table);
+                        if (op % 25 == 0) {
+                            snapshots.add(table.getSnapshot());
+                            snapshotExpected.add(new ArrayList<String>(
+                                expected));
+                        }
+                    }
+                    check(this, expected, table);
+                    // Each snapshot still has the text it was made of.
+                    for (int i = 0; i < snapshots.size(); i++) {
+                        LineTable.Snapshot snapshot = snapshots.get(i);
+                        List<String> lines = snapshotExpected.get(i);
+                        assertEquals("snapshot size", lines.size(),
+                            snapshot.size());
+                        for (int j = 0; j < lines.size(); j++) {
+                            assertEquals("snapshot line " + j, lines.get(j),
+                                snapshot.getRawString(j));
+                        }
+                    }
+                }
+            }
+        });
+        return tests;
+    }
+
+    /**
+     * Make a text of random lines, with empty lines here and there.
+     *
+     * @param random the random source
+     * @param lines the list to add the lines to, the way
+     * String.split("\n") would split the text
+     * @param count the number of lines
+     * @return the text
+     */
+    private static String randomLines(final Random random,
+        final List<String> lines, final int count) {
+
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < count; i++) {
+            String line = "";
+            if (random.nextInt(10) != 0) {
+                line = TestCase.randomText(random, TOKENS, random.nextInt(80));
+            }
+            lines.add(line);
+            sb.append(line).append('\n');
+        }
+        // Trailing empty lines are dropped.
+        while ((lines.size() > 0) && (lines.get(lines.size() - 1).length()
+                == 0)) {
+            lines.remove(lines.size() - 1);
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Make a line.
+     *
+     * @param str the raw string
+     * @return the line
+     */
+    private static Line newLine(final String str) {
+        return new Line(str, new CellAttributes(), null);
+    }
+
+    /**
+     * Apply one random edit to a table and to the list that mirrors it.
+     *
+     * @param random the random source
+     * @param expected the list
+     * @param table the table
+     */
+    private static void editRandomly(final Random random,
+        final List<String> expected, final LineTable table) {
+
+        int size = expected.size();
+        String line = TestCase.randomText(random, TOKENS, random.nextInt(100));
+        switch (random.nextInt(7)) {
+        case 0:
+            int index = random.nextInt(size + 1);
+            expected.add(index, line);
+            table.add(index, newLine(line));
+            break;
+        case 1:
+            if (size > 1) {
+                index = random.nextInt(size);
+                expected.remove(index);
+                table.remove(index);
+            }
+            break;
+        case 2:
+            index = random.nextInt(size);
+            expected.set(index, line);
+            table.set(index, newLine(line));
+            break;
+        case 3:
+            int first = random.nextInt(size);
+            int count = random.nextInt(Math.min(size - first, 300) + 1);
+            if (count == size) {
+                count--;
+            }
+            String [] rawLines = new String[random.nextInt(300)];
+            for (int i = 0; i < rawLines.length; i++) {
+                rawLines[i] = TestCase.randomText(random, TOKENS,
+                    random.nextInt(40));
+            }
+            for (int i = 0; i < count; i++) {
+                expected.remove(first);
+            }
+            for (int i = 0; i < rawLines.length; i++) {
+                expected.add(first + i, rawLines[i]);
+            }
+            table.replace(first, count, rawLines);
+            break;
+        case 4:
+            StringBuilder sb = new StringBuilder();
+            int lines = 1 + random.nextInt(300);
+            for (int i = 0; i < lines; i++) {
+                // Not empty, since trailing empty lines would be dropped.
+                line = TestCase.randomText(random, TOKENS,
+                    1 + random.nextInt(40));
+                expected.add(line);
+                sb.append(line).append('\n');
+            }
+            table.append(sb.toString());
+            break;
+        case 5:
+            // Edit a line in place, as Document does.
+            index = random.nextInt(size);
+            Line edited = table.get(index);
+            edited.end();
+            edited.addChar('x');
+            table.touch(index, 1);
+            expected.set(index, expected.get(index) + "x");
+            break;
+        default:
+            // Read a line, which creates its Line object.
+            table.get(random.nextInt(size));
+            break;
+        }
+    }
+
+    /**
+     * Check the lines of a table, and the length of the longest one.
+     *
+     * @param test the test being run
+     * @param expected the list of the raw strings
+     * @param table the table
+     */
+    private static void check(final TestCase test,
+        final List<String> expected, final LineTable table) {
+
+        test.assertEquals("size", expected.size(), table.size());
+        int max = 0;
+        for (int i = 0; i < expected.size(); i++) {
+            String line = expected.get(i);
+            test.assertEquals("line " + i, line, table.getRawString(i));
+            int width = StringUtils.width(line);
+            if (width > 0) {
+                // A line that is not empty has room for the cursor after
+                // it.
+                width++;
+            }
+            test.assertEquals("length of line " + i, width,
+                table.getDisplayLength(i));
+            max = Math.max(max, width);
+        }
+        test.assertEquals("longest line", max, table.getDisplayLengthMax());
+        if (expected.size() > 0) {
+            int i = expected.size() - 1;
+            test.assertEquals("last Line", expected.get(i),
+                table.get(i).getRawString());
+        }
+    }
+
+}
@@ -0,0 +1,296 @@
+/*
+ * Jexer - Java Text User Interface
+ *
+ * The MIT License (MIT)
+ *
+ * Copyright (C) 2019 Kevin Lamonte
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a
+ * copy of this software and associated documentation files (the "Software"),
+ * to deal in the Software without restriction, including without limitation
+ * the rights to use, copy, modify, merge, publish, distribute, sublicense,
+ * and/or sell copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL
+ * THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ * DEALINGS IN THE SOFTWARE.
+ *
+ * @author Kevin Lamonte [kevin.lamonte@gmail.com]
+ * @version 1
+ */
+package jexer.test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import jexer.bits.CellAttributes;
+import jexer.tterminal.DisplayLine;
+import jexer.tterminal.Scrollback;
+
+/**
+ * Check the rows of a Scrollback against its paragraphs wrapped at the
+ * current width, across width changes, trimming, spilling to disk, and
+ * searches.
+ */
+public class ScrollbackTest {
+
+    /**
+     * The pieces of the random paragraphs.
+     */
+    private static final String [] TOKENS = {
+        "ab", "x", "y", " ", "hello", "  ",
+    };
+
+    /**
+     * The pattern searched for.
+     */
+    private static final Pattern PATTERN = Pattern.compile("hel+o|x+");
+
+    /**
+     * Get the tests.
+     *
+     * @return the tests
+     */
+    public static List<TestCase> getTests() {
+        List<TestCase> tests = new ArrayList<TestCase>();
+        tests.add(new TestCase("Scrollback: reflow after a width change") {
+            @Override
+            public void test() throws Exception {
+                run(this, new Random(28), 0);
+            }
+        });
+        tests.add(new TestCase("Scrollback: reflow of lines on disk") {
+            @Override
+            public void test() throws Exception {
+                run(this, new Random(29), 40);
+            }
+        });
+        return tests;
+    }
+
+    /**
+     * Add paragraphs at several widths, then check the rows and the
+     * searches at several other widths.
+     *
+     * @param test the test being run
+     * @param random the random source
+     * @param memoryMax the number of rows to keep on the heap, or 0
+     */
+    private static void run(final TestCase test, final Random random,
+        final int memoryMax) {
+
+        for (int n = 0; n < 5; n++) {
+            Scrollback scrollback = new Scrollback();
+            scrollback.setMemoryMax(memoryMax);
+            List<String> paragraphs = new ArrayList<String>();
+            for (int step = 0; step < 10; step++) {
+                scrollback.setWidth(10 + random.nextInt(110));
+                int count = random.nextInt(60);
+                for (int i = 0; i < count; i++) {
+                    String paragraph = randomParagraph(random);
+                    paragraphs.add(paragraph);
+                    addParagraph(scrollback, paragraph);
+                }
+                check(test, paragraphs, scrollback);
+
+                // Change the width a few times without looking at the
+                // rows in between.
+                int changes = 1 + random.nextInt(3);
+                for (int i = 0; i < changes; i++) {
+                    scrollback.setWidth(10 + random.nextInt(110));
+                }
+                check(test, paragraphs, scrollback);
+                checkFind(test, paragraphs, scrollback);
+
+                if (random.nextInt(3) == 0) {
+                    int maxRows = random.nextInt(scrollback.size() + 1);
+                    scrollback.trim(maxRows);
+                    // Whole paragraphs are dropped until the rest fits.
+                    int rows = countRows(paragraphs, scrollback.getWidth());
+                    while (rows > maxRows) {
+                        rows -= countRows(paragraphs.get(0),
+                            scrollback.getWidth());
+                        paragraphs.remove(0);
+                    }
+                    check(test, paragraphs, scrollback);
+                }
+            }
+            scrollback.clear();
+        }
+    }
+
+    /**
+     * Make a random paragraph that does not end with a space.
+     *
+     * @param random the random source
+     * @return the paragraph
+     */
+    private static String randomParagraph(final Random random) {
+        if (random.nextInt(8) == 0) {
+            return "";
+        }
+        String str = TestCase.randomText(random, TOKENS, random.nextInt(300));
+        return str.replaceAll(" +$", "");
+    }
+
+    /**
+     * Write a paragraph to a scrollback as rows wrapped at its current
+     * width, the way the terminal does.
+     *
+     * @param scrollback the scrollback
+     * @param paragraph the text
+     */
+    private static void addParagraph(final Scrollback scrollback,
+        final String paragraph) {
+
+        int width = scrollback.getWidth();
+        int rows = countRows(paragraph, width);
+        for (int i = 0; i < rows; i++) {
+            DisplayLine row = new DisplayLine(new CellAttributes());
+            int end = Math.min(paragraph.length(), (i + 1) * width);
+            for (int j = i * width; j < end; j++) {
+                row.setChar(j - (i * width), paragraph.charAt(j));
+            }
+            row.setWrapped(i < rows - 1);
+            scrollback.add(row, width);
+        }
+    }
+
+    /**
+     * Get the number of rows of a paragraph.
+     *
+     * @param paragraph the text
+     * @param width the number of columns
+     * @return the number of rows
+     */
+    private static int countRows(final String paragraph, final int width) {
+        return Math.max(1, (paragraph.length() + width - 1) / width);
+    }
+
+    /**
+     * Get the number of rows of paragraphs.
+     *
+     * @param paragraphs the paragraphs
+     * @param width the number of columns
+     * @return the number of rows
+     */
+    private static int countRows(final List<String> paragraphs,
+        final int width) {
+
+        int rows = 0;
+        for (String paragraph: paragraphs) {
+            rows += countRows(paragraph, width);
+        }
+        return rows;
+    }
+
+    /**
+     * Check the rows of a scrollback.
+     *
+     * @param test the test being run
+     * @param paragraphs the paragraphs
+     * @param scrollback the scrollback
+     */
+    private static void check(final TestCase test,
+        final List<String> paragraphs, final Scrollback scrollback) {
+
+        int width = scrollback.getWidth();
+        test.assertEquals("rows at width " + width,
+            countRows(paragraphs, width), scrollback.size());
+        int row = 0;
+        for (String paragraph: paragraphs) {
+            int rows = countRows(paragraph, width);
+            for (int i = 0; i < rows; i++) {
+                StringBuilder expected = new StringBuilder(paragraph.substring(
+                    Math.min(paragraph.length(), i * width),
+                    Math.min(paragraph.length(), (i + 1) * width)));
+                while (expected.length() < width) {
+                    expected.append(' ');
+                }
+                DisplayLine line = scrollback.get(row);
+                StringBuilder actual = new StringBuilder();
+                for (int j = 0; j < width; j++) {
+                    actual.appendCodePoint(line.charAt(j).getChar());
+                }
+                test.assertEquals("row " + row + " at width " + width,
+                    expected.toString(), actual.toString());
+                test.assertEquals("row " + row + " wrapped", i < rows - 1,
+                    line.isWrapped());
+                row++;
+            }
+        }
+    }
+
+    /**
+     * Check that searching forwards and backwards finds every match, in
+     * order.
+     *
+     * @param test the test being run
+     * @param paragraphs the paragraphs
+     * @param scrollback the scrollback
+     */
+    private static void checkFind(final TestCase test,
+        final List<String> paragraphs, final Scrollback scrollback) {
+
+        int width = scrollback.getWidth();
+        List<String> expected = new ArrayList<String>();
+        int row = 0;
+        for (String paragraph: paragraphs) {
+            Matcher matcher = PATTERN.matcher(paragraph);
+            while (matcher.find()) {
+                expected.add(describe(row + (matcher.start() / width),
+                        matcher.start() % width,
+                        matcher.end() - matcher.start()));
+            }
+            row += countRows(paragraph, width);
+        }
+
+        List<String> forward = new ArrayList<String>();
+        Scrollback.Match match = scrollback.find(PATTERN, -1, 0, true);
+        while (match != null) {
+            forward.add(describe(match.getRow(), match.getColumn(),
+                    match.getLength()));
+            match = scrollback.find(PATTERN, match.getRow(),
+                match.getColumn(), true);
+        }
+        test.assertEquals("forward matches at width " + width, expected,
+            forward);
+
+        List<String> backward = new ArrayList<String>();
+        match = scrollback.find(PATTERN, scrollback.size(), 0, false);
+        while (match != null) {
+            backward.add(0, describe(match.getRow(), match.getColumn(),
+                    match.getLength()));
+            match = scrollback.find(PATTERN, match.getRow(),
+                match.getColumn(), false);
+        }
+        test.assertEquals("backward matches at width " + width, expected,
+            backward);
+    }
+
+    /**
+     * Describe a match for a failure message.
+     *
+     * @param row the row
+     * @param column the column
+     * @param length the number of cells
+     * @return the description
+     */
+    private static String describe(final int row, final int column,
+        final int length) {
+
+        return row + ":" + column + "+" + length;
+    }
+
+}
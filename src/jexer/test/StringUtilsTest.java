@@ -0,0 +1,236 @@
+/*
+ * Jexer - Java Text User Interface
+ *
+ * The MIT License (MIT)
+ *
+ * Copyright (C) 2019 Kevin Lamonte
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a
+ * copy of this software and associated documentation files (the "Software"),
+ * to deal in the Software without restriction, including without limitation
+ * the rights to use, copy, modify, merge, publish, distribute, sublicense,
+ * and/or sell copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL
+ * THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ * DEALINGS IN THE SOFTWARE.
+ *
+ * @author Kevin Lamonte [kevin.lamonte@gmail.com]
+ * @version 1
+ */
+package jexer.test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import jexer.bits.StringUtils;
+
+/**
+ * Check StringUtils' width table and one-pass wrapping against the range
+ * checks and the word-by-word left() they replaced.
+ */
+public class StringUtilsTest {
+
+    /**
+     * The pieces of the random texts: words, whitespace, newlines, and
+     * wide, combining, control, and surrogate characters.
+     */
+    private static final String [] TOKENS = {
+        "a", "bb", "word", "longerword", " ", "  ", "\t", "\n", "\n\n",
+        "\u00e9t\u00e9", "\u4e2d\u6587", "\uff21", "\u0301", "\u0007",
+        "\ud83d\ude00", "\ud83d", "\ude00",
+    };
+
+    /**
+     * Get the tests.
+     *
+     * @return the tests
+     */
+    public static List<TestCase> getTests() {
+        List<TestCase> tests = new ArrayList<TestCase>();
+        tests.add(new TestCase("StringUtils: width() of every code point") {
+            @Override
+            public void test() throws Exception {
+                for (int ch = -1; ch <= Character.MAX_CODE_POINT + 1; ch++) {
+                    if (StringUtils.width(ch) != oldWidth(ch)) {
+                        assertEquals("width of U+"
+                            + Integer.toHexString(ch), oldWidth(ch),
+                            StringUtils.width(ch));
+                    }
+                }
+            }
+        });
+        tests.add(new TestCase("StringUtils: width() of strings") {
+            @Override
+            public void test() throws Exception {
+                Random random = new Random(38);
+                for (int n = 0; n < 2000; n++) {
+                    String str = randomText(random, TOKENS, random.nextInt(60));
+                    assertEquals("width of \"" + str + "\"", oldWidth(str),
+                        StringUtils.width(str));
+                    int from = random.nextInt(str.length() + 1);
+                    int to = from + random.nextInt(str.length() - from + 1);
+                    assertEquals("width of part of \"" + str + "\"",
+                        oldWidth(str.substring(from, to)),
+                        StringUtils.width(str, from, to));
+                }
+                assertEquals("width of null", 0, StringUtils.width(null));
+            }
+        });
+        tests.add(new TestCase("StringUtils: left() and wrap()") {
+            @Override
+            public void test() throws Exception {
+                Random random = new Random(36);
+                for (int n = 0; n < 5000; n++) {
+                    String str = randomText(random, TOKENS,
+                        random.nextInt(120));
+                    int width = 1 + random.nextInt(30);
+                    List<String> expected = oldLeft(str, width);
+                    assertEquals("left(\"" + str + "\", " + width + ")",
+                        expected, StringUtils.left(str, width));
+
+                    int [] offsets = StringUtils.wrap(str, width);
+                    List<String> lines = new ArrayList<String>();
+                    for (int i = 0; i < offsets.length; i += 2) {
+                        lines.add(StringUtils.getWrappedLine(str, offsets[i],
+                                offsets[i + 1]));
+                    }
+                    assertEquals("wrap(\"" + str + "\", " + width + ")",
+                        expected, lines);
+                }
+            }
+        });
+        return tests;
+    }
+
+    /**
+     * Determine display width of a character the way StringUtils used to.
+     *
+     * @param ch the character
+     * @return the number of text cell columns required to display it
+     */
+    private static int oldWidth(final int ch) {
+        // 8-bit control characters: width 0
+        if (ch == 0) {
+            return 0;
+        }
+        if ((ch < 32) || ((ch >= 0x7f) && (ch < 0xa0))) {
+            return 0;
+        }
+
+        // All others: either 1 or 2
+        if ((ch >= 0x1100)
+            && ((ch <= 0x115f)
+                // Hangul Jamo init. consonants
+                || (ch == 0x2329)
+                || (ch == 0x232a)
+                // CJK ... Yi
+                || ((ch >= 0x2e80) && (ch <= 0xa4cf) && (ch != 0x303f))
+                // Hangul Syllables
+                || ((ch >= 0xac00) && (ch <= 0xd7a3))
+                // CJK Compatibility Ideographs
+                || ((ch >= 0xf900) && (ch <= 0xfaff))
+                // Vertical forms
+                || ((ch >= 0xfe10) && (ch <= 0xfe19))
+                // CJK Compatibility Forms
+                || ((ch >= 0xfe30) && (ch <= 0xfe6f))
+                // Fullwidth Forms
+                || ((ch >= 0xff00) && (ch <= 0xff60))
+                || ((ch >= 0xffe0) && (ch <= 0xffe6))
+                || ((ch >= 0x20000) && (ch <= 0x2fffd))
+                || ((ch >= 0x30000) && (ch <= 0x3fffd))
+                // emoji
+                || ((ch >= 0x1f004) && (ch <= 0x1fffd))
+            )
+        ) {
+            return 2;
+        }
+        return 1;
+    }
+
+    /**
+     * Determine display width of a string the way StringUtils used to.
+     *
+     * @param str the string
+     * @return the number of text cell columns required to display it
+     */
+    private static int oldWidth(final String str) {
+        int n = 0;
+        for (int i = 0; i < str.length();) {
+            int ch = str.codePointAt(i);
+            n += oldWidth(ch);
+            i += Character.charCount(ch);
+        }
+        return n;
+    }
+
+    /**
+     * Left-justify a string into a list of lines the way StringUtils used
+     * to.
+     *
+     * @param str the string
+     * @param n the maximum number of characters in a line
+     * @return the list of lines
+     */
+    private static List<String> oldLeft(final String str, final int n) {
+        List<String> result = new ArrayList<String>();
+
+        String [] rawLines = str.split("\n");
+        for (int i = 0; i < rawLines.length; i++) {
+            StringBuilder line = new StringBuilder();
+            StringBuilder word = new StringBuilder();
+            boolean inWord = false;
+            for (int j = 0; j < rawLines[i].length(); j++) {
+                char ch = rawLines[i].charAt(j);
+                if ((ch == ' ') || (ch == '\t')) {
+                    if (inWord == true) {
+                        if (oldWidth(word.toString())
+                            + oldWidth(line.toString()) > n
+                        ) {
+                            result.add(line.toString());
+                            line = new StringBuilder();
+                        }
+                        if ((word.toString().startsWith(" "))
+                            && (oldWidth(line.toString()) == 0)
+                        ) {
+                            line.append(word.substring(1));
+                        } else {
+                            line.append(word);
+                        }
+                        word = new StringBuilder();
+                        word.append(ch);
+                        inWord = false;
+                    }
+                } else {
+                    word.append(ch);
+                    inWord = true;
+                }
+            }
+
+            if (oldWidth(word.toString()) + oldWidth(line.toString()) > n) {
+                result.add(line.toString());
+                line = new StringBuilder();
+            }
+            if ((word.toString().startsWith(" "))
+                && (oldWidth(line.toString()) == 0)
+            ) {
+                line.append(word.substring(1));
+            } else {
+                line.append(word);
+            }
+            result.add(line.toString());
+        }
+
+        return result;
+    }
+
+}
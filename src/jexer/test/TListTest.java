@@ -0,0 +1,208 @@
+/*
+ * Jexer - Java Text User Interface
+ *
+ * The MIT License (MIT)
+ *
+ * Copyright (C) 2019 Kevin Lamonte
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a
+ * copy of this software and associated documentation files (the "Software"),
+ * to deal in the Software without restriction, including without limitation
+ * the rights to use, copy, modify, merge, publish, distribute, sublicense,
+ * and/or sell copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL
+ * THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ * DEALINGS IN THE SOFTWARE.
+ *
+ * @author Kevin Lamonte [kevin.lamonte@gmail.com]
+ * @version 1
+ */
+package jexer.test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import jexer.TKeypress;
+import jexer.TList;
+import jexer.event.TKeypressEvent;
+
+/**
+ * Check TList's prefix index against a linear search of the strings, for
+ * findPrefix() and for the type-ahead search.
+ */
+public class TListTest {
+
+    /**
+     * The pieces of the random strings, in both cases so that the search
+     * has to ignore case.
+     */
+    private static final String [] TOKENS = {
+        "a", "b", "A", "ab", "B", "c",
+    };
+
+    /**
+     * Get the tests.
+     *
+     * @return the tests
+     */
+    public static List<TestCase> getTests() {
+        List<TestCase> tests = new ArrayList<TestCase>();
+        tests.add(new TestCase("TList: prefix search") {
+            @Override
+            public void test() throws Exception {
+                Random random = new Random(49);
+                TList list = new TList(TestCase.newWindow("TListTest"),
+                    new ArrayList<String>(), 0, 0, 20, 10);
+                for (int n = 0; n < 200; n++) {
+                    List<String> strings = randomStrings(random,
+                        random.nextInt(300));
+                    setStrings(random, list, strings);
+                    for (int i = 0; i < 20; i++) {
+                        String prefix = TestCase.randomText(random, TOKENS,
+                            random.nextInt(4));
+                        assertEquals("first string starting with \""
+                            + prefix + "\"", findPrefix(strings, prefix),
+                            list.findPrefix(prefix));
+                    }
+                    if (random.nextBoolean()) {
+                        // Added strings are found too.
+                        List<String> more = randomStrings(random,
+                            random.nextInt(50));
+                        strings.addAll(more);
+                        if (list.getModel() == null) {
+                            list.addListItems(more);
+                        } else {
+                            setStrings(random, list, strings);
+                        }
+                        String prefix = TestCase.randomText(random, TOKENS,
+                            random.nextInt(4));
+                        assertEquals("first string starting with \""
+                            + prefix + "\"", findPrefix(strings, prefix),
+                            list.findPrefix(prefix));
+                    }
+                }
+            }
+        });
+        tests.add(new TestCase("TList: type-ahead search") {
+            @Override
+            public void test() throws Exception {
+                Random random = new Random(9);
+                TList list = new TList(TestCase.newWindow("TListTest"),
+                    new ArrayList<String>(), 0, 0, 20, 10);
+                for (int n = 0; n < 200; n++) {
+                    List<String> strings = randomStrings(random,
+                        1 + random.nextInt(300));
+                    setStrings(random, list, strings);
+                    list.setSelectedIndex(0);
+                    int selected = 0;
+                    String typed = "";
+                    // Well within the type-ahead timeout.
+                    for (int i = 0; i < 10; i++) {
+                        if ((typed.length() > 0) && random.nextInt(4) == 0) {
+                            list.onKeypress(new TKeypressEvent(
+                                TKeypress.kbBackspace));
+                            typed = typed.substring(0, typed.length() - 1);
+                            if (typed.length() > 0) {
+                                selected = findPrefix(strings, typed);
+                            }
+                        } else {
+                            char ch = "abcABd".charAt(random.nextInt(6));
+                            list.onKeypress(new TKeypressEvent(
+                                new TKeypress(false, 0, ch, false, false,
+                                    false)));
+                            int index = findPrefix(strings, typed + ch);
+                            if (index >= 0) {
+                                // A character that matches nothing is
+                                // ignored.
+                                typed = typed + ch;
+                                selected = index;
+                            }
+                        }
+                        assertEquals("selection after typing \"" + typed
+                            + "\"", selected, list.getSelectedIndex());
+                    }
+                }
+            }
+        });
+        return tests;
+    }
+
+    /**
+     * Make random strings, with duplicates and empty strings.
+     *
+     * @param random the random source
+     * @param count the number of strings
+     * @return the strings
+     */
+    private static List<String> randomStrings(final Random random,
+        final int count) {
+
+        List<String> strings = new ArrayList<String>();
+        for (int i = 0; i < count; i++) {
+            strings.add(TestCase.randomText(random, TOKENS,
+                    random.nextInt(6)));
+        }
+        return strings;
+    }
+
+    /**
+     * Show strings in a list, either directly or through a model.
+     *
+     * @param random the random source
+     * @param list the list
+     * @param strings the strings
+     */
+    private static void setStrings(final Random random, final TList list,
+        final List<String> strings) {
+
+        if (random.nextBoolean()) {
+            list.setList(strings);
+            return;
+        }
+        list.setModel(new TList.Model() {
+            public int getItemCount() {
+                return strings.size();
+            }
+
+            public List<String> getItems(final int start, final int count) {
+                return new ArrayList<String>(strings.subList(start,
+                        start + count));
+            }
+
+            public int getMaxWidth() {
+                return -1;
+            }
+        });
+    }
+
+    /**
+     * Find the first string that starts with a prefix, ignoring case.
+     *
+     * @param strings the strings
+     * @param prefix the prefix
+     * @return the index, or -1 if there is none
+     */
+    private static int findPrefix(final List<String> strings,
+        final String prefix) {
+
+        for (int i = 0; i < strings.size(); i++) {
+            if (strings.get(i).toLowerCase().startsWith(
+                    prefix.toLowerCase())
+            ) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+}
@@ -0,0 +1,276 @@
+/*
+ * Jexer - Java Text User Interface
+ *
+ * The MIT License (MIT)
+ *
+ * Copyright (C) 2019 Kevin Lamonte
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a
+ * copy of this software and associated documentation files (the "Software"),
+ * to deal in the Software without restriction, including without limitation
+ * the rights to use, copy, modify, merge, publish, distribute, sublicense,
+ * and/or sell copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL
+ * THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ * DEALINGS IN THE SOFTWARE.
+ *
+ * @author Kevin Lamonte [kevin.lamonte@gmail.com]
+ * @version 1
+ */
+package jexer.test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+import javax.swing.table.DefaultTableModel;
+import javax.swing.table.TableModel;
+
+import be.nikiroo.jexer.TTableSortedModel;
+
+/**
+ * Check the rows of a TTableSortedModel against a stable sort of the
+ * filtered source rows, after sorting and after each change of the source
+ * model.
+ */
+public class TTableSortedModelTest {
+
+    /**
+     * Show the rows whose first column is not a multiple of 5.
+     */
+    private static final TTableSortedModel.Filter FILTER =
+        new TTableSortedModel.Filter() {
+            public boolean accept(final TableModel model, final int row) {
+                Object value = model.getValueAt(row, 0);
+                return (value == null) || ((Integer) value % 5 != 0);
+            }
+        };
+
+    /**
+     * Get the tests.
+     *
+     * @return the tests
+     */
+    public static List<TestCase> getTests() {
+        List<TestCase> tests = new ArrayList<TestCase>();
+        tests.add(new TestCase("TTableSortedModel: sort and filter") {
+            @Override
+            public void test() throws Exception {
+                Random random = new Random(44);
+                for (int n = 0; n < 200; n++) {
+                    DefaultTableModel source = newSource(random,
+                        random.nextInt(100));
+                    TTableSortedModel view = new TTableSortedModel(source);
+                    check(this, source, view);
+
+                    view.setSortKeys(randomKeys(random));
+                    check(this, source, view);
+                    if (random.nextBoolean()) {
+                        view.setFilter(FILTER);
+                        check(this, source, view);
+                    }
+                    view.setSortKeys(randomKeys(random));
+                    check(this, source, view);
+                    view.setFilter(null);
+                    check(this, source, view);
+                }
+            }
+        });
+        tests.add(new TestCase("TTableSortedModel: source model changes") {
+            @Override
+            public void test() throws Exception {
+                Random random = new Random(4);
+                for (int n = 0; n < 100; n++) {
+                    DefaultTableModel source = newSource(random,
+                        random.nextInt(50));
+                    TTableSortedModel view = new TTableSortedModel(source);
+                    view.setSortKeys(randomKeys(random));
+                    if (random.nextBoolean()) {
+                        view.setFilter(FILTER);
+                    }
+                    for (int op = 0; op < 50; op++) {
+                        int rows = source.getRowCount();
+                        switch (random.nextInt(4)) {
+                        case 0:
+                            source.insertRow(random.nextInt(rows + 1),
+                                randomRow(random));
+                            break;
+                        case 1:
+                            if (rows > 0) {
+                                source.removeRow(random.nextInt(rows));
+                            }
+                            break;
+                        case 2:
+                            if (rows > 0) {
+                                int column = random.nextInt(3);
+                                source.setValueAt(randomRow(random)[column],
+                                    random.nextInt(rows), column);
+                            }
+                            break;
+                        default:
+                            view.setSortKeys(randomKeys(random));
+                            break;
+                        }
+                        check(this, source, view);
+                    }
+                    view.dispose();
+                }
+            }
+        });
+        return tests;
+    }
+
+    /**
+     * Create a source model of three columns: small integers, words, and
+     * integers, with a few empty cells.
+     *
+     * @param random the random source
+     * @param rows the number of rows
+     * @return the model
+     */
+    private static DefaultTableModel newSource(final Random random,
+        final int rows) {
+
+        DefaultTableModel source = new DefaultTableModel(
+            new Object[] { "a", "b", "c" }, 0);
+        for (int i = 0; i < rows; i++) {
+            source.addRow(randomRow(random));
+        }
+        return source;
+    }
+
+    /**
+     * Make a row of the source model, with many equal values so that the
+     * sort has to be stable.
+     *
+     * @param random the random source
+     * @return the row
+     */
+    private static Object [] randomRow(final Random random) {
+        String [] words = { "apple", "Banana", "cherry", "date" };
+        return new Object[] {
+            random.nextInt(10) == 0 ? null : random.nextInt(12),
+            random.nextInt(10) == 0 ? null : words[random.nextInt(4)],
+            random.nextInt(1000),
+        };
+    }
+
+    /**
+     * Make up to three sort keys.
+     *
+     * @param random the random source
+     * @return the keys
+     */
+    private static List<TTableSortedModel.SortKey> randomKeys(
+        final Random random) {
+
+        List<TTableSortedModel.SortKey> keys =
+            new ArrayList<TTableSortedModel.SortKey>();
+        int count = random.nextInt(4);
+        for (int i = 0; i < count; i++) {
+            keys.add(new TTableSortedModel.SortKey(random.nextInt(3),
+                    random.nextBoolean()));
+        }
+        return keys;
+    }
+
+    /**
+     * Check the rows of the view, and the index conversions both ways.
+     *
+     * @param test the test being run
+     * @param source the source model
+     * @param view the view
+     */
+    private static void check(final TestCase test,
+        final DefaultTableModel source, final TTableSortedModel view) {
+
+        final List<TTableSortedModel.SortKey> keys = view.getSortKeys();
+        List<Integer> expected = new ArrayList<Integer>();
+        for (int i = 0; i < source.getRowCount(); i++) {
+            if ((view.getFilter() == null)
+                || view.getFilter().accept(source, i)
+            ) {
+                expected.add(i);
+            }
+        }
+        // Collections.sort() is stable.
+        Collections.sort(expected, new Comparator<Integer>() {
+            public int compare(final Integer row1, final Integer row2) {
+                for (TTableSortedModel.SortKey key: keys) {
+                    int result = compareValues(
+                        source.getValueAt(row1, key.getColumn()),
+                        source.getValueAt(row2, key.getColumn()));
+                    if (result != 0) {
+                        return key.isAscending() ? result : -result;
+                    }
+                }
+                return 0;
+            }
+        });
+
+        List<Integer> actual = new ArrayList<Integer>();
+        for (int i = 0; i < view.getRowCount(); i++) {
+            actual.add(view.convertRowIndexToModel(i));
+        }
+        test.assertEquals("rows sorted on " + describe(keys), expected,
+            actual);
+
+        for (int i = 0; i < source.getRowCount(); i++) {
+            test.assertEquals("view index of row " + i, expected.indexOf(i),
+                view.convertRowIndexToView(i));
+        }
+        for (int i = 0; i < view.getRowCount(); i++) {
+            test.assertEquals("value of row " + i,
+                source.getValueAt(expected.get(i), 1), view.getValueAt(i, 1));
+        }
+    }
+
+    /**
+     * Compare two values of a column the way the default comparator is
+     * documented to: nulls first, then their natural order.
+     *
+     * @param value1 the first value
+     * @param value2 the second value
+     * @return the comparison
+     */
+    @SuppressWarnings("unchecked")
+    private static int compareValues(final Object value1,
+        final Object value2) {
+
+        if (value1 == null) {
+            return (value2 == null) ? 0 : -1;
+        }
+        if (value2 == null) {
+            return 1;
+        }
+        return ((Comparable<Object>) value1).compareTo(value2);
+    }
+
+    /**
+     * Describe sort keys for a failure message.
+     *
+     * @param keys the keys
+     * @return the description
+     */
+    private static String describe(final List<TTableSortedModel.SortKey> keys) {
+        StringBuilder sb = new StringBuilder("[");
+        for (TTableSortedModel.SortKey key: keys) {
+            if (sb.length() > 1) {
+                sb.append(", ");
+            }
+            sb.append(key.getColumn()).append(key.isAscending() ? "+" : "-");
+        }
+        return sb.append("]").toString();
+    }
+
+}
@@ -0,0 +1,218 @@
+/*
+ * Jexer - Java Text User Interface
+ *
+ * The MIT License (MIT)
+ *
+ * Copyright (C) 2019 Kevin Lamonte
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a
+ * copy of this software and associated documentation files (the "Software"),
+ * to deal in the Software without restriction, including without limitation
+ * the rights to use, copy, modify, merge, publish, distribute, sublicense,
+ * and/or sell copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL
+ * THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ * DEALINGS IN THE SOFTWARE.
+ *
+ * @author Kevin Lamonte [kevin.lamonte@gmail.com]
+ * @version 1
+ */
+package jexer.test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import jexer.TText;
+import jexer.bits.StringUtils;
+import jexer.event.TResizeEvent;
+
+/**
+ * Check TText's lazily wrapped lines against the straightforward
+ * algorithm it replaced: split the whole text on "\n\n", wrap every
+ * paragraph, and add a blank line after each.
+ */
+public class TTextTest {
+
+    /**
+     * The pieces of the random texts: words, spaces, and single and double
+     * newlines.
+     */
+    private static final String [] TOKENS = {
+        "a", "bb", "word", "longerword", " ", "  ", "\n", "\n\n", "\n\n\n",
+        "averylongwordthatdoesnotfitonaline",
+    };
+
+    /**
+     * Get the tests.
+     *
+     * @return the tests
+     */
+    public static List<TestCase> getTests() {
+        List<TestCase> tests = new ArrayList<TestCase>();
+        tests.add(new TestCase("TText: addLine() on a short text") {
+            @Override
+            public void test() throws Exception {
+                Random random = new Random(224);
+                TText text = newText(randomText(random, TOKENS, 224), 60, 20);
+                check(text, TText.Justification.LEFT);
+                for (int i = 0; i < 3; i++) {
+                    text.addLine(randomText(random, TOKENS, 80));
+                    check(text, TText.Justification.LEFT);
+                    text.toBottom();
+                    check(text, TText.Justification.LEFT);
+                }
+            }
+        });
+        tests.add(new TestCase("TText: random edits, resizes and scrolls") {
+            @Override
+            public void test() throws Exception {
+                for (int n = 0; n < 300; n++) {
+                    Random random = new Random(n);
+                    TText text = newText(randomText(random, TOKENS,
+                            random.nextInt(400)), 5 + random.nextInt(70),
+                        4 + random.nextInt(20));
+                    TText.Justification justification =
+                        TText.Justification.LEFT;
+                    for (int op = 0; op < 8; op++) {
+                        switch (random.nextInt(5)) {
+                        case 0:
+                            text.addLine(randomText(random, TOKENS,
+                                    random.nextInt(120)));
+                            break;
+                        case 1:
+                            int width = 5 + random.nextInt(70);
+                            int height = 4 + random.nextInt(20);
+                            text.setWidth(width);
+                            text.setHeight(height);
+                            text.onResize(new TResizeEvent(
+                                TResizeEvent.Type.WIDGET, width, height));
+                            break;
+                        case 2:
+                            text.setVerticalValue(random.nextInt(60));
+                            break;
+                        case 3:
+                            justification = TText.Justification.
+                                values()[random.nextInt(5)];
+                            text.setJustification(justification);
+                            break;
+                        default:
+                            text.draw();
+                            break;
+                        }
+                        check(text, justification);
+                    }
+                    text.getWindow().close();
+                }
+            }
+        });
+        return tests;
+    }
+
+    /**
+     * Create a TText in a headless application.
+     *
+     * @param str the text
+     * @param width the widget width
+     * @param height the widget height
+     * @return the widget
+     */
+    private static TText newText(final String str, final int width,
+        final int height) {
+
+        return new TText(TestCase.newWindow("TTextTest"), str, 0, 0, width,
+            height);
+    }
+
+    /**
+     * Wrap a text the way TText used to.
+     *
+     * @param str the text
+     * @param width the width to wrap to
+     * @param justification how to justify the lines
+     * @return the lines
+     */
+    private static List<String> wrap(final String str, final int width,
+        final TText.Justification justification) {
+
+        List<String> lines = new ArrayList<String>();
+        for (String p: str.split("\n\n")) {
+            switch (justification) {
+            case NONE:
+                lines.addAll(Arrays.asList(p.split("\n")));
+                break;
+            case LEFT:
+                lines.addAll(StringUtils.left(p, width));
+                break;
+            case CENTER:
+                lines.addAll(StringUtils.center(p, width));
+                break;
+            case RIGHT:
+                lines.addAll(StringUtils.right(p, width));
+                break;
+            case FULL:
+            default:
+                lines.addAll(StringUtils.full(p, width));
+                break;
+            }
+            lines.add("");
+        }
+        return lines;
+    }
+
+    /**
+     * Check the scrollbar range and the drawn lines of a TText.
+     *
+     * @param text the widget
+     * @param justification the justification set on the widget
+     */
+    private static void check(final TText text,
+        final TText.Justification justification) {
+
+        int width = text.getWidth() - 1;
+        int height = text.getHeight() - 1;
+        List<String> lines = wrap(text.getText(), width, justification);
+
+        int bottom = Math.max(0, lines.size() - height);
+        if (text.getBottomValue() != bottom) {
+            throw new AssertionError("Scrollbar bottom: expected <" + bottom
+                + "> but was <" + text.getBottomValue() + ">");
+        }
+
+        // Draw at the top left corner of the screen.
+        text.getScreen().resetClipping();
+        text.getScreen().clear();
+        text.draw();
+        int top = text.getVerticalValue();
+        for (int y = 0; y < height; y++) {
+            String expected = "";
+            if (top + y < lines.size()) {
+                expected = lines.get(top + y);
+            }
+            if (expected.length() > width) {
+                // Only the columns left of the scrollbar are compared.
+                expected = expected.substring(0, width);
+            }
+            StringBuilder actual = new StringBuilder();
+            for (int x = 0; x < StringUtils.width(expected); x++) {
+                actual.appendCodePoint(text.getScreen().getCharXY(x,
+                        y).getChar());
+            }
+            if (!expected.equals(actual.toString())) {
+                throw new AssertionError("Line " + (top + y) + ": expected <"
+                    + expected + "> but was <" + actual + ">");
+            }
+        }
+    }
+
+}
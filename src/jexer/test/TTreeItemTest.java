@@ -0,0 +1,173 @@
+/*
+ * Jexer - Java Text User Interface
+ *
+ * The MIT License (MIT)
+ *
+ * Copyright (C) 2019 Kevin Lamonte
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a
+ * copy of this software and associated documentation files (the "Software"),
+ * to deal in the Software without restriction, including without limitation
+ * the rights to use, copy, modify, merge, publish, distribute, sublicense,
+ * and/or sell copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL
+ * THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ * DEALINGS IN THE SOFTWARE.
+ *
+ * @author Kevin Lamonte [kevin.lamonte@gmail.com]
+ * @version 1
+ */
+package jexer.test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import jexer.TWidget;
+import jexer.ttree.TTreeItem;
+import jexer.ttree.TTreeView;
+
+/**
+ * Check the rows a TTreeView finds for its items, and the items it finds
+ * on its rows, against the flat list from TTreeItem.expandTree(), while
+ * items are added, removed, expanded and collapsed.
+ */
+public class TTreeItemTest {
+
+    /**
+     * An item at a given level of the tree.
+     */
+    private static class Item extends TTreeItem {
+
+        /**
+         * Public constructor.
+         *
+         * @param view root TTreeView
+         * @param text text for this item
+         * @param level the level of this item in the tree
+         */
+        public Item(final TTreeView view, final String text,
+            final int level) {
+
+            super(view, text, (level == 0));
+            this.level = level;
+            setExpandable(true);
+        }
+
+        /**
+         * Get the level of this item in the tree.
+         *
+         * @return the level
+         */
+        public int getLevel() {
+            return level;
+        }
+
+    }
+
+    /**
+     * Get the tests.
+     *
+     * @return the tests
+     */
+    public static List<TestCase> getTests() {
+        List<TestCase> tests = new ArrayList<TestCase>();
+        tests.add(new TestCase("TTreeItem: rows of the subtrees") {
+            @Override
+            public void test() throws Exception {
+                Random random = new Random(46);
+                for (int n = 0; n < 20; n++) {
+                    TTreeView view = new TTreeView(
+                        TestCase.newWindow("TTreeItemTest"), 0, 0, 40, 20);
+                    Item root = new Item(view, "root", 0);
+                    List<Item> items = new ArrayList<Item>();
+                    items.add(root);
+                    for (int op = 0; op < 300; op++) {
+                        Item item = items.get(random.nextInt(items.size()));
+                        switch (random.nextInt(4)) {
+                        case 0:
+                        case 1:
+                            Item child = new Item(view, "item" + op,
+                                item.getLevel() + 1);
+                            List<TWidget> children = item.getChildren();
+                            children.add(random.nextInt(children.size() + 1),
+                                child);
+                            item.invalidate();
+                            items.add(child);
+                            break;
+                        case 2:
+                            item.setExpanded(!item.isExpanded());
+                            break;
+                        default:
+                            if (item != root) {
+                                removeItem(root, item);
+                            }
+                            break;
+                        }
+                        if ((op % 10 == 0) || (random.nextInt(3) == 0)) {
+                            check(this, view, root, items);
+                        }
+                    }
+                    check(this, view, root, items);
+                }
+            }
+        });
+        return tests;
+    }
+
+    /**
+     * Remove an item from the children of its parent.
+     *
+     * @param root the tree root
+     * @param item the item
+     */
+    private static void removeItem(final TTreeItem root,
+        final TTreeItem item) {
+
+        for (TWidget widget: root.getChildren()) {
+            TTreeItem parent = (TTreeItem) widget;
+            if (parent == item) {
+                root.getChildren().remove(item);
+                root.invalidate();
+                return;
+            }
+            removeItem(parent, item);
+        }
+    }
+
+    /**
+     * Check the rows of all items, whether they are in the tree or not.
+     *
+     * @param test the test being run
+     * @param view the view
+     * @param root the tree root
+     * @param items the items
+     */
+    private static void check(final TestCase test, final TTreeView view,
+        final TTreeItem root, final List<Item> items) {
+
+        List<TTreeItem> expected = root.expandTree("", true);
+        test.assertEquals("rows", expected.size(), view.getTotalLineCount());
+        for (int row = 0; row < expected.size(); row++) {
+            test.assertTrue("item on row " + row,
+                view.getItem(row) == expected.get(row));
+        }
+        test.assertTrue("item before the first row", view.getItem(-1) == null);
+        test.assertTrue("item after the last row",
+            view.getItem(expected.size()) == null);
+        for (TTreeItem item: items) {
+            test.assertEquals("row of " + item.getText(),
+                expected.indexOf(item), view.getRow(item));
+        }
+    }
+
+}
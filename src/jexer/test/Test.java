@@ -0,0 +1,96 @@
+/*
+ * Jexer - Java Text User Interface
+ *
+ * The MIT License (MIT)
+ *
+ * Copyright (C) 2019 Kevin Lamonte
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a
+ * copy of this software and associated documentation files (the "Software"),
+ * to deal in the Software without restriction, including without limitation
+ * the rights to use, copy, modify, merge, publish, distribute, sublicense,
+ * and/or sell copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL
+ * THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ * DEALINGS IN THE SOFTWARE.
+ *
+ * @author Kevin Lamonte [kevin.lamonte@gmail.com]
+ * @version 1
+ */
+package jexer.test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Run all the tests and report the results.  The arguments are the same as
+ * the ones the Makefile's run-test target passes: the number of columns,
+ * and the strings to print for a passed and a failed test.  The exit code
+ * is the number of failed tests.
+ */
+public class Test {
+
+    /**
+     * Main entry point.
+     *
+     * @param args the number of columns, the "ok" and the "ko" strings, all
+     * optional
+     */
+    public static void main(final String [] args) {
+        int cols = 80;
+        String ok = "[ ok ]";
+        String ko = "[ !! ]";
+        if (args.length > 0) {
+            try {
+                cols = Integer.parseInt(args[0]);
+            } catch (NumberFormatException e) {
+                // SQUASH
+            }
+        }
+        if (args.length > 2) {
+            ok = args[1];
+            ko = args[2];
+        }
+
+        List<TestCase> tests = new ArrayList<TestCase>();
+        tests.addAll(TTextTest.getTests());
+        tests.addAll(StringUtilsTest.getTests());
+        tests.addAll(LineBlockReaderTest.getTests());
+        tests.addAll(LineTableTest.getTests());
+        tests.addAll(DocumentTest.getTests());
+        tests.addAll(EditJournalTest.getTests());
+        tests.addAll(ScrollbackTest.getTests());
+        tests.addAll(TTableSortedModelTest.getTests());
+        tests.addAll(DirectoryCacheTest.getTests());
+        tests.addAll(TTreeItemTest.getTests());
+        tests.addAll(TListTest.getTests());
+
+        int failed = 0;
+        for (TestCase test: tests) {
+            StringBuilder line = new StringBuilder(test.getName());
+            while (line.length() < cols - 8) {
+                line.append(' ');
+            }
+            try {
+                test.test();
+                System.out.println(line + ok);
+            } catch (Throwable t) {
+                failed++;
+                System.out.println(line + ko);
+                t.printStackTrace(System.out);
+            }
+        }
+        System.out.printf("%d tests, %d failed\n", tests.size(), failed);
+        System.exit(failed);
+    }
+
+}
@@ -0,0 +1,191 @@
+/*
+ * Jexer - Java Text User Interface
+ *
+ * The MIT License (MIT)
+ *
+ * Copyright (C) 2019 Kevin Lamonte
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a
+ * copy of this software and associated documentation files (the "Software"),
+ * to deal in the Software without restriction, including without limitation
+ * the rights to use, copy, modify, merge, publish, distribute, sublicense,
+ * and/or sell copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL
+ * THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ * DEALINGS IN THE SOFTWARE.
+ *
+ * @author Kevin Lamonte [kevin.lamonte@gmail.com]
+ * @version 1
+ */
+package jexer.test;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Random;
+
+import jexer.TApplication;
+import jexer.TWindow;
+import jexer.backend.HeadlessBackend;
+
+/**
+ * One test: a name and the code to run.  The assert methods throw an
+ * AssertionError on failure, so they work without the -ea switch.
+ */
+public abstract class TestCase {
+
+    // ------------------------------------------------------------------------
+    // Variables --------------------------------------------------------------
+    // ------------------------------------------------------------------------
+
+    /**
+     * The application the widgets are drawn in.
+     */
+    private static TApplication app = null;
+
+    /**
+     * The name of the test.
+     */
+    private final String name;
+
+    // ------------------------------------------------------------------------
+    // Constructors -----------------------------------------------------------
+    // ------------------------------------------------------------------------
+
+    /**
+     * Public constructor.
+     *
+     * @param name the name of the test
+     */
+    public TestCase(final String name) {
+        this.name = name;
+    }
+
+    // ------------------------------------------------------------------------
+    // TestCase ---------------------------------------------------------------
+    // ------------------------------------------------------------------------
+
+    /**
+     * Run the test.
+     *
+     * @throws Exception if the test fails in an unexpected way
+     */
+    public abstract void test() throws Exception;
+
+    /**
+     * Get the name of the test.
+     *
+     * @return the name
+     */
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * Fail the test.
+     *
+     * @param message what went wrong
+     */
+    protected void fail(final String message) {
+        throw new AssertionError(message);
+    }
+
+    /**
+     * Fail the test if a condition is false.
+     *
+     * @param message what went wrong
+     * @param condition the condition
+     */
+    protected void assertTrue(final String message, final boolean condition) {
+        if (!condition) {
+            fail(message);
+        }
+    }
+
+    /**
+     * Fail the test if two values differ.
+     *
+     * @param message what is compared
+     * @param expected the expected value
+     * @param actual the actual value
+     */
+    protected void assertEquals(final String message, final Object expected,
+        final Object actual) {
+
+        if ((expected == null) ? (actual != null) : !expected.equals(actual)) {
+            fail(message + ": expected <" + expected + "> but was <"
+                + actual + ">");
+        }
+    }
+
+    /**
+     * Make a text of random pieces.
+     *
+     * @param random the random source
+     * @param tokens the pieces to pick from
+     * @param length the minimum length
+     * @return the text
+     */
+    protected static String randomText(final Random random,
+        final String [] tokens, final int length) {
+
+        StringBuilder sb = new StringBuilder();
+        while (sb.length() < length) {
+            sb.append(tokens[random.nextInt(tokens.length)]);
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Create an empty temporary directory.
+     *
+     * @return the directory
+     * @throws IOException if a java.io operation throws
+     */
+    protected static File newDirectory() throws IOException {
+        File dir = File.createTempFile("jexer-test-", "");
+        if (!dir.delete() || !dir.mkdir()) {
+            throw new IOException("Cannot create directory " + dir);
+        }
+        return dir;
+    }
+
+    /**
+     * Delete a temporary directory and the files in it.
+     *
+     * @param dir the directory
+     */
+    protected static void delete(final File dir) {
+        File [] files = dir.listFiles();
+        if (files != null) {
+            for (File file: files) {
+                file.delete();
+            }
+        }
+        dir.delete();
+    }
+
+    /**
+     * Create a window in a headless application.
+     *
+     * @param title the window title
+     * @return the window
+     */
+    protected static TWindow newWindow(final String title) {
+        if (app == null) {
+            HeadlessBackend backend = new HeadlessBackend();
+            backend.setDimensions(100, 50);
+            app = new TApplication(backend);
+        }
+        return new TWindow(app, title, 0, 0, 98, 48);
+    }
+
+}
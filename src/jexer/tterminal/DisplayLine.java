@@ -76,6 +76,13 @@ public class DisplayLine {
      */
     private boolean reverseColor = false;
 
+    /**
+     * Soft-wrap flag.  True means the text of this line continues on the
+     * next line because it reached the right margin, rather than because
+     * of a linefeed.
+     */
+    private boolean wrapped = false;
+
     // ------------------------------------------------------------------------
     // Constructors -----------------------------------------------------------
     // ------------------------------------------------------------------------
@@ -93,6 +100,7 @@ public class DisplayLine {
         doubleWidth = line.doubleWidth;
         doubleHeight = line.doubleHeight;
         reverseColor = line.reverseColor;
+        wrapped = line.wrapped;
     }
 
     /**
@@ -184,6 +192,41 @@ public class DisplayLine {
         this.reverseColor = reverseColor;
     }
 
+    /**
+     * Get soft-wrap flag.
+     *
+     * @return if true, the text of this line continues on the next line
+     */
+    public boolean isWrapped() {
+        return wrapped;
+    }
+
+    /**
+     * Set soft-wrap flag.
+     *
+     * @param wrapped new value for the soft-wrap flag
+     */
+    public void setWrapped(final boolean wrapped) {
+        this.wrapped = wrapped;
+    }
+
+    /**
+     * Get the number of columns holding text, i.e. the line length without
+     * the trailing cells that are identical to the last (never written)
+     * cell.
+     *
+     * @return the number of columns holding text
+     */
+    public int getTextLength() {
+        Cell fill = chars[chars.length - 1];
+        for (int i = chars.length - 1; i >= 0; i--) {
+            if (!chars[i].equals(fill)) {
+                return i + 1;
+            }
+        }
+        return 0;
+    }
+
     /**
      * Insert a character at the specified position.
      *
@@ -30,23 +30,27 @@ package jexer.tterminal;
 
 import java.awt.Graphics;
 import java.awt.image.BufferedImage;
-import java.io.BufferedInputStream;
 import java.io.BufferedOutputStream;
 import java.io.ByteArrayInputStream;
 import java.io.CharArrayWriter;
 import java.io.InputStream;
-import java.io.InputStreamReader;
 import java.io.IOException;
 import java.io.OutputStream;
 import java.io.OutputStreamWriter;
 import java.io.PrintWriter;
-import java.io.Reader;
 import java.io.UnsupportedEncodingException;
 import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CodingErrorAction;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
+import java.util.regex.Pattern;
 import javax.imageio.ImageIO;
 
 import jexer.TKeypress;
@@ -252,10 +256,58 @@ public class ECMA48 implements Runnable {
     private volatile boolean stopReaderThread = false;
 
     /**
-     * The reader thread.
+     * When true, the reader has closed the input streams and will not read
+     * anymore.
+     */
+    private volatile boolean readerDone = false;
+
+    /**
+     * The reader thread, or null if this emulator is read by a ReaderPool.
      */
     private Thread readerThread = null;
 
+    /**
+     * Decoded characters read from the remote side when type == XTERM.
+     */
+    private char [] readBufferUTF8 = null;
+
+    /**
+     * Buffer used to read bytes from the remote side.  When type == XTERM,
+     * a trailing incomplete UTF-8 sequence is kept here until the rest of
+     * it arrives.
+     */
+    private byte [] readBuffer = null;
+
+    /**
+     * The number of bytes of an incomplete UTF-8 sequence left at the start
+     * of readBuffer by the previous read.
+     */
+    private int readBufferPending = 0;
+
+    /**
+     * When true, the reader thread stops pulling data from the remote side.
+     * The remote side will block once the pipe between us fills up.
+     */
+    private volatile boolean outputPaused = false;
+
+    /**
+     * The minimum number of millis between two calls to
+     * displayListener.displayChanged(), or 0 to call it after every read.
+     */
+    private volatile int displayThrottleMillis = 0;
+
+    /**
+     * Time that displayListener.displayChanged() was last called from the
+     * reader thread.
+     */
+    private long lastDisplayChangedTime = 0;
+
+    /**
+     * If true, the display has changed since the last call to
+     * displayListener.displayChanged() from the reader thread.
+     */
+    private boolean displayChangedPending = false;
+
     /**
      * The type of emulator to be.
      */
@@ -264,7 +316,7 @@ public class ECMA48 implements Runnable {
     /**
      * The scrollback buffer characters + attributes.
      */
-    private volatile ArrayList<DisplayLine> scrollback;
+    private volatile Scrollback scrollback;
 
     /**
      * The raw display buffer characters + attributes.
@@ -277,13 +329,15 @@ public class ECMA48 implements Runnable {
     private int scrollbackMax = 10000;
 
     /**
-     * The terminal's input.  For type == XTERM, this is an InputStreamReader
-     * with UTF-8 encoding.
+     * The UTF-8 decoder for the terminal's input when type == XTERM.  Bytes
+     * are decoded here rather than through an InputStreamReader so that a
+     * read never asks for more than inputStream.available(), and so never
+     * blocks a ReaderPool thread.
      */
-    private Reader input;
+    private CharsetDecoder decoder;
 
     /**
-     * The terminal's raw InputStream.  This is used for type != XTERM.
+     * The terminal's raw InputStream.
      */
     private volatile TimeoutInputStream inputStream;
 
@@ -511,6 +565,11 @@ public class ECMA48 implements Runnable {
      */
     private long readCount = 0;
 
+    /**
+     * Total time spent parsing data from the remote side, in nanoseconds.
+     */
+    private volatile long parseTime = 0;
+
     /**
      * DECSC/DECRC save/restore a subset of the total state.  This class
      * encapsulates those specific flags/modes.
@@ -634,15 +693,14 @@ public class ECMA48 implements Runnable {
      * @param type one of the DeviceType constants to select VT100, VT102,
      * VT220, or XTERM
      * @param inputStream an InputStream connected to the remote side.  For
-     * type == XTERM, inputStream is converted to a Reader with UTF-8
-     * encoding.
+     * type == XTERM, inputStream is decoded as UTF-8.
      * @param outputStream an OutputStream connected to the remote user.  For
      * type == XTERM, outputStream is converted to a Writer with UTF-8
      * encoding.
      * @param displayListener a callback to the outer display, or null for
      * default VT100 behavior
      * @throws UnsupportedEncodingException if an exception is thrown when
-     * creating the InputStreamReader
+     * creating the OutputStreamWriter
      */
     public ECMA48(final DeviceType type, final InputStream inputStream,
         final OutputStream outputStream, final DisplayListener displayListener)
@@ -653,7 +711,7 @@ public class ECMA48 implements Runnable {
 
         csiParams         = new ArrayList<Integer>();
         tabStops          = new ArrayList<Integer>();
-        scrollback        = new ArrayList<DisplayLine>();
+        scrollback        = new Scrollback();
         display           = new ArrayList<DisplayLine>();
 
         this.type         = type;
@@ -663,8 +721,9 @@ public class ECMA48 implements Runnable {
             this.inputStream  = new TimeoutInputStream(inputStream, 2000);
         }
         if (type == DeviceType.XTERM) {
-            this.input    = new InputStreamReader(new BufferedInputStream(
-                this.inputStream, 1024 * 128), "UTF-8");
+            this.decoder  = Charset.forName("UTF-8").newDecoder()
+                .onMalformedInput(CodingErrorAction.REPLACE)
+                .onUnmappableCharacter(CodingErrorAction.REPLACE);
             this.output   = new OutputStreamWriter(new
                 BufferedOutputStream(outputStream), "UTF-8");
             this.outputStream = null;
@@ -682,8 +741,12 @@ public class ECMA48 implements Runnable {
         assert (currentState.cursorX < width);
 
         // Spin up the input reader
-        readerThread = new Thread(this);
-        readerThread.start();
+        if (ReaderPool.isEnabled()) {
+            ReaderPool.getInstance().add(this);
+        } else {
+            readerThread = new Thread(this);
+            readerThread.start();
+        }
     }
 
     // ------------------------------------------------------------------------
@@ -694,155 +757,204 @@ public class ECMA48 implements Runnable {
      * Read function runs on a separate thread.
      */
     public final void run() {
-        boolean utf8 = false;
-        boolean done = false;
+        int rc = 0;
+        while (rc >= 0) {
+            rc = pollRemote();
+            if (rc == 0) {
+                try {
+                    Thread.sleep(10);
+                } catch (InterruptedException e) {
+                    // SQUASH
+                }
+            }
+        }
+        // System.err.println("*** run() exiting..."); System.err.flush();
+    }
+
+    // ------------------------------------------------------------------------
+    // ECMA48 -----------------------------------------------------------------
+    // ------------------------------------------------------------------------
 
+    /**
+     * Process the pending user events, then read and consume whatever the
+     * remote side has available.  This is the body of the reader loop, it
+     * is called repeatedly either by run() on a dedicated thread or by a
+     * ReaderPool thread.
+     *
+     * @return 1 if data was read from the remote side, 0 if there was
+     * nothing to read, or -1 if the remote side is closed and the reader is
+     * done
+     */
+    final int pollRemote() {
+        if (readerDone) {
+            return -1;
+        }
+        if (stopReaderThread) {
+            stopReading();
+            return -1;
+        }
+
+        boolean utf8 = false;
         if (type == DeviceType.XTERM) {
             utf8 = true;
         }
 
         // available() will often return > 1, so we need to read in chunks to
         // stay caught up.
-        char [] readBufferUTF8 = null;
-        byte [] readBuffer = null;
-        if (utf8) {
+        if (utf8 && (readBufferUTF8 == null)) {
             readBufferUTF8 = new char[2048];
-        } else {
+        }
+        if (readBuffer == null) {
             readBuffer = new byte[2048];
         }
 
-        while (!done && !stopReaderThread) {
-            synchronized (userQueue) {
-                while (userQueue.size() > 0) {
-                    handleUserEvent(userQueue.remove(0));
-                }
+        synchronized (userQueue) {
+            while (userQueue.size() > 0) {
+                handleUserEvent(userQueue.remove(0));
             }
+        }
 
+        if (outputPaused) {
+            // Leave the data where it is: the remote side will block when
+            // the pipe is full.
+            flushDisplayChanged();
+            return 0;
+        }
+
+        try {
+            int n = inputStream.available();
+
+            // System.err.printf("available() %d\n", n); System.err.flush();
+            if (readBuffer.length < readBufferPending + n) {
+                // The buffer wasn't big enough, make it huger
+                int newSizeHalf = Math.max(readBuffer.length,
+                    readBufferPending + n);
+                readBuffer = Arrays.copyOf(readBuffer, newSizeHalf * 2);
+            }
+            if (n == 0) {
+                // Nothing more to read for now, let the UI catch up.
+                flushDisplayChanged();
+                return 0;
+            }
+
+            // Never ask for more than available(): TimeoutInputStream then
+            // hands the request straight to the underlying stream, which
+            // will not block.
+            int rc = -1;
             try {
-                int n = inputStream.available();
+                rc = inputStream.read(readBuffer, readBufferPending, n);
+            } catch (ReadTimeoutException e) {
+                rc = 0;
+            }
+            if ((rc > 0) && utf8) {
+                rc = decodeUTF8(rc);
+            }
 
-                // System.err.printf("available() %d\n", n); System.err.flush();
-                if (utf8) {
-                    if (readBufferUTF8.length < n) {
-                        // The buffer wasn't big enough, make it huger
-                        int newSizeHalf = Math.max(readBufferUTF8.length,
-                            n);
+            // System.err.printf("read() %d\n", rc); System.err.flush();
+            if (rc == -1) {
+                // This is EOF
+                stopReading();
+                return -1;
+            }
 
-                        readBufferUTF8 = new char[newSizeHalf * 2];
-                    }
-                } else {
-                    if (readBuffer.length < n) {
-                        // The buffer wasn't big enough, make it huger
-                        int newSizeHalf = Math.max(readBuffer.length, n);
-                        readBuffer = new byte[newSizeHalf * 2];
-                    }
-                }
-                if (n == 0) {
-                    try {
-                        Thread.sleep(10);
-                    } catch (InterruptedException e) {
-                        // SQUASH
-                    }
-                    continue;
-                }
+            // Don't step on UI events
+            long parseStart = System.nanoTime();
+            synchronized (this) {
+                if (utf8) {
+                    for (int i = 0; i < rc;) {
+                        int ch = Character.codePointAt(readBufferUTF8, i);
+                        i += Character.charCount(ch);
 
-                int rc = -1;
-                try {
-                    if (utf8) {
-                        rc = input.read(readBufferUTF8, 0,
-                            readBufferUTF8.length);
-                    } else {
-                        rc = inputStream.read(readBuffer, 0,
-                            readBuffer.length);
+                        // Special case for VT10x: 7-bit characters only.
+                        if ((type == DeviceType.VT100)
+                            || (type == DeviceType.VT102)
+                        ) {
+                            consume(ch & 0x7F);
+                        } else {
+                            consume(ch);
+                        }
                     }
-                } catch (ReadTimeoutException e) {
-                    rc = 0;
-                }
-
-                // System.err.printf("read() %d\n", rc); System.err.flush();
-                if (rc == -1) {
-                    // This is EOF
-                    done = true;
                 } else {
-                    // Don't step on UI events
-                    synchronized (this) {
-                        if (utf8) {
-                            for (int i = 0; i < rc;) {
-                                int ch = Character.codePointAt(readBufferUTF8,
-                                    i);
-                                i += Character.charCount(ch);
-
-                                // Special case for VT10x: 7-bit characters
-                                // only.
-                                if ((type == DeviceType.VT100)
-                                    || (type == DeviceType.VT102)
-                                ) {
-                                    consume(ch & 0x7F);
-                                } else {
-                                    consume(ch);
-                                }
-                            }
+                    for (int i = 0; i < rc; i++) {
+                        // Special case for VT10x: 7-bit characters only.
+                        if ((type == DeviceType.VT100)
+                            || (type == DeviceType.VT102)
+                        ) {
+                            consume(readBuffer[i] & 0x7F);
                         } else {
-                            for (int i = 0; i < rc; i++) {
-                                // Special case for VT10x: 7-bit characters
-                                // only.
-                                if ((type == DeviceType.VT100)
-                                    || (type == DeviceType.VT102)
-                                ) {
-                                    consume(readBuffer[i] & 0x7F);
-                                } else {
-                                    consume(readBuffer[i]);
-                                }
-                            }
+                            consume(readBuffer[i]);
                         }
                     }
-                    // Permit my enclosing UI to know that I updated.
-                    if (displayListener != null) {
-                        displayListener.displayChanged();
-                    }
-                }
-                // System.err.println("end while loop"); System.err.flush();
-            } catch (IOException e) {
-                done = true;
-
-                // This is an unusual case.  We want to see the stack trace,
-                // but it is related to the spawned process rather than the
-                // actual UI.  We will generate the stack trace, and consume
-                // it as though it was emitted by the shell.
-                CharArrayWriter writer= new CharArrayWriter();
-                // Send a ST and RIS to clear the emulator state.
-                try {
-                    writer.write("\033\\\033c");
-                    writer.write("\n-----------------------------------\n");
-                    e.printStackTrace(new PrintWriter(writer));
-                    writer.write("\n-----------------------------------\n");
-                } catch (IOException e2) {
-                    // SQUASH
                 }
-                char [] stackTrace = writer.toCharArray();
-                for (int i = 0; i < stackTrace.length; i++) {
-                    if (stackTrace[i] == '\n') {
-                        consume('\r');
-                    }
-                    consume(stackTrace[i]);
+            }
+            parseTime += System.nanoTime() - parseStart;
+
+            // Permit my enclosing UI to know that I updated.
+            throttleDisplayChanged();
+            return 1;
+        } catch (IOException e) {
+            // This is an unusual case.  We want to see the stack trace, but
+            // it is related to the spawned process rather than the actual
+            // UI.  We will generate the stack trace, and consume it as
+            // though it was emitted by the shell.
+            CharArrayWriter writer= new CharArrayWriter();
+            // Send a ST and RIS to clear the emulator state.
+            try {
+                writer.write("\033\\\033c");
+                writer.write("\n-----------------------------------\n");
+                e.printStackTrace(new PrintWriter(writer));
+                writer.write("\n-----------------------------------\n");
+            } catch (IOException e2) {
+                // SQUASH
+            }
+            char [] stackTrace = writer.toCharArray();
+            for (int i = 0; i < stackTrace.length; i++) {
+                if (stackTrace[i] == '\n') {
+                    consume('\r');
                 }
+                consume(stackTrace[i]);
             }
+            stopReading();
+            return -1;
+        }
+    }
 
-        } // while ((done == false) && (stopReaderThread == false))
+    /**
+     * Decode the bytes just read into readBuffer into readBufferUTF8.  An
+     * incomplete UTF-8 sequence at the end is moved to the start of
+     * readBuffer for the next read.
+     *
+     * @param count the number of bytes read after the pending ones
+     * @return the number of chars decoded into readBufferUTF8
+     */
+    private int decodeUTF8(final int count) {
+        int total = readBufferPending + count;
+        if (readBufferUTF8.length < total) {
+            readBufferUTF8 = new char[total * 2];
+        }
+        ByteBuffer in = ByteBuffer.wrap(readBuffer, 0, total);
+        CharBuffer out = CharBuffer.wrap(readBufferUTF8);
+        decoder.decode(in, out, false);
+        readBufferPending = in.remaining();
+        System.arraycopy(readBuffer, in.position(), readBuffer, 0,
+            readBufferPending);
+        return out.position();
+    }
 
-        // Let the rest of the world know that I am done.
+    /**
+     * Close the input streams once the reader is done, and let the rest of
+     * the world know about it.
+     */
+    private void stopReading() {
+        readerDone = true;
         stopReaderThread = true;
 
         try {
-            inputStream.cancelRead();
-            inputStream.close();
-            inputStream = null;
-        } catch (IOException e) {
-            // SQUASH
-        }
-        try {
-            input.close();
-            input = null;
+            if (inputStream != null) {
+                inputStream.cancelRead();
+                inputStream.close();
+                inputStream = null;
+            }
         } catch (IOException e) {
             // SQUASH
         }
@@ -851,14 +963,8 @@ public class ECMA48 implements Runnable {
         if (displayListener != null) {
             displayListener.displayChanged();
         }
-
-        // System.err.println("*** run() exiting..."); System.err.flush();
     }
 
-    // ------------------------------------------------------------------------
-    // ECMA48 -----------------------------------------------------------------
-    // ------------------------------------------------------------------------
-
     /**
      * Wait for a period of time to get output from the launched process.
      *
@@ -887,6 +993,39 @@ public class ECMA48 implements Runnable {
         }
     }
 
+    /**
+     * Let the enclosing UI know that the display has changed, but no more
+     * often than once every displayThrottleMillis.  Changes in between are
+     * remembered and reported by a later call to this or to
+     * flushDisplayChanged().
+     */
+    private void throttleDisplayChanged() {
+        if (displayListener == null) {
+            return;
+        }
+        long now = System.currentTimeMillis();
+        if (now - lastDisplayChangedTime >= displayThrottleMillis) {
+            lastDisplayChangedTime = now;
+            displayChangedPending = false;
+            displayListener.displayChanged();
+        } else {
+            displayChangedPending = true;
+        }
+    }
+
+    /**
+     * Let the enclosing UI know about a display change that was held back
+     * by throttleDisplayChanged().
+     */
+    private void flushDisplayChanged() {
+        if ((displayListener == null) || !displayChangedPending) {
+            return;
+        }
+        lastDisplayChangedTime = System.currentTimeMillis();
+        displayChangedPending = false;
+        displayListener.displayChanged();
+    }
+
     /**
      * Process keyboard and mouse events from the user.
      *
@@ -1162,13 +1301,18 @@ public class ECMA48 implements Runnable {
         }
         assert (visibleTop >= 0);
 
-        List<DisplayLine> displayLines = new ArrayList<DisplayLine>();
-        displayLines.addAll(scrollback);
-        displayLines.addAll(display);
-
+        // Only pull the visible rows from the scrollback, it re-wraps them
+        // on demand.
+        int scrollbackSize = scrollback.size();
         List<DisplayLine> visibleLines = new ArrayList<DisplayLine>();
         visibleLines.addAll(preceedingBlankLines);
-        visibleLines.addAll(displayLines.subList(visibleTop, visibleBottom));
+        for (int i = visibleTop; i < visibleBottom; i++) {
+            if (i < scrollbackSize) {
+                visibleLines.add(scrollback.get(i));
+            } else {
+                visibleLines.add(display.get(i - scrollbackSize));
+            }
+        }
 
         // Fill in the blank lines on bottom
         int bottomBlankLines = visibleHeight - visibleLines.size();
@@ -1180,6 +1324,89 @@ public class ECMA48 implements Runnable {
         return copyBuffer(visibleLines);
     }
 
+    /**
+     * Find the next or previous match of a pattern in the scrollback and
+     * display buffers.  Rows are numbered as in getVisibleDisplay(): the
+     * scrollback rows first, then the display rows.
+     *
+     * @param pattern the pattern to look for
+     * @param row the row to search from; -1 means before the first row, a
+     * value past the last display row means after it
+     * @param column the column to search from, exclusive
+     * @param forward if true, look for the first match after (row, column),
+     * else the last match before it
+     * @return the match, or null if there is none
+     */
+    public final Scrollback.Match find(final Pattern pattern,
+        final int row, final int column, final boolean forward) {
+
+        return find(pattern, row, column, forward, Integer.MAX_VALUE);
+    }
+
+    /**
+     * Find the next or previous match of a pattern in the scrollback and
+     * display buffers, looking at no more than a number of scrollback
+     * lines.  Rows are numbered as in getVisibleDisplay(): the scrollback
+     * rows first, then the display rows.
+     *
+     * @param pattern the pattern to look for
+     * @param row the row to search from; -1 means before the first row, a
+     * value past the last display row means after it
+     * @param column the column to search from, exclusive
+     * @param forward if true, look for the first match after (row, column),
+     * else the last match before it
+     * @param maxLines the maximum number of scrollback logical lines to
+     * look at
+     * @return the match, a match with a length of 0 telling the row and
+     * column to continue from if maxLines were looked at without a match,
+     * or null if there is no match
+     */
+    public final synchronized Scrollback.Match find(final Pattern pattern,
+        final int row, final int column, final boolean forward,
+        final int maxLines) {
+
+        int scrollbackSize = scrollback.size();
+        Scrollback.Match match = null;
+        if (forward) {
+            if (row < scrollbackSize) {
+                match = scrollback.find(pattern, row, column, true,
+                    maxLines);
+                if (match != null) {
+                    return match;
+                }
+                return scrollback.stamp(Scrollback.find(display,
+                        scrollbackSize, width, pattern, -1, -1, true));
+            }
+            return scrollback.stamp(Scrollback.find(display, scrollbackSize,
+                    width, pattern, row - scrollbackSize, column, true));
+        }
+
+        if (row >= scrollbackSize) {
+            match = Scrollback.find(display, scrollbackSize, width, pattern,
+                row - scrollbackSize, column, false);
+            if (match != null) {
+                return scrollback.stamp(match);
+            }
+            return scrollback.find(pattern, scrollbackSize, 0, false,
+                maxLines);
+        }
+        return scrollback.find(pattern, row, column, false, maxLines);
+    }
+
+    /**
+     * Get a match returned by find() with its row counted as the rows are
+     * now, after older rows were trimmed from the scrollback.
+     *
+     * @param match the match
+     * @return the match, or null if its rows were trimmed or the
+     * scrollback was re-wrapped or cleared since it was found
+     */
+    public final synchronized Scrollback.Match updateMatch(
+        final Scrollback.Match match) {
+
+        return scrollback.update(match);
+    }
+
     /**
      * Copy a display buffer.
      *
@@ -1211,6 +1438,7 @@ public class ECMA48 implements Runnable {
     public final synchronized void setWidth(final int width) {
         this.width = width;
         rightMargin = width - 1;
+        scrollback.setWidth(width);
         if (currentState.cursorX >= width) {
             currentState.cursorX = width - 1;
         }
@@ -1278,6 +1506,101 @@ public class ECMA48 implements Runnable {
         this.scrollbackMax = scrollbackMax;
     }
 
+    /**
+     * Get the number of bytes (or characters when type == XTERM) read from
+     * the remote side so far.
+     *
+     * @return the number of bytes or characters
+     */
+    public final long getReadCount() {
+        return readCount;
+    }
+
+    /**
+     * Get the total time spent parsing the data read from the remote side.
+     *
+     * @return the time in nanoseconds
+     */
+    public final long getParseTime() {
+        return parseTime;
+    }
+
+    /**
+     * Get the minimum number of millis between two display change
+     * notifications.
+     *
+     * @return the number of millis, or 0 if every read is reported
+     */
+    public final int getDisplayThrottle() {
+        return displayThrottleMillis;
+    }
+
+    /**
+     * Set the minimum number of millis between two display change
+     * notifications.  The remote side is still read and parsed at full
+     * speed, only the calls to DisplayListener.displayChanged() are
+     * coalesced.
+     *
+     * @param millis the number of millis, or 0 to report every read
+     */
+    public final void setDisplayThrottle(final int millis) {
+        if (millis < 0) {
+            throw new IllegalArgumentException("throttle must be >= 0");
+        }
+        displayThrottleMillis = millis;
+    }
+
+    /**
+     * See if reading from the remote side is paused.
+     *
+     * @return if true, the reader thread is not consuming any data
+     */
+    public final boolean isOutputPaused() {
+        return outputPaused;
+    }
+
+    /**
+     * Pause or resume reading from the remote side.  While paused, keyboard
+     * and mouse events are still sent to the remote side, but its output is
+     * left in the pipe, which will eventually block it.
+     *
+     * @param outputPaused if true, stop reading from the remote side
+     */
+    public final void setOutputPaused(final boolean outputPaused) {
+        this.outputPaused = outputPaused;
+    }
+
+    /**
+     * Get the maximum number of scrollback lines kept in memory.
+     *
+     * @return the number of lines, or 0 if the whole scrollback buffer is
+     * kept in memory
+     */
+    public final int getScrollbackMemoryMax() {
+        return scrollback.getMemoryMax();
+    }
+
+    /**
+     * Set the maximum number of scrollback lines kept in memory.  Older
+     * lines are written to temporary files, and read back when they are
+     * displayed or searched.  Together with a large setScrollbackMax(), this
+     * permits a deep history without a large heap.
+     *
+     * @param memoryMax the number of lines, or 0 to keep the whole
+     * scrollback buffer in memory
+     */
+    public final synchronized void setScrollbackMemoryMax(final int memoryMax) {
+        scrollback.setMemoryMax(memoryMax);
+    }
+
+    /**
+     * Empty the scrollback buffer, deleting the temporary files holding its
+     * older lines.
+     */
+    public final synchronized void clearScrollback() {
+        scrollback.clear();
+    }
+
     /**
      * Get visible cursor flag.
      *
@@ -1680,6 +2003,7 @@ public class ECMA48 implements Runnable {
         scrollRegionTop         = 0;
         scrollRegionBottom      = height - 1;
         rightMargin             = width - 1;
+        scrollback.setWidth(width);
         newLineMode             = false;
         arrowKeyMode            = ArrowKeyMode.ANSI;
         keypadMode              = KeypadMode.Numeric;
@@ -1719,9 +2043,9 @@ public class ECMA48 implements Runnable {
      * than three screenfuls in.
      */
     private void appendScrollbackLine(DisplayLine line) {
-        scrollback.add(line);
+        scrollback.add(line, rightMargin + 1);
         if (scrollback.size() > height * 3) {
-            scrollback.get(scrollback.size() - (height * 3)).clearImages();
+            scrollback.clearImages(scrollback.size() - (height * 3));
         }
     }
 
@@ -1732,10 +2056,7 @@ public class ECMA48 implements Runnable {
     private void newDisplayLine() {
         // Scroll the top line off into the scrollback buffer
         appendScrollbackLine(display.get(0));
-        while (scrollback.size() > scrollbackMax) {
-            scrollback.remove(0);
-            scrollback.trimToSize();
-        }
+        scrollback.trim(scrollbackMax);
         display.remove(0);
         display.trimToSize();
         DisplayLine line = new DisplayLine(currentState.attr);
@@ -1747,6 +2068,8 @@ public class ECMA48 implements Runnable {
      * Wraps the current line.
      */
     private void wrapCurrentLine() {
+        // Remember the soft wrap so that scrollback can re-wrap this line
+        display.get(currentState.cursorY).setWrapped(true);
         if (currentState.cursorY == height - 1) {
             newDisplayLine();
         }
@@ -4942,6 +5265,10 @@ public class ECMA48 implements Runnable {
         if (start < 0) {
             start = 0;
         }
+        if (end == width - 1) {
+            // The text no longer reaches the right margin
+            display.get(currentState.cursorY).setWrapped(false);
+        }
 
         for (int i = start; i <= end; i++) {
             DisplayLine line = display.get(currentState.cursorY);
@@ -0,0 +1,264 @@
+/*
+ * Jexer - Java Text User Interface
+ *
+ * The MIT License (MIT)
+ *
+ * Copyright (C) 2019 Kevin Lamonte
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a
+ * copy of this software and associated documentation files (the "Software"),
+ * to deal in the Software without restriction, including without limitation
+ * the rights to use, copy, modify, merge, publish, distribute, sublicense,
+ * and/or sell copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL
+ * THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ * DEALINGS IN THE SOFTWARE.
+ *
+ * @author Kevin Lamonte [kevin.lamonte@gmail.com]
+ * @version 1
+ */
+package jexer.tterminal;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * ReaderPool reads the remote side of many ECMA48 emulators from a small
+ * number of shared threads, instead of one thread per emulator.  Each pool
+ * thread polls its emulators in turn, reading at most one buffer from each
+ * before moving to the next one, and sleeps only when none of them had
+ * anything to read.
+ *
+ * <p>
+ * The pool is enabled by setting the jexer.TTerminal.readerThreads system
+ * property to the number of threads to use.  The default (0) keeps one
+ * dedicated reader thread per emulator.
+ */
+public final class ReaderPool {
+
+    // ------------------------------------------------------------------------
+    // Variables --------------------------------------------------------------
+    // ------------------------------------------------------------------------
+
+    /**
+     * The singleton instance.
+     */
+    private static ReaderPool instance = null;
+
+    /**
+     * The pool threads.
+     */
+    private final List<Worker> workers = new ArrayList<Worker>();
+
+    /**
+     * The maximum number of pool threads.
+     */
+    private final int threadCount;
+
+    /**
+     * One pool thread and the emulators it reads.
+     */
+    private class Worker extends Thread {
+
+        /**
+         * The emulators this thread reads.
+         */
+        private final List<ECMA48> emulators = new ArrayList<ECMA48>();
+
+        /**
+         * Public constructor.
+         *
+         * @param number the thread number, used in its name
+         */
+        public Worker(final int number) {
+            super("ECMA48 reader " + number);
+            setDaemon(true);
+        }
+
+        /**
+         * Get the number of emulators this thread reads.
+         *
+         * @return the number of emulators
+         */
+        public int size() {
+            synchronized (emulators) {
+                return emulators.size();
+            }
+        }
+
+        /**
+         * Add an emulator to this thread.
+         *
+         * @param emulator the emulator to read
+         */
+        public void add(final ECMA48 emulator) {
+            synchronized (emulators) {
+                emulators.add(emulator);
+                emulators.notify();
+            }
+        }
+
+        /**
+         * Poll the emulators until the end of time.
+         */
+        @Override
+        public void run() {
+            List<ECMA48> polled = new ArrayList<ECMA48>();
+            while (true) {
+                synchronized (emulators) {
+                    while (emulators.size() == 0) {
+                        try {
+                            emulators.wait();
+                        } catch (InterruptedException e) {
+                            // SQUASH
+                        }
+                    }
+                    polled.clear();
+                    polled.addAll(emulators);
+                }
+
+                boolean busy = false;
+                for (ECMA48 emulator: polled) {
+                    int rc;
+                    try {
+                        rc = emulator.pollRemote();
+                    } catch (RuntimeException e) {
+                        // Do not let one broken emulator take down the
+                        // others on this thread.
+                        e.printStackTrace();
+                        rc = -1;
+                    }
+                    if (rc > 0) {
+                        busy = true;
+                    } else if (rc < 0) {
+                        synchronized (emulators) {
+                            emulators.remove(emulator);
+                        }
+                    }
+                }
+
+                if (!busy) {
+                    try {
+                        Thread.sleep(10);
+                    } catch (InterruptedException e) {
+                        // SQUASH
+                    }
+                }
+            }
+        }
+    }
+
+    // ------------------------------------------------------------------------
+    // Constructors -----------------------------------------------------------
+    // ------------------------------------------------------------------------
+
+    /**
+     * Private constructor, use getInstance().
+     *
+     * @param threadCount the maximum number of pool threads
+     */
+    private ReaderPool(final int threadCount) {
+        this.threadCount = threadCount;
+    }
+
+    // ------------------------------------------------------------------------
+    // ReaderPool -------------------------------------------------------------
+    // ------------------------------------------------------------------------
+
+    /**
+     * Get the number of pool threads requested by the
+     * jexer.TTerminal.readerThreads system property.
+     *
+     * @return the number of threads, or 0 if the pool is disabled
+     */
+    private static int getRequestedThreadCount() {
+        try {
+            int count = Integer.parseInt(System.getProperty(
+                "jexer.TTerminal.readerThreads", "0"));
+            if (count > 0) {
+                return count;
+            }
+        } catch (NumberFormatException e) {
+            // SQUASH
+        }
+        return 0;
+    }
+
+    /**
+     * See if new emulators should be read by the pool rather than by their
+     * own thread.
+     *
+     * @return true if the pool is enabled
+     */
+    public static boolean isEnabled() {
+        return (getRequestedThreadCount() > 0);
+    }
+
+    /**
+     * Get the shared pool.
+     *
+     * @return the pool
+     */
+    public static synchronized ReaderPool getInstance() {
+        if (instance == null) {
+            instance = new ReaderPool(Math.max(1, getRequestedThreadCount()));
+        }
+        return instance;
+    }
+
+    /**
+     * Start reading an emulator's remote side.  The emulator is given to
+     * the least busy thread, and dropped from it once its remote side is
+     * closed.
+     *
+     * @param emulator the emulator to read
+     */
+    public synchronized void add(final ECMA48 emulator) {
+        Worker target = null;
+        for (Worker worker: workers) {
+            if ((target == null) || (worker.size() < target.size())) {
+                target = worker;
+            }
+        }
+        if ((target == null)
+            || ((target.size() > 0) && (workers.size() < threadCount))
+        ) {
+            target = new Worker(workers.size());
+            workers.add(target);
+            target.start();
+        }
+        target.add(emulator);
+    }
+
+    /**
+     * Get the number of pool threads currently running.
+     *
+     * @return the number of threads
+     */
+    public synchronized int getThreadCount() {
+        return workers.size();
+    }
+
+    /**
+     * Get the number of emulators currently read by the pool.
+     *
+     * @return the number of emulators
+     */
+    public synchronized int getEmulatorCount() {
+        int count = 0;
+        for (Worker worker: workers) {
+            count += worker.size();
+        }
+        return count;
+    }
+
+}
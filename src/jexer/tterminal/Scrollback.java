@@ -0,0 +1,1131 @@
+/*
+ * Jexer - Java Text User Interface
+ *
+ * The MIT License (MIT)
+ *
+ * Copyright (C) 2019 Kevin Lamonte
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a
+ * copy of this software and associated documentation files (the "Software"),
+ * to deal in the Software without restriction, including without limitation
+ * the rights to use, copy, modify, merge, publish, distribute, sublicense,
+ * and/or sell copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL
+ * THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ * DEALINGS IN THE SOFTWARE.
+ *
+ * @author Kevin Lamonte [kevin.lamonte@gmail.com]
+ * @version 1
+ */
+package jexer.tterminal;
+
+import java.io.IOException;
+import java.util.AbstractList;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import jexer.bits.Cell;
+
+/**
+ * Scrollback holds the lines that scrolled off the top of the display.
+ *
+ * <p>
+ * Lines are stored as logical lines: the rows that were joined by a soft
+ * wrap (DisplayLine.isWrapped()) are kept together, along with the number
+ * of columns they were wrapped at.  As a List, Scrollback exposes the rows
+ * of these logical lines wrapped at the current width.  When the width
+ * changes, only the row counts are recomputed; the rows themselves are
+ * re-wrapped lazily, when get() asks for them.
+ *
+ * <p>
+ * When a memory window is set, the oldest logical lines past that window
+ * are written to a ScrollbackFile and dropped from the heap.  They are
+ * paged back in when a row or a search needs them, and dropped again once
+ * enough other lines were paged in.
+ *
+ * <p>
+ * Each logical line also caches its text the first time it is searched,
+ * so find() only has to build the text of lines that were added since the
+ * previous search, and stops at the first matching line.  The text is kept
+ * when the rows are dropped from the heap, so that searching spilled lines
+ * again does not read them back from file.
+ */
+public class Scrollback extends AbstractList<DisplayLine> {
+
+    // ------------------------------------------------------------------------
+    // Constants --------------------------------------------------------------
+    // ------------------------------------------------------------------------
+
+    /**
+     * Maximum number of rows in one logical line.  A longer run of wrapped
+     * rows is split into several logical lines, so that it can still be
+     * trimmed from the scrollback.
+     */
+    private static final int MAX_LOGICAL_ROWS = 256;
+
+    /**
+     * Maximum number of logical lines paged in from disk at a time.
+     */
+    private static final int MAX_PAGED_IN = 256;
+
+    // ------------------------------------------------------------------------
+    // Variables --------------------------------------------------------------
+    // ------------------------------------------------------------------------
+
+    /**
+     * The logical lines, as a ring buffer.
+     */
+    private LogicalLine [] lines = new LogicalLine[64];
+
+    /**
+     * Index in lines of the oldest logical line.
+     */
+    private int head = 0;
+
+    /**
+     * Number of logical lines.
+     */
+    private int count = 0;
+
+    /**
+     * The number of columns rows are exposed at.
+     */
+    private int width = 80;
+
+    /**
+     * If true, the row numbers of the logical lines were computed for
+     * another width and must be recomputed.
+     */
+    private boolean layoutDirty = false;
+
+    /**
+     * The row number of the oldest row, counted from the first line ever
+     * added.  Only used when there are no lines, otherwise it is the
+     * firstRow of the oldest line.
+     */
+    private long baseRow = 0;
+
+    /**
+     * Incremented each time the row numbers change for another reason
+     * than trimming old rows: a width change or clear().
+     */
+    private int generation = 0;
+
+    /**
+     * The maximum number of rows to keep on the heap, or 0 to keep all of
+     * them.
+     */
+    private int memoryMax = 0;
+
+    /**
+     * The number of rows (as written) of the lines kept on the heap.
+     */
+    private int memoryRows = 0;
+
+    /**
+     * The number of logical lines, starting from the oldest one, that were
+     * written to file.
+     */
+    private int spilled = 0;
+
+    /**
+     * The file spilled lines are written to, or null.
+     */
+    private ScrollbackFile file = null;
+
+    /**
+     * The spilled lines currently paged in, oldest first.
+     */
+    private ArrayDeque<LogicalLine> pagedIn = new ArrayDeque<LogicalLine>();
+
+    /**
+     * One logical line, made of one or more rows joined by a soft wrap.
+     */
+    private static class LogicalLine {
+
+        /**
+         * The scrollback holding this line, used to page the rows back in
+         * from disk.
+         */
+        private Scrollback scrollback = null;
+
+        /**
+         * The rows as they were written to the display, or null if they
+         * are only on disk.
+         */
+        private List<DisplayLine> rows = new ArrayList<DisplayLine>(1);
+
+        /**
+         * The number of rows as they were written to the display.
+         */
+        private int rowCount = 0;
+
+        /**
+         * If false, some rows are double-width or double-height.
+         */
+        private boolean reflowable = true;
+
+        /**
+         * The ScrollbackFile handle of the rows, or -1 if they are not on
+         * disk.
+         */
+        private long handle = -1;
+
+        /**
+         * The number of columns the rows were wrapped at.
+         */
+        private int columns;
+
+        /**
+         * The number of columns of text, or -1 if not computed yet.
+         */
+        private int textLength = -1;
+
+        /**
+         * The rows re-wrapped to reflowWidth, or null.
+         */
+        private DisplayLine [] reflowed = null;
+
+        /**
+         * The width the reflowed rows were wrapped at.
+         */
+        private int reflowWidth = -1;
+
+        /**
+         * The row number of the first row of this line, counted from the
+         * first line ever added.
+         */
+        private long firstRow = 0;
+
+        /**
+         * The text of this line, or null if not computed yet.
+         */
+        private String text = null;
+
+        /**
+         * The cell index of each char of text, or null if each char is one
+         * cell.
+         */
+        private int [] textCells = null;
+
+        /**
+         * Public constructor.
+         *
+         * @param columns the number of columns the rows are wrapped at
+         */
+        public LogicalLine(final int columns) {
+            this.columns = columns;
+        }
+
+        /**
+         * Add a row at the end of this line.
+         *
+         * @param row the row
+         */
+        public void add(final DisplayLine row) {
+            rows.add(row);
+            rowCount++;
+            if (row.isDoubleWidth() || (row.getDoubleHeight() != 0)) {
+                reflowable = false;
+            }
+            textLength = -1;
+            reflowed = null;
+            text = null;
+            textCells = null;
+        }
+
+        /**
+         * See if the text continues on a row that has not been added yet.
+         *
+         * @return true if the last row is soft-wrapped
+         */
+        public boolean isOpen() {
+            return getRows().get(rowCount - 1).isWrapped()
+                && (rowCount < MAX_LOGICAL_ROWS);
+        }
+
+        /**
+         * See if the rows can be re-wrapped.  Double-width and
+         * double-height rows are always shown as they are.
+         *
+         * @return true if the rows can be re-wrapped
+         */
+        public boolean isReflowable() {
+            return reflowable;
+        }
+
+        /**
+         * Get the rows as they were written to the display, paging them in
+         * from disk if needed.
+         *
+         * @return the rows
+         */
+        private List<DisplayLine> getRows() {
+            if (rows == null) {
+                scrollback.pageIn(this);
+            }
+            return rows;
+        }
+
+        /**
+         * Get the number of columns of text, counting the wrapped rows as
+         * full.
+         *
+         * @return the text length
+         */
+        public int getTextLength() {
+            if (textLength < 0) {
+                DisplayLine last = getRows().get(rowCount - 1);
+                textLength = ((rowCount - 1) * columns)
+                    + last.getTextLength();
+            }
+            return textLength;
+        }
+
+        /**
+         * Get the number of rows this line needs at a given width.
+         *
+         * @param width the number of columns
+         * @return the number of rows
+         */
+        public int getRowCount(final int width) {
+            if ((width == columns) || !isReflowable()) {
+                return rowCount;
+            }
+            int length = getTextLength();
+            if ((rowCount == 1) && (length <= width)) {
+                return 1;
+            }
+            return Math.max(1, (length + width - 1) / width);
+        }
+
+        /**
+         * Get one of the rows of this line wrapped at a given width.
+         *
+         * @param width the number of columns
+         * @param idx the row index, from 0 to getRowCount(width) - 1
+         * @return the row
+         */
+        public DisplayLine getRow(final int width, final int idx) {
+            if (getRowWidth(width) == columns) {
+                return getRows().get(idx);
+            }
+            if ((reflowed == null) || (reflowWidth != width)) {
+                reflow(width);
+            }
+            return reflowed[idx];
+        }
+
+        /**
+         * Get the number of columns the rows returned by getRow() are
+         * wrapped at.
+         *
+         * @param width the number of columns requested
+         * @return width, or columns if the rows as written can be used
+         */
+        public int getRowWidth(final int width) {
+            if (getRowCount(width) == rowCount) {
+                if ((width == columns) || !isReflowable()
+                    || (rowCount == 1)
+                ) {
+                    return columns;
+                }
+            }
+            return width;
+        }
+
+        /**
+         * Get the text of this line.  The right halves of wide characters
+         * are skipped.
+         *
+         * @return the text
+         */
+        public String getText() {
+            if (text != null) {
+                return text;
+            }
+            int length = getTextLength();
+            StringBuilder sb = new StringBuilder(length);
+            int [] cells = new int[length * 2 + 1];
+            boolean identity = true;
+            List<DisplayLine> lineRows = getRows();
+            for (int pos = 0; pos < length; pos++) {
+                // The last row can hold more than columns cells if it was
+                // written before a resize.
+                int rowIdx = Math.min(pos / columns, rowCount - 1);
+                Cell cell = lineRows.get(rowIdx).charAt(pos
+                    - (rowIdx * columns));
+                if (cell.getWidth() == Cell.Width.RIGHT) {
+                    identity = false;
+                    continue;
+                }
+                int ch = cell.getChar();
+                if (Character.charCount(ch) == 2) {
+                    identity = false;
+                    cells[sb.length() + 1] = pos;
+                }
+                cells[sb.length()] = pos;
+                sb.appendCodePoint(ch);
+            }
+            cells[sb.length()] = length;
+            text = sb.toString();
+            if (!identity) {
+                textCells = cells;
+            }
+            return text;
+        }
+
+        /**
+         * Convert an index in the text to a cell index.
+         *
+         * @param idx the index in the text returned by getText()
+         * @return the index of the cell, counting the cells of all rows
+         */
+        private int textToCell(final int idx) {
+            if (textCells == null) {
+                return idx;
+            }
+            return textCells[idx];
+        }
+
+        /**
+         * Find a match in this line.
+         *
+         * @param matcher the matcher to use
+         * @param startCell the cell index to search from, exclusive
+         * @param forward if true, return the first match after startCell,
+         * else the last match before startCell
+         * @return the start and end cell indexes of the match, or null
+         */
+        public int [] find(final Matcher matcher, final int startCell,
+            final boolean forward) {
+
+            matcher.reset(getText());
+            int [] found = null;
+            while (matcher.find()) {
+                if (matcher.end() == matcher.start()) {
+                    // Empty matches cannot be shown
+                    continue;
+                }
+                int start = textToCell(matcher.start());
+                if (forward && (start > startCell)) {
+                    return new int [] { start, textToCell(matcher.end()) };
+                }
+                if (!forward) {
+                    if (start >= startCell) {
+                        break;
+                    }
+                    found = new int [] { start, textToCell(matcher.end()) };
+                }
+            }
+            return found;
+        }
+
+        /**
+         * Re-wrap the rows to a new width.
+         *
+         * @param width the number of columns
+         */
+        private void reflow(final int width) {
+            List<DisplayLine> lineRows = getRows();
+            DisplayLine first = lineRows.get(0);
+            DisplayLine last = lineRows.get(rowCount - 1);
+            int length = getTextLength();
+
+            reflowed = new DisplayLine[getRowCount(width)];
+            reflowWidth = width;
+            for (int i = 0; i < reflowed.length; i++) {
+                // The last cell of a row is never written to, it holds the
+                // attributes the row was created with.
+                reflowed[i] = new DisplayLine(last.charAt(last.length() - 1));
+                reflowed[i].setReverseColor(first.isReverseColor());
+                reflowed[i].setWrapped(true);
+            }
+            reflowed[reflowed.length - 1].setWrapped(last.isWrapped());
+
+            int pos = 0;
+            for (int i = 0; i < rowCount; i++) {
+                DisplayLine row = lineRows.get(i);
+                int n = columns;
+                if (i == rowCount - 1) {
+                    n = length - (i * columns);
+                }
+                for (int j = 0; j < n; j++) {
+                    reflowed[pos / width].replace(pos % width, row.charAt(j));
+                    pos++;
+                }
+            }
+        }
+
+        /**
+         * Clear image data from all rows.
+         */
+        public void clearImages() {
+            if (rows != null) {
+                for (DisplayLine row: rows) {
+                    row.clearImages();
+                }
+            }
+            if (reflowed != null) {
+                for (DisplayLine row: reflowed) {
+                    row.clearImages();
+                }
+            }
+        }
+
+    }
+
+    /**
+     * A search match, in rows and columns at the current width.
+     *
+     * <p>
+     * A match with a length of 0 is not a match: it is returned by a
+     * search limited to a number of lines, and tells where to continue
+     * the search from.
+     */
+    public static class Match {
+
+        /**
+         * The row of the first character of the match.
+         */
+        private final int row;
+
+        /**
+         * The column of the first character of the match.
+         */
+        private final int column;
+
+        /**
+         * The number of cells of the match.  A match can extend over the
+         * following rows.
+         */
+        private final int length;
+
+        /**
+         * The Scrollback generation the row was counted in, or -1.
+         */
+        private final int generation;
+
+        /**
+         * The Scrollback base row the row was counted from.
+         */
+        private final long baseRow;
+
+        /**
+         * Package private constructor.
+         *
+         * @param row the row of the first character of the match
+         * @param column the column of the first character of the match
+         * @param length the number of cells of the match
+         */
+        Match(final int row, final int column, final int length) {
+            this(row, column, length, -1, 0);
+        }
+
+        /**
+         * Private constructor.
+         *
+         * @param row the row of the first character of the match
+         * @param column the column of the first character of the match
+         * @param length the number of cells of the match
+         * @param generation the Scrollback generation the row was counted
+         * in
+         * @param baseRow the Scrollback base row the row was counted from
+         */
+        private Match(final int row, final int column, final int length,
+            final int generation, final long baseRow) {
+
+            this.row = row;
+            this.column = column;
+            this.length = length;
+            this.generation = generation;
+            this.baseRow = baseRow;
+        }
+
+        /**
+         * Get the row of the first character of the match.
+         *
+         * @return the row
+         */
+        public int getRow() {
+            return row;
+        }
+
+        /**
+         * Get the column of the first character of the match.
+         *
+         * @return the column
+         */
+        public int getColumn() {
+            return column;
+        }
+
+        /**
+         * Get the number of cells of the match.  A match can extend over
+         * the following rows.
+         *
+         * @return the number of cells
+         */
+        public int getLength() {
+            return length;
+        }
+
+        /**
+         * See if this is an actual match, rather than the place where a
+         * limited search stopped.
+         *
+         * @return true if the match has a length
+         */
+        public boolean isFound() {
+            return (length > 0);
+        }
+
+        /**
+         * Make human-readable description of this Match.
+         *
+         * @return displayable String
+         */
+        @Override
+        public String toString() {
+            return String.format("Match: row %d column %d length %d", row,
+                column, length);
+        }
+
+    }
+
+    // ------------------------------------------------------------------------
+    // Constructors -----------------------------------------------------------
+    // ------------------------------------------------------------------------
+
+    /**
+     * Public constructor.
+     */
+    public Scrollback() {
+        // NOP
+    }
+
+    // ------------------------------------------------------------------------
+    // AbstractList -----------------------------------------------------------
+    // ------------------------------------------------------------------------
+
+    /**
+     * Get the number of rows at the current width.
+     *
+     * @return the number of rows
+     */
+    @Override
+    public int size() {
+        if (count == 0) {
+            return 0;
+        }
+        layout();
+        LogicalLine last = getLine(count - 1);
+        return (int) (last.firstRow + last.getRowCount(width)
+            - getLine(0).firstRow);
+    }
+
+    /**
+     * Get a row at the current width.  Rows of lines written at another
+     * width are re-wrapped on the first call.
+     *
+     * @param idx the row index, 0 being the oldest row
+     * @return the row
+     */
+    @Override
+    public DisplayLine get(final int idx) {
+        if ((idx < 0) || (idx >= size())) {
+            throw new IndexOutOfBoundsException("Index: " + idx + ", Size: "
+                + size());
+        }
+        int lineIdx = findLine(idx);
+        LogicalLine line = getLine(lineIdx);
+        return line.getRow(width, (int) (getLine(0).firstRow + idx
+                - line.firstRow));
+    }
+
+    /**
+     * Append a row wrapped at the current width.
+     *
+     * @param row the row
+     * @return true
+     */
+    @Override
+    public boolean add(final DisplayLine row) {
+        add(row, width);
+        return true;
+    }
+
+    /**
+     * Remove all rows.
+     */
+    @Override
+    public void clear() {
+        for (int i = 0; i < lines.length; i++) {
+            lines[i] = null;
+        }
+        head = 0;
+        count = 0;
+        memoryRows = 0;
+        spilled = 0;
+        pagedIn.clear();
+        if (file != null) {
+            file.close();
+            file = null;
+        }
+        generation++;
+        modCount++;
+    }
+
+    // ------------------------------------------------------------------------
+    // Scrollback -------------------------------------------------------------
+    // ------------------------------------------------------------------------
+
+    /**
+     * Append a row.  If the previous row was soft-wrapped, this row joins
+     * its logical line.
+     *
+     * @param row the row
+     * @param columns the number of columns the row was wrapped at
+     */
+    public void add(final DisplayLine row, final int columns) {
+        layout();
+        if (count > 0) {
+            LogicalLine last = getLine(count - 1);
+            if (last.isOpen() && (last.columns == columns)) {
+                last.add(row);
+                memoryRows++;
+                modCount++;
+                return;
+            }
+        }
+
+        LogicalLine line = new LogicalLine(columns);
+        line.scrollback = this;
+        line.add(row);
+        memoryRows++;
+        if (count > 0) {
+            LogicalLine last = getLine(count - 1);
+            line.firstRow = last.firstRow + last.getRowCount(width);
+        } else {
+            line.firstRow = baseRow;
+        }
+        if (count == lines.length) {
+            LogicalLine [] newLines = new LogicalLine[lines.length * 2];
+            for (int i = 0; i < count; i++) {
+                newLines[i] = getLine(i);
+            }
+            lines = newLines;
+            head = 0;
+        }
+        lines[(head + count) % lines.length] = line;
+        count++;
+        modCount++;
+
+        // Only complete lines are spilled, never the newest one.
+        while ((memoryMax > 0) && (memoryRows > memoryMax)
+            && (spilled < count - 1)
+        ) {
+            if (!spill(getLine(spilled))) {
+                break;
+            }
+            spilled++;
+        }
+    }
+
+    /**
+     * Remove the oldest logical lines until there are no more than a given
+     * number of rows.
+     *
+     * @param maxRows the maximum number of rows to keep
+     */
+    public void trim(final int maxRows) {
+        while ((count > 0) && (size() > maxRows)) {
+            LogicalLine line = lines[head];
+            baseRow = line.firstRow + line.getRowCount(width);
+            if (line.handle >= 0) {
+                file.release(line.handle);
+                pagedIn.remove(line);
+                line.handle = -1;
+                spilled--;
+            } else {
+                memoryRows -= line.rowCount;
+            }
+            lines[head] = null;
+            head = (head + 1) % lines.length;
+            count--;
+            modCount++;
+        }
+    }
+
+    /**
+     * Clear image data from a row and the other rows of its logical line.
+     *
+     * @param idx the row index, 0 being the oldest row
+     */
+    public void clearImages(final int idx) {
+        if ((idx < 0) || (idx >= size())) {
+            return;
+        }
+        getLine(findLine(idx)).clearImages();
+    }
+
+    /**
+     * Get the number of columns rows are exposed at.
+     *
+     * @return the number of columns
+     */
+    public int getWidth() {
+        return width;
+    }
+
+    /**
+     * Set the number of columns rows are exposed at.  This does not re-wrap
+     * anything yet.
+     *
+     * @param width the number of columns
+     */
+    public void setWidth(final int width) {
+        if (width < 1) {
+            throw new IllegalArgumentException("width must be > 0");
+        }
+        if (this.width != width) {
+            this.width = width;
+            layoutDirty = true;
+            generation++;
+            modCount++;
+        }
+    }
+
+    /**
+     * Get a match with its row counted from the current oldest row.
+     *
+     * @param match a match returned by find(), or by the static find() for
+     * rows following this scrollback
+     * @return the match, or null if its rows were trimmed or the rows were
+     * re-wrapped since it was found
+     */
+    public Match update(final Match match) {
+        if (match.generation != generation) {
+            return null;
+        }
+        long row = match.baseRow + match.row - getBaseRow();
+        if ((row < 0) || (row > Integer.MAX_VALUE)) {
+            return null;
+        }
+        return new Match((int) row, match.column, match.length, generation,
+            getBaseRow());
+    }
+
+    /**
+     * Tag a match of rows following this scrollback, as returned by the
+     * static find(), so that update() can follow it.
+     *
+     * @param match the match, or null
+     * @return the tagged match, or null
+     */
+    public Match stamp(final Match match) {
+        if (match == null) {
+            return null;
+        }
+        return new Match(match.row, match.column, match.length, generation,
+            getBaseRow());
+    }
+
+    /**
+     * Get the row number of the oldest row, counted from the first line
+     * ever added.
+     *
+     * @return the row number
+     */
+    private long getBaseRow() {
+        if (count == 0) {
+            return baseRow;
+        }
+        layout();
+        return getLine(0).firstRow;
+    }
+
+    /**
+     * Find the next or previous match of a pattern.  Each logical line is
+     * matched as a whole, so a match can span soft-wrapped rows.
+     *
+     * @param pattern the pattern to look for
+     * @param row the row to search from; -1 means before the first row,
+     * size() means after the last row
+     * @param column the column to search from, exclusive
+     * @param forward if true, look for the first match after (row, column),
+     * else the last match before it
+     * @return the match, or null if there is none
+     */
+    public Match find(final Pattern pattern, final int row, final int column,
+        final boolean forward) {
+
+        return find(pattern, row, column, forward, Integer.MAX_VALUE);
+    }
+
+    /**
+     * Find the next or previous match of a pattern, looking at no more
+     * than a number of logical lines.  This lets a caller search a long
+     * scrollback a piece at a time without holding its lock throughout.
+     *
+     * @param pattern the pattern to look for
+     * @param row the row to search from; -1 means before the first row,
+     * size() means after the last row
+     * @param column the column to search from, exclusive
+     * @param forward if true, look for the first match after (row, column),
+     * else the last match before it
+     * @param maxLines the maximum number of logical lines to look at
+     * @return the match, a match with a length of 0 telling the row and
+     * column to continue from if maxLines were looked at without a match,
+     * or null if there is no match
+     */
+    public Match find(final Pattern pattern, final int row, final int column,
+        final boolean forward, final int maxLines) {
+
+        if (count == 0) {
+            return null;
+        }
+        layout();
+
+        Matcher matcher = pattern.matcher("");
+        long base = getLine(0).firstRow;
+        int lineIdx;
+        int startCell;
+        if (row < 0) {
+            lineIdx = 0;
+            startCell = -1;
+        } else if (row >= size()) {
+            lineIdx = count - 1;
+            startCell = Integer.MAX_VALUE;
+        } else {
+            lineIdx = findLine(row);
+            LogicalLine line = getLine(lineIdx);
+            long cell = ((base + row - line.firstRow)
+                * line.getRowWidth(width)) + column;
+            startCell = (int) Math.max(-1, Math.min(cell, Integer.MAX_VALUE));
+        }
+
+        int looked = 0;
+        while ((lineIdx >= 0) && (lineIdx < count)) {
+            LogicalLine line = getLine(lineIdx);
+            int [] found = line.find(matcher, startCell, forward);
+            if (found != null) {
+                int rowWidth = line.getRowWidth(width);
+                int lineRow = Math.min(found[0] / rowWidth,
+                    line.getRowCount(width) - 1);
+                return new Match((int) (line.firstRow - base) + lineRow,
+                    found[0] - (lineRow * rowWidth), found[1] - found[0],
+                    generation, base);
+            }
+            looked++;
+            if ((looked >= maxLines)
+                && (forward ? (lineIdx < count - 1) : (lineIdx > 0))
+            ) {
+                // Continue from the far end of this line next time.
+                int lineRow = (int) (line.firstRow - base);
+                if (forward) {
+                    return new Match(lineRow + line.getRowCount(width) - 1,
+                        Integer.MAX_VALUE, 0, generation, base);
+                }
+                return new Match(lineRow, -1, 0, generation, base);
+            }
+            if (forward) {
+                lineIdx++;
+                startCell = -1;
+            } else {
+                lineIdx--;
+                startCell = Integer.MAX_VALUE;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Find the next or previous match of a pattern in rows that are not
+     * part of a scrollback, such as the display.  Each row is matched on
+     * its own.
+     *
+     * @param rows the rows to search
+     * @param rowOffset the value to add to the row numbers of the rows
+     * @param columns the number of columns of the rows
+     * @param pattern the pattern to look for
+     * @param row the row to search from, counted without rowOffset; -1
+     * means before the first row, rows.size() means after the last row
+     * @param column the column to search from, exclusive
+     * @param forward if true, look for the first match after (row, column),
+     * else the last match before it
+     * @return the match, or null if there is none
+     */
+    public static Match find(final List<DisplayLine> rows,
+        final int rowOffset, final int columns, final Pattern pattern,
+        final int row, final int column, final boolean forward) {
+
+        Matcher matcher = pattern.matcher("");
+        int i = Math.max(-1, Math.min(row, rows.size()));
+        int startCell = column;
+        if (i < 0) {
+            i = 0;
+            startCell = -1;
+        } else if (i == rows.size()) {
+            i = rows.size() - 1;
+            startCell = Integer.MAX_VALUE;
+        }
+        while ((i >= 0) && (i < rows.size())) {
+            LogicalLine line = new LogicalLine(columns);
+            line.add(rows.get(i));
+            int [] found = line.find(matcher, startCell, forward);
+            if (found != null) {
+                return new Match(rowOffset + i, found[0],
+                    found[1] - found[0]);
+            }
+            if (forward) {
+                i++;
+                startCell = -1;
+            } else {
+                i--;
+                startCell = Integer.MAX_VALUE;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Get the maximum number of rows kept on the heap.
+     *
+     * @return the number of rows, or 0 if all rows are kept on the heap
+     */
+    public int getMemoryMax() {
+        return memoryMax;
+    }
+
+    /**
+     * Set the maximum number of rows kept on the heap.  Older rows are
+     * written to temporary files, and read back when needed.
+     *
+     * @param memoryMax the number of rows, or 0 to keep all rows on the
+     * heap
+     */
+    public void setMemoryMax(final int memoryMax) {
+        if (memoryMax < 0) {
+            throw new IllegalArgumentException("memoryMax must be >= 0");
+        }
+        this.memoryMax = memoryMax;
+    }
+
+    /**
+     * Write a line to file and drop its rows from the heap.
+     *
+     * @param line the line
+     * @return false if the line could not be written, in which case the
+     * rows stay on the heap and spilling stops
+     */
+    private boolean spill(final LogicalLine line) {
+        if (file == null) {
+            file = new ScrollbackFile();
+        }
+        // These are needed for the layout without paging the line in.
+        line.getTextLength();
+        try {
+            line.handle = file.write(line.rows);
+        } catch (IOException e) {
+            // Disk is full or unavailable, keep everything in memory from
+            // now on.
+            memoryMax = 0;
+            return false;
+        }
+        memoryRows -= line.rowCount;
+        line.rows = null;
+        line.reflowed = null;
+        return true;
+    }
+
+    /**
+     * Read the rows of a spilled line back from file.  Lines paged in
+     * earlier are dropped from the heap again when too many are paged in.
+     *
+     * @param line the line
+     */
+    private void pageIn(final LogicalLine line) {
+        try {
+            line.rows = file.read(line.handle);
+        } catch (IOException e) {
+            // The file is gone, show blank rows.
+            line.rows = new ArrayList<DisplayLine>(line.rowCount);
+            for (int i = 0; i < line.rowCount; i++) {
+                line.rows.add(new DisplayLine(new Cell()));
+            }
+        }
+        pagedIn.add(line);
+        while (pagedIn.size() > MAX_PAGED_IN) {
+            LogicalLine old = pagedIn.remove();
+            if (old.handle >= 0) {
+                old.rows = null;
+                old.reflowed = null;
+            }
+        }
+    }
+
+    /**
+     * Get a logical line.
+     *
+     * @param idx the logical line index, 0 being the oldest line
+     * @return the line
+     */
+    private LogicalLine getLine(final int idx) {
+        return lines[(head + idx) % lines.length];
+    }
+
+    /**
+     * Find the logical line holding a row.
+     *
+     * @param idx the row index, 0 being the oldest row
+     * @return the logical line index
+     */
+    private int findLine(final int idx) {
+        long row = getLine(0).firstRow + idx;
+        int lo = 0;
+        int hi = count - 1;
+        while (lo < hi) {
+            int mid = (lo + hi + 1) >>> 1;
+            if (getLine(mid).firstRow <= row) {
+                lo = mid;
+            } else {
+                hi = mid - 1;
+            }
+        }
+        return lo;
+    }
+
+    /**
+     * Recompute the row numbers of the logical lines after a width change.
+     * This only counts rows, it does not re-wrap them.
+     */
+    private void layout() {
+        if (!layoutDirty) {
+            return;
+        }
+        layoutDirty = false;
+        if (count == 0) {
+            return;
+        }
+        long row = getLine(0).firstRow;
+        for (int i = 0; i < count; i++) {
+            LogicalLine line = getLine(i);
+            line.firstRow = row;
+            row += line.getRowCount(width);
+        }
+    }
+
+}
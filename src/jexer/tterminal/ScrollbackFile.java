@@ -0,0 +1,596 @@
+/*
+ * Jexer - Java Text User Interface
+ *
+ * The MIT License (MIT)
+ *
+ * Copyright (C) 2019 Kevin Lamonte
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a
+ * copy of this software and associated documentation files (the "Software"),
+ * to deal in the Software without restriction, including without limitation
+ * the rights to use, copy, modify, merge, publish, distribute, sublicense,
+ * and/or sell copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL
+ * THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ * DEALINGS IN THE SOFTWARE.
+ *
+ * @author Kevin Lamonte [kevin.lamonte@gmail.com]
+ * @version 1
+ */
+package jexer.tterminal;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import jexer.bits.Cell;
+import jexer.bits.CellAttributes;
+import jexer.bits.Color;
+
+/**
+ * ScrollbackFile stores scrollback rows on disk in a compact binary form,
+ * so that Scrollback can keep a deep history without holding every Cell on
+ * the heap.
+ *
+ * <p>
+ * Rows are written to memory-mapped segment files in the temporary
+ * directory.  Where the platform allows it, a segment file is deleted as
+ * soon as it is mapped, so that nothing is left behind even if the JVM
+ * dies; otherwise it is deleted, and its mapping dropped, as soon as none
+ * of the rows it holds are referenced anymore.  Images are not stored.
+ */
+public class ScrollbackFile {
+
+    // ------------------------------------------------------------------------
+    // Constants --------------------------------------------------------------
+    // ------------------------------------------------------------------------
+
+    /**
+     * Size of one segment file.
+     */
+    private static final int SEGMENT_SIZE = 8 * 1024 * 1024;
+
+    /**
+     * Row flag: double-width.
+     */
+    private static final int ROW_DOUBLE_WIDTH = 0x01;
+
+    /**
+     * Row flag: reverse video.
+     */
+    private static final int ROW_REVERSE_COLOR = 0x02;
+
+    /**
+     * Row flag: soft-wrapped.
+     */
+    private static final int ROW_WRAPPED = 0x04;
+
+    /**
+     * Attribute flag: bold.
+     */
+    private static final int ATTR_BOLD = 0x01;
+
+    /**
+     * Attribute flag: blink.
+     */
+    private static final int ATTR_BLINK = 0x02;
+
+    /**
+     * Attribute flag: reverse.
+     */
+    private static final int ATTR_REVERSE = 0x04;
+
+    /**
+     * Attribute flag: underline.
+     */
+    private static final int ATTR_UNDERLINE = 0x08;
+
+    /**
+     * Attribute flag: protect.
+     */
+    private static final int ATTR_PROTECT = 0x10;
+
+    /**
+     * Attribute flag: RGB colors follow.
+     */
+    private static final int ATTR_RGB = 0x20;
+
+    /**
+     * The colors, indexed by their value.
+     */
+    private static final Color [] COLORS = new Color[8];
+
+    static {
+        Color [] colors = {
+            Color.BLACK, Color.RED, Color.GREEN, Color.YELLOW,
+            Color.BLUE, Color.MAGENTA, Color.CYAN, Color.WHITE,
+        };
+        for (Color color: colors) {
+            COLORS[color.getValue() & 0x07] = color;
+        }
+    }
+
+    // ------------------------------------------------------------------------
+    // Variables --------------------------------------------------------------
+    // ------------------------------------------------------------------------
+
+    /**
+     * The segment files that could not be deleted while mapped, and are
+     * still in use.  Whatever is left here is deleted when the JVM exits.
+     * File.deleteOnExit() is not used, since its list only grows.
+     */
+    private static Set<File> undeleted = null;
+
+    /**
+     * The open segments by number.
+     */
+    private HashMap<Integer, Segment> segments = new HashMap<Integer, Segment>();
+
+    /**
+     * The segment being written to, or null.
+     */
+    private Segment current = null;
+
+    /**
+     * The number of the next segment to create.
+     */
+    private int nextSegment = 0;
+
+    /**
+     * Encoding buffer.
+     */
+    private byte [] buffer = new byte[16 * 1024];
+
+    /**
+     * Number of bytes used in buffer.
+     */
+    private int bufferLength = 0;
+
+    /**
+     * One memory-mapped segment file.
+     */
+    private static class Segment {
+
+        /**
+         * The segment number.
+         */
+        private int number;
+
+        /**
+         * The file on disk, or null if it was already deleted.
+         */
+        private File file;
+
+        /**
+         * The open file.
+         */
+        private RandomAccessFile raf;
+
+        /**
+         * The mapping of the whole segment.
+         */
+        private MappedByteBuffer map;
+
+        /**
+         * Number of bytes written.
+         */
+        private int used = 0;
+
+        /**
+         * Number of records written and not released yet.
+         */
+        private int live = 0;
+
+        /**
+         * Public constructor creates the file and maps it.
+         *
+         * @param number the segment number
+         * @throws IOException if the file cannot be created or mapped
+         */
+        public Segment(final int number) throws IOException {
+            this.number = number;
+            file = File.createTempFile("jexer-scrollback-", ".bin");
+            try {
+                raf = new RandomAccessFile(file, "rw");
+                map = raf.getChannel().map(FileChannel.MapMode.READ_WRITE, 0,
+                    SEGMENT_SIZE);
+            } catch (IOException e) {
+                close();
+                throw e;
+            }
+
+            // The mapping outlives the directory entry on POSIX systems.
+            // Windows refuses to delete a mapped file: delete it on close.
+            if (file.delete()) {
+                file = null;
+            } else {
+                deleteOnExit(file);
+            }
+        }
+
+        /**
+         * Close and delete the file, and drop the mapping.  The mapped
+         * memory itself is returned once the buffer is garbage collected.
+         */
+        public void close() {
+            map = null;
+            if (raf != null) {
+                try {
+                    raf.close();
+                } catch (IOException e) {
+                    // SQUASH
+                }
+                raf = null;
+            }
+            if (file != null) {
+                file.delete();
+                forgetOnExit(file);
+                file = null;
+            }
+        }
+    }
+
+    // ------------------------------------------------------------------------
+    // Constructors -----------------------------------------------------------
+    // ------------------------------------------------------------------------
+
+    /**
+     * Public constructor.  Files are only created when rows are written.
+     */
+    public ScrollbackFile() {
+        // NOP
+    }
+
+    /**
+     * Delete a segment file when the JVM exits, unless forgetOnExit() is
+     * called first.
+     *
+     * @param file the file
+     */
+    private static synchronized void deleteOnExit(final File file) {
+        if (undeleted == null) {
+            undeleted = new HashSet<File>();
+            Runtime.getRuntime().addShutdownHook(new Thread() {
+                @Override
+                public void run() {
+                    synchronized (ScrollbackFile.class) {
+                        for (File f: undeleted) {
+                            f.delete();
+                        }
+                    }
+                }
+            });
+        }
+        undeleted.add(file);
+    }
+
+    /**
+     * Stop tracking a segment file that was deleted.
+     *
+     * @param file the file
+     */
+    private static synchronized void forgetOnExit(final File file) {
+        if (undeleted != null) {
+            undeleted.remove(file);
+        }
+    }
+
+    // ------------------------------------------------------------------------
+    // ScrollbackFile ---------------------------------------------------------
+    // ------------------------------------------------------------------------
+
+    /**
+     * Write rows to disk.
+     *
+     * @param rows the rows to write
+     * @return a handle to pass to read() and release()
+     * @throws IOException if the rows cannot be written
+     */
+    public long write(final List<DisplayLine> rows) throws IOException {
+        bufferLength = 0;
+        writeVarInt(rows.size());
+        for (DisplayLine row: rows) {
+            writeRow(row);
+        }
+        if (bufferLength > SEGMENT_SIZE) {
+            throw new IOException("Scrollback line too long: " +
+                bufferLength + " bytes");
+        }
+
+        if ((current == null) || (current.used + bufferLength > SEGMENT_SIZE)) {
+            Segment segment = new Segment(nextSegment);
+            if ((current != null) && (current.live == 0)) {
+                segments.remove(current.number);
+                current.close();
+            }
+            current = segment;
+            segments.put(segment.number, segment);
+            nextSegment++;
+        }
+
+        int offset = current.used;
+        ByteBuffer out = current.map.duplicate();
+        out.position(offset);
+        out.put(buffer, 0, bufferLength);
+        current.used += bufferLength;
+        current.live++;
+        return (((long) current.number) << 32) | offset;
+    }
+
+    /**
+     * Read rows back from disk.
+     *
+     * @param handle the value returned by write()
+     * @return the rows
+     * @throws IOException if the handle is not valid
+     */
+    public List<DisplayLine> read(final long handle) throws IOException {
+        Segment segment = segments.get((int) (handle >>> 32));
+        if (segment == null) {
+            throw new IOException("Scrollback segment was released");
+        }
+        ByteBuffer in = segment.map.duplicate();
+        in.position((int) (handle & 0xFFFFFFFFL));
+
+        int n = readVarInt(in);
+        List<DisplayLine> rows = new ArrayList<DisplayLine>(n);
+        for (int i = 0; i < n; i++) {
+            rows.add(readRow(in));
+        }
+        return rows;
+    }
+
+    /**
+     * Release rows that will not be read anymore.  The segment file is
+     * deleted once all of its rows are released.
+     *
+     * @param handle the value returned by write()
+     */
+    public void release(final long handle) {
+        Segment segment = segments.get((int) (handle >>> 32));
+        if (segment == null) {
+            return;
+        }
+        segment.live--;
+        if (segment.live <= 0) {
+            segments.remove(segment.number);
+            segment.close();
+            if (segment == current) {
+                current = null;
+            }
+        }
+    }
+
+    /**
+     * Close and delete all files.
+     */
+    public void close() {
+        for (Segment segment: segments.values()) {
+            segment.close();
+        }
+        segments.clear();
+        current = null;
+    }
+
+    /**
+     * Encode one row.
+     *
+     * @param row the row
+     */
+    private void writeRow(final DisplayLine row) {
+        int flags = 0;
+        if (row.isDoubleWidth()) {
+            flags |= ROW_DOUBLE_WIDTH;
+        }
+        if (row.isReverseColor()) {
+            flags |= ROW_REVERSE_COLOR;
+        }
+        if (row.isWrapped()) {
+            flags |= ROW_WRAPPED;
+        }
+        writeByte(flags);
+        writeByte(row.getDoubleHeight());
+
+        // The last cell was never written to: it carries the attributes
+        // of all the cells past the text.
+        Cell fill = row.charAt(row.length() - 1);
+        writeVarInt(fill.getChar());
+        writeAttr(fill);
+
+        int n = row.getTextLength();
+        writeVarInt(n);
+        Cell last = fill;
+        for (int i = 0; i < n; i++) {
+            Cell cell = row.charAt(i);
+            boolean sameAttr = cell.getWidth().equals(last.getWidth())
+                && cell.isBold() == last.isBold()
+                && cell.isBlink() == last.isBlink()
+                && cell.isReverse() == last.isReverse()
+                && cell.isUnderline() == last.isUnderline()
+                && cell.isProtect() == last.isProtect()
+                && cell.getForeColor().equals(last.getForeColor())
+                && cell.getBackColor().equals(last.getBackColor())
+                && cell.getForeColorRGB() == last.getForeColorRGB()
+                && cell.getBackColorRGB() == last.getBackColorRGB();
+
+            // Low bit of the character: attributes follow.
+            writeVarInt((cell.getChar() << 1) | (sameAttr ? 0 : 1));
+            if (!sameAttr) {
+                writeAttr(cell);
+            }
+            last = cell;
+        }
+    }
+
+    /**
+     * Decode one row.
+     *
+     * @param in the buffer positioned on the row
+     * @return the row
+     */
+    private DisplayLine readRow(final ByteBuffer in) {
+        int flags = in.get() & 0xFF;
+        int doubleHeight = in.get();
+
+        Cell fill = new Cell(readVarInt(in));
+        readAttr(in, fill);
+
+        DisplayLine row = new DisplayLine(fill);
+        row.setDoubleWidth((flags & ROW_DOUBLE_WIDTH) != 0);
+        row.setReverseColor((flags & ROW_REVERSE_COLOR) != 0);
+        row.setWrapped((flags & ROW_WRAPPED) != 0);
+        row.setDoubleHeight(doubleHeight);
+        for (int i = 0; i < row.length(); i++) {
+            row.setChar(i, fill.getChar());
+        }
+
+        int n = readVarInt(in);
+        Cell cell = new Cell(fill);
+        for (int i = 0; i < n; i++) {
+            int ch = readVarInt(in);
+            if ((ch & 1) != 0) {
+                readAttr(in, cell);
+            }
+            cell.setChar(ch >>> 1);
+            row.replace(i, cell);
+        }
+        return row;
+    }
+
+    /**
+     * Encode the attributes and width of a cell.
+     *
+     * @param cell the cell
+     */
+    private void writeAttr(final Cell cell) {
+        int flags = 0;
+        if (cell.isBold()) {
+            flags |= ATTR_BOLD;
+        }
+        if (cell.isBlink()) {
+            flags |= ATTR_BLINK;
+        }
+        if (cell.isReverse()) {
+            flags |= ATTR_REVERSE;
+        }
+        if (cell.isUnderline()) {
+            flags |= ATTR_UNDERLINE;
+        }
+        if (cell.isProtect()) {
+            flags |= ATTR_PROTECT;
+        }
+        if (cell.isRGB()) {
+            flags |= ATTR_RGB;
+        }
+        writeByte(flags);
+        writeByte((cell.getForeColor().getValue() & 0x07)
+            | ((cell.getBackColor().getValue() & 0x07) << 3)
+            | (cell.getWidth().ordinal() << 6));
+        if (cell.isRGB()) {
+            writeInt(cell.getForeColorRGB());
+            writeInt(cell.getBackColorRGB());
+        }
+    }
+
+    /**
+     * Decode the attributes and width of a cell.
+     *
+     * @param in the buffer positioned on the attributes
+     * @param cell the cell to set
+     */
+    private void readAttr(final ByteBuffer in, final Cell cell) {
+        int flags = in.get() & 0xFF;
+        int colors = in.get() & 0xFF;
+
+        CellAttributes attr = new CellAttributes();
+        attr.setBold((flags & ATTR_BOLD) != 0);
+        attr.setBlink((flags & ATTR_BLINK) != 0);
+        attr.setReverse((flags & ATTR_REVERSE) != 0);
+        attr.setUnderline((flags & ATTR_UNDERLINE) != 0);
+        attr.setProtect((flags & ATTR_PROTECT) != 0);
+        attr.setForeColor(COLORS[colors & 0x07]);
+        attr.setBackColor(COLORS[(colors >>> 3) & 0x07]);
+        if ((flags & ATTR_RGB) != 0) {
+            attr.setForeColorRGB(in.getInt());
+            attr.setBackColorRGB(in.getInt());
+        }
+        cell.setAttr(attr);
+        cell.setWidth(Cell.Width.values()[(colors >>> 6) & 0x03]);
+    }
+
+    /**
+     * Append a byte to the encoding buffer.
+     *
+     * @param b the byte
+     */
+    private void writeByte(final int b) {
+        if (bufferLength == buffer.length) {
+            byte [] newBuffer = new byte[buffer.length * 2];
+            System.arraycopy(buffer, 0, newBuffer, 0, bufferLength);
+            buffer = newBuffer;
+        }
+        buffer[bufferLength++] = (byte) b;
+    }
+
+    /**
+     * Append a big-endian int to the encoding buffer.
+     *
+     * @param value the int
+     */
+    private void writeInt(final int value) {
+        writeByte(value >>> 24);
+        writeByte(value >>> 16);
+        writeByte(value >>> 8);
+        writeByte(value);
+    }
+
+    /**
+     * Append a non-negative int to the encoding buffer, 7 bits per byte.
+     *
+     * @param value the int
+     */
+    private void writeVarInt(final int value) {
+        int v = value;
+        while ((v & ~0x7F) != 0) {
+            writeByte((v & 0x7F) | 0x80);
+            v >>>= 7;
+        }
+        writeByte(v);
+    }
+
+    /**
+     * Read an int written by writeVarInt().
+     *
+     * @param in the buffer positioned on the int
+     * @return the int
+     */
+    private static int readVarInt(final ByteBuffer in) {
+        int value = 0;
+        int shift = 0;
+        int b;
+        do {
+            b = in.get() & 0xFF;
+            value |= (b & 0x7F) << shift;
+            shift += 7;
+        } while ((b & 0x80) != 0);
+        return value;
+    }
+
+}
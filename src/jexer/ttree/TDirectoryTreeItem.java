@@ -30,17 +30,30 @@ package jexer.ttree;
 
 import java.io.File;
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
 import java.util.LinkedList;
 
 import jexer.TWidget;
+import jexer.bits.DirectoryCache;
 
 /**
  * TDirectoryTreeItem is a single item in a disk directory tree view.
  */
 public class TDirectoryTreeItem extends TTreeItem {
 
+    // ------------------------------------------------------------------------
+    // Constants --------------------------------------------------------------
+    // ------------------------------------------------------------------------
+
+    /**
+     * How many subdirectories a scan collects before adding them to the
+     * tree.
+     */
+    private static final int SCAN_BATCH_SIZE = 256;
+
     // ------------------------------------------------------------------------
     // Variables --------------------------------------------------------------
     // ------------------------------------------------------------------------
@@ -55,6 +68,139 @@ public class TDirectoryTreeItem extends TTreeItem {
      */
     private TTreeViewWidget treeViewWidget;
 
+    /**
+     * The scan reading the subdirectories, or null if the children are
+     * complete.
+     */
+    private Scanner scanner = null;
+
+    /**
+     * Scanner reads the subdirectories of this item, either directly or on
+     * its own thread.  On its own thread it hands the subdirectories to the
+     * tree in batches as it finds them.
+     */
+    private class Scanner extends Thread {
+
+        /**
+         * If true, stop reading.
+         */
+        private volatile boolean cancelled = false;
+
+        /**
+         * Prepare to read the directory.
+         */
+        public Scanner() {
+            super("TDirectoryTreeItem scanner " + file.getName());
+            setDaemon(true);
+        }
+
+        /**
+         * Read the subdirectories, or take them from the application's
+         * directory cache if the directory has not changed since it was
+         * last read.  Names are sorted first so that batches arrive in the
+         * order they will be shown in.
+         */
+        public void scan() {
+            boolean background = (Thread.currentThread() == this);
+            DirectoryCache cache = treeViewWidget.getApplication()
+                .getDirectoryCache();
+            List<DirectoryCache.Entry> entries = cache.get(file);
+            List<DirectoryCache.Entry> dirs =
+                new ArrayList<DirectoryCache.Entry>();
+            if (entries != null) {
+                for (DirectoryCache.Entry entry: entries) {
+                    if (entry.isDirectory()) {
+                        dirs.add(entry);
+                    }
+                }
+                finish(dirs, background);
+                return;
+            }
+
+            long lastModified = file.lastModified();
+            String [] names = file.list();
+            if (names == null) {
+                names = new String[0];
+            }
+            Arrays.sort(names);
+
+            entries = new ArrayList<DirectoryCache.Entry>(names.length);
+            for (String name: names) {
+                if (cancelled) {
+                    return;
+                }
+                if (name.startsWith(".")) {
+                    // Hide dot-files
+                    continue;
+                }
+                DirectoryCache.Entry entry = null;
+                try {
+                    entry = new DirectoryCache.Entry(file, name);
+                } catch (IOException e) {
+                    continue;
+                }
+                entries.add(entry);
+                if (!entry.isDirectory()) {
+                    continue;
+                }
+                dirs.add(entry);
+
+                if (background && (dirs.size() == SCAN_BATCH_SIZE)) {
+                    deliver(dirs, false);
+                    dirs = new ArrayList<DirectoryCache.Entry>();
+                }
+            }
+            cache.put(file, lastModified, entries);
+            finish(dirs, background);
+        }
+
+        /**
+         * Read the subdirectories on this thread.
+         */
+        @Override
+        public void run() {
+            scan();
+        }
+
+        /**
+         * Add the last subdirectories found.
+         *
+         * @param dirs the subdirectories
+         * @param background if true, the scan is on its own thread
+         */
+        private void finish(final List<DirectoryCache.Entry> dirs,
+            final boolean background) {
+
+            if (background) {
+                deliver(dirs, true);
+            } else {
+                addDirectories(dirs, true);
+            }
+        }
+
+        /**
+         * Add a batch of subdirectories on the application thread.
+         *
+         * @param dirs the subdirectories
+         * @param done if true, this is the last batch
+         */
+        private void deliver(final List<DirectoryCache.Entry> dirs,
+            final boolean done) {
+
+            treeViewWidget.getApplication().invokeLater(new Runnable() {
+                public void run() {
+                    if (scanner != Scanner.this) {
+                        // Collapsed or scanned again.
+                        return;
+                    }
+                    addDirectories(dirs, done);
+                    treeViewWidget.reflowData();
+                }
+            });
+        }
+
+    }
+
     // ------------------------------------------------------------------------
     // Constructors -----------------------------------------------------------
     // ------------------------------------------------------------------------
@@ -118,7 +264,7 @@ public class TDirectoryTreeItem extends TTreeItem {
             assert (!openParents);
             setText(rootFile.getName());
         }
-        onExpand();
+        scanDirectory(false);
 
         if (openParents) {
             TDirectoryTreeItem childFile = this;
@@ -129,7 +275,7 @@ public class TDirectoryTreeItem extends TTreeItem {
                     if (child.getText().equals(p)) {
                         childFile = child;
                         childFile.setExpanded(true);
-                        childFile.onExpand();
+                        childFile.scanDirectory(false);
                         break;
                     }
                 }
@@ -139,7 +285,31 @@ public class TDirectoryTreeItem extends TTreeItem {
             setExpanded(oldExpanded);
         }
 
-        view.reflowData();
+        if (openParents || (getTreeView().getTreeRoot() == this)) {
+            // Children created by scanDirectory() are shown when their
+            // parent is done.
+            view.reflowData();
+        }
+    }
+
+    /**
+     * Private constructor used for the subdirectories found by a scan,
+     * which have already been read from disk.
+     *
+     * @param view root TTreeViewWidget
+     * @param entry the subdirectory
+     * @param level the level of this item in the tree
+     */
+    private TDirectoryTreeItem(final TTreeViewWidget view,
+        final DirectoryCache.Entry entry, final int level) {
+
+        super(view.getTreeView(), entry.getFile().getName(), false);
+
+        this.treeViewWidget = view;
+        this.file = entry.getFile();
+        this.level = level;
+        setSelectable(entry.canRead());
+        setExpandable(true);
     }
 
     // ------------------------------------------------------------------------
@@ -158,14 +328,40 @@ public class TDirectoryTreeItem extends TTreeItem {
     /**
      * Called when this item is expanded or collapsed.  this.expanded will be
      * true if this item was just expanded from a mouse click or keypress.
+     * The subdirectories are read on another thread and appear as they are
+     * found; collapsing the item cancels the scan.
      */
     @Override
     public final void onExpand() {
-        // System.err.printf("onExpand() %s\n", file);
+        scanDirectory(true);
+    }
+
+    // ------------------------------------------------------------------------
+    // TDirectoryTreeItem -----------------------------------------------------
+    // ------------------------------------------------------------------------
+
+    /**
+     * See if the subdirectories are still being read.
+     *
+     * @return true if more children may still be added
+     */
+    public final boolean isScanning() {
+        return (scanner != null);
+    }
 
+    /**
+     * Re-read the subdirectories of this item if it is expanded.
+     *
+     * @param background if true, read them on another thread
+     */
+    private void scanDirectory(final boolean background) {
         if (file == null) {
             return;
         }
+        if (scanner != null) {
+            scanner.cancelled = true;
+            scanner = null;
+        }
         getChildren().clear();
 
         // Make sure we can read it before trying to.
@@ -178,34 +374,38 @@ public class TDirectoryTreeItem extends TTreeItem {
         setExpandable(true);
 
         if (!isExpanded() || !isExpandable()) {
+            invalidate();
             return;
         }
 
-        File [] listFiles = file.listFiles();
-        if (listFiles != null) {
-            for (File f: listFiles) {
-                // System.err.printf("   -> file %s %s\n", file, file.getName());
-
-                if (f.getName().startsWith(".")) {
-                    // Hide dot-files
-                    continue;
-                }
-                if (!f.isDirectory()) {
-                    continue;
-                }
+        scanner = new Scanner();
+        if (background) {
+            scanner.start();
+        } else {
+            scanner.scan();
+        }
+        invalidate();
+    }
 
-                try {
-                    TDirectoryTreeItem item = new TDirectoryTreeItem(treeViewWidget,
-                        f.getCanonicalPath(), false, false);
+    /**
+     * Add subdirectories found by a scan as children of this item.
+     *
+     * @param dirs the subdirectories
+     * @param done if true, the scan is complete
+     */
+    private void addDirectories(final List<DirectoryCache.Entry> dirs,
+        final boolean done) {
 
-                    item.level = this.level + 1;
-                    getChildren().add(item);
-                } catch (IOException e) {
-                    continue;
-                }
-            }
+        for (DirectoryCache.Entry entry: dirs) {
+            getChildren().add(new TDirectoryTreeItem(treeViewWidget, entry,
+                    level + 1));
+        }
+        if (done) {
+            scanner = null;
+            // Canonical names can differ from the names that were sorted.
+            Collections.sort(getChildren());
         }
-        Collections.sort(getChildren());
+        invalidate();
     }
 
 }
@@ -95,16 +95,37 @@ public class TTreeItem extends TWidget {
     private boolean last = false;
 
     /**
-     * Pointer to the previous keyboard-navigable item (kbUp).  Note package
-     * private access.
+     * The item whose children include this one.  It is set when the parent
+     * counts its rows.
      */
-    TTreeItem keyboardPrevious = null;
+    private TTreeItem treeParent = null;
 
     /**
-     * Pointer to the next keyboard-navigable item (kbDown).  Note package
-     * private access.
+     * The index of this item in treeParent's children.
+     */
+    private int treeIndex = 0;
+
+    /**
+     * If true, rowCount, childRows, and lineWidth must be computed again.
      */
-    TTreeItem keyboardNext = null;
+    private boolean dirty = true;
+
+    /**
+     * The number of rows taken by this item and its expanded children.
+     */
+    private int rowCount = 1;
+
+    /**
+     * For each child, the number of rows taken by the children up to and
+     * including it.  Empty if this item is not expanded.
+     */
+    private int [] childRows = new int[0];
+
+    /**
+     * The width of the widest row of this item and its expanded children,
+     * not counting the prefix of this item.
+     */
+    private int lineWidth = 0;
 
     // ------------------------------------------------------------------------
     // Constructors -----------------------------------------------------------
@@ -129,7 +150,10 @@ public class TTreeItem extends TWidget {
         if (view.getTreeRoot() == null) {
             view.setTreeRoot(this);
         } else {
-            view.alignTree();
+            // The view only holds the items on screen, alignTree() will add
+            // this one when it is visible.
+            view.getChildren().remove(this);
+            setY(-1);
         }
     }
 
@@ -152,12 +176,10 @@ public class TTreeItem extends TWidget {
                 return;
             }
             if (selectable) {
-                // Flip expanded flag
+                // Flip expanded flag.  Selecting this item unselects any
+                // child that became invisible.
                 expanded = !expanded;
-                if (expanded == false) {
-                    // Unselect children that became invisible
-                    unselect();
-                }
+                invalidate();
                 view.setSelected(this, false);
             }
             // Let subclasses do something with this
@@ -199,12 +221,10 @@ public class TTreeItem extends TWidget {
                 return;
             }
             if (selectable) {
-                // Flip expanded flag
+                // Flip expanded flag.  Selecting this item unselects any
+                // child that became invisible.
                 expanded = !expanded;
-                if (expanded == false) {
-                    // Unselect children that became invisible
-                    unselect();
-                }
+                invalidate();
                 view.setSelected(this, false);
             }
             // Let subclasses do something with this
@@ -309,6 +329,7 @@ public class TTreeItem extends TWidget {
      */
     public final void setText(final String text) {
         this.text = text;
+        invalidate();
     }
 
     /**
@@ -331,8 +352,9 @@ public class TTreeItem extends TWidget {
             this.expanded = true;
             return;
         }
-        if (level > 0) {
+        if ((level > 0) && (this.expanded != expanded)) {
             this.expanded = expanded;
+            invalidate();
         }
     }
 
@@ -452,6 +474,173 @@ public class TTreeItem extends TWidget {
         return array;
     }
 
+    /**
+     * Note that the children of this item have changed, so that the tree
+     * view counts its rows again.  This is done by the tree view and items
+     * themselves when they expand or collapse, but subclasses that add or
+     * remove children must call it.
+     */
+    public final void invalidate() {
+        for (TTreeItem item = this; item != null; item = item.treeParent) {
+            item.dirty = true;
+            if (item == view.getTreeRoot()) {
+                break;
+            }
+        }
+    }
+
+    /**
+     * Recursively mark this item and all of its children to have their rows
+     * counted again.  Note package private access.
+     */
+    final void invalidateTree() {
+        dirty = true;
+        for (TWidget widget: getChildren()) {
+            ((TTreeItem) widget).invalidateTree();
+        }
+    }
+
+    /**
+     * Get the number of rows taken by this item and its expanded children.
+     * Only the items that changed since the last call are counted again.
+     * Note package private access.
+     *
+     * @return the number of rows
+     */
+    final int getRowCount() {
+        if (!dirty) {
+            return rowCount;
+        }
+        dirty = false;
+
+        int n = getChildren().size();
+        boolean visible = expanded && (n > 0);
+        childRows = new int[visible ? n : 0];
+        rowCount = 1;
+        lineWidth = StringUtils.width(text) + 4;
+        for (int i = 0; i < n; i++) {
+            TTreeItem item = (TTreeItem) getChildren().get(i);
+            item.treeParent = this;
+            item.treeIndex = i;
+            if (visible) {
+                rowCount += item.getRowCount();
+                childRows[i] = rowCount - 1;
+                lineWidth = Math.max(lineWidth,
+                    (level > 0 ? 2 : 0) + item.lineWidth);
+            }
+        }
+        return rowCount;
+    }
+
+    /**
+     * Get the width of the widest row of this item and its expanded
+     * children.  Note package private access.
+     *
+     * @return the number of columns
+     */
+    final int getLineWidth() {
+        getRowCount();
+        return lineWidth;
+    }
+
+    /**
+     * Find the item on a row, counting this item as row 0.  Note package
+     * private access.
+     *
+     * @param row the row number
+     * @return the item, or null if row is out of range
+     */
+    final TTreeItem getItemAt(final int row) {
+        if ((row < 0) || (row >= getRowCount())) {
+            return null;
+        }
+
+        TTreeItem item = this;
+        int n = row;
+        while (n > 0) {
+            // Skip the row of item itself, then binary search for the child
+            // whose rows include n.
+            n--;
+            int [] rows = item.childRows;
+            int low = 0;
+            int high = rows.length - 1;
+            while (low < high) {
+                int mid = (low + high) >>> 1;
+                if (rows[mid] > n) {
+                    high = mid;
+                } else {
+                    low = mid + 1;
+                }
+            }
+            if (low > 0) {
+                n -= rows[low - 1];
+            }
+            item = (TTreeItem) item.getChildren().get(low);
+        }
+        return item;
+    }
+
+    /**
+     * Find the row of this item, counting the tree root as row 0.  The
+     * root's rows must have been counted.  Note package private access.
+     *
+     * @return the row number, or -1 if this item is not visible
+     */
+    final int getRow() {
+        int row = 0;
+        TTreeItem item = this;
+        while (item != view.getTreeRoot()) {
+            TTreeItem parent = item.treeParent;
+            if ((parent == null)
+                || (item.treeIndex >= parent.childRows.length)
+                || (parent.getChildren().get(item.treeIndex) != item)
+            ) {
+                // Not in the tree, or under a collapsed item.
+                return -1;
+            }
+            row++;
+            if (item.treeIndex > 0) {
+                row += parent.childRows[item.treeIndex - 1];
+            }
+            item = parent;
+        }
+        return row;
+    }
+
+    /**
+     * Set the vertical bars and such along the left side from the items
+     * above this one, as expandTree() does.  Note package private access.
+     */
+    final void alignPrefix() {
+        List<TTreeItem> path = new ArrayList<TTreeItem>();
+        for (TTreeItem item = this; item != null; item = item.treeParent) {
+            path.add(item);
+            if (item == view.getTreeRoot()) {
+                break;
+            }
+        }
+
+        String newPrefix = "";
+        for (int i = path.size() - 1; i >= 0; i--) {
+            TTreeItem item = path.get(i);
+            item.prefix = newPrefix;
+            if (i == path.size() - 1) {
+                item.last = true;
+            } else {
+                item.last = (item.treeIndex ==
+                    path.get(i + 1).getChildren().size() - 1);
+            }
+            if (item.level > 0) {
+                if (item.last) {
+                    newPrefix += "  ";
+                } else {
+                    newPrefix += GraphicsChars.CP437[0xB3];
+                    newPrefix += ' ';
+                }
+            }
+        }
+    }
+
     /**
      * Get the x spot for the + or - to expand/collapse.
      *
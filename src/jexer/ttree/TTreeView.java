@@ -118,15 +118,17 @@ public class TTreeView extends TWidget {
         if (keypress.equals(kbUp)) {
             // Select the previous item
             if (selectedItem != null) {
-                if (selectedItem.keyboardPrevious != null) {
-                    setSelected(selectedItem.keyboardPrevious, true);
+                int row = getRow(selectedItem);
+                if (row > 0) {
+                    setSelected(getItem(row - 1), true);
                 }
             }
         } else if (keypress.equals(kbDown)) {
             // Select the next item
             if (selectedItem != null) {
-                if (selectedItem.keyboardNext != null) {
-                    setSelected(selectedItem.keyboardNext, true);
+                int row = getRow(selectedItem);
+                if ((row >= 0) && (row < getTotalLineCount() - 1)) {
+                    setSelected(getItem(row + 1), true);
                 }
             }
         } else if (keypress.equals(kbPgDn)) {
@@ -138,11 +140,10 @@ public class TTreeView extends TWidget {
                 onKeypress(new TKeypressEvent(TKeypress.kbUp));
             }
         } else if (keypress.equals(kbHome)) {
-            setSelected((TTreeItem) getChildren().get(0), false);
+            setSelected(getItem(0), false);
             setTopLine(0);
         } else if (keypress.equals(kbEnd)) {
-            setSelected((TTreeItem) getChildren().get(getChildren().size() - 1),
-                true);
+            setSelected(getItem(getTotalLineCount() - 1), true);
         } else {
             if (selectedItem != null) {
                 selectedItem.onKeypress(keypress);
@@ -178,6 +179,9 @@ public class TTreeView extends TWidget {
      */
     public final void setTreeRoot(final TTreeItem treeRoot) {
         this.treeRoot = treeRoot;
+        if (treeRoot != null) {
+            treeRoot.invalidateTree();
+        }
         alignTree();
     }
 
@@ -207,16 +211,16 @@ public class TTreeView extends TWidget {
         selectedItem = item;
 
         if (centerWindow) {
-            int y = 0;
-            for (TWidget widget: getChildren()) {
-                if (widget == selectedItem) {
-                    break;
+            int y = getTotalLineCount();
+            if (selectedItem != null) {
+                int row = getRow(selectedItem);
+                if (row >= 0) {
+                    y = row;
                 }
-                y++;
             }
             topLine = y - (getHeight() - 1)/2;
-            if (topLine > getChildren().size() - getHeight()) {
-                topLine = getChildren().size() - getHeight();
+            if (topLine > getTotalLineCount() - getHeight()) {
+                topLine = getTotalLineCount() - getHeight();
             }
             if (topLine < 0) {
                 topLine = 0;
@@ -283,7 +287,36 @@ public class TTreeView extends TWidget {
         if (treeRoot == null) {
             return 0;
         }
-        return getChildren().size();
+        return treeRoot.getRowCount();
+    }
+
+    /**
+     * Get the item on a line (row), based on the items that are visible and
+     * expanded.  0 is the topmost line.
+     *
+     * @param row the line number
+     * @return the item, or null if there is no such line
+     */
+    public TTreeItem getItem(final int row) {
+        if (treeRoot == null) {
+            return null;
+        }
+        return treeRoot.getItemAt(row);
+    }
+
+    /**
+     * Get the line (row) of an item, based on the items that are visible
+     * and expanded.  0 is the topmost line.
+     *
+     * @param item the item
+     * @return the line number, or -1 if the item is not visible
+     */
+    public int getRow(final TTreeItem item) {
+        if (treeRoot == null) {
+            return -1;
+        }
+        treeRoot.getRowCount();
+        return item.getRow();
     }
 
     /**
@@ -299,31 +332,35 @@ public class TTreeView extends TWidget {
     }
 
     /**
-     * Update the Y positions of all the children items to match the current
-     * topLine value.  Note package private access.
+     * Place the items visible from the current topLine value as the
+     * children of this view.  Only the items on screen are children, the
+     * others are found by row when needed.  Note package private access.
      */
     void alignTree() {
+        // Hide the items that were on screen.  The selected item is drawn
+        // even when it is not a child, as the active widget.
+        for (TWidget widget: getChildren()) {
+            widget.setY(-1);
+        }
+        if (selectedItem != null) {
+            selectedItem.setY(-1);
+        }
+        getChildren().clear();
+
         if (treeRoot == null) {
             return;
         }
 
-        // As we walk the list we also adjust next/previous pointers,
-        // resulting in a doubly-linked list but only of the expanded items.
-        TTreeItem p = null;
-
-        for (int i = 0; i < getChildren().size(); i++) {
-            TTreeItem item = (TTreeItem) getChildren().get(i);
+        int lineCount = getTotalLineCount();
+        for (int row = Math.max(topLine, 0);
+             (row < lineCount) && (row - topLine < getHeight()); row++) {
 
-            if (p != null) {
-                item.keyboardPrevious = p;
-                p.keyboardNext = item;
-            }
-            p = item;
-
-            item.setY(i - topLine);
+            TTreeItem item = treeRoot.getItemAt(row);
+            item.alignPrefix();
+            item.setY(row - topLine);
             item.setWidth(getWidth());
+            getChildren().add(item);
         }
-
     }
 
 }
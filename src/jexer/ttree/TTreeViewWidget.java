@@ -34,7 +34,6 @@ import jexer.TKeypress;
 import jexer.TScrollableWidget;
 import jexer.TVScroller;
 import jexer.TWidget;
-import jexer.bits.StringUtils;
 import jexer.event.TKeypressEvent;
 import jexer.event.TMouseEvent;
 import jexer.event.TResizeEvent;
@@ -233,14 +232,13 @@ public class TTreeViewWidget extends TScrollableWidget {
             reflowData();
             return;
         } else if (keypress.equals(kbHome)) {
-            treeView.setSelected((TTreeItem) treeView.getChildren().get(0),
-                false);
+            treeView.setSelected(treeView.getItem(0), false);
             treeView.setTopLine(0);
             reflowData();
             return;
         } else if (keypress.equals(kbEnd)) {
-            treeView.setSelected((TTreeItem)  treeView.getChildren().get(
-                treeView.getChildren().size() - 1), true);
+            treeView.setSelected(treeView.getItem(
+                treeView.getTotalLineCount() - 1), true);
             reflowData();
             return;
         } else if (keypress.equals(kbTab)) {
@@ -313,44 +311,19 @@ public class TTreeViewWidget extends TScrollableWidget {
      */
     @Override
     public void reflowData() {
-        if (treeView == null) {
+        if ((treeView == null) || (treeView.getTreeRoot() == null)) {
             return;
         }
 
-        int selectedRow = 0;
-        boolean foundSelectedRow = false;
-
-        // Reset the keyboard list, expandTree() will recreate it.
-        for (TWidget widget: treeView.getChildren()) {
-            TTreeItem item = (TTreeItem) widget;
-            item.keyboardPrevious = null;
-            item.keyboardNext = null;
-        }
-
-        // Expand the tree into a linear list
-        treeView.getChildren().clear();
-        treeView.getChildren().addAll(treeView.getTreeRoot().expandTree("",
-                true));
-
-        // Locate the selected row and maximum line width
-        for (TWidget widget: treeView.getChildren()) {
-            TTreeItem item = (TTreeItem) widget;
-
-            if (item == treeView.getSelected()) {
-                foundSelectedRow = true;
-            }
-            if (!foundSelectedRow) {
-                selectedRow++;
-            }
-
-            int lineWidth = StringUtils.width(item.getText())
-                + item.getPrefix().length() + 4;
-            if (lineWidth > maxLineWidth) {
-                maxLineWidth = lineWidth;
-            }
+        // Locate the selected row and maximum line width.  The tree only
+        // counts again the rows of the items that changed.
+        int selectedRow = -1;
+        if (treeView.getSelected() != null) {
+            selectedRow = treeView.getRow(treeView.getSelected());
         }
+        maxLineWidth = treeView.getTreeRoot().getLineWidth();
 
-        if ((centerWindow) && (foundSelectedRow)) {
+        if ((centerWindow) && (selectedRow >= 0)) {
             if ((selectedRow < getVerticalValue())
                 || (selectedRow > getVerticalValue() + getHeight() - 2)
             ) {
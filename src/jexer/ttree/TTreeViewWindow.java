@@ -33,8 +33,6 @@ import jexer.TApplication;
 import jexer.THScroller;
 import jexer.TScrollableWindow;
 import jexer.TVScroller;
-import jexer.TWidget;
-import jexer.bits.StringUtils;
 import jexer.event.TKeypressEvent;
 import jexer.event.TMouseEvent;
 import jexer.event.TResizeEvent;
@@ -276,40 +274,19 @@ public class TTreeViewWindow extends TScrollableWindow {
      */
     @Override
     public void reflowData() {
-        int selectedRow = 0;
-        boolean foundSelectedRow = false;
-
-        // Reset the keyboard list, expandTree() will recreate it.
-        for (TWidget widget: treeView.getChildren()) {
-            TTreeItem item = (TTreeItem) widget;
-            item.keyboardPrevious = null;
-            item.keyboardNext = null;
+        if (treeView.getTreeRoot() == null) {
+            return;
         }
 
-        // Expand the tree into a linear list
-        treeView.getChildren().clear();
-        treeView.getChildren().addAll(treeView.getTreeRoot().expandTree("",
-                true));
-
-        // Locate the selected row and maximum line width
-        for (TWidget widget: treeView.getChildren()) {
-            TTreeItem item = (TTreeItem) widget;
-
-            if (item == treeView.getSelected()) {
-                foundSelectedRow = true;
-            }
-            if (!foundSelectedRow) {
-                selectedRow++;
-            }
-
-            int lineWidth = StringUtils.width(item.getText())
-                + item.getPrefix().length() + 4;
-            if (lineWidth > maxLineWidth) {
-                maxLineWidth = lineWidth;
-            }
+        // Locate the selected row and maximum line width.  The tree only
+        // counts again the rows of the items that changed.
+        int selectedRow = -1;
+        if (treeView.getSelected() != null) {
+            selectedRow = treeView.getRow(treeView.getSelected());
         }
+        maxLineWidth = treeView.getTreeRoot().getLineWidth();
 
-        if ((centerWindow) && (foundSelectedRow)) {
+        if ((centerWindow) && (selectedRow >= 0)) {
             if ((selectedRow < getVerticalValue())
                 || (selectedRow > getVerticalValue() + getHeight() - 3)
             ) {